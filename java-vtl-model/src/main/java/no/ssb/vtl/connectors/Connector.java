@@ -43,6 +43,8 @@ package no.ssb.vtl.connectors;
 
 import no.ssb.vtl.model.Dataset;
 
+import java.util.Optional;
+
 /**
  * Interface that allows the dataset
  */
@@ -54,4 +56,15 @@ public interface Connector {
 
     Dataset putDataset(String identifier, Dataset dataset) throws ConnectorException;
 
+    /**
+     * Returns the version of the dataset.
+     * <p>
+     * The version must change whenever the data of the dataset changes. It lets the engine reuse the
+     * results of the statements that depend on datasets that did not change. The default implementation
+     * returns an empty version, meaning that the dataset can change at any time.
+     */
+    default Optional<String> getVersion(String identifier) throws ConnectorException {
+        return Optional.empty();
+    }
+
 }
@@ -0,0 +1,212 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Statistics of the values of a column.
+ * <p>
+ * All the values are optional; datasets and operations only fill in what they know or can estimate.
+ * The histogram is equi-depth: it contains the boundaries of buckets holding roughly the same number
+ * of non null values, the first and last boundaries being the minimum and the maximum.
+ */
+public final class ColumnStatistics {
+
+    private static final ColumnStatistics UNKNOWN = builder().build();
+
+    private final VTLObject min;
+    private final VTLObject max;
+    private final Long nullCount;
+    private final Long distinctCount;
+    private final ImmutableList<VTLObject> histogram;
+
+    private ColumnStatistics(Builder builder) {
+        this.min = builder.min;
+        this.max = builder.max;
+        this.nullCount = builder.nullCount;
+        this.distinctCount = builder.distinctCount;
+        this.histogram = builder.histogram;
+    }
+
+    public static ColumnStatistics unknown() {
+        return UNKNOWN;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.min = min;
+        builder.max = max;
+        builder.nullCount = nullCount;
+        builder.distinctCount = distinctCount;
+        builder.histogram = histogram;
+        return builder;
+    }
+
+    public Optional<VTLObject> getMin() {
+        return Optional.ofNullable(min);
+    }
+
+    public Optional<VTLObject> getMax() {
+        return Optional.ofNullable(max);
+    }
+
+    public Optional<Long> getNullCount() {
+        return Optional.ofNullable(nullCount);
+    }
+
+    /**
+     * Returns the number of distinct non null values.
+     */
+    public Optional<Long> getDistinctCount() {
+        return Optional.ofNullable(distinctCount);
+    }
+
+    /**
+     * Returns the boundaries of the equi-depth histogram.
+     */
+    public Optional<List<VTLObject>> getHistogram() {
+        return Optional.ofNullable(histogram);
+    }
+
+    /**
+     * Returns the estimated statistics of the column after keeping a fraction of the rows.
+     * <p>
+     * The counts are scaled and the distinct count is capped by the row count. The range and the
+     * histogram are kept since they are still valid bounds.
+     */
+    public ColumnStatistics scale(double fraction, Optional<Long> rowCount) {
+        checkArgument(fraction >= 0, "negative fraction");
+        Builder builder = toBuilder();
+        if (nullCount != null) {
+            builder.nullCount = Math.round(nullCount * Math.min(fraction, 1.0));
+        }
+        if (distinctCount != null && rowCount.isPresent()) {
+            builder.distinctCount = Math.min(distinctCount, rowCount.get());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the statistics of the concatenation of two columns.
+     * <p>
+     * The distinct count is the larger of the two, assuming the values overlap. The histogram is dropped.
+     */
+    public ColumnStatistics union(ColumnStatistics other) {
+        Builder builder = new Builder();
+        if (min != null && other.min != null) {
+            builder.min = min.compareTo(other.min) <= 0 ? min : other.min;
+        }
+        if (max != null && other.max != null) {
+            builder.max = max.compareTo(other.max) >= 0 ? max : other.max;
+        }
+        if (nullCount != null && other.nullCount != null) {
+            builder.nullCount = nullCount + other.nullCount;
+        }
+        if (distinctCount != null && other.distinctCount != null) {
+            builder.distinctCount = Math.max(distinctCount, other.distinctCount);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ColumnStatistics)) return false;
+        ColumnStatistics that = (ColumnStatistics) o;
+        return Objects.equals(min, that.min) &&
+                Objects.equals(max, that.max) &&
+                Objects.equals(nullCount, that.nullCount) &&
+                Objects.equals(distinctCount, that.distinctCount) &&
+                Objects.equals(histogram, that.histogram);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(min, max, nullCount, distinctCount, histogram);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("min", min)
+                .add("max", max)
+                .add("nulls", nullCount)
+                .add("distinct", distinctCount)
+                .add("histogram", histogram)
+                .omitNullValues()
+                .toString();
+    }
+
+    public static class Builder {
+
+        private VTLObject min;
+        private VTLObject max;
+        private Long nullCount;
+        private Long distinctCount;
+        private ImmutableList<VTLObject> histogram;
+
+        private Builder() {
+        }
+
+        public Builder min(VTLObject min) {
+            this.min = min;
+            return this;
+        }
+
+        public Builder max(VTLObject max) {
+            this.max = max;
+            return this;
+        }
+
+        public Builder nullCount(Long nullCount) {
+            checkArgument(nullCount == null || nullCount >= 0, "negative null count");
+            this.nullCount = nullCount;
+            return this;
+        }
+
+        public Builder distinctCount(Long distinctCount) {
+            checkArgument(distinctCount == null || distinctCount >= 0, "negative distinct count");
+            this.distinctCount = distinctCount;
+            return this;
+        }
+
+        public Builder histogram(List<VTLObject> histogram) {
+            this.histogram = histogram == null ? null : ImmutableList.copyOf(histogram);
+            return this;
+        }
+
+        public ColumnStatistics build() {
+            return new ColumnStatistics(this);
+        }
+    }
+}
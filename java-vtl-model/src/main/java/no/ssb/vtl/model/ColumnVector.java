@@ -0,0 +1,341 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A fixed capacity column of values used by {@link DataPointBatch}.
+ * <p>
+ * Null values are tracked in a bitmap so that the typed implementations can store
+ * their values in primitive arrays. All the rows are null until they are set.
+ */
+public abstract class ColumnVector {
+
+    protected final BitSet nulls;
+    private final int capacity;
+
+    protected ColumnVector(int capacity) {
+        checkArgument(capacity >= 0, "negative capacity %s", capacity);
+        this.capacity = capacity;
+        this.nulls = new BitSet(capacity);
+        this.nulls.set(0, capacity);
+    }
+
+    /**
+     * Creates a new column vector suited for the given component type.
+     */
+    public static ColumnVector create(Class<?> type, int capacity) {
+        if (Long.class.equals(type))
+            return new LongVector(capacity);
+        if (Double.class.equals(type))
+            return new DoubleVector(capacity);
+        if (Boolean.class.equals(type))
+            return new BooleanVector(capacity);
+        return new ObjectVector(capacity);
+    }
+
+    /**
+     * Creates a vector where all the rows contain the same value.
+     */
+    public static ColumnVector constant(VTLObject value, int capacity) {
+        Object object = value == null ? null : value.get();
+        ColumnVector vector = create(object == null ? Object.class : object.getClass(), capacity);
+        for (int row = 0; row < capacity; row++) {
+            vector.set(row, value);
+        }
+        return vector;
+    }
+
+    private static boolean isNull(VTLObject value) {
+        return value == null || value.get() == null;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    public void setNull(int row) {
+        nulls.set(row);
+    }
+
+    /**
+     * Returns the value at the given row. Null values are returned as {@link VTLObject#NULL}.
+     */
+    public abstract VTLObject get(int row);
+
+    /**
+     * Sets the value at the given row.
+     *
+     * @throws IllegalArgumentException if the value is not compatible with this vector.
+     */
+    public final void set(int row, VTLObject value) {
+        if (isNull(value)) {
+            nulls.set(row);
+        } else {
+            nulls.clear(row);
+            setValue(row, value);
+        }
+    }
+
+    protected abstract void setValue(int row, VTLObject value);
+
+    /**
+     * Copies the value of a row of another vector of the same type.
+     */
+    public void copy(int row, ColumnVector source, int sourceRow) {
+        set(row, source.get(sourceRow));
+    }
+
+    /**
+     * Returns a new vector containing the given rows, in order.
+     */
+    public ColumnVector gather(int[] rows, int count) {
+        ColumnVector result = newInstance(count);
+        for (int i = 0; i < count; i++) {
+            result.copy(i, this, rows[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Compares two rows of this vector. Null values are first.
+     */
+    @SuppressWarnings("unchecked")
+    public int compare(int row, int otherRow) {
+        return VTLObject.VTL_OBJECT_COMPARATOR.compare(get(row), get(otherRow));
+    }
+
+    /**
+     * Compares the nullity of two rows, nulls first.
+     */
+    protected final int compareNulls(int row, int otherRow) {
+        return Boolean.compare(nulls.get(otherRow), nulls.get(row));
+    }
+
+    protected abstract ColumnVector newInstance(int capacity);
+
+    public static final class LongVector extends ColumnVector {
+
+        private final long[] values;
+
+        public LongVector(int capacity) {
+            super(capacity);
+            this.values = new long[capacity];
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        public void setLong(int row, long value) {
+            nulls.clear(row);
+            values[row] = value;
+        }
+
+        @Override
+        public VTLObject get(int row) {
+            return isNull(row) ? VTLObject.NULL : VTLInteger.of(values[row]);
+        }
+
+        @Override
+        protected void setValue(int row, VTLObject value) {
+            Object object = value.get();
+            checkArgument(object instanceof Long, "expected a Long but got %s", object);
+            values[row] = (Long) object;
+        }
+
+        @Override
+        public void copy(int row, ColumnVector source, int sourceRow) {
+            if (source instanceof LongVector) {
+                nulls.set(row, source.isNull(sourceRow));
+                values[row] = ((LongVector) source).values[sourceRow];
+            } else {
+                super.copy(row, source, sourceRow);
+            }
+        }
+
+        @Override
+        public int compare(int row, int otherRow) {
+            if (nulls.get(row) || nulls.get(otherRow)) {
+                return compareNulls(row, otherRow);
+            }
+            return Long.compare(values[row], values[otherRow]);
+        }
+
+        @Override
+        protected ColumnVector newInstance(int capacity) {
+            return new LongVector(capacity);
+        }
+    }
+
+    public static final class DoubleVector extends ColumnVector {
+
+        private final double[] values;
+
+        public DoubleVector(int capacity) {
+            super(capacity);
+            this.values = new double[capacity];
+        }
+
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        public void setDouble(int row, double value) {
+            nulls.clear(row);
+            values[row] = value;
+        }
+
+        @Override
+        public VTLObject get(int row) {
+            return isNull(row) ? VTLObject.NULL : VTLFloat.of(values[row]);
+        }
+
+        @Override
+        protected void setValue(int row, VTLObject value) {
+            Object object = value.get();
+            checkArgument(object instanceof Double, "expected a Double but got %s", object);
+            values[row] = (Double) object;
+        }
+
+        @Override
+        public void copy(int row, ColumnVector source, int sourceRow) {
+            if (source instanceof DoubleVector) {
+                nulls.set(row, source.isNull(sourceRow));
+                values[row] = ((DoubleVector) source).values[sourceRow];
+            } else {
+                super.copy(row, source, sourceRow);
+            }
+        }
+
+        @Override
+        public int compare(int row, int otherRow) {
+            if (nulls.get(row) || nulls.get(otherRow)) {
+                return compareNulls(row, otherRow);
+            }
+            return Double.compare(values[row], values[otherRow]);
+        }
+
+        @Override
+        protected ColumnVector newInstance(int capacity) {
+            return new DoubleVector(capacity);
+        }
+    }
+
+    public static final class BooleanVector extends ColumnVector {
+
+        private final BitSet values;
+
+        public BooleanVector(int capacity) {
+            super(capacity);
+            this.values = new BitSet(capacity);
+        }
+
+        public boolean getBoolean(int row) {
+            return values.get(row);
+        }
+
+        public void setBoolean(int row, boolean value) {
+            nulls.clear(row);
+            values.set(row, value);
+        }
+
+        @Override
+        public VTLObject get(int row) {
+            return isNull(row) ? VTLObject.NULL : VTLBoolean.of(values.get(row));
+        }
+
+        @Override
+        protected void setValue(int row, VTLObject value) {
+            Object object = value.get();
+            checkArgument(object instanceof Boolean, "expected a Boolean but got %s", object);
+            values.set(row, (Boolean) object);
+        }
+
+        @Override
+        public void copy(int row, ColumnVector source, int sourceRow) {
+            if (source instanceof BooleanVector) {
+                nulls.set(row, source.isNull(sourceRow));
+                values.set(row, ((BooleanVector) source).values.get(sourceRow));
+            } else {
+                super.copy(row, source, sourceRow);
+            }
+        }
+
+        @Override
+        public int compare(int row, int otherRow) {
+            if (nulls.get(row) || nulls.get(otherRow)) {
+                return compareNulls(row, otherRow);
+            }
+            return Boolean.compare(values.get(row), values.get(otherRow));
+        }
+
+        @Override
+        protected ColumnVector newInstance(int capacity) {
+            return new BooleanVector(capacity);
+        }
+    }
+
+    /**
+     * Fallback vector that keeps references to the {@link VTLObject}s.
+     */
+    public static final class ObjectVector extends ColumnVector {
+
+        private final VTLObject[] values;
+
+        public ObjectVector(int capacity) {
+            super(capacity);
+            this.values = new VTLObject[capacity];
+        }
+
+        @Override
+        public VTLObject get(int row) {
+            return isNull(row) ? VTLObject.NULL : values[row];
+        }
+
+        @Override
+        protected void setValue(int row, VTLObject value) {
+            values[row] = value;
+        }
+
+        @Override
+        public void copy(int row, ColumnVector source, int sourceRow) {
+            if (source instanceof ObjectVector) {
+                nulls.set(row, source.isNull(sourceRow));
+                values[row] = ((ObjectVector) source).values[sourceRow];
+            } else {
+                super.copy(row, source, sourceRow);
+            }
+        }
+
+        @Override
+        protected ColumnVector newInstance(int capacity) {
+            return new ObjectVector(capacity);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A group of rows stored column by column.
+ * <p>
+ * Each column is a {@link ColumnVector} at the same position as its component in the
+ * {@link DataStructure}. Use {@link #batch(Stream, DataStructure, int)} and {@link #unbatch(Stream)}
+ * to convert from and to {@link DataPoint} streams.
+ * <p>
+ * Batches derived with {@link #select(BitSet)}, {@link #project(int[])} or
+ * {@link #withColumn(int, ColumnVector)} can share column vectors and are therefore full.
+ */
+public final class DataPointBatch {
+
+    private final ColumnVector[] columns;
+    private final int capacity;
+    private int size;
+
+    private DataPointBatch(ColumnVector[] columns, int capacity, int size) {
+        this.columns = columns;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    /**
+     * Creates an empty batch with one column vector per component of the structure.
+     */
+    public static DataPointBatch create(DataStructure structure, int capacity) {
+        ColumnVector[] columns = new ColumnVector[structure.size()];
+        int i = 0;
+        for (Component component : structure.values()) {
+            columns[i++] = ColumnVector.create(component.getType(), capacity);
+        }
+        return new DataPointBatch(columns, capacity, 0);
+    }
+
+    /**
+     * Groups the rows of a stream in batches of at most batchSize rows.
+     */
+    public static Stream<DataPointBatch> batch(Stream<DataPoint> stream, DataStructure structure, int batchSize) {
+        checkNotNull(structure);
+        checkArgument(batchSize > 0, "batch size must be positive");
+        Spliterator<DataPoint> rows = stream.spliterator();
+        int characteristics = rows.characteristics() & Spliterator.ORDERED;
+        Spliterator<DataPointBatch> batches = new Spliterators.AbstractSpliterator<DataPointBatch>(
+                Long.MAX_VALUE, characteristics) {
+            @Override
+            public boolean tryAdvance(Consumer<? super DataPointBatch> action) {
+                DataPointBatch batch = create(structure, batchSize);
+                while (!batch.isFull() && rows.tryAdvance(batch::add)) {
+                    // Fill the batch.
+                }
+                if (batch.isEmpty()) {
+                    return false;
+                }
+                action.accept(batch);
+                return true;
+            }
+        };
+        return StreamSupport.stream(batches, false).onClose(stream::close);
+    }
+
+    /**
+     * Converts a stream of batches back to a stream of rows.
+     */
+    public static Stream<DataPoint> unbatch(Stream<DataPointBatch> batches) {
+        return batches.flatMap(DataPointBatch::stream);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public ColumnVector getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Appends a row to the batch.
+     */
+    public void add(DataPoint dataPoint) {
+        int row = appendRow();
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].set(row, dataPoint.get(i));
+        }
+    }
+
+    /**
+     * Reserves a new row at the end of the batch and returns its index. The values of the row
+     * must be set on each column.
+     */
+    public int appendRow() {
+        checkState(!isFull(), "the batch is full");
+        return size++;
+    }
+
+    /**
+     * Creates a {@link DataPoint} with the values of the given row.
+     */
+    public DataPoint get(int row) {
+        checkElementIndex(row, size);
+        DataPoint dataPoint = DataPoint.create(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            dataPoint.set(i, columns[i].get(row));
+        }
+        return dataPoint;
+    }
+
+    public Stream<DataPoint> stream() {
+        return IntStream.range(0, size).mapToObj(this::get);
+    }
+
+    /**
+     * Returns a batch containing only the selected rows.
+     */
+    public DataPointBatch select(BitSet selection) {
+        int count = selection.cardinality();
+        if (count == size) {
+            return this;
+        }
+        int[] rows = selection.stream().toArray();
+        ColumnVector[] selected = new ColumnVector[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            selected[i] = columns[i].gather(rows, count);
+        }
+        return new DataPointBatch(selected, count, count);
+    }
+
+    /**
+     * Returns a batch with the given columns only. The column vectors are shared.
+     */
+    public DataPointBatch project(int[] indices) {
+        ColumnVector[] projected = new ColumnVector[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            projected[i] = columns[indices[i]];
+        }
+        return new DataPointBatch(projected, size, size);
+    }
+
+    /**
+     * Returns a batch where the column at index is replaced. If index is equal to
+     * the number of columns, the column is added at the end.
+     */
+    public DataPointBatch withColumn(int index, ColumnVector column) {
+        checkArgument(index >= 0 && index <= columns.length, "invalid column index %s", index);
+        checkArgument(column.capacity() >= size, "the column is too small");
+        ColumnVector[] copy = Arrays.copyOf(columns, Math.max(columns.length, index + 1));
+        copy[index] = column;
+        return new DataPointBatch(copy, size, size);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("columns", columns.length)
+                .add("size", size)
+                .toString();
+    }
+}
@@ -0,0 +1,267 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.Ordering.Direction;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Creates {@link DataPoint} comparators specialized for the types of the compared columns.
+ * <p>
+ * The comparators sort null values last and reverse the result of each column unless its direction
+ * is {@link Direction#ASC}, like {@link VtlOrdering} always did. Long, Double, String, Instant and
+ * Boolean columns are compared without going through {@link Comparable}. Values that do not have the
+ * type of their column fall back to {@link Comparable#compareTo(Object)}.
+ * <p>
+ * The comparators only depend on the column indices, directions and types and are cached.
+ */
+public final class DataPointComparators {
+
+    private static final byte OTHER = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte STRING = 3;
+    private static final byte INSTANT = 4;
+    private static final byte BOOLEAN = 5;
+
+    private static final LoadingCache<Key, Comparator<DataPoint>> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build(new CacheLoader<Key, Comparator<DataPoint>>() {
+                @Override
+                public Comparator<DataPoint> load(Key key) {
+                    return new CompiledComparator(key);
+                }
+            });
+
+    private DataPointComparators() {
+    }
+
+    /**
+     * Returns a comparator for the given ordering of the structure.
+     */
+    public static Comparator<DataPoint> compile(OrderingSpecification ordering, DataStructure structure) {
+        checkNotNull(ordering);
+        Map<String, Direction> directions = new LinkedHashMap<>();
+        for (String column : ordering.columns()) {
+            directions.put(column, ordering.getDirection(column));
+        }
+        return compile(directions, structure);
+    }
+
+    /**
+     * Returns a comparator for the given ordering of the structure.
+     */
+    public static Comparator<DataPoint> compile(Map<String, Direction> ordering, DataStructure structure) {
+        checkNotNull(ordering);
+        checkNotNull(structure);
+        ImmutableList<String> columns = ImmutableList.copyOf(structure.keySet());
+        int[] indices = new int[ordering.size()];
+        Direction[] directions = new Direction[ordering.size()];
+        Class<?>[] types = new Class<?>[ordering.size()];
+        int i = 0;
+        for (Map.Entry<String, Direction> entry : ordering.entrySet()) {
+            Component component = structure.get(entry.getKey());
+            checkArgument(component != null, "column %s not found in structure", entry.getKey());
+            indices[i] = columns.indexOf(entry.getKey());
+            directions[i] = entry.getValue();
+            types[i] = component.getType();
+            i++;
+        }
+        return compile(indices, directions, types);
+    }
+
+    /**
+     * Returns a comparator that compares the values at the given indices, in order.
+     *
+     * @param indices    the index of each compared column
+     * @param directions the direction of each compared column
+     * @param types      the expected type of each compared column
+     */
+    public static Comparator<DataPoint> compile(int[] indices, Direction[] directions, Class<?>[] types) {
+        return compile(indices, indices, directions, types);
+    }
+
+    /**
+     * Returns a comparator that compares the values of the first data point at the left indices with the
+     * values of the second data point at the right indices, in order.
+     * <p>
+     * This compares the keys of data points of two different structures without extracting them. The
+     * comparator is not symmetric: the first argument must be a data point of the left structure.
+     *
+     * @param leftIndices  the index of each compared column in the first data point
+     * @param rightIndices the index of each compared column in the second data point
+     * @param directions   the direction of each compared column
+     * @param types        the expected type of each compared column
+     */
+    public static Comparator<DataPoint> compile(int[] leftIndices, int[] rightIndices, Direction[] directions,
+                                                Class<?>[] types) {
+        checkArgument(leftIndices.length == rightIndices.length && leftIndices.length == directions.length
+                        && leftIndices.length == types.length,
+                "indices, directions and types must have the same length");
+        return CACHE.getUnchecked(new Key(leftIndices.clone(), rightIndices.clone(), directions.clone(), types.clone()));
+    }
+
+    private static byte kindOf(Class<?> type) {
+        if (Long.class.equals(type))
+            return LONG;
+        if (Double.class.equals(type))
+            return DOUBLE;
+        if (String.class.equals(type))
+            return STRING;
+        if (Instant.class.equals(type))
+            return INSTANT;
+        if (Boolean.class.equals(type))
+            return BOOLEAN;
+        return OTHER;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(byte kind, Object o1, Object o2) {
+        switch (kind) {
+            case LONG:
+                if (o1 instanceof Long && o2 instanceof Long)
+                    return Long.compare((Long) o1, (Long) o2);
+                break;
+            case DOUBLE:
+                if (o1 instanceof Double && o2 instanceof Double)
+                    return Double.compare((Double) o1, (Double) o2);
+                break;
+            case STRING:
+                if (o1 instanceof String && o2 instanceof String)
+                    return ((String) o1).compareTo((String) o2);
+                break;
+            case INSTANT:
+                if (o1 instanceof Instant && o2 instanceof Instant)
+                    return ((Instant) o1).compareTo((Instant) o2);
+                break;
+            case BOOLEAN:
+                if (o1 instanceof Boolean && o2 instanceof Boolean)
+                    return Boolean.compare((Boolean) o1, (Boolean) o2);
+                break;
+            default:
+                break;
+        }
+        return ((Comparable) o1).compareTo(o2);
+    }
+
+    private static final class Key {
+
+        private final int[] leftIndices;
+        private final int[] rightIndices;
+        private final Direction[] directions;
+        private final Class<?>[] types;
+
+        private Key(int[] leftIndices, int[] rightIndices, Direction[] directions, Class<?>[] types) {
+            this.leftIndices = leftIndices;
+            this.rightIndices = rightIndices;
+            this.directions = directions;
+            this.types = types;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Arrays.equals(leftIndices, key.leftIndices)
+                    && Arrays.equals(rightIndices, key.rightIndices)
+                    && Arrays.equals(directions, key.directions)
+                    && Arrays.equals(types, key.types);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(leftIndices);
+            result = 31 * result + Arrays.hashCode(rightIndices);
+            result = 31 * result + Arrays.hashCode(directions);
+            result = 31 * result + Arrays.hashCode(types);
+            return result;
+        }
+    }
+
+    private static final class CompiledComparator implements Comparator<DataPoint> {
+
+        private final int[] leftIndices;
+        private final int[] rightIndices;
+        private final boolean[] ascending;
+        private final byte[] kinds;
+
+        private CompiledComparator(Key key) {
+            this.leftIndices = key.leftIndices;
+            this.rightIndices = key.rightIndices;
+            this.ascending = new boolean[leftIndices.length];
+            this.kinds = new byte[leftIndices.length];
+            for (int i = 0; i < leftIndices.length; i++) {
+                ascending[i] = key.directions[i] == Direction.ASC;
+                kinds[i] = kindOf(key.types[i]);
+            }
+        }
+
+        @Override
+        public int compare(DataPoint dp1, DataPoint dp2) {
+            for (int i = 0; i < leftIndices.length; i++) {
+                Object o1 = dp1.get(leftIndices[i]).get();
+                Object o2 = dp2.get(rightIndices[i]).get();
+
+                int result;
+                if (o1 == null) {
+                    result = o2 == null ? 0 : 1;
+                } else if (o2 == null) {
+                    result = -1;
+                } else {
+                    result = compareValues(kinds[i], o1, o2);
+                }
+
+                if (result != 0) {
+                    return ascending[i] ? result : -result;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("leftIndices", Arrays.toString(leftIndices))
+                    .add("rightIndices", Arrays.toString(rightIndices))
+                    .add("ascending", Arrays.toString(ascending))
+                    .add("kinds", Arrays.toString(kinds))
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.FilteringSpecification.Operator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compiles {@link FilteringSpecification}s to {@link DataPoint} predicates.
+ * <p>
+ * The columns of the literals are resolved to indices of the structure once, and the comparisons
+ * with Long, Double and String values do not go through {@link VTLObject#compareTo(Object)}. Nested
+ * AND and OR operations with the same operator are merged and their operands kept in arrays.
+ * <p>
+ * The compiled predicates accept the same data points as {@link VtlFiltering#test(DataPoint)}.
+ */
+public final class DataPointPredicates {
+
+    private DataPointPredicates() {
+    }
+
+    /**
+     * Returns a predicate equivalent to the filtering for data points of the given structure.
+     * <p>
+     * If the filtering uses columns that are not in the structure, the filtering is returned as is
+     * when it is a {@link Predicate} itself.
+     *
+     * @throws IllegalArgumentException if the filtering cannot be evaluated on the structure
+     */
+    @SuppressWarnings("unchecked")
+    public static Predicate<DataPoint> compile(FilteringSpecification filtering, DataStructure structure) {
+        checkNotNull(filtering);
+        checkNotNull(structure);
+        Node node = compile(filtering, ImmutableList.copyOf(structure.keySet()));
+        if (node != null) {
+            return node;
+        }
+        if (filtering instanceof Predicate) {
+            return (Predicate<DataPoint>) filtering;
+        }
+        throw new IllegalArgumentException("cannot evaluate " + filtering + " on " + structure);
+    }
+
+    /**
+     * Returns null if a column is not found.
+     */
+    private static Node compile(FilteringSpecification filtering, List<String> columns) {
+        Operator operator = filtering.getOperator();
+        boolean negated = Boolean.TRUE.equals(filtering.isNegated());
+        switch (operator) {
+            case TRUE:
+                return negated ? Constant.FALSE : Constant.TRUE;
+            case AND:
+            case OR:
+                List<Node> operands = new ArrayList<>();
+                for (FilteringSpecification operand : filtering.getOperands()) {
+                    Node node = compile(operand, columns);
+                    if (node == null) {
+                        return null;
+                    }
+                    // (a & (b & c)) => (a & b & c)
+                    if (node instanceof Junction && ((Junction) node).operator == operator
+                            && !((Junction) node).negated) {
+                        operands.addAll(((Junction) node).operands);
+                    } else {
+                        operands.add(node);
+                    }
+                }
+                return new Junction(operator, negated, operands);
+            case EQ:
+            case GT:
+            case LT:
+                int index = columns.indexOf(filtering.getColumn());
+                if (index < 0) {
+                    return null;
+                }
+                Comparison comparison = Comparison.create(index, operator, negated, filtering.getValue());
+                comparison.description = filtering.toString();
+                return comparison;
+            default:
+                throw new IllegalArgumentException("unsupported operator: " + operator);
+        }
+    }
+
+    private abstract static class Node implements Predicate<DataPoint> {
+    }
+
+    private static final class Constant extends Node {
+
+        private static final Constant TRUE = new Constant(true);
+        private static final Constant FALSE = new Constant(false);
+
+        private final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(DataPoint dataPoint) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return value ? "TRUE" : "FALSE";
+        }
+    }
+
+    private static final class Junction extends Node {
+
+        private final Operator operator;
+        private final boolean negated;
+        private final List<Node> operands;
+        private final Node[] array;
+
+        private Junction(Operator operator, boolean negated, List<Node> operands) {
+            this.operator = operator;
+            this.negated = negated;
+            this.operands = operands;
+            this.array = operands.toArray(new Node[0]);
+        }
+
+        @Override
+        public boolean test(DataPoint dataPoint) {
+            // AND stops at the first false operand, OR at the first true operand.
+            boolean stopOn = operator == Operator.OR;
+            for (Node operand : array) {
+                if (operand.test(dataPoint) == stopOn) {
+                    return stopOn ^ negated;
+                }
+            }
+            return !stopOn ^ negated;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(negated ? "~(" : "(");
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    builder.append(operator == Operator.AND ? "&" : "|");
+                }
+                builder.append(array[i]);
+            }
+            return builder.append(")").toString();
+        }
+    }
+
+    /**
+     * Compares the value of a column with a literal. Null values are smaller than any other value.
+     */
+    private abstract static class Comparison extends Node {
+
+        final int index;
+        final Operator operator;
+        final boolean negated;
+        final VTLObject literal;
+        String description;
+
+        Comparison(int index, Operator operator, boolean negated, VTLObject literal) {
+            this.index = index;
+            this.operator = operator;
+            this.negated = negated;
+            this.literal = literal;
+        }
+
+        static Comparison create(int index, Operator operator, boolean negated, VTLObject literal) {
+            Object value = literal == null ? null : literal.get();
+            if (value instanceof Long) {
+                return new LongComparison(index, operator, negated, literal, (Long) value);
+            } else if (value instanceof Double) {
+                return new DoubleComparison(index, operator, negated, literal, (Double) value);
+            } else if (value instanceof String) {
+                return new StringComparison(index, operator, negated, literal, (String) value);
+            } else {
+                return new ObjectComparison(index, operator, negated, literal, value);
+            }
+        }
+
+        @Override
+        public final boolean test(DataPoint dataPoint) {
+            VTLObject vtlObject = dataPoint.get(index);
+            Object value = vtlObject == null ? null : vtlObject.get();
+            int compare = value == null ? compareNull() : compare(vtlObject, value);
+            switch (operator) {
+                case EQ:
+                    return compare == 0 ^ negated;
+                case GT:
+                    return compare > 0 ^ negated;
+                default:
+                    return compare < 0 ^ negated;
+            }
+        }
+
+        /**
+         * Returns the result of comparing a null column value with the literal.
+         */
+        int compareNull() {
+            return -1;
+        }
+
+        abstract int compare(VTLObject vtlObject, Object value);
+
+        /**
+         * Compares values of other types than the literal like {@link VtlFiltering#test(DataPoint)} does.
+         */
+        final int compareObject(VTLObject vtlObject) {
+            return vtlObject.compareTo(literal);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private static final class LongComparison extends Comparison {
+
+        private final long longLiteral;
+
+        private LongComparison(int index, Operator operator, boolean negated, VTLObject literal, long longLiteral) {
+            super(index, operator, negated, literal);
+            this.longLiteral = longLiteral;
+        }
+
+        @Override
+        int compare(VTLObject vtlObject, Object value) {
+            if (value instanceof Long) {
+                return Long.compare((Long) value, longLiteral);
+            }
+            // Mixed numbers are compared as doubles, see VTLNumber#compareTo.
+            if (value instanceof Number) {
+                return Double.compare(((Number) value).doubleValue(), longLiteral);
+            }
+            return compareObject(vtlObject);
+        }
+    }
+
+    private static final class DoubleComparison extends Comparison {
+
+        private final double doubleLiteral;
+
+        private DoubleComparison(int index, Operator operator, boolean negated, VTLObject literal, double doubleLiteral) {
+            super(index, operator, negated, literal);
+            this.doubleLiteral = doubleLiteral;
+        }
+
+        @Override
+        int compare(VTLObject vtlObject, Object value) {
+            if (value instanceof Number) {
+                return Double.compare(((Number) value).doubleValue(), doubleLiteral);
+            }
+            return compareObject(vtlObject);
+        }
+    }
+
+    private static final class StringComparison extends Comparison {
+
+        private final String stringLiteral;
+
+        private StringComparison(int index, Operator operator, boolean negated, VTLObject literal, String stringLiteral) {
+            super(index, operator, negated, literal);
+            this.stringLiteral = stringLiteral;
+        }
+
+        @Override
+        int compare(VTLObject vtlObject, Object value) {
+            if (value instanceof String) {
+                return ((String) value).compareTo(stringLiteral);
+            }
+            return compareObject(vtlObject);
+        }
+    }
+
+    private static final class ObjectComparison extends Comparison {
+
+        private final Object objectLiteral;
+
+        private ObjectComparison(int index, Operator operator, boolean negated, VTLObject literal, Object objectLiteral) {
+            super(index, operator, negated, literal);
+            this.objectLiteral = objectLiteral;
+        }
+
+        @Override
+        int compareNull() {
+            return objectLiteral == null ? 0 : -1;
+        }
+
+        @Override
+        int compare(VTLObject vtlObject, Object value) {
+            return objectLiteral == null ? 1 : compareObject(vtlObject);
+        }
+    }
+}
@@ -20,10 +20,12 @@ package no.ssb.vtl.model;
  * =========================LICENSE_END==================================
  */
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Spliterator;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -85,6 +87,20 @@ public interface Dataset {
      */
     Optional<Map<String, Integer>> getDistinctValuesCount();
 
+    /**
+     * Returns the statistics of the data of the dataset.
+     * <p>
+     * The default implementation uses {@link #getSize()} and {@link #getDistinctValuesCount()}. The
+     * statistics can be estimations.
+     */
+    default DatasetStatistics getStatistics() {
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        getDistinctValuesCount().ifPresent(counts -> counts.forEach((name, count) -> columns.put(
+                name, ColumnStatistics.builder().distinctCount(count.longValue()).build()
+        )));
+        return DatasetStatistics.of(getSize(), columns);
+    }
+
     /**
      * Return the amount of {@link DataPoint} the stream obtained by the
      * method {@link Dataset#getData()} will return.
@@ -98,16 +114,20 @@ public interface Dataset {
      * <p>
      * If supported, the {@link Spliterator} of the returned {@link Stream} <b>must</b> be {@link Spliterator#SORTED}
      * using the given {@link Ordering}.
+     * <p>
+     * Implementations backed by indexes or sorted storage can use {@link FilteringRanges#of(Filtering)} to
+     * read only the key ranges the filtering accepts.
      *
      * @param orders    the order in which the {@link DataPoint}s should be returned.
      * @param filtering the filtering on the {@link Component}s of the {@link DataPoint}s
+     * @param components the names of the {@link Component}s the caller reads. The data points keep the layout
+     *                   of the {@link DataStructure} but implementations may leave the values of the other
+     *                   components null.
      * @return a <b>sorted</b> stream of {@link DataPoint}s if sorting is supported.
      */
     default Optional<Stream<DataPoint>> getData(Ordering orders, Filtering filtering, Set<String> components) {
-        return Optional.of(getData().sorted(orders).filter(filtering).map(o -> {
-            // TODO
-            return o;
-        }));
+        Predicate<DataPoint> predicate = DataPointPredicates.compile(filtering, getDataStructure());
+        return Optional.of(getData().sorted(orders).filter(predicate));
     }
 
     /**
@@ -140,13 +160,12 @@ public interface Dataset {
      * Creates a new independent, immutable stream of DataPoints.
      * <p>
      * Calling this method is equivalent to
-     * <code>getData(Ordering.DEFAULT, filtering, getDataStructure.keySet())</code>
+     * <code>getData(Ordering.ANY, Filtering.ALL, components)</code>
      *
      * @see Dataset#getData(Ordering, Filtering, Set)
      */
     default Optional<Stream<DataPoint>> getData(Set<String> components) {
-        DataStructure dataStructure = getDataStructure();
-        return getData(Ordering.ANY, Filtering.ALL, dataStructure.keySet());
+        return getData(Ordering.ANY, Filtering.ALL, components);
     }
 
     /**
@@ -0,0 +1,267 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Statistics of a {@link Dataset}: the number of rows and the {@link ColumnStatistics} of its columns.
+ * <p>
+ * Statistics are used to choose between execution strategies; they can be exact (computed from the data)
+ * or estimated (derived from the statistics of the children of an operation).
+ *
+ * @see Dataset#getStatistics()
+ */
+public final class DatasetStatistics {
+
+    /**
+     * Number of buckets of the histograms computed by {@link #compute(DataStructure, Iterable)}.
+     */
+    public static final int HISTOGRAM_BUCKETS = 10;
+
+    /**
+     * Selectivity of a condition that cannot be analyzed.
+     */
+    public static final double DEFAULT_SELECTIVITY = 1.0 / 3;
+
+    /**
+     * Selectivity of a range condition on a column without statistics.
+     */
+    static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+    /**
+     * Selectivity of an equality condition on a column without distinct count.
+     */
+    static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+
+    private static final DatasetStatistics UNKNOWN = new DatasetStatistics(null, ImmutableMap.of());
+
+    private final Long rowCount;
+    private final ImmutableMap<String, ColumnStatistics> columns;
+
+    private DatasetStatistics(Long rowCount, Map<String, ColumnStatistics> columns) {
+        checkArgument(rowCount == null || rowCount >= 0, "negative row count");
+        this.rowCount = rowCount;
+        this.columns = ImmutableMap.copyOf(columns);
+    }
+
+    public static DatasetStatistics unknown() {
+        return UNKNOWN;
+    }
+
+    public static DatasetStatistics of(Optional<Long> rowCount, Map<String, ColumnStatistics> columns) {
+        return new DatasetStatistics(checkNotNull(rowCount).orElse(null), columns);
+    }
+
+    /**
+     * Computes exact statistics of the data.
+     */
+    public static DatasetStatistics compute(DataStructure structure, Iterable<DataPoint> data) {
+        int size = structure.size();
+        List<List<VTLObject>> values = new ArrayList<>(size);
+        long[] nulls = new long[size];
+        for (int i = 0; i < size; i++) {
+            values.add(new ArrayList<>());
+        }
+        long rows = 0;
+        for (DataPoint dataPoint : data) {
+            rows++;
+            for (int i = 0; i < size; i++) {
+                VTLObject value = dataPoint.get(i);
+                if (value == null || value.get() == null) {
+                    nulls[i]++;
+                } else {
+                    values.get(i).add(value);
+                }
+            }
+        }
+
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        int index = 0;
+        for (String name : structure.keySet()) {
+            List<VTLObject> columnValues = values.get(index);
+            ColumnStatistics.Builder builder = ColumnStatistics.builder()
+                    .nullCount(nulls[index])
+                    .distinctCount((long) new HashSet<>(columnValues).size());
+            try {
+                columnValues.sort(VTLObject.VTL_OBJECT_COMPARATOR);
+                if (!columnValues.isEmpty()) {
+                    builder.min(columnValues.get(0))
+                            .max(columnValues.get(columnValues.size() - 1))
+                            .histogram(histogram(columnValues));
+                }
+            } catch (ClassCastException cce) {
+                // Values of different types; keep the counts only.
+            }
+            columns.put(name, builder.build());
+            index++;
+        }
+        return new DatasetStatistics(rows, columns);
+    }
+
+    private static List<VTLObject> histogram(List<VTLObject> sorted) {
+        List<VTLObject> boundaries = new ArrayList<>(HISTOGRAM_BUCKETS + 1);
+        for (int i = 0; i <= HISTOGRAM_BUCKETS; i++) {
+            int position = (int) ((long) (sorted.size() - 1) * i / HISTOGRAM_BUCKETS);
+            boundaries.add(sorted.get(position));
+        }
+        return boundaries;
+    }
+
+    public Optional<Long> getRowCount() {
+        return Optional.ofNullable(rowCount);
+    }
+
+    public Map<String, ColumnStatistics> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the statistics of the column or {@link ColumnStatistics#unknown()}.
+     */
+    public ColumnStatistics getColumn(String name) {
+        return columns.getOrDefault(name, ColumnStatistics.unknown());
+    }
+
+    /**
+     * Returns the statistics of the rows kept by a filter with the given selectivity.
+     */
+    public DatasetStatistics scale(double selectivity) {
+        checkArgument(selectivity >= 0, "negative selectivity");
+        Optional<Long> scaled = getRowCount().map(count -> (long) Math.ceil(count * Math.min(selectivity, 1.0)));
+        Map<String, ColumnStatistics> scaledColumns = new LinkedHashMap<>();
+        for (Map.Entry<String, ColumnStatistics> entry : columns.entrySet()) {
+            scaledColumns.put(entry.getKey(), entry.getValue().scale(selectivity, scaled));
+        }
+        return of(scaled, scaledColumns);
+    }
+
+    /**
+     * Estimates the fraction of the rows the filtering accepts.
+     * <p>
+     * The conditions on each column are estimated with the distinct count for point sets, the histogram
+     * or the numeric min and max for ranges, and default selectivities otherwise. The columns are
+     * considered independent.
+     */
+    public double estimateSelectivity(Filtering filtering) {
+        FilteringRanges ranges = FilteringRanges.of(filtering);
+        if (ranges.isEmpty()) {
+            return 0;
+        }
+        double selectivity = 1.0;
+        for (Map.Entry<String, ? extends RangeSet<VTLObject>> entry : ranges.getRanges().entrySet()) {
+            selectivity *= estimateSelectivity(
+                    getColumn(entry.getKey()), entry.getValue(), ranges.getPoints(entry.getKey())
+            );
+        }
+        return selectivity;
+    }
+
+    private double estimateSelectivity(ColumnStatistics column, RangeSet<VTLObject> rangeSet,
+                                       Optional<Set<VTLObject>> points) {
+        if (points.isPresent()) {
+            Optional<Long> distinct = column.getDistinctCount();
+            if (distinct.isPresent() && distinct.get() > 0) {
+                return Math.min(1.0, (double) points.get().size() / distinct.get());
+            }
+            return Math.min(1.0, points.get().size() * DEFAULT_EQUALITY_SELECTIVITY);
+        }
+        try {
+            Optional<List<VTLObject>> histogram = column.getHistogram();
+            if (histogram.isPresent() && histogram.get().size() > 1) {
+                List<VTLObject> boundaries = histogram.get();
+                int matching = 0;
+                for (int i = 1; i < boundaries.size(); i++) {
+                    if (!rangeSet.subRangeSet(Range.closed(boundaries.get(i - 1), boundaries.get(i))).isEmpty()) {
+                        matching++;
+                    }
+                }
+                return (double) matching / (boundaries.size() - 1);
+            }
+            if (column.getMin().isPresent() && column.getMax().isPresent()
+                    && column.getMin().get().get() instanceof Number) {
+                return estimateNumericSelectivity(rangeSet, column.getMin().get(), column.getMax().get());
+            }
+        } catch (ClassCastException cce) {
+            // The literals and the statistics do not have the same type.
+        }
+        return DEFAULT_RANGE_SELECTIVITY;
+    }
+
+    private static double estimateNumericSelectivity(RangeSet<VTLObject> rangeSet, VTLObject minValue,
+                                                     VTLObject maxValue) {
+        double min = toDouble(minValue, 0);
+        double max = toDouble(maxValue, 0);
+        if (max <= min) {
+            return rangeSet.contains(minValue) ? 1.0 : 0.0;
+        }
+        double covered = 0;
+        for (Range<VTLObject> range : rangeSet.asRanges()) {
+            double lower = range.hasLowerBound() ? toDouble(range.lowerEndpoint(), min) : min;
+            double upper = range.hasUpperBound() ? toDouble(range.upperEndpoint(), max) : max;
+            covered += Math.max(0, Math.min(upper, max) - Math.max(lower, min));
+        }
+        return Math.min(1.0, covered / (max - min));
+    }
+
+    private static double toDouble(VTLObject value, double defaultValue) {
+        Object object = value.get();
+        return object instanceof Number ? ((Number) object).doubleValue() : defaultValue;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DatasetStatistics)) return false;
+        DatasetStatistics that = (DatasetStatistics) o;
+        return Objects.equals(rowCount, that.rowCount) &&
+                Objects.equals(columns, that.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rowCount, columns);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("rows", rowCount)
+                .add("columns", columns)
+                .omitNullValues()
+                .toString();
+    }
+}
@@ -0,0 +1,264 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableRangeSet;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import no.ssb.vtl.model.FilteringSpecification.Operator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The ranges of values a {@link Filtering} accepts for each column.
+ * <p>
+ * Connectors can use the ranges to only read the parts of an index or of a sorted storage that can
+ * contain matching data points. Every data point accepted by the filtering has, for each column of
+ * {@link #getRanges()}, a value in the range set of the column. Columns that are not in the map are not
+ * constrained. The values are ordered like {@link VTLObject#compareTo(Object)}; null values are smaller
+ * than any other value.
+ * <p>
+ * When the ranges cannot express the filtering exactly (conditions on several columns combined with OR,
+ * for instance) the data points read with the ranges must still be tested with the
+ * {@link #getResidual() residual filtering}.
+ */
+public final class FilteringRanges {
+
+    private static final FilteringRanges ALL = new FilteringRanges(ImmutableMap.of(), true, false);
+    private static final FilteringRanges NONE = new FilteringRanges(ImmutableMap.of(), true, true);
+
+    private final ImmutableMap<String, ImmutableRangeSet<VTLObject>> ranges;
+    private final boolean exact;
+    private final boolean empty;
+    private final Filtering residual;
+
+    private FilteringRanges(Map<String, ImmutableRangeSet<VTLObject>> ranges, boolean exact, boolean empty) {
+        this(ranges, exact, empty, Filtering.ALL);
+    }
+
+    private FilteringRanges(Map<String, ImmutableRangeSet<VTLObject>> ranges, boolean exact, boolean empty,
+                            Filtering residual) {
+        this.ranges = ImmutableMap.copyOf(ranges);
+        this.exact = exact;
+        this.empty = empty;
+        this.residual = residual;
+    }
+
+    /**
+     * Extracts the ranges of the filtering.
+     */
+    public static FilteringRanges of(Filtering filtering) {
+        checkNotNull(filtering);
+        FilteringRanges extracted;
+        try {
+            extracted = extract(filtering, false);
+        } catch (ClassCastException | IllegalArgumentException e) {
+            // The literals of a column could not be compared.
+            extracted = new FilteringRanges(ImmutableMap.of(), false, false);
+        }
+        if (!extracted.exact) {
+            return new FilteringRanges(extracted.ranges, false, extracted.empty, filtering);
+        }
+        return extracted;
+    }
+
+    /**
+     * Converts the filtering, pushing the negations down to the literals.
+     */
+    private static FilteringRanges extract(FilteringSpecification filtering, boolean negate) {
+        Operator operator = filtering.getOperator();
+        boolean negated = negate ^ Boolean.TRUE.equals(filtering.isNegated());
+        switch (operator) {
+            case TRUE:
+                return negated ? NONE : ALL;
+            case AND:
+            case OR:
+                List<FilteringRanges> operands = new ArrayList<>();
+                for (FilteringSpecification operand : filtering.getOperands()) {
+                    operands.add(extract(operand, negated));
+                }
+                // De Morgan's law
+                boolean conjunction = (operator == Operator.AND) ^ negated;
+                return conjunction ? intersection(operands) : union(operands);
+            case EQ:
+            case GT:
+            case LT:
+                return literal(filtering.getColumn(), operator, filtering.getValue(), negated);
+            default:
+                throw new IllegalArgumentException("unsupported operator: " + operator);
+        }
+    }
+
+    private static FilteringRanges literal(String column, Operator operator, VTLObject value, boolean negated) {
+        VTLObject bound = value == null ? VTLObject.NULL : value;
+        Range<VTLObject> range;
+        switch (operator) {
+            case EQ:
+                range = Range.singleton(bound);
+                break;
+            case GT:
+                range = Range.greaterThan(bound);
+                break;
+            default:
+                range = Range.lessThan(bound);
+        }
+        ImmutableRangeSet<VTLObject> rangeSet = ImmutableRangeSet.of(range);
+        if (negated) {
+            rangeSet = rangeSet.complement();
+        }
+        return new FilteringRanges(ImmutableMap.of(column, rangeSet), true, rangeSet.isEmpty());
+    }
+
+    private static FilteringRanges intersection(List<FilteringRanges> operands) {
+        Map<String, ImmutableRangeSet<VTLObject>> ranges = new LinkedHashMap<>();
+        boolean exact = true;
+        for (FilteringRanges operand : operands) {
+            if (operand.empty) {
+                return NONE;
+            }
+            exact &= operand.exact;
+            for (Map.Entry<String, ImmutableRangeSet<VTLObject>> entry : operand.ranges.entrySet()) {
+                ImmutableRangeSet<VTLObject> current = ranges.get(entry.getKey());
+                ImmutableRangeSet<VTLObject> intersection = current == null
+                        ? entry.getValue()
+                        : current.intersection(entry.getValue());
+                if (intersection.isEmpty()) {
+                    return NONE;
+                }
+                ranges.put(entry.getKey(), intersection);
+            }
+        }
+        return new FilteringRanges(ranges, exact, false);
+    }
+
+    private static FilteringRanges union(List<FilteringRanges> operands) {
+        List<FilteringRanges> satisfiable = new ArrayList<>();
+        for (FilteringRanges operand : operands) {
+            if (!operand.empty) {
+                satisfiable.add(operand);
+            }
+        }
+        if (satisfiable.isEmpty()) {
+            return NONE;
+        }
+        if (satisfiable.size() == 1) {
+            return satisfiable.get(0);
+        }
+        for (FilteringRanges operand : satisfiable) {
+            if (operand.exact && operand.ranges.isEmpty()) {
+                return ALL;
+            }
+        }
+
+        // Only the columns constrained by all the operands are constrained by the union.
+        Map<String, ImmutableRangeSet<VTLObject>> ranges = new HashMap<>(satisfiable.get(0).ranges);
+        boolean exact = true;
+        for (FilteringRanges operand : satisfiable) {
+            exact &= operand.exact;
+            ranges.keySet().retainAll(operand.ranges.keySet());
+        }
+        for (FilteringRanges operand : satisfiable.subList(1, satisfiable.size())) {
+            for (Map.Entry<String, ImmutableRangeSet<VTLObject>> entry : ranges.entrySet()) {
+                entry.setValue(entry.getValue().union(operand.ranges.get(entry.getKey())));
+            }
+        }
+
+        // The union is exact if each operand only constrains the same single column.
+        for (FilteringRanges operand : satisfiable) {
+            exact &= operand.ranges.size() == 1 && ranges.keySet().equals(operand.ranges.keySet());
+        }
+        Map<String, ImmutableRangeSet<VTLObject>> ordered = new LinkedHashMap<>();
+        for (String column : satisfiable.get(0).ranges.keySet()) {
+            if (ranges.containsKey(column)) {
+                ordered.put(column, ranges.get(column));
+            }
+        }
+        return new FilteringRanges(ordered, exact, false);
+    }
+
+    /**
+     * Returns the range set of each constrained column.
+     */
+    public Map<String, ? extends RangeSet<VTLObject>> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Returns the values of the column if the filtering only accepts a finite set of values for it.
+     */
+    public Optional<Set<VTLObject>> getPoints(String column) {
+        ImmutableRangeSet<VTLObject> rangeSet = ranges.get(column);
+        if (rangeSet == null) {
+            return Optional.empty();
+        }
+        ImmutableSet.Builder<VTLObject> points = ImmutableSet.builder();
+        for (Range<VTLObject> range : rangeSet.asRanges()) {
+            if (!range.hasLowerBound() || !range.hasUpperBound()
+                    || range.lowerEndpoint().compareTo(range.upperEndpoint()) != 0) {
+                return Optional.empty();
+            }
+            points.add(range.lowerEndpoint());
+        }
+        return Optional.of(points.build());
+    }
+
+    /**
+     * Returns true if the filtering does not accept any data point.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Returns true if the ranges are equivalent to the filtering.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Returns the filtering the data points read using the ranges must satisfy. This is
+     * {@link Filtering#ALL} when the ranges are {@link #isExact() exact}.
+     */
+    public Filtering getResidual() {
+        return residual;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("ranges", ranges)
+                .add("exact", exact)
+                .add("empty", empty)
+                .toString();
+    }
+}
@@ -0,0 +1,185 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.UnsignedBytes;
+import no.ssb.vtl.model.Ordering.Direction;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Encodes the ordering columns of {@link DataPoint}s into byte arrays whose unsigned lexicographical
+ * order is the order of the {@link VtlOrdering}.
+ * <p>
+ * Each column starts with a null marker followed by the value. Longs, doubles and instants are written
+ * as big endian numbers with the sign bit flipped, strings as UTF-16 code units with escaped zero bytes
+ * and a terminator. The bytes of the columns that are not {@link Direction#ASC} are inverted, so null values
+ * are last in ascending columns and first otherwise.
+ * <p>
+ * Instances reuse an internal buffer and are not thread safe.
+ */
+public final class NormalizedKeyEncoder {
+
+    private static final ImmutableSet<Class<?>> SUPPORTED_TYPES = ImmutableSet.of(
+            Long.class, Double.class, String.class, Instant.class, Boolean.class
+    );
+
+    private static final byte NOT_NULL = 0x01;
+    private static final byte NULL = 0x02;
+
+    private final int[] indices;
+    private final Class<?>[] types;
+    private final boolean[] ascending;
+
+    private byte[] buffer = new byte[64];
+    private int position;
+
+    public NormalizedKeyEncoder(OrderingSpecification ordering, DataStructure structure) {
+        checkNotNull(ordering);
+        checkNotNull(structure);
+        checkArgument(isSupported(ordering, structure), "cannot encode %s of %s", ordering, structure);
+
+        ImmutableList<String> columns = ImmutableList.copyOf(structure.keySet());
+        int size = ordering.columns().size();
+        this.indices = new int[size];
+        this.types = new Class<?>[size];
+        this.ascending = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            String column = ordering.columns().get(i);
+            indices[i] = columns.indexOf(column);
+            types[i] = structure.get(column).getType();
+            ascending[i] = ordering.getDirection(column) == Direction.ASC;
+        }
+    }
+
+    /**
+     * Returns true if all the columns of the ordering can be encoded.
+     */
+    public static boolean isSupported(OrderingSpecification ordering, DataStructure structure) {
+        for (String column : ordering.columns()) {
+            Component component = structure.get(column);
+            if (component == null || !SUPPORTED_TYPES.contains(component.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the comparator to use with the encoded keys.
+     */
+    public static Comparator<byte[]> keyComparator() {
+        return UnsignedBytes.lexicographicalComparator();
+    }
+
+    /**
+     * Encodes the ordering columns of the data point.
+     *
+     * @throws IllegalArgumentException if a value does not have the type of its column.
+     */
+    public byte[] encode(DataPoint dataPoint) {
+        position = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int start = position;
+            Object value = dataPoint.get(indices[i]).get();
+            if (value == null) {
+                writeByte(NULL);
+            } else {
+                writeByte(NOT_NULL);
+                writeValue(types[i], value);
+            }
+            if (!ascending[i]) {
+                for (int j = start; j < position; j++) {
+                    buffer[j] = (byte) ~buffer[j];
+                }
+            }
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeValue(Class<?> type, Object value) {
+        checkArgument(type.isInstance(value), "expected a %s but got %s", type.getSimpleName(), value);
+        if (type == Long.class) {
+            writeLong((Long) value ^ Long.MIN_VALUE);
+        } else if (type == Double.class) {
+            long bits = Double.doubleToLongBits((Double) value);
+            writeLong(bits ^ ((bits >> 63) | Long.MIN_VALUE));
+        } else if (type == String.class) {
+            writeString((String) value);
+        } else if (type == Instant.class) {
+            Instant instant = (Instant) value;
+            writeLong(instant.getEpochSecond() ^ Long.MIN_VALUE);
+            writeInt(instant.getNano());
+        } else {
+            writeByte((Boolean) value ? (byte) 1 : (byte) 0);
+        }
+    }
+
+    private void writeString(String value) {
+        ensureCapacity(value.length() * 4 + 2);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            writeEscaped((byte) (c >>> 8));
+            writeEscaped((byte) c);
+        }
+        buffer[position++] = 0;
+        buffer[position++] = 0;
+    }
+
+    private void writeEscaped(byte b) {
+        buffer[position++] = b;
+        if (b == 0) {
+            buffer[position++] = (byte) 0xFF;
+        }
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+
+import static java.lang.String.format;
+
+/**
+ * Mutable sum of numbers that does not allocate for each value.
+ * <p>
+ * The sum is kept as a long until a double is added, following the same promotion
+ * rules as {@link VTLNumber#add(Number)}, or until the long sum would overflow.
+ * Null values are ignored.
+ */
+public final class NumberAccumulator {
+
+    private boolean floatingPoint;
+    private long longSum;
+    private double simpleSum;
+
+    // Compensated sum used for the average, see DoubleSummaryStatistics.
+    private double sum;
+    private double compensation;
+
+    private long count;
+
+    public NumberAccumulator() {
+        this(false);
+    }
+
+    /**
+     * @param floatingPoint start with a double sum
+     */
+    public NumberAccumulator(boolean floatingPoint) {
+        this.floatingPoint = floatingPoint;
+    }
+
+    public void add(long value) {
+        count++;
+        if (floatingPoint) {
+            addDouble(value);
+        } else {
+            try {
+                longSum = Math.addExact(longSum, value);
+            } catch (ArithmeticException overflow) {
+                promote();
+                addDouble(value);
+            }
+        }
+    }
+
+    public void add(double value) {
+        count++;
+        if (!floatingPoint) {
+            promote();
+        }
+        addDouble(value);
+    }
+
+    public void add(VTLObject value) {
+        Object number = value == null ? null : value.get();
+        if (number == null) {
+            return;
+        }
+        if (number instanceof Double) {
+            add(((Double) number).doubleValue());
+        } else if (number instanceof Number) {
+            add(((Number) number).longValue());
+        } else {
+            throw new IllegalArgumentException(format("unsupported number type %s", number.getClass()));
+        }
+    }
+
+    public void subtract(VTLObject value) {
+        Object number = value == null ? null : value.get();
+        if (number == null) {
+            return;
+        }
+        if (number instanceof Double) {
+            add(-((Double) number).doubleValue());
+        } else if (number instanceof Number) {
+            add(-((Number) number).longValue());
+        } else {
+            throw new IllegalArgumentException(format("unsupported number type %s", number.getClass()));
+        }
+    }
+
+    /**
+     * Adds the first size rows of a column. The primitive arrays are used when possible.
+     */
+    public void addAll(ColumnVector column, int size) {
+        if (column instanceof ColumnVector.LongVector) {
+            ColumnVector.LongVector longs = (ColumnVector.LongVector) column;
+            for (int row = 0; row < size; row++) {
+                if (!longs.isNull(row)) {
+                    add(longs.getLong(row));
+                }
+            }
+        } else if (column instanceof ColumnVector.DoubleVector) {
+            ColumnVector.DoubleVector doubles = (ColumnVector.DoubleVector) column;
+            for (int row = 0; row < size; row++) {
+                if (!doubles.isNull(row)) {
+                    add(doubles.getDouble(row));
+                }
+            }
+        } else {
+            for (int row = 0; row < size; row++) {
+                add(column.get(row));
+            }
+        }
+    }
+
+    private void promote() {
+        floatingPoint = true;
+        simpleSum = longSum;
+        sum = longSum;
+    }
+
+    private void addDouble(double value) {
+        simpleSum += value;
+        double corrected = value - compensation;
+        double next = sum + corrected;
+        compensation = (next - sum) - corrected;
+        sum = next;
+    }
+
+    /**
+     * Returns the number of non null values that were added.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public boolean isFloatingPoint() {
+        return floatingPoint;
+    }
+
+    /**
+     * Returns the sum, zero if no values were added.
+     */
+    public VTLNumber sum() {
+        return floatingPoint ? VTLFloat.of(simpleSum) : VTLInteger.of(longSum);
+    }
+
+    /**
+     * Returns the average, null if no values were added.
+     */
+    public VTLFloat average() {
+        if (count == 0) {
+            return VTLFloat.of((Double) null);
+        }
+        if (!floatingPoint) {
+            return VTLFloat.of((double) longSum / count);
+        }
+        double total = sum - compensation;
+        if (Double.isNaN(total) && Double.isInfinite(simpleSum)) {
+            total = simpleSum;
+        }
+        return VTLFloat.of(total / count);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sum", sum())
+                .add("count", count)
+                .toString();
+    }
+}
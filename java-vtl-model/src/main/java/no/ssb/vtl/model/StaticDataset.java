@@ -42,6 +42,7 @@ public class StaticDataset implements Dataset {
 
     private final DataStructure structure;
     private final List<DataPoint> data;
+    private volatile DatasetStatistics statistics;
 
     private StaticDataset(DataStructure structure, List<DataPoint> data) {
         this.structure = structure;
@@ -86,6 +87,15 @@ public class StaticDataset implements Dataset {
         return Optional.of((long) data.size());
     }
 
+    @Override
+    public DatasetStatistics getStatistics() {
+        DatasetStatistics result = statistics;
+        if (result == null) {
+            statistics = result = DatasetStatistics.compute(structure, data);
+        }
+        return result;
+    }
+
     @Override
     public DataStructure getDataStructure() {
         return structure;
@@ -544,7 +544,7 @@ public abstract class VtlFiltering implements Filtering {
             if (isNegated()) {
                 // De Morgan's law
                 for (VtlFiltering operand : operands) {
-                    if (!operand.test(dataPoint)) {
+                    if (operand.test(dataPoint)) {
                         return false;
                     }
                 }
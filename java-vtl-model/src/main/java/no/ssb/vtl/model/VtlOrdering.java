@@ -22,17 +22,14 @@ package no.ssb.vtl.model;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import com.google.common.primitives.Ints;
 
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiPredicate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -53,8 +50,7 @@ public final class VtlOrdering implements Ordering {
     public static final Comparator<Map.Entry<String, Component>> BY_NAME = Comparator.comparing(Map.Entry::getKey);
 
     private final ImmutableMap<String, Direction> delegate;
-    private final int[] indices;
-    private final Direction[] directions;
+    private final Comparator<DataPoint> comparator;
 
     public VtlOrdering(OrderingSpecification specification, DataStructure structure) {
         this(toMap(specification), structure);
@@ -63,9 +59,6 @@ public final class VtlOrdering implements Ordering {
     public VtlOrdering(Map<String, Direction> specification, DataStructure structure) {
         this.delegate = ImmutableMap.copyOf(specification);
 
-        ArrayList<Integer> indices = Lists.newArrayList();
-        ArrayList<Direction> directions = Lists.newArrayList();
-
         Sets.SetView<String> difference = Sets.difference(specification.keySet(), structure.keySet());
         if (!difference.isEmpty()) {
             throw new IllegalArgumentException(String.format(
@@ -74,14 +67,7 @@ public final class VtlOrdering implements Ordering {
             ));
         }
 
-        ImmutableList<String> columns = ImmutableList.copyOf(structure.keySet());
-        for (String column : specification.keySet()) {
-            indices.add(columns.indexOf(column));
-            directions.add(specification.get(column));
-        }
-
-        this.indices = Ints.toArray(indices);
-        this.directions = directions.toArray(new Direction[]{});
+        this.comparator = DataPointComparators.compile(delegate, structure);
     }
 
     private static ImmutableMap<String, Direction> toMap(OrderingSpecification specification) {
@@ -152,30 +138,16 @@ public final class VtlOrdering implements Ordering {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public int compare(DataPoint dp1, DataPoint dp2) {
-        int result;
-
-        for (int i = 0; i < indices.length; i++) {
-
-            Comparable o1 = (Comparable) dp1.get(indices[i]).get();
-            Comparable o2 = (Comparable) dp2.get(indices[i]).get();
-
-            // TODO: Nullfirst?
-            boolean nullFirst = false;
-            if (o1 == null) {
-                result = (o2 == null) ? 0 : (nullFirst ? -1 : 1);
-            } else if (o2 == null) {
-                result = nullFirst ? 1 : -1;
-            } else {
-                result = o1.compareTo(o2);
-            }
+        return comparator.compare(dp1, dp2);
+    }
 
-            if (result != 0) {
-                return directions[i] == Direction.ASC ? result : -result;
-            }
-        }
-        return 0;
+    /**
+     * Returns a predicate that is true when two data points have the same values in the columns
+     * of this ordering. Useful to group sorted data points.
+     */
+    public <T extends DataPoint> BiPredicate<T, T> equivalence() {
+        return (dp1, dp2) -> comparator.compare(dp1, dp2) == 0;
     }
 
     public static class Builder {
@@ -0,0 +1,160 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DataPointBatchTest {
+
+    private DataStructure structure;
+    private List<DataPoint> data;
+
+    @Before
+    public void setUp() {
+        structure = DataStructure.of(
+                "id", IDENTIFIER, String.class,
+                "long", MEASURE, Long.class,
+                "double", MEASURE, Double.class,
+                "boolean", MEASURE, Boolean.class,
+                "date", MEASURE, Instant.class
+        );
+        data = Stream.of(
+                DataPoint.create("a", 1L, 1.5, true, Instant.ofEpochMilli(0)),
+                DataPoint.create("b", null, 2.5, false, null),
+                DataPoint.create("c", 3L, null, null, Instant.ofEpochMilli(1000)),
+                DataPoint.create(null, 4L, 4.5, true, Instant.ofEpochMilli(2000)),
+                DataPoint.create("e", 5L, 5.5, false, Instant.ofEpochMilli(3000))
+        ).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testCreateUsesTypedVectors() {
+        DataPointBatch batch = DataPointBatch.create(structure, 10);
+        assertThat(batch.getColumn(0)).isInstanceOf(ColumnVector.ObjectVector.class);
+        assertThat(batch.getColumn(1)).isInstanceOf(ColumnVector.LongVector.class);
+        assertThat(batch.getColumn(2)).isInstanceOf(ColumnVector.DoubleVector.class);
+        assertThat(batch.getColumn(3)).isInstanceOf(ColumnVector.BooleanVector.class);
+        assertThat(batch.getColumn(4)).isInstanceOf(ColumnVector.ObjectVector.class);
+    }
+
+    @Test
+    public void testBatchAndUnbatch() {
+        List<DataPointBatch> batches = DataPointBatch.batch(data.stream(), structure, 2)
+                .collect(Collectors.toList());
+
+        assertThat(batches).extracting(DataPointBatch::size).containsExactly(2, 2, 1);
+        assertThat(DataPointBatch.unbatch(batches.stream())).containsExactlyElementsOf(data);
+    }
+
+    @Test
+    public void testNulls() {
+        DataPointBatch batch = DataPointBatch.create(structure, 10);
+        batch.add(data.get(1));
+
+        assertThat(batch.getColumn(0).isNull(0)).isFalse();
+        assertThat(batch.getColumn(1).isNull(0)).isTrue();
+        assertThat(batch.getColumn(4).isNull(0)).isTrue();
+        assertThat(batch.get(0)).containsExactly(
+                VTLObject.of("b"), VTLObject.NULL, VTLObject.of(2.5), VTLObject.of(false), VTLObject.NULL
+        );
+    }
+
+    @Test
+    public void testPrimitiveAccess() {
+        DataPointBatch batch = DataPointBatch.create(structure, 10);
+        data.forEach(batch::add);
+
+        ColumnVector.LongVector longs = (ColumnVector.LongVector) batch.getColumn(1);
+        ColumnVector.DoubleVector doubles = (ColumnVector.DoubleVector) batch.getColumn(2);
+        ColumnVector.BooleanVector booleans = (ColumnVector.BooleanVector) batch.getColumn(3);
+
+        assertThat(longs.getLong(4)).isEqualTo(5L);
+        assertThat(doubles.getDouble(3)).isEqualTo(4.5);
+        assertThat(booleans.getBoolean(0)).isTrue();
+
+        longs.setLong(1, 42L);
+        assertThat(batch.get(1).get(1)).isEqualTo(VTLObject.of(42L));
+    }
+
+    @Test
+    public void testSelect() {
+        DataPointBatch batch = DataPointBatch.create(structure, 10);
+        data.forEach(batch::add);
+
+        BitSet selection = new BitSet();
+        selection.set(1);
+        selection.set(3);
+
+        DataPointBatch selected = batch.select(selection);
+        assertThat(selected.size()).isEqualTo(2);
+        assertThat(selected.stream()).containsExactly(data.get(1), data.get(3));
+    }
+
+    @Test
+    public void testProjectAndWithColumn() {
+        DataPointBatch batch = DataPointBatch.create(structure, 10);
+        data.forEach(batch::add);
+
+        DataPointBatch projected = batch.project(new int[]{1, 0});
+        assertThat(projected.getColumnCount()).isEqualTo(2);
+        assertThat(projected.get(0)).containsExactly(VTLObject.of(1L), VTLObject.of("a"));
+        assertThat(projected.isFull()).isTrue();
+
+        ColumnVector column = ColumnVector.create(String.class, projected.size());
+        column.set(0, VTLObject.of("new"));
+        DataPointBatch added = projected.withColumn(2, column);
+        assertThat(added.get(0)).containsExactly(VTLObject.of(1L), VTLObject.of("a"), VTLObject.of("new"));
+        assertThat(added.get(1).get(2)).isEqualTo(VTLObject.NULL);
+
+        DataPointBatch replaced = projected.withColumn(0, column);
+        assertThat(replaced.get(0)).containsExactly(VTLObject.of("new"), VTLObject.of("a"));
+    }
+
+    @Test
+    public void testInvalidType() {
+        DataPointBatch batch = DataPointBatch.create(structure, 10);
+        assertThatThrownBy(() -> batch.add(DataPoint.create("a", "not a long", 1.0, true, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testStreamClosed() {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Stream<DataPoint> rows = data.stream().onClose(() -> closed.set(true));
+        try (Stream<DataPoint> stream = DataPointBatch.unbatch(DataPointBatch.batch(rows, structure, 3))) {
+            assertThat(stream).hasSize(5);
+        }
+        assertThat(closed.get()).isTrue();
+    }
+}
@@ -0,0 +1,123 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static no.ssb.vtl.model.Ordering.Direction.ASC;
+import static no.ssb.vtl.model.Ordering.Direction.DESC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointComparatorsTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "string", IDENTIFIER, String.class,
+            "long", IDENTIFIER, Long.class,
+            "double", MEASURE, Double.class,
+            "instant", MEASURE, Instant.class,
+            "boolean", MEASURE, Boolean.class
+    );
+
+    @Test
+    public void testTypedColumns() {
+        DataPoint a = DataPoint.create("a", 1L, 1.5, Instant.ofEpochMilli(0), false);
+        DataPoint b = DataPoint.create("b", 2L, 2.5, Instant.ofEpochMilli(1), true);
+
+        for (String column : structure.keySet()) {
+            Comparator<DataPoint> ascending = DataPointComparators.compile(ImmutableMap.of(column, ASC), structure);
+            Comparator<DataPoint> descending = DataPointComparators.compile(ImmutableMap.of(column, DESC), structure);
+            assertThat(ascending.compare(a, b)).as(column).isNegative();
+            assertThat(ascending.compare(b, a)).as(column).isPositive();
+            assertThat(ascending.compare(a, a)).as(column).isZero();
+            assertThat(descending.compare(a, b)).as(column).isPositive();
+        }
+    }
+
+    @Test
+    public void testNullsLast() {
+        DataPoint value = DataPoint.create("a", 1L, 1.5, Instant.ofEpochMilli(0), false);
+        DataPoint nulls = DataPoint.create(structure.size());
+
+        Comparator<DataPoint> ascending = DataPointComparators.compile(ImmutableMap.of("long", ASC), structure);
+        Comparator<DataPoint> descending = DataPointComparators.compile(ImmutableMap.of("long", DESC), structure);
+
+        assertThat(ascending.compare(value, nulls)).isNegative();
+        assertThat(ascending.compare(nulls, nulls)).isZero();
+        assertThat(descending.compare(value, nulls)).isPositive();
+    }
+
+    @Test
+    public void testSameAsVtlOrdering() {
+        List<DataPoint> data = Stream.of(
+                DataPoint.create("b", 1L, 1.5, null, true),
+                DataPoint.create("a", 2L, null, Instant.ofEpochMilli(0), false),
+                DataPoint.create("a", null, 2.5, Instant.ofEpochMilli(1), null),
+                DataPoint.create(null, 1L, 0.5, Instant.ofEpochMilli(2), true),
+                DataPoint.create("a", 1L, 3.5, null, false)
+        ).collect(Collectors.toList());
+
+        VtlOrdering ordering = VtlOrdering.using(structure)
+                .then(ASC, "string")
+                .then(DESC, "long")
+                .build();
+
+        List<DataPoint> sorted = data.stream()
+                .sorted(DataPointComparators.compile(ordering, structure))
+                .collect(Collectors.toList());
+
+        assertThat(sorted).containsExactly(
+                data.get(2), data.get(1), data.get(4), data.get(0), data.get(3)
+        );
+    }
+
+    @Test
+    public void testDifferentIndices() {
+        // The key (string, long) is at the positions 0, 1 on the left and 2, 0 on the right.
+        Comparator<DataPoint> comparator = DataPointComparators.compile(
+                new int[]{0, 1}, new int[]{2, 0},
+                new Ordering.Direction[]{ASC, DESC},
+                new Class<?>[]{String.class, Long.class}
+        );
+        DataPoint left = DataPoint.create("b", 2L, 1.5);
+        assertThat(comparator.compare(left, DataPoint.create(2L, true, "b"))).isZero();
+        assertThat(comparator.compare(left, DataPoint.create(2L, true, "c"))).isNegative();
+        assertThat(comparator.compare(left, DataPoint.create(3L, true, "b"))).isPositive();
+        assertThat(comparator.compare(left, DataPoint.create(1L, true, "b"))).isNegative();
+    }
+
+    @Test
+    public void testCached() {
+        Comparator<DataPoint> first = DataPointComparators.compile(ImmutableMap.of("long", ASC), structure);
+        Comparator<DataPoint> second = DataPointComparators.compile(
+                VtlOrdering.using(structure).then(ASC, "long").build(), structure
+        );
+        assertThat(first).isSameAs(second);
+    }
+}
@@ -0,0 +1,125 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static no.ssb.vtl.model.VtlFiltering.and;
+import static no.ssb.vtl.model.VtlFiltering.eq;
+import static no.ssb.vtl.model.VtlFiltering.ge;
+import static no.ssb.vtl.model.VtlFiltering.gt;
+import static no.ssb.vtl.model.VtlFiltering.lt;
+import static no.ssb.vtl.model.VtlFiltering.neq;
+import static no.ssb.vtl.model.VtlFiltering.not;
+import static no.ssb.vtl.model.VtlFiltering.or;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointPredicatesTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id", IDENTIFIER, String.class,
+            "long", MEASURE, Long.class,
+            "double", MEASURE, Double.class
+    );
+
+    private List<DataPoint> createData() {
+        Random random = new Random(42);
+        List<DataPoint> data = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            data.add(DataPoint.create(
+                    random.nextInt(6) == 0 ? null : String.valueOf((char) ('a' + random.nextInt(5))),
+                    random.nextInt(6) == 0 ? null : (long) random.nextInt(5),
+                    random.nextInt(6) == 0 ? null : random.nextInt(5) / 2.0
+            ));
+        }
+        return data;
+    }
+
+    private void assertSameResult(VtlFiltering filtering) {
+        Predicate<DataPoint> compiled = DataPointPredicates.compile(filtering, structure);
+        for (DataPoint dataPoint : createData()) {
+            assertThat(compiled.test(dataPoint))
+                    .as("%s with %s", dataPoint, filtering)
+                    .isEqualTo(filtering.test(dataPoint));
+        }
+    }
+
+    @Test
+    public void testLiterals() {
+        assertSameResult(VtlFiltering.using(structure).with(eq("id", "c")));
+        assertSameResult(VtlFiltering.using(structure).with(neq("long", 2L)));
+        assertSameResult(VtlFiltering.using(structure).with(gt("double", 1.0)));
+        assertSameResult(VtlFiltering.using(structure).with(ge("id", "b")));
+        assertSameResult(VtlFiltering.using(structure).with(lt("long", 3L)));
+        assertSameResult(VtlFiltering.using(structure).with(eq("long", null)));
+    }
+
+    @Test
+    public void testMixedNumbers() {
+        assertSameResult(VtlFiltering.using(structure).with(gt("long", 1.5)));
+        assertSameResult(VtlFiltering.using(structure).with(eq("long", 2.0)));
+        assertSameResult(VtlFiltering.using(structure).with(lt("double", 1L)));
+        assertSameResult(VtlFiltering.using(structure).with(neq("double", 2L)));
+
+        DataPoint dataPoint = DataPoint.create("a", 2L, 0.5);
+        assertThat(DataPointPredicates.compile(gt("long", 1.5), structure).test(dataPoint)).isTrue();
+        assertThat(DataPointPredicates.compile(lt("long", 1.5), structure).test(dataPoint)).isFalse();
+        assertThat(DataPointPredicates.compile(lt("double", 1L), structure).test(dataPoint)).isTrue();
+        assertThat(DataPointPredicates.compile(eq("double", 0L), structure).test(dataPoint)).isFalse();
+    }
+
+    @Test
+    public void testNested() {
+        assertSameResult(VtlFiltering.using(structure).and(
+                or(eq("id", "a"), gt("long", 2L)),
+                not(and(lt("double", 1.5), neq("id", "d"))),
+                and(ge("long", 1L), lt("long", 4L))
+        ).build());
+        assertSameResult(VtlFiltering.using(structure).with(
+                not(or(eq("id", "a"), eq("id", "b"), gt("double", 1.0)))
+        ));
+    }
+
+    @Test
+    public void testConstants() {
+        VtlFiltering falseFiltering = VtlFiltering.literal(true, FilteringSpecification.Operator.TRUE, null, null);
+        assertSameResult(VtlFiltering.using(structure).with(falseFiltering));
+        assertSameResult(VtlFiltering.using(structure).or(falseFiltering, eq("id", "e")).build());
+        assertThat(DataPointPredicates.compile(Filtering.ALL, structure).test(DataPoint.create(3))).isTrue();
+    }
+
+    @Test
+    public void testFlattened() {
+        VtlFiltering filtering = VtlFiltering.using(structure).and(
+                eq("id", "a"),
+                and(gt("long", 1L), and(lt("double", 2.0)))
+        ).build();
+        assertThat(DataPointPredicates.compile(filtering, structure).toString())
+                .isEqualTo("(id=a&long>1&double<2.0)");
+    }
+}
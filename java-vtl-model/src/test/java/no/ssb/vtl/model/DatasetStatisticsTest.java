@@ -0,0 +1,119 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static no.ssb.vtl.model.VtlFiltering.eq;
+import static no.ssb.vtl.model.VtlFiltering.ge;
+import static no.ssb.vtl.model.VtlFiltering.lt;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class DatasetStatisticsTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id", IDENTIFIER, String.class,
+            "value", MEASURE, Long.class
+    );
+
+    private DatasetStatistics createStatistics() {
+        List<DataPoint> data = new ArrayList<>();
+        for (long i = 0; i < 100; i++) {
+            data.add(DataPoint.create(
+                    VTLObject.of(String.valueOf((char) ('a' + i % 4))),
+                    VTLObject.of(i % 10 == 0 ? null : i)
+            ));
+        }
+        return DatasetStatistics.compute(structure, data);
+    }
+
+    @Test
+    public void testCompute() {
+        DatasetStatistics statistics = createStatistics();
+        assertThat(statistics.getRowCount()).contains(100L);
+
+        ColumnStatistics id = statistics.getColumn("id");
+        assertThat(id.getDistinctCount()).contains(4L);
+        assertThat(id.getNullCount()).contains(0L);
+        assertThat(id.getMin()).contains(VTLObject.of("a"));
+        assertThat(id.getMax()).contains(VTLObject.of("d"));
+
+        ColumnStatistics value = statistics.getColumn("value");
+        assertThat(value.getDistinctCount()).contains(90L);
+        assertThat(value.getNullCount()).contains(10L);
+        assertThat(value.getMin()).contains(VTLObject.of(1L));
+        assertThat(value.getMax()).contains(VTLObject.of(99L));
+        assertThat(value.getHistogram()).hasValueSatisfying(histogram ->
+                assertThat(histogram).hasSize(DatasetStatistics.HISTOGRAM_BUCKETS + 1)
+        );
+
+        assertThat(statistics.getColumn("unknown")).isEqualTo(ColumnStatistics.unknown());
+    }
+
+    @Test
+    public void testSelectivity() {
+        DatasetStatistics statistics = createStatistics();
+
+        assertThat(statistics.estimateSelectivity(Filtering.ALL)).isEqualTo(1.0);
+        assertThat(statistics.estimateSelectivity(
+                VtlFiltering.using(structure).with(eq("id", "a"))
+        )).isEqualTo(0.25);
+        assertThat(statistics.estimateSelectivity(
+                VtlFiltering.using(structure).with(lt("value", 50L))
+        )).isCloseTo(0.5, within(0.1));
+        assertThat(statistics.estimateSelectivity(
+                VtlFiltering.using(structure).and(eq("id", "a"), ge("value", 50L)).build()
+        )).isCloseTo(0.125, within(0.05));
+        assertThat(statistics.estimateSelectivity(
+                VtlFiltering.using(structure).and(lt("value", 10L), ge("value", 50L)).build()
+        )).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testScale() {
+        DatasetStatistics scaled = createStatistics().scale(0.1);
+        assertThat(scaled.getRowCount()).contains(10L);
+        assertThat(scaled.getColumn("id").getDistinctCount()).contains(4L);
+        assertThat(scaled.getColumn("value").getDistinctCount()).contains(10L);
+        assertThat(scaled.getColumn("value").getNullCount()).contains(1L);
+
+        assertThat(DatasetStatistics.unknown().scale(0.5).getRowCount()).isEmpty();
+    }
+
+    @Test
+    public void testDefaultStatistics() {
+        StaticDataset dataset = StaticDataset.create(structure)
+                .addPoints("a", 1L)
+                .addPoints("b", 2L)
+                .addPoints("b", 3L)
+                .build();
+        DatasetStatistics statistics = dataset.getStatistics();
+        assertThat(statistics.getRowCount()).contains(3L);
+        assertThat(statistics.getColumn("id").getDistinctCount()).contains(2L);
+        assertThat(statistics.getColumn("value").getMax()).contains(VTLObject.of(3L));
+    }
+}
@@ -0,0 +1,142 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static no.ssb.vtl.model.VtlFiltering.and;
+import static no.ssb.vtl.model.VtlFiltering.eq;
+import static no.ssb.vtl.model.VtlFiltering.ge;
+import static no.ssb.vtl.model.VtlFiltering.gt;
+import static no.ssb.vtl.model.VtlFiltering.le;
+import static no.ssb.vtl.model.VtlFiltering.lt;
+import static no.ssb.vtl.model.VtlFiltering.neq;
+import static no.ssb.vtl.model.VtlFiltering.not;
+import static no.ssb.vtl.model.VtlFiltering.or;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilteringRangesTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id", IDENTIFIER, String.class,
+            "value", MEASURE, Long.class
+    );
+
+    /**
+     * Checks that the data points accepted by the filtering are in the ranges and that the
+     * residual filtering gives the same result.
+     */
+    private FilteringRanges assertConsistent(VtlFiltering filtering) {
+        FilteringRanges ranges = FilteringRanges.of(filtering);
+        Random random = new Random(42);
+        List<String> columns = new ArrayList<>(structure.keySet());
+        for (int i = 0; i < 500; i++) {
+            DataPoint dataPoint = DataPoint.create(
+                    VTLObject.of(String.valueOf((char) ('a' + random.nextInt(6)))),
+                    VTLObject.of((long) random.nextInt(10))
+            );
+            boolean inRanges = !ranges.isEmpty();
+            for (Map.Entry<String, ? extends RangeSet<VTLObject>> entry : ranges.getRanges().entrySet()) {
+                inRanges &= entry.getValue().contains(dataPoint.get(columns.indexOf(entry.getKey())));
+            }
+            boolean accepted = filtering.test(dataPoint);
+            if (accepted) {
+                assertThat(inRanges).as("%s in %s", dataPoint, ranges).isTrue();
+            }
+            assertThat(inRanges && ranges.getResidual().test(dataPoint)).isEqualTo(accepted);
+        }
+        return ranges;
+    }
+
+    @Test
+    public void testLiteral() {
+        FilteringRanges ranges = assertConsistent(VtlFiltering.using(structure).with(ge("value", 3L)));
+        assertThat(ranges.isExact()).isTrue();
+        assertThat(ranges.getResidual()).isSameAs(Filtering.ALL);
+        assertThat(ranges.getRanges().get("value").asRanges())
+                .containsExactly(Range.atLeast(VTLObject.of(3L)));
+    }
+
+    @Test
+    public void testAnd() {
+        FilteringRanges ranges = assertConsistent(VtlFiltering.using(structure).and(
+                gt("value", 2L), le("value", 5L), eq("id", "a")
+        ).build());
+        assertThat(ranges.isExact()).isTrue();
+        assertThat(ranges.getRanges().get("value").asRanges())
+                .containsExactly(Range.openClosed(VTLObject.of(2L), VTLObject.of(5L)));
+        assertThat(ranges.getPoints("id")).contains(Collections.singleton(VTLObject.of("a")));
+        assertThat(ranges.getPoints("value")).isEmpty();
+    }
+
+    @Test
+    public void testOrOnOneColumn() {
+        FilteringRanges ranges = assertConsistent(VtlFiltering.using(structure).or(
+                eq("id", "a"), eq("id", "c"), eq("id", "e")
+        ).build());
+        assertThat(ranges.isExact()).isTrue();
+        assertThat(ranges.getPoints("id")).hasValueSatisfying(points -> assertThat(points).containsExactly(
+                VTLObject.of("a"), VTLObject.of("c"), VTLObject.of("e")
+        ));
+    }
+
+    @Test
+    public void testOrOnSeveralColumns() {
+        FilteringRanges ranges = assertConsistent(VtlFiltering.using(structure).or(
+                and(eq("id", "a"), lt("value", 3L)),
+                and(eq("id", "b"), gt("value", 7L))
+        ).build());
+        assertThat(ranges.isExact()).isFalse();
+        assertThat(ranges.getPoints("id")).hasValueSatisfying(points -> assertThat(points).containsExactly(
+                VTLObject.of("a"), VTLObject.of("b")
+        ));
+    }
+
+    @Test
+    public void testNegation() {
+        FilteringRanges ranges = assertConsistent(VtlFiltering.using(structure).with(
+                not(or(lt("value", 3L), gt("value", 6L)))
+        ));
+        assertThat(ranges.isExact()).isTrue();
+        assertThat(ranges.getRanges().get("value").asRanges())
+                .containsExactly(Range.closed(VTLObject.of(3L), VTLObject.of(6L)));
+
+        assertConsistent(VtlFiltering.using(structure).with(not(and(neq("id", "a"), ge("value", 5L)))));
+    }
+
+    @Test
+    public void testEmpty() {
+        FilteringRanges ranges = assertConsistent(VtlFiltering.using(structure).and(
+                lt("value", 3L), gt("value", 6L)
+        ).build());
+        assertThat(ranges.isEmpty()).isTrue();
+    }
+}
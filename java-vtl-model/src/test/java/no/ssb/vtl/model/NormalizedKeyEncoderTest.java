@@ -0,0 +1,150 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static no.ssb.vtl.model.Ordering.Direction.ANY;
+import static no.ssb.vtl.model.Ordering.Direction.ASC;
+import static no.ssb.vtl.model.Ordering.Direction.DESC;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NormalizedKeyEncoderTest {
+
+    private static final List<String> STRINGS = Arrays.asList(
+            null, "", "a", "ab", "a\u0000", "a\u0000b", "b", "é", "￿", "😀"
+    );
+    private static final List<Long> LONGS = Arrays.asList(
+            null, Long.MIN_VALUE, -1L, 0L, 1L, 255L, 256L, Long.MAX_VALUE
+    );
+    private static final List<Double> DOUBLES = Arrays.asList(
+            null, Double.NEGATIVE_INFINITY, -1.5, -0.0, 0.0, Double.MIN_VALUE, 1.5,
+            Double.POSITIVE_INFINITY, Double.NaN
+    );
+    private static final List<Instant> INSTANTS = Arrays.asList(
+            null, Instant.MIN, Instant.ofEpochSecond(-1, 999_999_999), Instant.EPOCH,
+            Instant.ofEpochSecond(0, 1), Instant.MAX
+    );
+    private static final List<Boolean> BOOLEANS = Arrays.asList(null, false, true);
+
+    private final DataStructure structure = DataStructure.of(
+            "string", IDENTIFIER, String.class,
+            "long", IDENTIFIER, Long.class,
+            "double", MEASURE, Double.class,
+            "instant", MEASURE, Instant.class,
+            "boolean", MEASURE, Boolean.class
+    );
+
+    private List<DataPoint> createData(int size) {
+        Random random = new Random(42);
+        List<DataPoint> data = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            data.add(DataPoint.create(
+                    VTLObject.of(STRINGS.get(random.nextInt(STRINGS.size()))),
+                    VTLObject.of(LONGS.get(random.nextInt(LONGS.size()))),
+                    VTLObject.of(DOUBLES.get(random.nextInt(DOUBLES.size()))),
+                    VTLObject.of(INSTANTS.get(random.nextInt(INSTANTS.size()))),
+                    VTLObject.of(BOOLEANS.get(random.nextInt(BOOLEANS.size())))
+            ));
+        }
+        return data;
+    }
+
+    private void assertSameOrder(VtlOrdering ordering) {
+        List<DataPoint> data = createData(2000);
+        NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(ordering, structure);
+        Comparator<byte[]> keyComparator = NormalizedKeyEncoder.keyComparator();
+
+        for (int i = 1; i < data.size(); i++) {
+            DataPoint left = data.get(i - 1);
+            DataPoint right = data.get(i);
+            int expected = Integer.signum(ordering.compare(left, right));
+            int actual = Integer.signum(keyComparator.compare(encoder.encode(left), encoder.encode(right)));
+            assertThat(actual).as("%s and %s with %s", left, right, ordering).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testEachType() {
+        for (String column : structure.keySet()) {
+            assertSameOrder(VtlOrdering.using(structure).then(ASC, column).build());
+            assertSameOrder(VtlOrdering.using(structure).then(DESC, column).build());
+            assertSameOrder(VtlOrdering.using(structure).then(ANY, column).build());
+        }
+    }
+
+    @Test
+    public void testMultipleColumns() {
+        assertSameOrder(VtlOrdering.using(structure)
+                .then(DESC, "string")
+                .then(ASC, "boolean", "double")
+                .then(DESC, "instant", "long")
+                .build());
+    }
+
+    @Test
+    public void testSortedKeys() {
+        List<DataPoint> data = createData(500);
+        VtlOrdering ordering = VtlOrdering.using(structure).then(ASC, "string").then(DESC, "long").build();
+        NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(ordering, structure);
+
+        List<DataPoint> expected = new ArrayList<>(data);
+        expected.sort(ordering);
+
+        List<DataPoint> actual = new ArrayList<>(data);
+        Collections.shuffle(actual, new Random(1));
+        actual.sort(Comparator.comparing(encoder::encode, NormalizedKeyEncoder.keyComparator()));
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(ordering.compare(expected.get(i), actual.get(i))).isZero();
+        }
+    }
+
+    @Test
+    public void testUnsupported() {
+        DataStructure unsupported = DataStructure.of("number", MEASURE, Number.class);
+        VtlOrdering ordering = VtlOrdering.using(unsupported).then(ASC, "number").build();
+
+        assertThat(NormalizedKeyEncoder.isSupported(ordering, unsupported)).isFalse();
+        assertThatThrownBy(() -> new NormalizedKeyEncoder(ordering, unsupported))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testWrongValueType() {
+        VtlOrdering ordering = VtlOrdering.using(structure).then(ASC, "long").build();
+        NormalizedKeyEncoder encoder = new NormalizedKeyEncoder(ordering, structure);
+
+        assertThatThrownBy(() -> encoder.encode(DataPoint.create("a", "b", 1.0, Instant.EPOCH, true)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,111 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NumberAccumulatorTest {
+
+    @Test
+    public void testLongSum() {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.add(VTLInteger.of(10L));
+        accumulator.add(VTLObject.NULL);
+        accumulator.add(5L);
+        accumulator.subtract(VTLInteger.of(3L));
+
+        assertThat(accumulator.isFloatingPoint()).isFalse();
+        assertThat(accumulator.getCount()).isEqualTo(3);
+        assertThat(accumulator.sum()).isInstanceOf(VTLInteger.class).isEqualTo(VTLInteger.of(12L));
+    }
+
+    @Test
+    public void testPromotion() {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.add(10L);
+        accumulator.add(VTLFloat.of(0.5));
+        accumulator.add(2L);
+
+        assertThat(accumulator.isFloatingPoint()).isTrue();
+        assertThat(accumulator.sum()).isInstanceOf(VTLFloat.class).isEqualTo(VTLFloat.of(12.5));
+    }
+
+    @Test
+    public void testOverflow() {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.add(Long.MAX_VALUE);
+        accumulator.add(Long.MAX_VALUE);
+        accumulator.add(2L);
+
+        assertThat(accumulator.isFloatingPoint()).isTrue();
+        assertThat(accumulator.sum()).isEqualTo(VTLFloat.of(2.0 * Long.MAX_VALUE + 2));
+        assertThat(accumulator.average()).isEqualTo(VTLFloat.of((2.0 * Long.MAX_VALUE + 2) / 3));
+
+        NumberAccumulator negative = new NumberAccumulator();
+        negative.add(Long.MIN_VALUE);
+        negative.add(VTLInteger.of(-1L));
+        assertThat(negative.sum()).isEqualTo(VTLFloat.of((double) Long.MIN_VALUE - 1));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertThat(new NumberAccumulator().sum()).isEqualTo(VTLInteger.of(0L));
+        assertThat(new NumberAccumulator(true).sum()).isEqualTo(VTLFloat.of(0D));
+        assertThat(new NumberAccumulator().average().get()).isNull();
+    }
+
+    @Test
+    public void testAverage() {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.add(1L);
+        accumulator.add(2L);
+        assertThat(accumulator.average()).isEqualTo(VTLFloat.of(1.5));
+
+        accumulator.add(0.25);
+        assertThat(accumulator.average()).isEqualTo(VTLFloat.of(3.25 / 3));
+    }
+
+    @Test
+    public void testAddAll() {
+        ColumnVector.LongVector longs = new ColumnVector.LongVector(3);
+        longs.setLong(0, 1L);
+        longs.setLong(2, 3L);
+
+        ColumnVector.DoubleVector doubles = new ColumnVector.DoubleVector(2);
+        doubles.setDouble(1, 0.5);
+
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.addAll(longs, 3);
+        assertThat(accumulator.sum()).isEqualTo(VTLInteger.of(4L));
+        accumulator.addAll(doubles, 2);
+        assertThat(accumulator.sum()).isEqualTo(VTLFloat.of(4.5));
+        assertThat(accumulator.getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testNotANumber() {
+        assertThatThrownBy(() -> new NumberAccumulator().add(VTLString.of("1")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
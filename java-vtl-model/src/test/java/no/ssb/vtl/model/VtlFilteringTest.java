@@ -34,6 +34,8 @@ import static no.ssb.vtl.model.VtlFiltering.gt;
 import static no.ssb.vtl.model.VtlFiltering.le;
 import static no.ssb.vtl.model.VtlFiltering.lt;
 import static no.ssb.vtl.model.VtlFiltering.neq;
+import static no.ssb.vtl.model.VtlFiltering.not;
+import static no.ssb.vtl.model.VtlFiltering.or;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class VtlFilteringTest {
@@ -171,4 +173,21 @@ public class VtlFilteringTest {
 
         assertThat(filtering.toString()).isEqualTo("(1=a&2<=c)");
     }
+
+    @Test
+    public void testNegatedOr() {
+
+        // not ((1 = a) or (2 = a))
+        VtlFiltering filtering = VtlFiltering.using(structure).with(not(or(
+                eq("1", "a"),
+                eq("2", "a")
+        )));
+
+        List<DataPoint> result = data.stream().filter(filtering).collect(Collectors.toList());
+        assertThat(result)
+                .hasSize(16)
+                .allSatisfy(dataPoint -> assertThat(dataPoint).doesNotContain(VTLObject.of("a")));
+
+        assertThat(filtering.toString()).isEqualTo("~(1=a|2=a)");
+    }
 }
@@ -0,0 +1,103 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.dependencies.EvaluationCache;
+import no.ssb.vtl.script.dependencies.StatementDependencies;
+import no.ssb.vtl.script.error.VTLCompileException;
+import no.ssb.vtl.script.error.VTLScriptException;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A parsed VTL script.
+ * <p>
+ * The parse tree is kept and visited again at each evaluation; the same instance can be evaluated
+ * several times, with different contexts. Syntax errors are reported with the errors of each evaluation.
+ * <p>
+ * With {@link VTLScriptEngine#setIncrementalEvaluation(boolean)}, the results of the statements are kept
+ * and reused by the next evaluations when their inputs did not change.
+ *
+ * @see VTLScriptEngine#compile(String)
+ */
+public class VTLCompiledScript extends CompiledScript {
+
+    private final VTLScriptEngine engine;
+    private final VTLParser.StartContext start;
+    private final ImmutableList<VTLScriptException> syntaxErrors;
+    private volatile EvaluationCache evaluationCache;
+
+    VTLCompiledScript(VTLScriptEngine engine, VTLParser.StartContext start, List<VTLScriptException> syntaxErrors) {
+        this.engine = checkNotNull(engine);
+        this.start = checkNotNull(start);
+        this.syntaxErrors = ImmutableList.copyOf(syntaxErrors);
+    }
+
+    @Override
+    public Object eval(ScriptContext context) throws ScriptException {
+        try {
+            List<VTLScriptException> errors = Lists.newArrayList(syntaxErrors);
+            EvaluationCache cache = engine.isIncrementalEvaluation() ? getEvaluationCache() : null;
+            Object returnValue = engine.run(start, errors::add, context, cache);
+            if (!errors.isEmpty()) {
+                throw new VTLCompileException(errors);
+            } else {
+                return returnValue;
+            }
+        } catch (RuntimeException unknownException) {
+            throw new ScriptException(unknownException);
+        }
+    }
+
+    private EvaluationCache getEvaluationCache() {
+        EvaluationCache cache = evaluationCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = evaluationCache;
+                if (cache == null) {
+                    cache = evaluationCache = new EvaluationCache(StatementDependencies.of(start));
+                }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the syntax errors found while parsing the script.
+     */
+    public List<VTLScriptException> getSyntaxErrors() {
+        return syntaxErrors;
+    }
+}
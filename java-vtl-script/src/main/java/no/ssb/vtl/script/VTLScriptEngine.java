@@ -20,24 +20,35 @@ package no.ssb.vtl.script;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
 import no.ssb.vtl.parser.VTLLexer;
 import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.dependencies.EvaluationCache;
+import no.ssb.vtl.script.dependencies.StatementDependencies;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.error.VTLCompileException;
 import no.ssb.vtl.script.error.VTLScriptException;
 import no.ssb.vtl.script.support.SyntaxErrorListener;
 import no.ssb.vtl.script.visitors.AssignmentVisitor;
-import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import javax.script.AbstractScriptEngine;
 import javax.script.Bindings;
+import javax.script.Compilable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -46,23 +57,40 @@ import javax.script.SimpleBindings;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
  * A VTL {@link ScriptEngine} implementation.
+ * <p>
+ * The engine is {@link Compilable}; scripts evaluated from a String are compiled once and kept
+ * in a cache keyed by the text of the script.
  */
-public class VTLScriptEngine extends AbstractScriptEngine {
+public class VTLScriptEngine extends AbstractScriptEngine implements Compilable {
+
+    // Maximum number of compiled scripts kept by the engine.
+    private static final int COMPILED_SCRIPT_CACHE_SIZE = 256;
 
     private final ImmutableList<Connector> connectors;
+    private final Cache<String, VTLCompiledScript> compiledScripts = CacheBuilder.newBuilder()
+            .maximumSize(COMPILED_SCRIPT_CACHE_SIZE)
+            .build();
     private TimeZone timeZone = TimeZone.getDefault();
+    private Executor statementExecutor;
+    private boolean incrementalEvaluation = false;
 
     /**
      * Create a new engine instance.
@@ -116,44 +144,125 @@ public class VTLScriptEngine extends AbstractScriptEngine {
         timeZone = tz;
     }
 
+    /**
+     * Sets the executor used to evaluate the statements of the scripts.
+     * <p>
+     * With an executor, the statements that do not depend on each other (see {@link StatementDependencies})
+     * are evaluated concurrently; the bindings of the context are then accessed from the threads of the
+     * executor. Without executor, the default, the statements are evaluated in order in the calling thread.
+     *
+     * @param executor the executor or null
+     */
+    public void setStatementExecutor(Executor executor) {
+        this.statementExecutor = executor;
+    }
+
+    /**
+     * Enables the incremental evaluation of the compiled scripts.
+     * <p>
+     * When enabled, a compiled script keeps the result of each of its statements and an evaluation only
+     * computes the statements whose inputs changed: the objects they read from the bindings or the versions
+     * of the datasets they get (see {@link Connector#getVersion(String)}). Scripts evaluated from a String
+     * use the compiled script of the engine cache. Disabled by default.
+     */
+    public void setIncrementalEvaluation(boolean incrementalEvaluation) {
+        this.incrementalEvaluation = incrementalEvaluation;
+    }
+
+    public boolean isIncrementalEvaluation() {
+        return incrementalEvaluation;
+    }
+
     @Override
     public Object eval(String script, ScriptContext context) throws ScriptException {
-        return eval(new StringReader(script), context);
+        return getCompiledScript(script).eval(context);
     }
 
-    public VTLParser.StartContext parse(Reader reader, Consumer<VTLScriptException> errorConsumer) throws IOException {
-        // TODO: Change to CharStreams.fromString() when #1977 makes it to release.
-        // TODO: Should be fixed with 4.7.1.
-        VTLLexer lexer = new VTLLexer(new ANTLRInputStream(reader));
-        VTLParser parser = new VTLParser(new CommonTokenStream(lexer));
-
-        lexer.removeErrorListeners();
-        parser.removeErrorListeners();
+    /**
+     * Compiles the script, reusing the result of a previous compilation of the same text.
+     *
+     * @throws VTLCompileException if the script contains syntax errors
+     */
+    @Override
+    public VTLCompiledScript compile(String script) throws ScriptException {
+        return checkSyntax(getCompiledScript(script));
+    }
 
-        BaseErrorListener errorListener = new SyntaxErrorListener(errorConsumer);
+    /**
+     * Compiles the script.
+     *
+     * @throws VTLCompileException if the script contains syntax errors
+     */
+    @Override
+    public VTLCompiledScript compile(Reader script) throws ScriptException {
+        return checkSyntax(parseScript(script));
+    }
 
-        lexer.addErrorListener(errorListener);
-        parser.addErrorListener(errorListener);
+    private static VTLCompiledScript checkSyntax(VTLCompiledScript compiledScript) throws VTLCompileException {
+        if (!compiledScript.getSyntaxErrors().isEmpty()) {
+            throw new VTLCompileException(compiledScript.getSyntaxErrors());
+        }
+        return compiledScript;
+    }
 
-        return parser.start();
+    private VTLCompiledScript getCompiledScript(String script) throws ScriptException {
+        try {
+            return compiledScripts.get(script, () -> parseScript(new StringReader(script)));
+        } catch (ExecutionException ee) {
+            throw ee.getCause() instanceof ScriptException
+                    ? (ScriptException) ee.getCause()
+                    : new ScriptException((Exception) ee.getCause());
+        }
     }
 
-    @Override
-    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+    private VTLCompiledScript parseScript(Reader reader) throws ScriptException {
         try {
-            ArrayList<VTLScriptException> errors = Lists.newArrayList();
+            List<VTLScriptException> errors = Lists.newArrayList();
             VTLParser.StartContext start = parse(reader, errors::add);
-            Object returnValue = run(start, errors::add, context);
-            if (!errors.isEmpty()) {
-                throw new VTLCompileException(errors);
-            } else {
-                return returnValue;
-            }
+            return new VTLCompiledScript(this, start, errors);
         } catch (IOException | RuntimeException unknownException) {
             throw new ScriptException(unknownException);
         }
     }
 
+    /**
+     * Parses a script.
+     * <p>
+     * The script is first parsed with the faster SLL prediction mode, giving up at the first error. Only
+     * if this fails is the script parsed again with the full LL prediction mode, which reports the syntax
+     * errors. The tokens are reused between the two attempts. The prediction caches (DFA) of the
+     * generated lexer and parser are static and shared by all the engines.
+     */
+    public VTLParser.StartContext parse(Reader reader, Consumer<VTLScriptException> errorConsumer) throws IOException {
+        VTLLexer lexer = new VTLLexer(CharStreams.fromReader(reader));
+        BaseErrorListener errorListener = new SyntaxErrorListener(errorConsumer);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        tokens.fill();
+
+        VTLParser parser = new VTLParser(tokens);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            return parser.start();
+        } catch (ParseCancellationException pce) {
+            // Fall back to LL.
+            parser.reset();
+            parser.addErrorListener(errorListener);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.start();
+        }
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return parseScript(reader).eval(context);
+    }
+
     /**
      * Returns a collection of all keywords/reserved words in VTL, divided into the following categories:
      * - implementedVtlKeywords - implemented functions from the specifications
@@ -201,23 +310,143 @@ public class VTLScriptEngine extends AbstractScriptEngine {
      * Run loop
      */
     protected Object run(VTLParser.StartContext start, Consumer<VTLScriptException> errorConsumer, ScriptContext context) throws VTLScriptException {
-        AssignmentVisitor assignmentVisitor = new AssignmentVisitor(context, connectors);
+        return run(start, errorConsumer, context, null);
+    }
+
+    /**
+     * Run loop, reusing the results of the cache if not null.
+     */
+    Object run(VTLParser.StartContext start, Consumer<VTLScriptException> errorConsumer, ScriptContext context,
+               EvaluationCache cache) throws VTLScriptException {
+        EvaluationCache.Evaluation evaluation = cache == null ? null : cache.begin(
+                context.getBindings(ScriptContext.ENGINE_SCOPE), this::getVersion
+        );
+        if (statementExecutor != null && start.statement().size() > 1) {
+            StatementDependencies dependencies = cache == null
+                    ? StatementDependencies.of(start)
+                    : cache.getDependencies();
+            return runConcurrently(dependencies, errorConsumer, context, evaluation);
+        }
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        AssignmentVisitor assignmentVisitor = new AssignmentVisitor(bindings, connectors);
         Object last = null;
-        for (VTLParser.StatementContext statementContext : start.statement()) {
-            try {
-                last = assignmentVisitor.visit(statementContext);
-            } catch (ContextualRuntimeException cre) {
-                ParserRuleContext ctx = cre.getContext();
-                if (cre.getCause() != null) {
-                    errorConsumer.accept(new VTLScriptException((Exception) cre.getCause(), ctx));
-                } else {
-                    errorConsumer.accept(new VTLScriptException(cre.getMessage(), ctx));
+        List<VTLParser.StatementContext> statements = start.statement();
+        for (int i = 0; i < statements.size(); i++) {
+            List<VTLScriptException> errors = Lists.newArrayList();
+            Object value = evaluate(assignmentVisitor, bindings, i, statements.get(i), errors::add, evaluation);
+            if (errors.isEmpty()) {
+                last = value;
+            } else {
+                errors.forEach(errorConsumer);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Evaluates each statement as soon as the statements it depends on are evaluated. Errors are
+     * reported in the order of the statements once all of them are evaluated.
+     */
+    private Object runConcurrently(StatementDependencies dependencies, Consumer<VTLScriptException> errorConsumer,
+                                   ScriptContext context, EvaluationCache.Evaluation evaluation) {
+        Bindings bindings = new SimpleBindings(Collections.synchronizedMap(
+                context.getBindings(ScriptContext.ENGINE_SCOPE)
+        ));
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+
+        int size = dependencies.size();
+        List<CompletableFuture<Object>> futures = Lists.newArrayListWithCapacity(size);
+        List<List<VTLScriptException>> errors = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            VTLParser.StatementContext statement = dependencies.getStatement(i);
+            List<VTLScriptException> statementErrors = Collections.synchronizedList(Lists.newArrayList());
+            CompletableFuture<?>[] predecessors = dependencies.getPredecessors(i).stream()
+                    .map(futures::get).toArray(CompletableFuture[]::new);
+
+            // Like the sequential loop, a statement is evaluated even if one of its predecessors failed.
+            futures.add(CompletableFuture.allOf(predecessors).handleAsync((ignored, failure) -> {
+                VtlConfiguration previous = VtlConfiguration.getConfig();
+                VtlConfiguration.setConfig(configuration);
+                try {
+                    AssignmentVisitor assignmentVisitor = new AssignmentVisitor(bindings, connectors);
+                    return evaluate(assignmentVisitor, bindings, index, statement, statementErrors::add,
+                            evaluation);
+                } finally {
+                    VtlConfiguration.setConfig(previous);
                 }
+            }, statementExecutor));
+            errors.add(statementErrors);
+        }
+
+        Object last = null;
+        for (int i = 0; i < size; i++) {
+            Object value;
+            try {
+                value = futures.get(i).join();
+            } catch (CompletionException ce) {
+                Throwables.throwIfUnchecked(ce.getCause());
+                throw ce;
+            }
+            if (errors.get(i).isEmpty()) {
+                last = value;
+            } else {
+                errors.get(i).forEach(errorConsumer);
             }
         }
         return last;
     }
 
+    private static Object evaluate(AssignmentVisitor assignmentVisitor, Bindings bindings, int index,
+                                   VTLParser.StatementContext statementContext,
+                                   Consumer<VTLScriptException> errorConsumer,
+                                   EvaluationCache.Evaluation evaluation) {
+        if (evaluation == null) {
+            return evaluate(assignmentVisitor, statementContext, errorConsumer);
+        }
+        if (evaluation.isReused(index)) {
+            return evaluation.restore(index, bindings);
+        }
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Object value = evaluate(assignmentVisitor, statementContext, error -> {
+            failed.set(true);
+            errorConsumer.accept(error);
+        });
+        evaluation.complete(index, value, failed.get());
+        return value;
+    }
+
+    /**
+     * Returns the version of the dataset from the first connector that handles the identifier.
+     */
+    private Optional<String> getVersion(String identifier) {
+        try {
+            for (Connector connector : connectors) {
+                if (connector.canHandle(identifier)) {
+                    return connector.getVersion(identifier);
+                }
+            }
+        } catch (ConnectorException ce) {
+            // The dataset is fetched again and the error reported then.
+        }
+        return Optional.empty();
+    }
+
+    private static Object evaluate(AssignmentVisitor assignmentVisitor, VTLParser.StatementContext statementContext,
+                                   Consumer<VTLScriptException> errorConsumer) {
+        try {
+            return assignmentVisitor.visit(statementContext);
+        } catch (ContextualRuntimeException cre) {
+            ParserRuleContext ctx = cre.getContext();
+            if (cre.getCause() != null) {
+                errorConsumer.accept(new VTLScriptException((Exception) cre.getCause(), ctx));
+            } else {
+                errorConsumer.accept(new VTLScriptException(cre.getMessage(), ctx));
+            }
+            return null;
+        }
+    }
+
     @Override
     public Bindings createBindings() {
         return new SimpleBindings(Maps.newLinkedHashMap());
@@ -20,6 +20,10 @@ package no.ssb.vtl.script;
  * =========================LICENSE_END==================================
  */
 
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * Configuration object for vtl.
  * <p>
@@ -35,6 +39,13 @@ public final class VtlConfiguration {
     private boolean profiling = false;
     private boolean sortAssertion = false;
     private boolean forceSort = false;
+    private boolean batchExecution = false;
+    private int batchSize = 1024;
+    private long sortMemoryBudget = 64L * 1024 * 1024;
+    private boolean adaptiveFilters = false;
+    private long hashJoinThreshold = 100_000;
+    private boolean parallelJoins = false;
+    private int joinBufferSize = 100_000;
 
     private VtlConfiguration() {
         // prevent instantiation.
@@ -52,6 +63,21 @@ public final class VtlConfiguration {
         localConfiguration.set(config);
     }
 
+    /**
+     * Evaluates the action with this configuration as the configuration of the current thread, for
+     * example in the worker threads that consume the splits of a parallel stream. The previous
+     * configuration of the thread is restored afterwards.
+     */
+    public <T> T apply(Supplier<T> action) {
+        VtlConfiguration previous = localConfiguration.get();
+        localConfiguration.set(this);
+        try {
+            return action.get();
+        } finally {
+            localConfiguration.set(previous);
+        }
+    }
+
     /**
      * Some operations add filters down the execution tree in order to optimize the execution.
      * {@link no.ssb.vtl.script.operations.unfold.UnfoldOperation} adds a filter on the values that are unfolded.
@@ -166,6 +192,130 @@ public final class VtlConfiguration {
         setForceSort(false);
     }
 
+    /**
+     * When batch execution is enabled, the operations that support it exchange
+     * {@link no.ssb.vtl.model.DataPointBatch} instead of single data points.
+     *
+     * @see #setBatchSize(int)
+     */
+    public void setBatchExecution(boolean batchExecution) {
+        this.batchExecution = batchExecution;
+    }
+
+    /**
+     * @see #setBatchExecution(boolean)
+     */
+    public void enableBatchExecution() {
+        setBatchExecution(true);
+    }
+
+    /**
+     * @see #setBatchExecution(boolean)
+     */
+    public void disableBatchExecution() {
+        setBatchExecution(false);
+    }
+
+    /**
+     * Maximum number of rows in each batch when batch execution is enabled.
+     *
+     * @see #setBatchExecution(boolean)
+     */
+    public void setBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Approximate number of bytes the data points of a sort can use on the heap. When the budget is
+     * exceeded, sorted runs are written to temporary files and merged back.
+     *
+     * @see no.ssb.vtl.script.operations.DataPointSorter
+     */
+    public void setSortMemoryBudget(long sortMemoryBudget) {
+        checkArgument(sortMemoryBudget > 0, "sort memory budget must be positive");
+        this.sortMemoryBudget = sortMemoryBudget;
+    }
+
+    /**
+     * Maximum number of rows of the datasets the joins load in hash tables. When all the datasets but one
+     * have at most this many rows and the remaining one is larger (or of unknown size), the join reads
+     * the large dataset unsorted and looks up the others in hash tables. Zero disables hash joins.
+     *
+     * @see no.ssb.vtl.script.operations.join.HashJoinSpliterator
+     */
+    public void setHashJoinThreshold(long hashJoinThreshold) {
+        checkArgument(hashJoinThreshold >= 0, "hash join threshold cannot be negative");
+        this.hashJoinThreshold = hashJoinThreshold;
+    }
+
+    /**
+     * Maximum number of rows with the same key the merge joins keep in memory for each input. The next rows
+     * of the key are written to a temporary file and read again for each row of the other input.
+     *
+     * @see no.ssb.vtl.script.operations.join.JoinBuffer
+     */
+    public void setJoinBufferSize(int joinBufferSize) {
+        checkArgument(joinBufferSize > 0, "join buffer size must be positive");
+        this.joinBufferSize = joinBufferSize;
+    }
+
+    /**
+     * When adaptive filters are enabled, the filter operations measure the cost and the selectivity of
+     * each term of their predicate (the conjuncts of an and, or the disjuncts of an or) and evaluate the
+     * cheapest and most selective terms first.
+     *
+     * @see no.ssb.vtl.script.operations.filter.AdaptivePredicate
+     */
+    public void setAdaptiveFilters(boolean adaptiveFilters) {
+        this.adaptiveFilters = adaptiveFilters;
+    }
+
+    /**
+     * @see #setAdaptiveFilters(boolean)
+     */
+    public void enableAdaptiveFilters() {
+        setAdaptiveFilters(true);
+    }
+
+    /**
+     * @see #setAdaptiveFilters(boolean)
+     */
+    public void disableAdaptiveFilters() {
+        setAdaptiveFilters(false);
+    }
+
+    /**
+     * When parallel joins are enabled, the merge joins read their first dataset in a stream that can be
+     * split, and the streams they return can be consumed in parallel: each split joins a range of keys,
+     * taken from the split points of the first dataset, with the matching range of the other datasets.
+     * The splits are evaluated with the configuration of the thread that created the stream.
+     * The streams are still sequential; the consumer decides to use {@link java.util.stream.Stream#parallel()}.
+     * <p>
+     * The {@link no.ssb.vtl.script.operations.join.MultiwayJoinSpliterator} cannot be split, so the inner
+     * joins of three or more datasets use the binary merge joins, one after the other, when parallel joins
+     * are enabled.
+     *
+     * @see no.ssb.vtl.script.operations.join.InnerJoinSpliterator#trySplit()
+     */
+    public void setParallelJoins(boolean parallelJoins) {
+        this.parallelJoins = parallelJoins;
+    }
+
+    /**
+     * @see #setParallelJoins(boolean)
+     */
+    public void enableParallelJoins() {
+        setParallelJoins(true);
+    }
+
+    /**
+     * @see #setParallelJoins(boolean)
+     */
+    public void disableParallelJoins() {
+        setParallelJoins(false);
+    }
+
     /**
      * @see #setFilterOptimization(boolean)
      */
@@ -200,4 +350,53 @@ public final class VtlConfiguration {
     public boolean isForceSortEnabled() {
         return forceSort;
     }
+
+    /**
+     * @see #setBatchExecution(boolean)
+     */
+    public boolean isBatchExecutionEnabled() {
+        return batchExecution;
+    }
+
+    /**
+     * @see #setAdaptiveFilters(boolean)
+     */
+    public boolean isAdaptiveFiltersEnabled() {
+        return adaptiveFilters;
+    }
+
+    /**
+     * @see #setParallelJoins(boolean)
+     */
+    public boolean isParallelJoinsEnabled() {
+        return parallelJoins;
+    }
+
+    /**
+     * @see #setBatchSize(int)
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @see #setSortMemoryBudget(long)
+     */
+    public long getSortMemoryBudget() {
+        return sortMemoryBudget;
+    }
+
+    /**
+     * @see #setHashJoinThreshold(long)
+     */
+    public long getHashJoinThreshold() {
+        return hashJoinThreshold;
+    }
+
+    /**
+     * @see #setJoinBufferSize(int)
+     */
+    public int getJoinBufferSize() {
+        return joinBufferSize;
+    }
 }
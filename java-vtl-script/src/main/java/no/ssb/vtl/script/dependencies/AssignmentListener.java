@@ -0,0 +1,123 @@
+package no.ssb.vtl.script.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.parser.VTLBaseListener;
+import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.visitors.LiteralVisitor;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static no.ssb.vtl.script.visitors.AbstractVariableVisitor.unEscape;
+
+/**
+ * Extracts the variables an assignment reads and writes.
+ * <p>
+ * The reads are over-approximated: every variable of the expression is considered as a read of the
+ * bindings, including the component names used in join expressions, except the component side of
+ * membership expressions ({@code ds.component}). The identifiers of the {@code get()} and {@code put()}
+ * functions are collected separately.
+ */
+public class AssignmentListener extends VTLBaseListener {
+
+    private final Set<String> reads = new LinkedHashSet<>();
+    private final Set<String> gets = new LinkedHashSet<>();
+    private final Set<String> puts = new LinkedHashSet<>();
+    private String target;
+    private int depth = 0;
+
+    /**
+     * Walks the statement and returns the listener.
+     */
+    public static AssignmentListener analyze(VTLParser.StatementContext statement) {
+        AssignmentListener listener = new AssignmentListener();
+        ParseTreeWalker.DEFAULT.walk(listener, statement);
+        return listener;
+    }
+
+    @Override
+    public void enterAssignment(VTLParser.AssignmentContext ctx) {
+        if (depth++ == 0) {
+            target = unEscape(ctx.variable().getText());
+        }
+    }
+
+    @Override
+    public void exitAssignment(VTLParser.AssignmentContext ctx) {
+        depth--;
+    }
+
+    @Override
+    public void enterVariable(VTLParser.VariableContext ctx) {
+        // Assignment targets, including the local assignments of foreach loops.
+        if (ctx.getParent() instanceof VTLParser.AssignmentContext
+                && ((VTLParser.AssignmentContext) ctx.getParent()).variable() == ctx) {
+            return;
+        }
+        // Component of a membership expression.
+        if (ctx.getParent() instanceof VTLParser.MembershipExpressionContext
+                && ((VTLParser.MembershipExpressionContext) ctx.getParent()).right == ctx) {
+            return;
+        }
+        reads.add(unEscape(ctx.getText()));
+    }
+
+    @Override
+    public void enterGetFunction(VTLParser.GetFunctionContext ctx) {
+        gets.add(LiteralVisitor.getInstance().visitStringLiteral(ctx.stringLiteral()).get());
+    }
+
+    @Override
+    public void enterPutFunction(VTLParser.PutFunctionContext ctx) {
+        puts.add(LiteralVisitor.getInstance().visitStringLiteral(ctx.stringLiteral()).get());
+    }
+
+    /**
+     * Returns the name of the assigned variable.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the names of the variables the assignment reads.
+     */
+    public Set<String> getReads() {
+        return ImmutableSet.copyOf(reads);
+    }
+
+    /**
+     * Returns the identifiers of the datasets the assignment gets from the connectors.
+     */
+    public Set<String> getGetIdentifiers() {
+        return ImmutableSet.copyOf(gets);
+    }
+
+    /**
+     * Returns the identifiers of the datasets the assignment puts to the connectors.
+     */
+    public Set<String> getPutIdentifiers() {
+        return ImmutableSet.copyOf(puts);
+    }
+}
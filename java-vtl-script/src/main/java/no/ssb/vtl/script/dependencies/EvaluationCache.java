@@ -0,0 +1,203 @@
+package no.ssb.vtl.script.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import javax.script.Bindings;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Results of the statements of a script, kept between evaluations.
+ * <p>
+ * A result is reused when the inputs of its statement did not change since it was computed: the
+ * statement reads the same objects from the bindings (compared by identity), the datasets it gets have
+ * the same versions and the statements it reads from were reused as well. Statements that put datasets,
+ * get datasets without version or failed are always evaluated.
+ */
+public final class EvaluationCache {
+
+    private final StatementDependencies dependencies;
+
+    // For each statement, the statements writing the variables it reads.
+    private final ImmutableMap<Integer, ImmutableMap<String, Integer>> writers;
+
+    private final Map<Integer, Inputs> inputs = Maps.newConcurrentMap();
+    private final Map<Integer, Object> values = Maps.newConcurrentMap();
+
+    public EvaluationCache(StatementDependencies dependencies) {
+        this.dependencies = checkNotNull(dependencies);
+
+        ImmutableMap.Builder<Integer, ImmutableMap<String, Integer>> writers = ImmutableMap.builder();
+        Map<String, Integer> lastWriters = Maps.newHashMap();
+        for (int i = 0; i < dependencies.size(); i++) {
+            AssignmentListener assignment = dependencies.getAssignment(i);
+            writers.put(i, ImmutableMap.copyOf(Maps.filterKeys(lastWriters, assignment.getReads()::contains)));
+            lastWriters.put(assignment.getTarget(), i);
+        }
+        this.writers = writers.build();
+    }
+
+    public StatementDependencies getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Starts an evaluation.
+     *
+     * @param bindings the bindings, before the evaluation
+     * @param versions returns the version of the datasets
+     */
+    public Evaluation begin(Bindings bindings, Function<String, Optional<String>> versions) {
+        checkNotNull(bindings);
+        checkNotNull(versions);
+
+        boolean[] reused = new boolean[dependencies.size()];
+        Inputs[] current = new Inputs[dependencies.size()];
+        for (int i = 0; i < dependencies.size(); i++) {
+            current[i] = Inputs.of(dependencies.getAssignment(i), writers.get(i).keySet(), bindings, versions);
+            if (current[i] == null || !current[i].equals(inputs.get(i)) || !values.containsKey(i)) {
+                continue;
+            }
+            reused[i] = true;
+            for (Integer writer : writers.get(i).values()) {
+                reused[i] &= reused[writer];
+            }
+        }
+        return new Evaluation(reused, current);
+    }
+
+    /**
+     * An evaluation of the script, with the statements whose results can be reused.
+     */
+    public final class Evaluation {
+
+        private final boolean[] reused;
+        private final Inputs[] current;
+
+        private Evaluation(boolean[] reused, Inputs[] current) {
+            this.reused = reused;
+            this.current = current;
+        }
+
+        /**
+         * Returns true if the result of the statement is reused.
+         */
+        public boolean isReused(int index) {
+            return reused[index];
+        }
+
+        /**
+         * Puts the reused result of the statement in the bindings and returns it.
+         */
+        public Object restore(int index, Bindings bindings) {
+            checkState(reused[index], "statement %s is not reused", index);
+            Object value = values.get(index);
+            bindings.put(dependencies.getAssignment(index).getTarget(), value);
+            return value;
+        }
+
+        /**
+         * Records the result of an evaluated statement, or forgets it if the statement failed.
+         */
+        public void complete(int index, Object value, boolean failed) {
+            if (failed || value == null || current[index] == null) {
+                inputs.remove(index);
+                values.remove(index);
+            } else {
+                values.put(index, value);
+                inputs.put(index, current[index]);
+            }
+        }
+    }
+
+    /**
+     * The external inputs of a statement: the bindings it reads that are not written by the script and the
+     * versions of the datasets it gets.
+     */
+    private static final class Inputs {
+
+        private final Map<String, Object> bindings;
+        private final ImmutableMap<String, String> versions;
+
+        private Inputs(Map<String, Object> bindings, ImmutableMap<String, String> versions) {
+            this.bindings = bindings;
+            this.versions = versions;
+        }
+
+        /**
+         * Returns the inputs of the statement or null if the result of the statement cannot be reused.
+         */
+        static Inputs of(AssignmentListener assignment, Set<String> written, Bindings bindings,
+                         Function<String, Optional<String>> versionFunction) {
+            if (!assignment.getPutIdentifiers().isEmpty()) {
+                return null;
+            }
+            ImmutableMap.Builder<String, String> versions = ImmutableMap.builder();
+            for (String identifier : assignment.getGetIdentifiers()) {
+                Optional<String> version = versionFunction.apply(identifier);
+                if (!version.isPresent()) {
+                    return null;
+                }
+                versions.put(identifier, version.get());
+            }
+            Map<String, Object> values = Maps.newHashMap();
+            for (String read : assignment.getReads()) {
+                if (!written.contains(read)) {
+                    values.put(read, bindings.get(read));
+                }
+            }
+            return new Inputs(values, versions.build());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Inputs other = (Inputs) o;
+            if (!versions.equals(other.versions) || !bindings.keySet().equals(other.bindings.keySet())) {
+                return false;
+            }
+            for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+                if (entry.getValue() != other.bindings.get(entry.getKey())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return versions.hashCode();
+        }
+    }
+}
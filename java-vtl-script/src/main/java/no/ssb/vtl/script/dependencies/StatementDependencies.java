@@ -0,0 +1,133 @@
+package no.ssb.vtl.script.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Sets;
+import no.ssb.vtl.parser.VTLParser;
+
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Dependency graph of the statements of a script.
+ * <p>
+ * A statement depends on an earlier statement if it reads a variable the earlier statement writes, if it
+ * writes a variable the earlier statement reads or writes, or if they access the same connector
+ * identifier and at least one of them puts it. Edges always point from an earlier statement to a later
+ * one so the graph is acyclic, and evaluating the statements in any order compatible with it gives the
+ * same bindings as evaluating them in order.
+ */
+public final class StatementDependencies {
+
+    private final ImmutableList<VTLParser.StatementContext> statements;
+    private final ImmutableList<AssignmentListener> assignments;
+    private final ImmutableSetMultimap<Integer, Integer> predecessors;
+
+    private StatementDependencies(
+            ImmutableList<VTLParser.StatementContext> statements,
+            ImmutableList<AssignmentListener> assignments,
+            ImmutableSetMultimap<Integer, Integer> predecessors
+    ) {
+        this.statements = statements;
+        this.assignments = assignments;
+        this.predecessors = predecessors;
+    }
+
+    /**
+     * Analyzes the statements of a script.
+     */
+    public static StatementDependencies of(VTLParser.StartContext start) {
+        ImmutableList<VTLParser.StatementContext> statements = ImmutableList.copyOf(checkNotNull(start).statement());
+        ImmutableList.Builder<AssignmentListener> assignments = ImmutableList.builder();
+        for (VTLParser.StatementContext statement : statements) {
+            assignments.add(AssignmentListener.analyze(statement));
+        }
+        return of(statements, assignments.build());
+    }
+
+    private static StatementDependencies of(
+            ImmutableList<VTLParser.StatementContext> statements,
+            ImmutableList<AssignmentListener> assignments
+    ) {
+        ImmutableSetMultimap.Builder<Integer, Integer> predecessors = ImmutableSetMultimap.builder();
+        for (int i = 0; i < assignments.size(); i++) {
+            AssignmentListener later = assignments.get(i);
+            for (int j = 0; j < i; j++) {
+                if (dependsOn(later, assignments.get(j))) {
+                    predecessors.put(i, j);
+                }
+            }
+        }
+        return new StatementDependencies(statements, assignments, predecessors.build());
+    }
+
+    private static boolean dependsOn(AssignmentListener later, AssignmentListener earlier) {
+        String target = later.getTarget();
+        String earlierTarget = earlier.getTarget();
+        if (earlierTarget != null && later.getReads().contains(earlierTarget)) {
+            return true;
+        }
+        if (target != null && (target.equals(earlierTarget) || earlier.getReads().contains(target))) {
+            return true;
+        }
+        return !Sets.intersection(later.getPutIdentifiers(), earlier.getGetIdentifiers()).isEmpty()
+                || !Sets.intersection(later.getPutIdentifiers(), earlier.getPutIdentifiers()).isEmpty()
+                || !Sets.intersection(later.getGetIdentifiers(), earlier.getPutIdentifiers()).isEmpty();
+    }
+
+    /**
+     * Returns the number of statements.
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    public VTLParser.StatementContext getStatement(int index) {
+        return statements.get(index);
+    }
+
+    /**
+     * Returns the variables and connector identifiers the statement reads and writes.
+     */
+    public AssignmentListener getAssignment(int index) {
+        return assignments.get(index);
+    }
+
+    /**
+     * Returns the indices of the statements that must be evaluated before the given statement.
+     */
+    public Set<Integer> getPredecessors(int index) {
+        checkElementIndex(index, statements.size());
+        return predecessors.get(index);
+    }
+
+    /**
+     * Returns the indices of the statements that must be evaluated after the given statement.
+     */
+    public Set<Integer> getSuccessors(int index) {
+        checkElementIndex(index, statements.size());
+        return predecessors.inverse().get(index);
+    }
+}
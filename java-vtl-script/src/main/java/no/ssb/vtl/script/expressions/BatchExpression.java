@@ -0,0 +1,358 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+import no.ssb.vtl.model.ColumnVector;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.expressions.arithmetic.AbstractArithmeticExpression;
+import no.ssb.vtl.script.expressions.equality.EqualExpression;
+import no.ssb.vtl.script.expressions.equality.GraterThanExpression;
+import no.ssb.vtl.script.expressions.equality.GreaterOrEqualExpression;
+import no.ssb.vtl.script.expressions.equality.IsNotNullExpression;
+import no.ssb.vtl.script.expressions.equality.IsNullExpression;
+import no.ssb.vtl.script.expressions.equality.LesserOrEqualExpression;
+import no.ssb.vtl.script.expressions.equality.LesserThanExpression;
+import no.ssb.vtl.script.expressions.equality.NotEqualExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.expressions.logic.XorExpression;
+import no.ssb.vtl.script.operations.join.ComponentBindings;
+import no.ssb.vtl.script.operations.join.DataPointBindings;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An expression compiled for the {@link DataPointBatch}es of a structure.
+ * <p>
+ * The expression is evaluated column by column: variables are the columns of the batch, arithmetic
+ * uses {@link AbstractArithmeticExpression#compute(ColumnVector, ColumnVector, int)}, and the
+ * comparisons, null tests and logical operators write boolean columns, comparing long and double
+ * columns without creating {@link VTLObject}s. Nodes that cannot be evaluated on columns, like
+ * functions, are evaluated row by row with a {@link CompiledExpression} on a data point that only
+ * contains the components they reference.
+ * <p>
+ * Like the row evaluation, the and and or operators do not evaluate the nodes of their right operand
+ * that are evaluated row by row on the rows where the left operand decides the result.
+ * <p>
+ * Instances are not thread safe; compile the expression for each stream.
+ */
+public final class BatchExpression {
+
+    private static final ImmutableMap<Class<?>, IntPredicate> COMPARISONS = ImmutableMap.<Class<?>, IntPredicate>builder()
+            .put(EqualExpression.class, comparison -> comparison == 0)
+            .put(NotEqualExpression.class, comparison -> comparison != 0)
+            .put(GraterThanExpression.class, comparison -> comparison > 0)
+            .put(GreaterOrEqualExpression.class, comparison -> comparison >= 0)
+            .put(LesserThanExpression.class, comparison -> comparison < 0)
+            .put(LesserOrEqualExpression.class, comparison -> comparison <= 0)
+            .build();
+
+    private final Node root;
+
+    private BatchExpression(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the expression.
+     *
+     * @param expression the expression
+     * @param bindings   the bindings the expression is resolved with
+     * @param structure  the structure of the batches
+     */
+    public static BatchExpression compile(VTLExpression expression, ComponentBindings bindings,
+                                          DataStructure structure) {
+        Compiler compiler = new Compiler(checkNotNull(bindings), checkNotNull(structure));
+        return new BatchExpression(compiler.compile(checkNotNull(expression)));
+    }
+
+    /**
+     * Evaluates the expression on all the rows of the batch.
+     */
+    public ColumnVector evaluate(DataPointBatch batch) {
+        BitSet rows = new BitSet(batch.size());
+        rows.set(0, batch.size());
+        return root.evaluate(batch, rows);
+    }
+
+    /**
+     * Returns the rows of the batch on which the expression evaluates to true.
+     */
+    public BitSet test(DataPointBatch batch) {
+        ColumnVector result = evaluate(batch);
+        BitSet selection = new BitSet(batch.size());
+        for (int row = 0; row < batch.size(); row++) {
+            if (getBoolean(result, row) == Boolean.TRUE) {
+                selection.set(row);
+            }
+        }
+        return selection;
+    }
+
+    private static Boolean getBoolean(ColumnVector vector, int row) {
+        if (vector.isNull(row)) {
+            return null;
+        }
+        if (vector instanceof ColumnVector.BooleanVector) {
+            return ((ColumnVector.BooleanVector) vector).getBoolean(row);
+        }
+        return (Boolean) vector.get(row).get();
+    }
+
+    /**
+     * Evaluates a node on a batch.
+     * <p>
+     * The rows are the rows the node must evaluate; the nodes evaluated column by column compute all
+     * the rows of the batch.
+     */
+    @FunctionalInterface
+    private interface Node {
+        ColumnVector evaluate(DataPointBatch batch, BitSet rows);
+    }
+
+    private static final class Compiler {
+
+        private final ComponentBindings bindings;
+        private final DataStructure structure;
+        private final DataPointBindings dataPointBindings;
+
+        private Compiler(ComponentBindings bindings, DataStructure structure) {
+            this.bindings = bindings;
+            this.structure = structure;
+            this.dataPointBindings = new DataPointBindings(bindings, structure);
+        }
+
+        private Node compile(VTLExpression expression) {
+            if (expression instanceof LiteralExpression) {
+                VTLObject literal = expression.resolve(null);
+                return (batch, rows) -> ColumnVector.constant(literal, batch.size());
+            }
+            if (expression instanceof VariableExpression) {
+                int slot = slot((VariableExpression) expression);
+                if (slot >= 0) {
+                    return (batch, rows) -> batch.getColumn(slot);
+                }
+            }
+            if (expression instanceof AbstractArithmeticExpression) {
+                AbstractArithmeticExpression arithmetic = (AbstractArithmeticExpression) expression;
+                Node left = compile(arithmetic.getLeftOperand());
+                Node right = compile(arithmetic.getRightOperand());
+                return (batch, rows) -> arithmetic.compute(
+                        left.evaluate(batch, rows), right.evaluate(batch, rows), batch.size()
+                );
+            }
+            IntPredicate comparison = COMPARISONS.get(expression.getClass());
+            if (comparison != null) {
+                AbstractBinaryExpression binary = (AbstractBinaryExpression) expression;
+                Node left = compile(binary.getLeftOperand());
+                Node right = compile(binary.getRightOperand());
+                return (batch, rows) -> compare(
+                        left.evaluate(batch, rows), right.evaluate(batch, rows), batch.size(), comparison
+                );
+            }
+            if (expression instanceof IsNullExpression) {
+                Node operand = compile(((IsNullExpression) expression).getLeftOperand());
+                boolean negated = expression instanceof IsNotNullExpression;
+                return (batch, rows) -> {
+                    ColumnVector values = operand.evaluate(batch, rows);
+                    ColumnVector.BooleanVector result = new ColumnVector.BooleanVector(batch.size());
+                    for (int row = 0; row < batch.size(); row++) {
+                        result.setBoolean(row, values.isNull(row) ^ negated);
+                    }
+                    return result;
+                };
+            }
+            if (expression instanceof NotExpression) {
+                Node operand = compile(((NotExpression) expression).getOperand());
+                return (batch, rows) -> {
+                    ColumnVector values = operand.evaluate(batch, rows);
+                    ColumnVector.BooleanVector result = new ColumnVector.BooleanVector(batch.size());
+                    for (int row = 0; row < batch.size(); row++) {
+                        Boolean value = getBoolean(values, row);
+                        if (value != null) {
+                            result.setBoolean(row, !value);
+                        }
+                    }
+                    return result;
+                };
+            }
+            if (expression instanceof AndExpression) {
+                AndExpression and = (AndExpression) expression;
+                return compileJunction(compile(and.getLeftOperand()), compile(and.getRightOperand()), false);
+            }
+            if (expression instanceof OrExpression) {
+                OrExpression or = (OrExpression) expression;
+                return compileJunction(compile(or.getLeftOperand()), compile(or.getRightOperand()), true);
+            }
+            if (expression instanceof XorExpression) {
+                XorExpression xor = (XorExpression) expression;
+                Node left = compile(xor.getLeftOperand());
+                Node right = compile(xor.getRightOperand());
+                return (batch, rows) -> {
+                    ColumnVector leftValues = left.evaluate(batch, rows);
+                    ColumnVector rightValues = right.evaluate(batch, rows);
+                    ColumnVector.BooleanVector result = new ColumnVector.BooleanVector(batch.size());
+                    for (int row = 0; row < batch.size(); row++) {
+                        Boolean leftValue = getBoolean(leftValues, row);
+                        Boolean rightValue = getBoolean(rightValues, row);
+                        if (leftValue != null && rightValue != null) {
+                            result.setBoolean(row, leftValue ^ rightValue);
+                        }
+                    }
+                    return result;
+                };
+            }
+            return interpret(expression);
+        }
+
+        /**
+         * Compiles an and (stopOn false) or an or (stopOn true) operator with the three-valued logic.
+         * The right operand only evaluates the rows where the left operand is not stopOn.
+         */
+        private Node compileJunction(Node left, Node right, boolean stopOn) {
+            return (batch, rows) -> {
+                ColumnVector leftValues = left.evaluate(batch, rows);
+                BitSet remaining = (BitSet) rows.clone();
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    if (getBoolean(leftValues, row) == Boolean.valueOf(stopOn)) {
+                        remaining.clear(row);
+                    }
+                }
+                ColumnVector rightValues = right.evaluate(batch, remaining);
+                ColumnVector.BooleanVector result = new ColumnVector.BooleanVector(batch.size());
+                for (int row = 0; row < batch.size(); row++) {
+                    Boolean leftValue = getBoolean(leftValues, row);
+                    if (leftValue != null && leftValue == stopOn) {
+                        result.setBoolean(row, stopOn);
+                        continue;
+                    }
+                    Boolean rightValue = remaining.get(row) ? getBoolean(rightValues, row) : null;
+                    if (rightValue != null && rightValue == stopOn) {
+                        result.setBoolean(row, stopOn);
+                    } else if (leftValue != null && rightValue != null) {
+                        result.setBoolean(row, !stopOn);
+                    }
+                }
+                return result;
+            };
+        }
+
+        /**
+         * Compares two columns row by row. Long and double columns are compared as primitives,
+         * like {@link CompiledExpression}; other columns are compared as {@link VTLObject}s.
+         */
+        private static ColumnVector compare(ColumnVector left, ColumnVector right, int size,
+                                            IntPredicate comparison) {
+            ColumnVector.BooleanVector result = new ColumnVector.BooleanVector(size);
+            if (left instanceof ColumnVector.LongVector && right instanceof ColumnVector.LongVector) {
+                ColumnVector.LongVector leftLongs = (ColumnVector.LongVector) left;
+                ColumnVector.LongVector rightLongs = (ColumnVector.LongVector) right;
+                for (int row = 0; row < size; row++) {
+                    if (!left.isNull(row) && !right.isNull(row)) {
+                        int compare = Long.compare(leftLongs.getLong(row), rightLongs.getLong(row));
+                        result.setBoolean(row, comparison.test(compare));
+                    }
+                }
+            } else if (isPrimitive(left) && isPrimitive(right)) {
+                for (int row = 0; row < size; row++) {
+                    if (!left.isNull(row) && !right.isNull(row)) {
+                        int compare = Double.compare(getDouble(left, row), getDouble(right, row));
+                        result.setBoolean(row, comparison.test(compare));
+                    }
+                }
+            } else {
+                for (int row = 0; row < size; row++) {
+                    if (!left.isNull(row) && !right.isNull(row)) {
+                        result.setBoolean(row, comparison.test(left.get(row).compareTo(right.get(row))));
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static boolean isPrimitive(ColumnVector vector) {
+            return vector instanceof ColumnVector.LongVector || vector instanceof ColumnVector.DoubleVector;
+        }
+
+        private static double getDouble(ColumnVector vector, int row) {
+            if (vector instanceof ColumnVector.LongVector) {
+                return ((ColumnVector.LongVector) vector).getLong(row);
+            }
+            return ((ColumnVector.DoubleVector) vector).getDouble(row);
+        }
+
+        /**
+         * Evaluates the expression row by row with a {@link CompiledExpression}. Only the components the
+         * expression references are copied from the columns, in a data point reused for all the rows.
+         */
+        private Node interpret(VTLExpression expression) {
+            CompiledExpression compiled = CompiledExpression.compile(expression, bindings, structure);
+            int[] slots = referencedSlots(expression);
+            DataPoint dataPoint = DataPoint.create(structure.size());
+            return (batch, rows) -> {
+                ColumnVector result = new ColumnVector.ObjectVector(batch.size());
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    for (int slot : slots) {
+                        dataPoint.set(slot, batch.getColumn(slot).get(row));
+                    }
+                    result.set(row, compiled.evaluate(dataPoint));
+                }
+                return result;
+            };
+        }
+
+        private int[] referencedSlots(VTLExpression expression) {
+            List<String> columns = new ArrayList<>(structure.keySet());
+            Set<String> referenced = ReferencedComponents.findNames(expression, bindings, structure)
+                    .orElseGet(structure::keySet);
+            List<Integer> slots = new ArrayList<>();
+            for (String name : referenced) {
+                slots.add(columns.indexOf(name));
+            }
+            return Ints.toArray(slots);
+        }
+
+        /**
+         * Returns the position of the component the variable references or -1.
+         */
+        private int slot(VariableExpression variable) {
+            DataPointBindings scope = dataPointBindings;
+            if (variable instanceof MembershipExpression) {
+                String dataset = ((MembershipExpression) variable).getDatasetIdentifier();
+                scope = dataPointBindings.getDatasetBindings(dataset);
+            }
+            return scope == null ? -1 : scope.getSlot(variable.getIdentifier());
+        }
+    }
+}
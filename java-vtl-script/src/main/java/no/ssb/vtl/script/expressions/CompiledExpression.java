@@ -0,0 +1,473 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.VTLBoolean;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLFloat;
+import no.ssb.vtl.model.VTLInteger;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.expressions.arithmetic.AbstractArithmeticExpression;
+import no.ssb.vtl.script.expressions.arithmetic.AbstractIntegerArithmeticExpression;
+import no.ssb.vtl.script.expressions.equality.EqualExpression;
+import no.ssb.vtl.script.expressions.equality.GraterThanExpression;
+import no.ssb.vtl.script.expressions.equality.GreaterOrEqualExpression;
+import no.ssb.vtl.script.expressions.equality.IsNotNullExpression;
+import no.ssb.vtl.script.expressions.equality.IsNullExpression;
+import no.ssb.vtl.script.expressions.equality.LesserOrEqualExpression;
+import no.ssb.vtl.script.expressions.equality.LesserThanExpression;
+import no.ssb.vtl.script.expressions.equality.NotEqualExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.expressions.logic.XorExpression;
+import no.ssb.vtl.script.operations.join.ComponentBindings;
+import no.ssb.vtl.script.operations.join.DataPointBindings;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.LongBinaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An expression compiled for the data points of a structure.
+ * <p>
+ * The tree of the expression is turned into a chain of closures once, before the rows are evaluated:
+ * the variables are resolved to the position of their component in the data points, the comparisons
+ * and the logical operators do not wrap their intermediate results and arithmetic on integer and
+ * float components is computed on primitive longs and doubles. Nodes that cannot be compiled, like
+ * functions, are resolved with a {@link DataPointBindings}. Like the interpreted expressions, the and
+ * and or operators do not evaluate their right operand when the left operand decides the result.
+ * <p>
+ * Instances are not thread safe; compile the expression for each stream.
+ */
+public final class CompiledExpression {
+
+    private static final ImmutableMap<Class<?>, IntPredicate> COMPARISONS = ImmutableMap.<Class<?>, IntPredicate>builder()
+            .put(EqualExpression.class, comparison -> comparison == 0)
+            .put(NotEqualExpression.class, comparison -> comparison != 0)
+            .put(GraterThanExpression.class, comparison -> comparison > 0)
+            .put(GreaterOrEqualExpression.class, comparison -> comparison >= 0)
+            .put(LesserThanExpression.class, comparison -> comparison < 0)
+            .put(LesserOrEqualExpression.class, comparison -> comparison <= 0)
+            .build();
+
+    private final Node root;
+
+    private CompiledExpression(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the expression.
+     *
+     * @param expression the expression
+     * @param bindings   the bindings the expression is resolved with
+     * @param structure  the structure of the data points
+     */
+    public static CompiledExpression compile(VTLExpression expression, ComponentBindings bindings,
+                                             DataStructure structure) {
+        Compiler compiler = new Compiler(checkNotNull(bindings), checkNotNull(structure));
+        return new CompiledExpression(compiler.compile(checkNotNull(expression)));
+    }
+
+    /**
+     * Evaluates the expression on a data point.
+     */
+    public VTLObject evaluate(DataPoint dataPoint) {
+        return root.evaluate(dataPoint);
+    }
+
+    /**
+     * Returns true if the expression evaluates to true on the data point, false if it evaluates to
+     * false or null.
+     */
+    public boolean test(DataPoint dataPoint) {
+        if (root instanceof BooleanNode) {
+            return ((BooleanNode) root).test(dataPoint) == Boolean.TRUE;
+        }
+        Object value = root.evaluate(dataPoint).get();
+        return value != null && (Boolean) value;
+    }
+
+    @FunctionalInterface
+    private interface Node {
+        VTLObject evaluate(DataPoint dataPoint);
+    }
+
+    /**
+     * Node returning {@link Boolean#TRUE}, {@link Boolean#FALSE} or null.
+     */
+    @FunctionalInterface
+    private interface BooleanNode extends Node {
+
+        Boolean test(DataPoint dataPoint);
+
+        @Override
+        default VTLObject evaluate(DataPoint dataPoint) {
+            return VTLBoolean.of(test(dataPoint));
+        }
+    }
+
+    /**
+     * Branches of an if then else expression; returns the value of the branch that is taken or null.
+     */
+    @FunctionalInterface
+    private interface StepNode {
+        Node select(DataPoint dataPoint);
+    }
+
+    private static final class Compiler {
+
+        private final DataPointBindings dataPointBindings;
+
+        private Compiler(ComponentBindings bindings, DataStructure structure) {
+            this.dataPointBindings = new DataPointBindings(bindings, structure);
+        }
+
+        private Node compile(VTLExpression expression) {
+            if (expression instanceof LiteralExpression) {
+                VTLObject literal = expression.resolve(null);
+                return dataPoint -> literal;
+            }
+            if (expression instanceof VariableExpression) {
+                int slot = slot((VariableExpression) expression);
+                if (slot >= 0) {
+                    return dataPoint -> dataPoint.get(slot);
+                }
+            }
+            if (expression instanceof AbstractArithmeticExpression) {
+                Node node = compileArithmetic((AbstractArithmeticExpression) expression);
+                if (node != null) {
+                    return node;
+                }
+            }
+            BooleanNode condition = compileCondition(expression);
+            if (condition != null) {
+                return condition;
+            }
+            if (expression instanceof IfThenElseExpression) {
+                return compileIfThenElse((IfThenElseExpression) expression);
+            }
+            return interpret(expression);
+        }
+
+        private BooleanNode compileCondition(VTLExpression expression) {
+            IntPredicate comparison = COMPARISONS.get(expression.getClass());
+            if (comparison != null) {
+                return compileComparison((AbstractBinaryExpression) expression, comparison);
+            }
+            if (expression instanceof IsNullExpression) {
+                Node operand = compile(((IsNullExpression) expression).getLeftOperand());
+                boolean negated = expression instanceof IsNotNullExpression;
+                return dataPoint -> operand.evaluate(dataPoint).get() == null ^ negated;
+            }
+            if (expression instanceof NotExpression) {
+                BooleanNode operand = compileBoolean(((NotExpression) expression).getOperand());
+                return dataPoint -> {
+                    Boolean value = operand.test(dataPoint);
+                    return value == null ? null : !value;
+                };
+            }
+            if (expression instanceof AndExpression) {
+                BooleanNode left = compileBoolean(((AndExpression) expression).getLeftOperand());
+                BooleanNode right = compileBoolean(((AndExpression) expression).getRightOperand());
+                return dataPoint -> {
+                    Boolean leftValue = left.test(dataPoint);
+                    if (leftValue == Boolean.FALSE) {
+                        return false;
+                    }
+                    Boolean rightValue = right.test(dataPoint);
+                    if (rightValue == Boolean.FALSE) {
+                        return false;
+                    }
+                    return leftValue == null || rightValue == null ? null : true;
+                };
+            }
+            if (expression instanceof OrExpression) {
+                BooleanNode left = compileBoolean(((OrExpression) expression).getLeftOperand());
+                BooleanNode right = compileBoolean(((OrExpression) expression).getRightOperand());
+                return dataPoint -> {
+                    Boolean leftValue = left.test(dataPoint);
+                    if (leftValue == Boolean.TRUE) {
+                        return true;
+                    }
+                    Boolean rightValue = right.test(dataPoint);
+                    if (rightValue == Boolean.TRUE) {
+                        return true;
+                    }
+                    return leftValue == null || rightValue == null ? null : false;
+                };
+            }
+            if (expression instanceof XorExpression) {
+                BooleanNode left = compileBoolean(((XorExpression) expression).getLeftOperand());
+                BooleanNode right = compileBoolean(((XorExpression) expression).getRightOperand());
+                return dataPoint -> {
+                    Boolean leftValue = left.test(dataPoint);
+                    Boolean rightValue = right.test(dataPoint);
+                    return leftValue == null || rightValue == null ? null : leftValue ^ rightValue;
+                };
+            }
+            return null;
+        }
+
+        private BooleanNode compileBoolean(VTLExpression expression) {
+            Node node = compile(expression);
+            if (node instanceof BooleanNode) {
+                return (BooleanNode) node;
+            }
+            return dataPoint -> (Boolean) node.evaluate(dataPoint).get();
+        }
+
+        private BooleanNode compileComparison(AbstractBinaryExpression expression, IntPredicate comparison) {
+            VTLExpression leftOperand = expression.getLeftOperand();
+            VTLExpression rightOperand = expression.getRightOperand();
+
+            // Compare the primitive values if the types are known. Operands of different types
+            // are compared as VTLObjects.
+            Set<Integer> slots = Sets.newLinkedHashSet();
+            if (leftOperand.getVTLType() == VTLInteger.class && rightOperand.getVTLType() == VTLInteger.class) {
+                ToLongFunction<DataPoint> left = compileLong(leftOperand, slots);
+                ToLongFunction<DataPoint> right = left == null ? null : compileLong(rightOperand, slots);
+                if (right != null) {
+                    int[] nullable = Ints.toArray(slots);
+                    return dataPoint -> anyNull(dataPoint, nullable) ? null
+                            : comparison.test(Long.compare(left.applyAsLong(dataPoint), right.applyAsLong(dataPoint)));
+                }
+            }
+            if (leftOperand.getVTLType() == VTLFloat.class && rightOperand.getVTLType() == VTLFloat.class) {
+                ToDoubleFunction<DataPoint> left = compileDouble(leftOperand, slots);
+                ToDoubleFunction<DataPoint> right = left == null ? null : compileDouble(rightOperand, slots);
+                if (right != null) {
+                    int[] nullable = Ints.toArray(slots);
+                    return dataPoint -> anyNull(dataPoint, nullable) ? null
+                            : comparison.test(Double.compare(left.applyAsDouble(dataPoint), right.applyAsDouble(dataPoint)));
+                }
+            }
+
+            Node left = compile(leftOperand);
+            Node right = compile(rightOperand);
+            return dataPoint -> {
+                VTLObject leftValue = left.evaluate(dataPoint);
+                VTLObject rightValue = right.evaluate(dataPoint);
+                if (leftValue.get() == null || rightValue.get() == null) {
+                    return null;
+                }
+                return comparison.test(leftValue.compareTo(rightValue));
+            };
+        }
+
+        private Node compileArithmetic(AbstractArithmeticExpression expression) {
+            Set<Integer> slots = Sets.newLinkedHashSet();
+            if (expression.getVTLType() == VTLInteger.class) {
+                ToLongFunction<DataPoint> function = compileLong(expression, slots);
+                if (function != null) {
+                    int[] nullable = Ints.toArray(slots);
+                    return dataPoint -> anyNull(dataPoint, nullable)
+                            ? VTLObject.NULL
+                            : VTLInteger.of(function.applyAsLong(dataPoint));
+                }
+            } else if (expression.getVTLType() == VTLFloat.class) {
+                ToDoubleFunction<DataPoint> function = compileDouble(expression, slots);
+                if (function != null) {
+                    int[] nullable = Ints.toArray(slots);
+                    return dataPoint -> anyNull(dataPoint, nullable)
+                            ? VTLObject.NULL
+                            : VTLFloat.of(function.applyAsDouble(dataPoint));
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compiles an integer expression, adding the positions of the components it reads to the
+         * slots. Returns null if the expression is not an integer expression of literals, variables
+         * and arithmetic operations.
+         */
+        private ToLongFunction<DataPoint> compileLong(VTLExpression expression, Set<Integer> slots) {
+            if (expression.getVTLType() != VTLInteger.class) {
+                return null;
+            }
+            if (expression instanceof LiteralExpression) {
+                Object value = expression.resolve(null).get();
+                if (!(value instanceof Long)) {
+                    return null;
+                }
+                long constant = (Long) value;
+                return dataPoint -> constant;
+            }
+            if (expression instanceof VariableExpression) {
+                int slot = slot((VariableExpression) expression);
+                if (slot < 0) {
+                    return null;
+                }
+                slots.add(slot);
+                return dataPoint -> ((Number) dataPoint.get(slot).get()).longValue();
+            }
+            if (expression instanceof AbstractIntegerArithmeticExpression) {
+                AbstractIntegerArithmeticExpression arithmetic = (AbstractIntegerArithmeticExpression) expression;
+                ToLongFunction<DataPoint> left = compileLong(arithmetic.getLeftOperand(), slots);
+                ToLongFunction<DataPoint> right = left == null ? null : compileLong(arithmetic.getRightOperand(), slots);
+                if (right == null) {
+                    return null;
+                }
+                LongBinaryOperator operator = arithmetic.getLongOperator();
+                return dataPoint -> operator.applyAsLong(left.applyAsLong(dataPoint), right.applyAsLong(dataPoint));
+            }
+            return null;
+        }
+
+        /**
+         * Compiles a float expression. Integer sub expressions are computed with longs first.
+         */
+        private ToDoubleFunction<DataPoint> compileDouble(VTLExpression expression, Set<Integer> slots) {
+            if (expression.getVTLType() == VTLInteger.class) {
+                ToLongFunction<DataPoint> function = compileLong(expression, slots);
+                return function == null ? null : function::applyAsLong;
+            }
+            if (expression.getVTLType() != VTLFloat.class) {
+                return null;
+            }
+            if (expression instanceof LiteralExpression) {
+                Object value = expression.resolve(null).get();
+                if (!(value instanceof Double)) {
+                    return null;
+                }
+                double constant = (Double) value;
+                return dataPoint -> constant;
+            }
+            if (expression instanceof VariableExpression) {
+                int slot = slot((VariableExpression) expression);
+                if (slot < 0) {
+                    return null;
+                }
+                slots.add(slot);
+                return dataPoint -> ((Number) dataPoint.get(slot).get()).doubleValue();
+            }
+            if (expression instanceof AbstractArithmeticExpression) {
+                AbstractArithmeticExpression arithmetic = (AbstractArithmeticExpression) expression;
+                ToDoubleFunction<DataPoint> left = compileDouble(arithmetic.getLeftOperand(), slots);
+                ToDoubleFunction<DataPoint> right = left == null ? null : compileDouble(arithmetic.getRightOperand(), slots);
+                if (right == null) {
+                    return null;
+                }
+                DoubleBinaryOperator operator = arithmetic.getDoubleOperator();
+                return dataPoint -> operator.applyAsDouble(left.applyAsDouble(dataPoint), right.applyAsDouble(dataPoint));
+            }
+            return null;
+        }
+
+        private Node compileIfThenElse(IfThenElseExpression expression) {
+            ImmutableList.Builder<StepNode> steps = ImmutableList.builder();
+            for (IfThenElseExpression.Step step : expression.getSteps()) {
+                if (step instanceof IfThenElseExpression.Lookup) {
+                    steps.add(compileLookup((IfThenElseExpression.Lookup) step));
+                } else {
+                    steps.add(compileBranch((IfThenElseExpression.Branch) step));
+                }
+            }
+            StepNode[] stepNodes = steps.build().toArray(new StepNode[0]);
+            Node defaultNode = compile(expression.getDefaultExpression());
+            return dataPoint -> {
+                for (StepNode step : stepNodes) {
+                    Node selected = step.select(dataPoint);
+                    if (selected != null) {
+                        return selected.evaluate(dataPoint);
+                    }
+                }
+                return defaultNode.evaluate(dataPoint);
+            };
+        }
+
+        private StepNode compileBranch(IfThenElseExpression.Branch branch) {
+            BooleanNode condition = compileBoolean(branch.getCondition());
+            Node value = compile(branch.getValue());
+            return dataPoint -> condition.test(dataPoint) == Boolean.TRUE ? value : null;
+        }
+
+        private StepNode compileLookup(IfThenElseExpression.Lookup lookup) {
+            Node operand = compile(lookup.getOperand());
+            Class<?> keyType = lookup.getKeyType();
+            Map<Object, Node> table = Maps.newHashMap();
+            for (Map.Entry<Object, VTLExpression> entry : lookup.getTable().entrySet()) {
+                table.put(entry.getKey(), compile(entry.getValue()));
+            }
+            StepNode[] branches = lookup.getBranches().stream().map(this::compileBranch).toArray(StepNode[]::new);
+            return dataPoint -> {
+                VTLObject resolved = operand.evaluate(dataPoint);
+                Object key = resolved == null ? null : resolved.get();
+                if (key != null && key.getClass() == keyType) {
+                    return table.get(key);
+                }
+                if (key == null && resolved != null) {
+                    return null;
+                }
+                for (StepNode branch : branches) {
+                    Node selected = branch.select(dataPoint);
+                    if (selected != null) {
+                        return selected;
+                    }
+                }
+                return null;
+            };
+        }
+
+        /**
+         * Falls back to the resolution of the expression with bindings.
+         */
+        private Node interpret(VTLExpression expression) {
+            return dataPoint -> expression.resolve(dataPointBindings.setDataPoint(dataPoint));
+        }
+
+        /**
+         * Returns the position of the component the variable references or -1.
+         */
+        private int slot(VariableExpression variable) {
+            DataPointBindings scope = dataPointBindings;
+            if (variable instanceof MembershipExpression) {
+                String dataset = ((MembershipExpression) variable).getDatasetIdentifier();
+                scope = dataPointBindings.getDatasetBindings(dataset);
+            }
+            return scope == null ? -1 : scope.getSlot(variable.getIdentifier());
+        }
+
+        private static boolean anyNull(DataPoint dataPoint, int[] slots) {
+            for (int slot : slots) {
+                if (dataPoint.get(slot).get() == null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VTLTyped;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.expressions.logic.XorExpression;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Simplifies expressions whose operands are already simplified.
+ * <p>
+ * Operators and functions whose operands are all literals are evaluated once and replaced by their
+ * value, if-then-else branches with literal conditions are removed and the identities of the logical
+ * operators (for instance {@code true and x} or {@code false or x}) are reduced. A simplification is
+ * only applied if the type of the expression does not change, and expressions that fail to evaluate
+ * are kept so the error is reported when the rows are evaluated.
+ * <p>
+ * The {@link no.ssb.vtl.script.visitors.ExpressionVisitor} applies it to each node it creates, so the
+ * whole tree is simplified bottom up.
+ */
+public final class ExpressionOptimizer {
+
+    private static final Bindings EMPTY_BINDINGS = new SimpleBindings(Collections.emptyMap());
+
+    private ExpressionOptimizer() {
+    }
+
+    /**
+     * Returns a simplified expression equivalent to the given expression, or the expression itself.
+     */
+    public static VTLExpression optimize(VTLExpression expression) {
+        checkNotNull(expression);
+        VTLExpression optimized = expression;
+        if (expression instanceof IfThenElseExpression) {
+            optimized = optimizeIfThenElse((IfThenElseExpression) expression);
+        } else if (expression instanceof AndExpression || expression instanceof OrExpression
+                || expression instanceof XorExpression) {
+            optimized = optimizeLogic((AbstractBinaryExpression) expression);
+        } else if (expression instanceof NotExpression
+                && ((NotExpression) expression).getOperand() instanceof NotExpression) {
+            optimized = ((NotExpression) ((NotExpression) expression).getOperand()).getOperand();
+        }
+        if (optimized == expression && hasOnlyLiteralOperands(expression)) {
+            optimized = fold(expression);
+        }
+        return optimized.getVTLType().equals(expression.getVTLType()) ? optimized : expression;
+    }
+
+    private static boolean hasOnlyLiteralOperands(VTLExpression expression) {
+        if (expression instanceof AbstractBinaryExpression) {
+            AbstractBinaryExpression binary = (AbstractBinaryExpression) expression;
+            return binary.getLeftOperand() instanceof LiteralExpression
+                    && binary.getRightOperand() instanceof LiteralExpression;
+        }
+        if (expression instanceof NotExpression) {
+            return ((NotExpression) expression).getOperand() instanceof LiteralExpression;
+        }
+        if (expression instanceof FunctionExpression) {
+            FunctionExpression<?> function = (FunctionExpression<?>) expression;
+            // A function without arguments, like a current date, could return a different value on each
+            // call; only functions of literal arguments are folded.
+            if (function.getArguments().isEmpty() && function.getNamedArguments().isEmpty()) {
+                return false;
+            }
+            return function.getArguments().stream().allMatch(LiteralExpression.class::isInstance)
+                    && function.getNamedArguments().values().stream().allMatch(LiteralExpression.class::isInstance);
+        }
+        return false;
+    }
+
+    private static VTLExpression fold(VTLExpression expression) {
+        VTLObject value;
+        try {
+            value = expression.resolve(EMPTY_BINDINGS);
+        } catch (RuntimeException re) {
+            return expression;
+        }
+        // Untyped values (null) would change the type of the expression.
+        if (!(value instanceof VTLTyped)) {
+            return expression;
+        }
+        return new LiteralExpression(value);
+    }
+
+    private static VTLExpression optimizeIfThenElse(IfThenElseExpression expression) {
+        List<Map.Entry<VTLExpression, VTLExpression>> branches = Lists.newArrayList();
+        VTLExpression defaultExpression = expression.getDefaultExpression();
+        boolean changed = false;
+        for (Map.Entry<VTLExpression, VTLExpression> branch : expression.getConditionToExpression().entrySet()) {
+            if (!(branch.getKey() instanceof LiteralExpression)) {
+                branches.add(branch);
+                continue;
+            }
+            changed = true;
+            if (Boolean.TRUE.equals(literalBoolean(branch.getKey()))) {
+                // The following branches are never reached.
+                defaultExpression = branch.getValue();
+                break;
+            }
+            // False and null conditions are never taken.
+        }
+        if (!changed) {
+            return expression;
+        }
+        if (branches.isEmpty()) {
+            return defaultExpression;
+        }
+        try {
+            IfThenElseExpression.Builder builder = new IfThenElseExpression.Builder(defaultExpression);
+            for (Map.Entry<VTLExpression, VTLExpression> branch : branches) {
+                builder.addCondition(branch.getKey(), branch.getValue());
+            }
+            return builder.build();
+        } catch (IllegalArgumentException iae) {
+            return expression;
+        }
+    }
+
+    private static VTLExpression optimizeLogic(AbstractBinaryExpression expression) {
+        VTLExpression left = expression.getLeftOperand();
+        VTLExpression right = expression.getRightOperand();
+        Boolean leftValue = literalBoolean(left);
+        Boolean rightValue = literalBoolean(right);
+        if (expression instanceof AndExpression) {
+            // false and x is false, true and x is x.
+            if (Boolean.FALSE.equals(leftValue) || Boolean.TRUE.equals(rightValue)) {
+                return left;
+            }
+            if (Boolean.FALSE.equals(rightValue) || Boolean.TRUE.equals(leftValue)) {
+                return right;
+            }
+        } else if (expression instanceof OrExpression) {
+            // true or x is true, false or x is x.
+            if (Boolean.TRUE.equals(leftValue) || Boolean.FALSE.equals(rightValue)) {
+                return left;
+            }
+            if (Boolean.TRUE.equals(rightValue) || Boolean.FALSE.equals(leftValue)) {
+                return right;
+            }
+        } else {
+            // x xor false is x, x xor true is not x.
+            if (leftValue != null && !(right instanceof LiteralExpression)) {
+                return leftValue ? new NotExpression(right) : right;
+            }
+            if (rightValue != null && !(left instanceof LiteralExpression)) {
+                return rightValue ? new NotExpression(left) : left;
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Returns the value of a boolean literal, or null if the expression is not a boolean literal or
+     * its value is null.
+     */
+    private static Boolean literalBoolean(VTLExpression expression) {
+        if (!(expression instanceof LiteralExpression)) {
+            return null;
+        }
+        Object value = expression.resolve(EMPTY_BINDINGS).get();
+        return value instanceof Boolean ? (Boolean) value : null;
+    }
+}
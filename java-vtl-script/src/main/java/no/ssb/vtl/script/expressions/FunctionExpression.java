@@ -26,6 +26,7 @@ import com.google.common.collect.Sets;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLFunction;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.functions.AbstractVTLFunction;
 
 import javax.script.Bindings;
 import java.util.Arrays;
@@ -41,7 +42,8 @@ import static com.google.common.base.Preconditions.checkArgument;
  * Helper class that transforms a VTLFunction to a VTLExpression.
  *
  * It takes care of resolving all the function parameters in
- * its {@link #resolve(Bindings)} method.
+ * its {@link #resolve(Bindings)} method. The arguments of {@link AbstractVTLFunction}s are bound to
+ * the signature once, when the expression is created, and passed by position.
  */
 public class FunctionExpression<T extends VTLObject> implements VTLExpression {
 
@@ -55,11 +57,27 @@ public class FunctionExpression<T extends VTLObject> implements VTLExpression {
     private final List<VTLExpression> arguments;
     private final Map<String, VTLExpression> namedArguments;
 
+    // Pre-bound invocation of AbstractVTLFunction; the expressions are in the order of the signature.
+    private final AbstractVTLFunction<?>.PositionalInvocation invocation;
+    private final VTLExpression[] boundArguments;
+
     public FunctionExpression(VTLFunction<T> wrappedFunction, List<VTLExpression> arguments, Map<String, VTLExpression> namedArguments) {
         this.wrappedFunction = wrappedFunction;
         this.arguments = arguments;
         this.namedArguments = namedArguments;
-        checkTypes(wrappedFunction, mergeArguments(wrappedFunction.getSignature(), arguments, namedArguments));
+        Map<String, VTLExpression> mergedArguments = mergeArguments(wrappedFunction.getSignature(), arguments, namedArguments);
+        checkTypes(wrappedFunction, mergedArguments);
+
+        if (wrappedFunction instanceof AbstractVTLFunction) {
+            this.invocation = ((AbstractVTLFunction<?>) wrappedFunction).bind(mergedArguments.keySet());
+            this.boundArguments = new VTLExpression[invocation.size()];
+            for (Map.Entry<String, VTLExpression> argument : mergedArguments.entrySet()) {
+                boundArguments[invocation.indexOf(argument.getKey())] = argument.getValue();
+            }
+        } else {
+            this.invocation = null;
+            this.boundArguments = null;
+        }
     }
 
     public FunctionExpression(VTLFunction<T> wrappedFunction, List<VTLExpression> arguments) {
@@ -74,6 +92,14 @@ public class FunctionExpression<T extends VTLObject> implements VTLExpression {
         this(wrappedFunction, Arrays.asList(arguments));
     }
 
+    public List<VTLExpression> getArguments() {
+        return arguments;
+    }
+
+    public Map<String, VTLExpression> getNamedArguments() {
+        return namedArguments;
+    }
+
     // TODO: Move to VTLFunction or AbstractVTLFunction.
     private void checkTypes(VTLFunction<?> function, Map<String, VTLExpression> arguments) {
         VTLFunction.Signature signature = function.getSignature();
@@ -125,6 +151,16 @@ public class FunctionExpression<T extends VTLObject> implements VTLExpression {
 
     @Override
     public VTLObject resolve(Bindings bindings) {
+        if (invocation != null) {
+            VTLObject<?>[] values = new VTLObject<?>[boundArguments.length];
+            for (int i = 0; i < boundArguments.length; i++) {
+                if (boundArguments[i] != null) {
+                    values[i] = boundArguments[i].resolve(bindings);
+                }
+            }
+            return invocation.invoke(values);
+        }
+
         // Resolve the parameters.
         List<VTLObject> resolvedParameters = Lists.newArrayList();
         for (VTLExpression expression : arguments) {
@@ -21,24 +21,49 @@ package no.ssb.vtl.script.expressions;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VTLTyped;
+import no.ssb.vtl.script.expressions.equality.EqualExpression;
 
 import javax.script.Bindings;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * The if then else expression.
+ * <p>
+ * Consecutive conditions that compare the same variable with literals ({@code if x = "A" then ...
+ * elseif x = "B" then ...}) are resolved with a lookup table: the variable is resolved once and its value
+ * selects the branch. The first of duplicate literals wins and null values take no branch, as with the
+ * sequential evaluation of the conditions.
  */
 public class IfThenElseExpression implements VTLExpression {
 
+    /**
+     * Shorter chains of equality conditions are cheaper to evaluate in sequence.
+     */
+    static final int MIN_LOOKUP_SIZE = 4;
+
+    // Literal types whose equals is consistent with the comparison of the equal expression.
+    private static final ImmutableSet<Class<?>> LOOKUP_TYPES = ImmutableSet.of(
+            String.class, Long.class, Boolean.class, Instant.class
+    );
+
     private final ImmutableMap<VTLExpression, VTLExpression> conditionToExpression;
     private final VTLExpression defaultExpression;
     private final Class vtlType;
+    private final ImmutableList<Step> steps;
 
     private IfThenElseExpression(ImmutableMap<VTLExpression, VTLExpression> conditionToExpression,
                                  VTLExpression defaultExpression, Class vtlType) {
@@ -46,20 +71,223 @@ public class IfThenElseExpression implements VTLExpression {
         this.vtlType = vtlType;
         this.conditionToExpression = conditionToExpression;
         this.defaultExpression = defaultExpression;
+        this.steps = plan(conditionToExpression);
+    }
+
+    /**
+     * Groups the runs of at least {@link #MIN_LOOKUP_SIZE} equality conditions on the same variable into
+     * lookups.
+     */
+    private static ImmutableList<Step> plan(ImmutableMap<VTLExpression, VTLExpression> conditionToExpression) {
+        ImmutableList.Builder<Step> steps = ImmutableList.builder();
+        List<Branch> run = Lists.newArrayList();
+        List<?> runOperand = null;
+        for (Map.Entry<VTLExpression, VTLExpression> entry : conditionToExpression.entrySet()) {
+            Branch branch = new Branch(entry.getKey(), entry.getValue());
+            List<?> operand = branch.getOperandKey();
+            if (operand == null || !operand.equals(runOperand) || !sameLiteralType(run, branch)) {
+                addRun(steps, run);
+                run.clear();
+                runOperand = operand;
+            }
+            run.add(branch);
+        }
+        addRun(steps, run);
+        return steps.build();
+    }
+
+    private static boolean sameLiteralType(List<Branch> run, Branch branch) {
+        for (Branch other : run) {
+            if (other.getLiteral() != null && branch.getLiteral() != null) {
+                return other.getLiteral().getClass() == branch.getLiteral().getClass();
+            }
+        }
+        return true;
+    }
+
+    private static void addRun(ImmutableList.Builder<Step> steps, List<Branch> run) {
+        if (run.size() < MIN_LOOKUP_SIZE) {
+            steps.addAll(run);
+        } else {
+            steps.add(new Lookup(run));
+        }
+    }
+
+    /**
+     * Returns the steps the conditions are evaluated with, in order.
+     */
+    ImmutableList<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the conditions and their values, in order.
+     */
+    public ImmutableMap<VTLExpression, VTLExpression> getConditionToExpression() {
+        return conditionToExpression;
+    }
+
+    public VTLExpression getDefaultExpression() {
+        return defaultExpression;
     }
 
     @Override
     public VTLObject resolve(Bindings bindings) {
-        for (VTLExpression conditionExpression : conditionToExpression.keySet()) {
-            VTLObject resolved = conditionExpression.resolve(bindings);
-            if (resolved.get() != null && resolved.get().equals(true)) {
-                return conditionToExpression.get(conditionExpression).resolve(bindings);
+        for (Step step : steps) {
+            VTLExpression selected = step.select(bindings);
+            if (selected != null) {
+                return selected.resolve(bindings);
             }
         }
 
         return defaultExpression.resolve(bindings);
     }
 
+    /**
+     * One or more branches of the expression.
+     */
+    abstract static class Step {
+
+        /**
+         * Returns the value of the first branch of the step whose condition is true, or null.
+         */
+        abstract VTLExpression select(Bindings bindings);
+    }
+
+    /**
+     * A condition and its value.
+     */
+    static final class Branch extends Step {
+
+        private final VTLExpression condition;
+        private final VTLExpression value;
+        private final VariableExpression operand;
+        private final Object literal;
+
+        private Branch(VTLExpression condition, VTLExpression value) {
+            this.condition = condition;
+            this.value = value;
+
+            VariableExpression operand = null;
+            Object literal = null;
+            if (condition instanceof EqualExpression) {
+                VTLExpression left = ((EqualExpression) condition).getLeftOperand();
+                VTLExpression right = ((EqualExpression) condition).getRightOperand();
+                if (left instanceof LiteralExpression && right instanceof VariableExpression) {
+                    VTLExpression swap = left;
+                    left = right;
+                    right = swap;
+                }
+                if (left instanceof VariableExpression && right instanceof LiteralExpression) {
+                    literal = right.resolve(null).get();
+                    if (literal == null || LOOKUP_TYPES.contains(literal.getClass())) {
+                        operand = (VariableExpression) left;
+                    }
+                }
+            }
+            this.operand = operand;
+            this.literal = operand == null ? null : literal;
+        }
+
+        VTLExpression getCondition() {
+            return condition;
+        }
+
+        VTLExpression getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the literal the operand is compared with; null if the condition is never true.
+         */
+        Object getLiteral() {
+            return literal;
+        }
+
+        /**
+         * Identifies the variable the condition compares with a literal, null if the condition is not
+         * such a comparison.
+         */
+        List<?> getOperandKey() {
+            if (operand == null) {
+                return null;
+            }
+            String dataset = operand instanceof MembershipExpression
+                    ? ((MembershipExpression) operand).getDatasetIdentifier()
+                    : null;
+            return Arrays.asList(dataset, operand.getIdentifier());
+        }
+
+        @Override
+        VTLExpression select(Bindings bindings) {
+            Object resolved = condition.resolve(bindings).get();
+            return resolved != null && resolved.equals(true) ? value : null;
+        }
+    }
+
+    /**
+     * Consecutive branches that compare the same variable with literals of the same type.
+     */
+    static final class Lookup extends Step {
+
+        private final VariableExpression operand;
+        private final Class<?> keyType;
+        private final ImmutableMap<Object, VTLExpression> table;
+        private final ImmutableList<Branch> branches;
+
+        private Lookup(List<Branch> branches) {
+            this.branches = ImmutableList.copyOf(branches);
+            this.operand = branches.get(0).operand;
+
+            Map<Object, VTLExpression> table = Maps.newLinkedHashMap();
+            Class<?> keyType = null;
+            for (Branch branch : branches) {
+                if (branch.getLiteral() != null) {
+                    keyType = branch.getLiteral().getClass();
+                    table.putIfAbsent(branch.getLiteral(), branch.getValue());
+                }
+            }
+            this.keyType = keyType;
+            this.table = ImmutableMap.copyOf(table);
+        }
+
+        VariableExpression getOperand() {
+            return operand;
+        }
+
+        Class<?> getKeyType() {
+            return keyType;
+        }
+
+        ImmutableMap<Object, VTLExpression> getTable() {
+            return table;
+        }
+
+        ImmutableList<Branch> getBranches() {
+            return branches;
+        }
+
+        @Override
+        VTLExpression select(Bindings bindings) {
+            VTLObject resolved = operand.resolve(bindings);
+            Object key = resolved == null ? null : resolved.get();
+            if (key == null && resolved != null) {
+                return null;
+            }
+            if (key == null || key.getClass() != keyType) {
+                // Let the conditions handle values of other types.
+                for (Branch branch : branches) {
+                    VTLExpression selected = branch.select(bindings);
+                    if (selected != null) {
+                        return selected;
+                    }
+                }
+                return null;
+            }
+            return table.get(key);
+        }
+    }
+
     @Override
     public Class getVTLType() {
         return vtlType;
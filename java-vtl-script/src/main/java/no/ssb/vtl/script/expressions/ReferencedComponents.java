@@ -0,0 +1,141 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.operations.join.ComponentBindings;
+
+import javax.script.Bindings;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Finds the {@link Component}s an expression reads.
+ */
+public final class ReferencedComponents {
+
+    private ReferencedComponents() {
+    }
+
+    /**
+     * Returns the components referenced by the expression, or {@link Optional#empty()} if
+     * the expression contains nodes that cannot be analyzed.
+     *
+     * @param expression the expression
+     * @param bindings   the bindings the expression is resolved with
+     */
+    public static Optional<Set<Component>> find(VTLExpression expression, Bindings bindings) {
+        checkNotNull(expression);
+        checkNotNull(bindings);
+        ImmutableSet.Builder<Component> components = ImmutableSet.builder();
+        if (collect(expression, bindings, components)) {
+            return Optional.of(components.build());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the names in the structure of the components referenced by the expression, or
+     * {@link Optional#empty()} if the expression cannot be analyzed or references components
+     * that are not in the structure.
+     */
+    public static Optional<Set<String>> findNames(VTLExpression expression, Bindings bindings,
+                                                  DataStructure structure) {
+        Optional<Set<Component>> components = find(expression, bindings);
+        if (!components.isPresent()) {
+            return Optional.empty();
+        }
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        for (Component component : components.get()) {
+            String name = structure.getName(component);
+            if (name == null) {
+                return Optional.empty();
+            }
+            names.add(name);
+        }
+        return Optional.of(names.build());
+    }
+
+    private static boolean collect(VTLExpression expression, Bindings bindings,
+                                   ImmutableSet.Builder<Component> components) {
+        if (expression instanceof LiteralExpression) {
+            return true;
+        }
+        if (expression instanceof MembershipExpression) {
+            MembershipExpression membership = (MembershipExpression) expression;
+            Object dataset = bindings.get(membership.getDatasetIdentifier());
+            return dataset instanceof Bindings
+                    && collectReference(((Bindings) dataset).get(membership.getIdentifier()), components);
+        }
+        if (expression instanceof VariableExpression) {
+            return collectReference(bindings.get(((VariableExpression) expression).getIdentifier()), components);
+        }
+        if (expression instanceof AbstractBinaryExpression) {
+            AbstractBinaryExpression binary = (AbstractBinaryExpression) expression;
+            return collect(binary.getLeftOperand(), bindings, components)
+                    && collect(binary.getRightOperand(), bindings, components);
+        }
+        if (expression instanceof NotExpression) {
+            return collect(((NotExpression) expression).getOperand(), bindings, components);
+        }
+        if (expression instanceof FunctionExpression) {
+            FunctionExpression<?> function = (FunctionExpression<?>) expression;
+            for (VTLExpression argument : function.getArguments()) {
+                if (!collect(argument, bindings, components)) {
+                    return false;
+                }
+            }
+            for (VTLExpression argument : function.getNamedArguments().values()) {
+                if (!collect(argument, bindings, components)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (expression instanceof IfThenElseExpression) {
+            IfThenElseExpression ifThenElse = (IfThenElseExpression) expression;
+            for (Map.Entry<VTLExpression, VTLExpression> entry : ifThenElse.getConditionToExpression().entrySet()) {
+                if (!collect(entry.getKey(), bindings, components)
+                        || !collect(entry.getValue(), bindings, components)) {
+                    return false;
+                }
+            }
+            return collect(ifThenElse.getDefaultExpression(), bindings, components);
+        }
+        return false;
+    }
+
+    private static boolean collectReference(Object reference, ImmutableSet.Builder<Component> components) {
+        if (reference instanceof ComponentBindings.ComponentReference) {
+            components.add(((ComponentBindings.ComponentReference) reference).getComponent());
+            return true;
+        }
+        // Scalar variables are not columns.
+        return reference != null && !(reference instanceof Bindings);
+    }
+}
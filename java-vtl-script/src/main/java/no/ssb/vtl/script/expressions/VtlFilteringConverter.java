@@ -104,7 +104,8 @@ public class VtlFilteringConverter {
             return convert((AbstractEqualityExpression) predicate);
         } else if (predicate instanceof LiteralExpression) {
             VTLBoolean value = (VTLBoolean) predicate.resolve(new SimpleBindings(Collections.emptyMap()));
-            return VtlFiltering.literal(!value.get(), FilteringSpecification.Operator.TRUE, null, value);
+            boolean selected = value.get() != null && value.get();
+            return VtlFiltering.literal(!selected, FilteringSpecification.Operator.TRUE, null, value);
         }
         // TODO: Handle XorExpression.
         return VtlFiltering.literal(false, FilteringSpecification.Operator.TRUE, null, null);
@@ -19,33 +19,28 @@ package no.ssb.vtl.script.expressions.arithmetic;
  */
 
 import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.ColumnVector;
 import no.ssb.vtl.model.VTLFloat;
-import no.ssb.vtl.model.VTLInteger;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.expressions.AbstractNullFirstExpression;
 
+import java.util.function.DoubleBinaryOperator;
+
 /**
- * Returns type Float if one of its operand is Float.
+ * Arithmetic operation computed with doubles; the result is always a Float.
+ *
+ * @see AbstractIntegerArithmeticExpression
  */
 public abstract class AbstractArithmeticExpression extends AbstractNullFirstExpression {
 
-    // Arithmetic expression are often composed so we need caching.
-    private Class type = null;
-
     AbstractArithmeticExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
         super(leftOperand, rightOperand);
     }
 
     @Override
     public Class getVTLType() {
-        if (type == null) {
-            if (getLeftOperand().getVTLType() == VTLFloat.class || getRightOperand().getVTLType() == VTLFloat.class)
-                type = VTLFloat.class;
-            else
-                type = VTLInteger.class;
-        }
-        return type;
+        return VTLFloat.class;
     }
 
     @Override
@@ -53,5 +48,58 @@ public abstract class AbstractArithmeticExpression extends AbstractNullFirstExpr
         return compute((VTLNumber) leftOperand, (VTLNumber) rightOperand);
     }
 
-    abstract protected VTLNumber compute(VTLNumber leftOperand, VTLNumber rightOperand);
+    /**
+     * Unwraps the operands and delegates to the primitive operation.
+     */
+    protected VTLNumber compute(VTLNumber leftOperand, VTLNumber rightOperand) {
+        return VTLFloat.of(compute(leftOperand.get().doubleValue(), rightOperand.get().doubleValue()));
+    }
+
+    /**
+     * Computes the operation row by row on two columns.
+     * <p>
+     * Long and double columns are computed with the primitive operation without
+     * creating {@link VTLNumber}s. Null values propagate.
+     */
+    public ColumnVector compute(ColumnVector left, ColumnVector right, int size) {
+        if (isPrimitive(left) && isPrimitive(right)) {
+            ColumnVector.DoubleVector result = new ColumnVector.DoubleVector(size);
+            for (int row = 0; row < size; row++) {
+                if (!left.isNull(row) && !right.isNull(row)) {
+                    result.setDouble(row, compute(getDouble(left, row), getDouble(right, row)));
+                }
+            }
+            return result;
+        }
+
+        ColumnVector result = new ColumnVector.ObjectVector(size);
+        for (int row = 0; row < size; row++) {
+            VTLObject leftValue = left.get(row);
+            VTLObject rightValue = right.get(row);
+            if (leftValue.get() != null && rightValue.get() != null) {
+                result.set(row, compute(leftValue, rightValue));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isPrimitive(ColumnVector vector) {
+        return vector instanceof ColumnVector.LongVector || vector instanceof ColumnVector.DoubleVector;
+    }
+
+    private static double getDouble(ColumnVector vector, int row) {
+        if (vector instanceof ColumnVector.LongVector) {
+            return ((ColumnVector.LongVector) vector).getLong(row);
+        }
+        return ((ColumnVector.DoubleVector) vector).getDouble(row);
+    }
+
+    /**
+     * Returns the operation on doubles.
+     */
+    public final DoubleBinaryOperator getDoubleOperator() {
+        return this::compute;
+    }
+
+    protected abstract double compute(double leftOperand, double rightOperand);
 }
@@ -0,0 +1,101 @@
+package no.ssb.vtl.script.expressions.arithmetic;
+
+/*
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.ColumnVector;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLFloat;
+import no.ssb.vtl.model.VTLInteger;
+import no.ssb.vtl.model.VTLNumber;
+
+import java.util.function.LongBinaryOperator;
+
+import static java.lang.String.format;
+
+/**
+ * Arithmetic operation that is also defined on longs.
+ * <p>
+ * Returns type Float if one of its operand is Float, Integer otherwise.
+ */
+public abstract class AbstractIntegerArithmeticExpression extends AbstractArithmeticExpression {
+
+    // Arithmetic expression are often composed so we need caching.
+    private Class type = null;
+
+    AbstractIntegerArithmeticExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
+        super(leftOperand, rightOperand);
+    }
+
+    @Override
+    public Class getVTLType() {
+        if (type == null) {
+            if (getLeftOperand().getVTLType() == VTLFloat.class || getRightOperand().getVTLType() == VTLFloat.class)
+                type = VTLFloat.class;
+            else
+                type = VTLInteger.class;
+        }
+        return type;
+    }
+
+    /**
+     * Computes with longs unless one of the operands is a double.
+     */
+    @Override
+    protected VTLNumber compute(VTLNumber leftOperand, VTLNumber rightOperand) {
+        Number left = leftOperand.get();
+        Number right = rightOperand.get();
+        if (left instanceof Double || right instanceof Double) {
+            return super.compute(leftOperand, rightOperand);
+        } else if (left instanceof Long || right instanceof Long) {
+            return VTLInteger.of(compute(left.longValue(), right.longValue()));
+        }
+        throw new RuntimeException(
+                format("unsupported number types %s, %s", left.getClass(), right.getClass())
+        );
+    }
+
+    /**
+     * Computes two long columns with the operation on longs, other columns like
+     * {@link AbstractArithmeticExpression#compute(ColumnVector, ColumnVector, int)}.
+     */
+    @Override
+    public ColumnVector compute(ColumnVector left, ColumnVector right, int size) {
+        if (left instanceof ColumnVector.LongVector && right instanceof ColumnVector.LongVector) {
+            ColumnVector.LongVector leftLongs = (ColumnVector.LongVector) left;
+            ColumnVector.LongVector rightLongs = (ColumnVector.LongVector) right;
+            ColumnVector.LongVector result = new ColumnVector.LongVector(size);
+            for (int row = 0; row < size; row++) {
+                if (!leftLongs.isNull(row) && !rightLongs.isNull(row)) {
+                    result.setLong(row, compute(leftLongs.getLong(row), rightLongs.getLong(row)));
+                }
+            }
+            return result;
+        }
+        return super.compute(left, right, size);
+    }
+
+    /**
+     * Returns the operation on longs, for the expressions of type {@link VTLInteger}.
+     */
+    public final LongBinaryOperator getLongOperator() {
+        return this::compute;
+    }
+
+    protected abstract long compute(long leftOperand, long rightOperand);
+}
@@ -20,17 +20,21 @@ package no.ssb.vtl.script.expressions.arithmetic;
 
 import com.google.common.base.MoreObjects;
 import no.ssb.vtl.model.VTLExpression;
-import no.ssb.vtl.model.VTLNumber;
 
-public class AdditionExpression extends AbstractArithmeticExpression {
+public class AdditionExpression extends AbstractIntegerArithmeticExpression {
 
     public AdditionExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
         super(leftOperand, rightOperand);
     }
 
     @Override
-    protected VTLNumber compute(VTLNumber augend, VTLNumber addend) {
-        return augend.add(addend);
+    protected long compute(long augend, long addend) {
+        return augend + addend;
+    }
+
+    @Override
+    protected double compute(double augend, double addend) {
+        return augend + addend;
     }
 
     @Override
@@ -20,8 +20,6 @@ package no.ssb.vtl.script.expressions.arithmetic;
 
 import com.google.common.base.MoreObjects;
 import no.ssb.vtl.model.VTLExpression;
-import no.ssb.vtl.model.VTLFloat;
-import no.ssb.vtl.model.VTLNumber;
 
 
 public class DivisionExpression extends AbstractArithmeticExpression {
@@ -31,13 +29,8 @@ public class DivisionExpression extends AbstractArithmeticExpression {
     }
 
     @Override
-    public Class getVTLType() {
-        return VTLFloat.class;
-    }
-
-    @Override
-    protected VTLNumber compute(VTLNumber dividend, VTLNumber divisor) {
-        return dividend.divide(divisor);
+    protected double compute(double dividend, double divisor) {
+        return dividend / divisor;
     }
 
     @Override
@@ -20,17 +20,21 @@ package no.ssb.vtl.script.expressions.arithmetic;
 
 import com.google.common.base.MoreObjects;
 import no.ssb.vtl.model.VTLExpression;
-import no.ssb.vtl.model.VTLNumber;
 
-public class MultiplicationExpression extends AbstractArithmeticExpression {
+public class MultiplicationExpression extends AbstractIntegerArithmeticExpression {
 
     public MultiplicationExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
         super(leftOperand, rightOperand);
     }
 
     @Override
-    protected VTLNumber compute(VTLNumber multiplier, VTLNumber multiplicand) {
-        return multiplier.multiply(multiplicand);
+    protected long compute(long multiplier, long multiplicand) {
+        return multiplier * multiplicand;
+    }
+
+    @Override
+    protected double compute(double multiplier, double multiplicand) {
+        return multiplier * multiplicand;
     }
 
     @Override
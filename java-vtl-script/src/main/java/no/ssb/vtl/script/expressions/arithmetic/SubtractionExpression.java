@@ -20,17 +20,21 @@ package no.ssb.vtl.script.expressions.arithmetic;
 
 import com.google.common.base.MoreObjects;
 import no.ssb.vtl.model.VTLExpression;
-import no.ssb.vtl.model.VTLNumber;
 
-public class SubtractionExpression extends AbstractArithmeticExpression {
+public class SubtractionExpression extends AbstractIntegerArithmeticExpression {
 
     public SubtractionExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
         super(leftOperand, rightOperand);
     }
 
     @Override
-    protected VTLNumber compute(VTLNumber minuend, VTLNumber subtrahend) {
-        return minuend.subtract(subtrahend);
+    protected long compute(long minuend, long subtrahend) {
+        return minuend - subtrahend;
+    }
+
+    @Override
+    protected double compute(double minuend, double subtrahend) {
+        return minuend - subtrahend;
     }
 
     @Override
@@ -57,17 +57,36 @@ public abstract class AbstractLogicExpression extends AbstractBinaryExpression {
         return VTLBoolean.class;
     }
 
+    /**
+     * Resolves the left operand first; the right operand is only resolved if the left operand does
+     * not decide the result (see {@link #decide(VTLBoolean)}).
+     */
     @Override
     public final VTLObject resolve(Bindings bindings) {
 
         VTLObject left = getLeftOperand().resolve(bindings);
+        VTLBoolean leftValue = left.get() == null ? VTLBoolean.of((Boolean) null) : (VTLBoolean) left;
+        VTLBoolean decided = decide(leftValue);
+        if (decided != null)
+            return decided;
+
         VTLObject right = getRightOperand().resolve(bindings);
 
         return compute(
-                left.get() == null ? VTLBoolean.of((Boolean) null) : (VTLBoolean) left,
+                leftValue,
                 right.get() == null ? VTLBoolean.of((Boolean) null) : (VTLBoolean) right
         );
     }
 
+    /**
+     * Returns the result of the expression if the left operand is enough to determine it, null otherwise.
+     * <p>
+     * With the three-valued logic, only a false left operand decides an and, and only a true left
+     * operand decides an or. A null left operand never does.
+     */
+    protected VTLBoolean decide(VTLBoolean leftOperand) {
+        return null;
+    }
+
     protected abstract VTLBoolean compute(VTLBoolean leftOperand, VTLBoolean rightOperand);
 }
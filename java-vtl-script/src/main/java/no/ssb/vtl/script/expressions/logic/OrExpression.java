@@ -27,6 +27,11 @@ public class OrExpression extends AbstractLogicExpression {
         super(leftOperand, rightOperand);
     }
 
+    @Override
+    protected VTLBoolean decide(VTLBoolean leftOperand) {
+        return !isNull(leftOperand) && leftOperand.get() ? leftOperand : null;
+    }
+
     @Override
     protected VTLBoolean compute(VTLBoolean left, VTLBoolean right) {
         if (isNull(left))
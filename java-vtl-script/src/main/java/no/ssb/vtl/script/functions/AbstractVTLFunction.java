@@ -51,6 +51,7 @@ public abstract class AbstractVTLFunction<T extends VTLObject> implements VTLFun
     private final String id;
     private final Class<T> type;
     private final ImmutableMap<String, AbstractVTLFunction.Argument<?>> signature;
+    private final ImmutableMap<Argument, Integer> positions;
 
     protected AbstractVTLFunction(String id, Class<T> returnType, Argument... arguments) {
         this(id, returnType, Arrays.asList(arguments));
@@ -69,6 +70,12 @@ public abstract class AbstractVTLFunction<T extends VTLObject> implements VTLFun
         for (Argument<?> argument : arguments)
             signatureBuilder.put(argument.getName(), argument);
         this.signature = signatureBuilder.build();
+
+        ImmutableMap.Builder<Argument, Integer> positionsBuilder = ImmutableMap.builder();
+        int position = 0;
+        for (Argument<?> argument : signature.values())
+            positionsBuilder.put(argument, position++);
+        this.positions = positionsBuilder.build();
     }
 
     /**
@@ -197,8 +204,92 @@ public abstract class AbstractVTLFunction<T extends VTLObject> implements VTLFun
         return safeInvoke(createTypeSafeArguments(arguments));
     }
 
+    /**
+     * Binds the names of the arguments of an invocation to the signature.
+     * <p>
+     * The names are checked once; the returned invocation takes the values in the order of the signature
+     * and only checks their types.
+     *
+     * @param names the names of the arguments the invocations will pass
+     * @throws IllegalArgumentException if a name is unknown or a required argument is missing
+     */
+    public PositionalInvocation bind(Set<String> names) {
+        Sets.SetView<String> unknown = Sets.difference(names, signature.keySet());
+        checkArgument(unknown.isEmpty(), UNKNOWN_ARGUMENTS, unknown);
+
+        VTLObject<?>[] defaults = new VTLObject<?>[signature.size()];
+        ImmutableMap.Builder<String, Integer> slots = ImmutableMap.builder();
+        Set<String> missing = Sets.newLinkedHashSet();
+        for (Argument<?> argument : signature.values()) {
+            int position = positions.get(argument);
+            slots.put(argument.getName(), position);
+            if (!names.contains(argument.getName())) {
+                if (argument instanceof OptionalArgument) {
+                    defaults[position] = ((OptionalArgument<?>) argument).getDefaultValue();
+                } else {
+                    missing.add(argument.getName());
+                }
+            }
+        }
+        checkArgument(missing.isEmpty(), MISSING_ARGUMENTS, missing);
+        return new PositionalInvocation(slots.build(), defaults);
+    }
+
     protected abstract T safeInvoke(TypeSafeArguments arguments);
 
+    /**
+     * Invocation of the function with arguments bound to the positions of the signature.
+     *
+     * @see #bind(Set)
+     */
+    public final class PositionalInvocation {
+
+        private final ImmutableMap<String, Integer> slots;
+        private final VTLObject<?>[] defaults;
+        private final Argument<?>[] arguments;
+
+        private PositionalInvocation(ImmutableMap<String, Integer> slots, VTLObject<?>[] defaults) {
+            this.slots = slots;
+            this.defaults = defaults;
+            this.arguments = signature.values().toArray(new Argument<?>[0]);
+        }
+
+        /**
+         * Returns the number of values the invocation takes.
+         */
+        public int size() {
+            return defaults.length;
+        }
+
+        /**
+         * Returns the position of the value of an argument.
+         */
+        public int indexOf(String name) {
+            Integer slot = slots.get(name);
+            checkArgument(slot != null, UNKNOWN_ARGUMENTS, name);
+            return slot;
+        }
+
+        /**
+         * Invokes the function. The values of the arguments that were not bound are set to their
+         * default values in the array, which is then owned by the function.
+         *
+         * @param values the values, in the order of the signature
+         */
+        public T invoke(VTLObject<?>[] values) {
+            checkArgument(values.length == defaults.length,
+                    INVALID_ARGUMENT_COUNT, defaults.length, values.length);
+            for (int i = 0; i < values.length; i++) {
+                if (defaults[i] != null) {
+                    values[i] = defaults[i];
+                } else {
+                    TypeSafeArguments.checkType(values[i], arguments[i]);
+                }
+            }
+            return safeInvoke(new TypeSafeArguments(positions, values));
+        }
+    }
+
     // TODO: Rename
     public static class Argument<A extends VTLObject> extends VTLFunction.Argument<A> {
         private final String name;
@@ -24,13 +24,13 @@ package no.ssb.vtl.script.functions;
  *
  */
 
+import no.ssb.vtl.model.ColumnVector;
+import no.ssb.vtl.model.NumberAccumulator;
 import no.ssb.vtl.model.VTLFloat;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.script.operations.aggregation.AbstractAggregationFunction;
 
 import java.util.List;
-import java.util.Objects;
-import java.util.OptionalDouble;
 
 public class AggregationAvgFunction extends AbstractAggregationFunction<VTLFloat> {
 
@@ -41,18 +41,18 @@ public class AggregationAvgFunction extends AbstractAggregationFunction<VTLFloat
     @Override
     public VTLNumber apply(List<VTLNumber> vtlNumbers) {
         // TODO: Support for all non finite values.
-        OptionalDouble average = vtlNumbers
-                .stream()
-                .filter(Objects::nonNull)
-                .filter(n -> n.get() != null)
-                .mapToDouble(n -> n.get().doubleValue())
-                .average();
-
-        if (average.isPresent()) {
-            return VTLFloat.of(average.getAsDouble());
-        } else {
-            return VTLFloat.of((Double) null);
+        NumberAccumulator accumulator = new NumberAccumulator();
+        for (VTLNumber number : vtlNumbers) {
+            accumulator.add(number);
         }
+        return accumulator.average();
+    }
+
+    @Override
+    public VTLNumber apply(ColumnVector column, int size) {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.addAll(column, size);
+        return accumulator.average();
     }
 
     @Override
@@ -24,13 +24,14 @@ package no.ssb.vtl.script.functions;
  *
  */
 
+import no.ssb.vtl.model.ColumnVector;
+import no.ssb.vtl.model.NumberAccumulator;
 import no.ssb.vtl.model.VTLFloat;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.operations.aggregation.AbstractAggregationFunction;
 
 import java.util.List;
-import java.util.Objects;
 
 public class AggregationSumFunction extends AbstractAggregationFunction<VTLFloat> {
 
@@ -38,12 +39,24 @@ public class AggregationSumFunction extends AbstractAggregationFunction<VTLFloat
         super(VTLFloat.class);
     }
 
+    private static VTLNumber sumOrNull(NumberAccumulator accumulator) {
+        return accumulator.isEmpty() ? VTLObject.of((Double) null) : accumulator.sum();
+    }
+
     @Override
     public VTLNumber apply(List<VTLNumber> vtlNumbers) {
-        return vtlNumbers.stream()
-                .filter(Objects::nonNull)
-                .filter(n -> n.get() != null)
-                .reduce(VTLNumber::add).orElse(VTLObject.of((Double) null));
+        NumberAccumulator accumulator = new NumberAccumulator();
+        for (VTLNumber number : vtlNumbers) {
+            accumulator.add(number);
+        }
+        return sumOrNull(accumulator);
+    }
+
+    @Override
+    public VTLNumber apply(ColumnVector column, int size) {
+        NumberAccumulator accumulator = new NumberAccumulator();
+        accumulator.addAll(column, size);
+        return sumOrNull(accumulator);
     }
 
 
@@ -29,6 +29,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 public class TypeSafeArguments {
     private final Map<AbstractVTLFunction.Argument, VTLObject<?>> arguments;
+    private final Map<AbstractVTLFunction.Argument, Integer> positions;
+    private final VTLObject<?>[] values;
 
     private static final String WRONG_ARGUMENT_TYPE = "invalid type %s for argument %s, expected %s";
 
@@ -41,20 +43,40 @@ public class TypeSafeArguments {
             builder.put(argument, checkType(value, argument));
         }
         this.arguments = builder.build();
+        this.positions = null;
+        this.values = null;
+    }
+
+    /**
+     * Positional arguments, used by {@link AbstractVTLFunction.PositionalInvocation}. The values must be in
+     * the order of the signature and their types already checked.
+     */
+    TypeSafeArguments(Map<AbstractVTLFunction.Argument, Integer> positions, VTLObject<?>[] values) {
+        this.arguments = null;
+        this.positions = positions;
+        this.values = values;
     }
 
     public <T extends VTLObject> T get(AbstractVTLFunction.Argument<T> argumentReference) {
-        checkArgument(arguments.containsKey(argumentReference));
-        return (T) arguments.get(argumentReference);
+        return (T) lookup(argumentReference);
     }
 
     public <T extends VTLObject> T getNullable(AbstractVTLFunction.Argument<T> argumentReference, T valueIfNull) {
-        checkArgument(arguments.containsKey(argumentReference));
-        T value = (T) arguments.get(argumentReference);
+        T value = (T) lookup(argumentReference);
         return value.get() == null ? valueIfNull : value;
     }
 
-    private static VTLObject checkType(VTLObject value, AbstractVTLFunction.Argument argument) {
+    private VTLObject<?> lookup(AbstractVTLFunction.Argument<?> argumentReference) {
+        if (values != null) {
+            Integer position = positions.get(argumentReference);
+            checkArgument(position != null);
+            return values[position];
+        }
+        checkArgument(arguments.containsKey(argumentReference));
+        return arguments.get(argumentReference);
+    }
+
+    static VTLObject checkType(VTLObject value, AbstractVTLFunction.Argument argument) {
         // TODO: exception type.
         checkArgument(value.get() == null || argument.getVTLType().isAssignableFrom(value.getClass()),
                 WRONG_ARGUMENT_TYPE,
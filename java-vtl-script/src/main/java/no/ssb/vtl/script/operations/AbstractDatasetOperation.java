@@ -21,15 +21,21 @@ package no.ssb.vtl.script.operations;
  */
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
+import no.ssb.vtl.script.VtlConfiguration;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -41,6 +47,7 @@ public abstract class AbstractDatasetOperation implements Dataset {
 
     private final ImmutableList<AbstractDatasetOperation> children;
     private DataStructure cache;
+    private Cost cost;
 
     public AbstractDatasetOperation(Collection<Dataset> children) {
         ImmutableList.Builder<AbstractDatasetOperation> childrenCopy = ImmutableList.builder();
@@ -91,6 +98,133 @@ public abstract class AbstractDatasetOperation implements Dataset {
 
     public abstract Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components);
 
+    /**
+     * Returns the data as a stream of {@link DataPointBatch}.
+     * <p>
+     * The default implementation groups the rows returned by {@link #computeData(Ordering, Filtering, Set)}.
+     * Operations that can work on whole batches override this method.
+     */
+    public Stream<DataPointBatch> computeBatches(Ordering orders, Filtering filtering, Set<String> components) {
+        int batchSize = VtlConfiguration.getConfig().getBatchSize();
+        return DataPointBatch.batch(computeData(orders, filtering, components), getDataStructure(), batchSize);
+    }
+
+    /**
+     * Returns the names of the components of the child this operation reads to compute the
+     * given components.
+     * <p>
+     * The default implementation requires all the components of the child. Operations that only
+     * read a subset override this method.
+     */
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        return child.getDataStructure().keySet();
+    }
+
+    /**
+     * Returns the components to request from a child.
+     * <p>
+     * The result contains the {@link #computeRequiredComponents(Dataset, Set) required components} for the
+     * requested components, ordering and filtering of this operation, the identifiers of the child and the
+     * columns the child uses to order and filter its data.
+     *
+     * @param child          the child dataset
+     * @param components     the components requested from this operation
+     * @param ordering       the ordering requested from this operation
+     * @param filtering      the filtering requested from this operation
+     * @param childOrdering  the ordering requested from the child
+     * @param childFiltering the filtering requested from the child
+     */
+    protected final Set<String> computeChildComponents(Dataset child, Set<String> components,
+                                                       OrderingSpecification ordering,
+                                                       FilteringSpecification filtering,
+                                                       OrderingSpecification childOrdering,
+                                                       FilteringSpecification childFiltering) {
+        DataStructure structure = child.getDataStructure();
+        ImmutableSet.Builder<String> childComponents = ImmutableSet.builder();
+        Set<String> requested = withOrderingAndFiltering(components, ordering, filtering);
+        childComponents.addAll(computeRequiredComponents(child, requested));
+        structure.forEach((name, component) -> {
+            if (component.isIdentifier()) {
+                childComponents.add(name);
+            }
+        });
+        childComponents.addAll(childOrdering.columns());
+        addFilteringColumns(childFiltering, childComponents);
+        return Sets.intersection(childComponents.build(), structure.keySet()).immutableCopy();
+    }
+
+    /**
+     * Adds the columns the ordering and the filtering read to the components.
+     */
+    protected static Set<String> withOrderingAndFiltering(Set<String> components, OrderingSpecification ordering,
+                                                          FilteringSpecification filtering) {
+        ImmutableSet.Builder<String> result = ImmutableSet.builder();
+        result.addAll(components);
+        result.addAll(ordering.columns());
+        addFilteringColumns(filtering, result);
+        return result.build();
+    }
+
+    private static void addFilteringColumns(FilteringSpecification filtering, ImmutableSet.Builder<String> columns) {
+        switch (filtering.getOperator()) {
+            case TRUE:
+                return;
+            case AND:
+            case OR:
+                for (FilteringSpecification operand : filtering.getOperands()) {
+                    addFilteringColumns(operand, columns);
+                }
+                return;
+            default:
+                if (filtering.getColumn() != null) {
+                    columns.add(filtering.getColumn());
+                }
+        }
+    }
+
+    /**
+     * Plans the execution of this operation and its children.
+     * <p>
+     * The children are planned first, then {@link #computeCost(List)} estimates the cost of this operation
+     * and chooses its strategy. The plan is computed once; operations that were not planned use their
+     * default strategy.
+     *
+     * @return the estimated cost of the plan
+     */
+    public final Cost plan() {
+        if (cost == null) {
+            List<Cost> childCosts = new ArrayList<>(children.size());
+            for (AbstractDatasetOperation child : children) {
+                childCosts.add(child.plan());
+            }
+            cost = computeCost(childCosts);
+        }
+        return cost;
+    }
+
+    /**
+     * Returns the cost of the plan if the operation was {@link #plan() planned}.
+     */
+    public Optional<Cost> getCost() {
+        return Optional.ofNullable(cost);
+    }
+
+    /**
+     * Estimates the cost of this operation given the costs of its children.
+     * <p>
+     * The default implementation adds one unit per row of the children. Operations that can choose between
+     * several strategies override this method, compare their costs and keep the cheapest.
+     *
+     * @param childCosts the costs of the children, in the order of {@link #getChildren()}
+     */
+    protected Cost computeCost(List<Cost> childCosts) {
+        double value = 0;
+        for (Cost childCost : childCosts) {
+            value += childCost.getValue() + childCost.getRowsOrDefault();
+        }
+        return Cost.of(getStatistics().getRowCount(), value);
+    }
+
     /**
      * Returns the required filtering of this operation.
      */
@@ -0,0 +1,103 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Estimated cost of the execution plan of an operation, including the cost of its children.
+ * <p>
+ * The unit is the processing of one row. Sorting n rows costs n log2(n).
+ *
+ * @see AbstractDatasetOperation#plan()
+ */
+public final class Cost {
+
+    /**
+     * Number of rows assumed when the statistics do not contain the row count.
+     */
+    public static final long DEFAULT_ROW_COUNT = 1000;
+
+    private final Long rows;
+    private final double value;
+    private final String strategy;
+
+    private Cost(Long rows, double value, String strategy) {
+        checkArgument(value >= 0, "negative cost");
+        this.rows = rows;
+        this.value = value;
+        this.strategy = strategy;
+    }
+
+    public static Cost of(Optional<Long> rows, double value) {
+        return new Cost(checkNotNull(rows).orElse(null), value, null);
+    }
+
+    public static Cost of(Optional<Long> rows, double value, String strategy) {
+        return new Cost(checkNotNull(rows).orElse(null), value, checkNotNull(strategy));
+    }
+
+    /**
+     * Returns the cost of sorting the given number of rows.
+     */
+    public static double sort(long rows) {
+        return rows < 2 ? rows : rows * (Math.log(rows) / Math.log(2));
+    }
+
+    /**
+     * Returns the estimated number of rows.
+     */
+    public Optional<Long> getRows() {
+        return Optional.ofNullable(rows);
+    }
+
+    /**
+     * Returns the estimated number of rows or {@link #DEFAULT_ROW_COUNT}.
+     */
+    public long getRowsOrDefault() {
+        return rows == null ? DEFAULT_ROW_COUNT : rows;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the description of the strategy the planner chose, if the operation had a choice.
+     */
+    public Optional<String> getStrategy() {
+        return Optional.ofNullable(strategy);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (strategy != null) {
+            builder.append(strategy).append(", ");
+        }
+        builder.append("rows≈").append(rows == null ? "?" : rows.toString());
+        builder.append(", cost≈").append(String.format("%.0f", value));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,196 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static java.lang.String.format;
+
+/**
+ * Compact binary format for {@link DataPoint}s, used to write data to temporary files.
+ * <p>
+ * A row is the number of values followed by each value prefixed with a type tag. Null values
+ * only use their tag. The values that are not of the VTL types are written with Java serialization,
+ * so the rows that contain values that are not {@link Serializable} cannot be written.
+ *
+ * @see #isWritable(DataPoint)
+ */
+public final class DataPointCodec {
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte STRING = 3;
+    private static final byte INSTANT = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte OBJECT = 6;
+
+    // Rough sizes of the objects on the heap, used by estimateSize().
+    private static final int DATAPOINT_OVERHEAD = 40;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int BOXED_VALUE_SIZE = 32;
+    private static final int STRING_OVERHEAD = 56;
+
+    private DataPointCodec() {
+    }
+
+    /**
+     * Returns true if all the values of the data point can be written.
+     */
+    public static boolean isWritable(DataPoint dataPoint) {
+        for (VTLObject vtlObject : dataPoint) {
+            Object value = vtlObject == null ? null : vtlObject.get();
+            if (value != null && !(value instanceof Serializable)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void write(DataOutput output, DataPoint dataPoint) throws IOException {
+        output.writeInt(dataPoint.size());
+        for (VTLObject vtlObject : dataPoint) {
+            Object value = vtlObject == null ? null : vtlObject.get();
+            if (value == null) {
+                output.writeByte(NULL);
+            } else if (value instanceof Long) {
+                output.writeByte(LONG);
+                output.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                output.writeByte(DOUBLE);
+                output.writeDouble((Double) value);
+            } else if (value instanceof String) {
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                output.writeByte(STRING);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            } else if (value instanceof Instant) {
+                output.writeByte(INSTANT);
+                output.writeLong(((Instant) value).getEpochSecond());
+                output.writeInt(((Instant) value).getNano());
+            } else if (value instanceof Boolean) {
+                output.writeByte(BOOLEAN);
+                output.writeBoolean((Boolean) value);
+            } else if (value instanceof Serializable) {
+                byte[] bytes = serialize(value);
+                output.writeByte(OBJECT);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            } else {
+                throw new IllegalArgumentException(format("cannot write %s (%s)", value, value.getClass()));
+            }
+        }
+    }
+
+    public static DataPoint read(DataInput input) throws IOException {
+        int size = input.readInt();
+        DataPoint dataPoint = DataPoint.create(size);
+        for (int i = 0; i < size; i++) {
+            byte tag = input.readByte();
+            switch (tag) {
+                case NULL:
+                    break;
+                case LONG:
+                    dataPoint.set(i, VTLObject.of(input.readLong()));
+                    break;
+                case DOUBLE:
+                    dataPoint.set(i, VTLObject.of(input.readDouble()));
+                    break;
+                case STRING:
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    dataPoint.set(i, VTLObject.of(new String(bytes, StandardCharsets.UTF_8)));
+                    break;
+                case INSTANT:
+                    dataPoint.set(i, VTLObject.of(Instant.ofEpochSecond(input.readLong(), input.readInt())));
+                    break;
+                case BOOLEAN:
+                    dataPoint.set(i, VTLObject.of(input.readBoolean()));
+                    break;
+                case OBJECT:
+                    byte[] serialized = new byte[input.readInt()];
+                    input.readFully(serialized);
+                    dataPoint.set(i, wrap(deserialize(serialized)));
+                    break;
+                default:
+                    throw new IOException(format("unknown type tag %d", tag));
+            }
+        }
+        return dataPoint;
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return input.readObject();
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("could not read serialized value", cnfe);
+        }
+    }
+
+    /**
+     * Wraps the value as it was, {@link VTLObject#of(Object)} would convert or reject it.
+     */
+    private static VTLObject<Object> wrap(Object value) {
+        return new VTLObject<Object>() {
+            @Override
+            public Object get() {
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Returns an estimation of the number of bytes the data point uses on the heap.
+     */
+    public static long estimateSize(DataPoint dataPoint) {
+        long size = DATAPOINT_OVERHEAD;
+        for (VTLObject vtlObject : dataPoint) {
+            size += REFERENCE_SIZE;
+            Object value = vtlObject == null ? null : vtlObject.get();
+            if (value instanceof String) {
+                size += STRING_OVERHEAD + 2L * ((String) value).length();
+            } else if (value != null) {
+                size += BOXED_VALUE_SIZE;
+            }
+        }
+        return size;
+    }
+}
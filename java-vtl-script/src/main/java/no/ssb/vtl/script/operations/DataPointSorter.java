@@ -0,0 +1,333 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.NormalizedKeyEncoder;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sorts streams of {@link DataPoint}s.
+ * <p>
+ * When the ordering is a {@link VtlOrdering} and all its columns can be encoded by a
+ * {@link NormalizedKeyEncoder}, each data point is encoded once and the sort compares the
+ * binary keys. Otherwise, or from the first data point whose values do not match the types of
+ * the columns, the sort compares the data points with the ordering. Since the keys sort like the
+ * ordering, the data points that were already sorted by key do not need to be sorted again.
+ * <p>
+ * The sort is external: when the estimated size of the buffered data points exceeds the
+ * {@link VtlConfiguration#getSortMemoryBudget() memory budget}, the buffer is sorted and written to a
+ * temporary file using the {@link DataPointCodec} format. The runs are then merged back. The temporary
+ * files are deleted when they are read or when the stream is closed. The data points that the codec
+ * cannot write stay in memory as sorted runs of their own.
+ */
+public final class DataPointSorter implements AutoCloseable {
+
+    // Key array and entry objects.
+    private static final int ENTRY_OVERHEAD = 48;
+
+    private final Ordering ordering;
+    private final long memoryBudget;
+    private final Comparator<byte[]> keyComparator = NormalizedKeyEncoder.keyComparator();
+    private final List<Run> runs = new ArrayList<>();
+
+    // Null when the data points are compared with the ordering.
+    private NormalizedKeyEncoder encoder;
+
+    private DataPointSorter(Ordering ordering, DataStructure structure, long memoryBudget) {
+        checkArgument(memoryBudget > 0, "memory budget must be positive");
+        if (ordering instanceof VtlOrdering && NormalizedKeyEncoder.isSupported(ordering, structure)) {
+            this.encoder = new NormalizedKeyEncoder(ordering, structure);
+        }
+        this.ordering = ordering;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns a lazy stream with the data points sorted by the ordering. The sort is stable.
+     */
+    public static Stream<DataPoint> sort(Stream<DataPoint> stream, Ordering ordering, DataStructure structure) {
+        return sort(stream, ordering, structure, VtlConfiguration.getConfig().getSortMemoryBudget());
+    }
+
+    @VisibleForTesting
+    static Stream<DataPoint> sort(Stream<DataPoint> stream, Ordering ordering, DataStructure structure,
+                                  long memoryBudget) {
+        checkNotNull(stream);
+        checkNotNull(ordering);
+        checkNotNull(structure);
+        DataPointSorter sorter = new DataPointSorter(ordering, structure, memoryBudget);
+        return StreamSupport.stream(
+                () -> sorter.sort(stream.iterator()),
+                Spliterator.ORDERED,
+                false
+        ).onClose(stream::close).onClose(sorter::close);
+    }
+
+    private Spliterator<DataPoint> sort(Iterator<DataPoint> dataPoints) {
+        List<Entry> buffer = new ArrayList<>();
+        long bufferSize = 0;
+        long sequence = 0;
+        while (dataPoints.hasNext()) {
+            DataPoint dataPoint = dataPoints.next();
+            byte[] key = encode(dataPoint);
+            buffer.add(new Entry(key, dataPoint, sequence++));
+            bufferSize += ENTRY_OVERHEAD + (key == null ? 0 : key.length) + DataPointCodec.estimateSize(dataPoint);
+            if (bufferSize > memoryBudget) {
+                spill(buffer);
+                buffer.clear();
+                bufferSize = 0;
+            }
+        }
+
+        if (runs.isEmpty()) {
+            buffer.sort(this::compare);
+            List<DataPoint> sorted = new ArrayList<>(buffer.size());
+            for (Entry entry : buffer) {
+                sorted.add(entry.dataPoint);
+            }
+            return sorted.spliterator();
+        }
+
+        if (!buffer.isEmpty()) {
+            spill(buffer);
+        }
+        return Spliterators.spliteratorUnknownSize(new MergeIterator(), Spliterator.ORDERED);
+    }
+
+    /**
+     * Returns the key of the data point or null if the data points are compared with the ordering.
+     */
+    private byte[] encode(DataPoint dataPoint) {
+        if (encoder == null) {
+            return null;
+        }
+        try {
+            return encoder.encode(dataPoint);
+        } catch (IllegalArgumentException iae) {
+            // A value does not match the type of its column.
+            encoder = null;
+            return null;
+        }
+    }
+
+    private int compare(Entry left, Entry right) {
+        if (encoder == null) {
+            return ordering.compare(left.dataPoint, right.dataPoint);
+        }
+        return keyComparator.compare(left.key, right.key);
+    }
+
+    /**
+     * Sorts the buffer and writes it to a new run. The entries that cannot be written are kept in
+     * a run in memory.
+     */
+    private void spill(List<Entry> buffer) {
+        buffer.sort(this::compare);
+        List<Entry> writable = new ArrayList<>(buffer.size());
+        List<Entry> unwritable = new ArrayList<>();
+        for (Entry entry : buffer) {
+            if (DataPointCodec.isWritable(entry.dataPoint)) {
+                writable.add(entry);
+            } else {
+                unwritable.add(entry);
+            }
+        }
+        if (!unwritable.isEmpty()) {
+            runs.add(Run.inMemory(unwritable));
+        }
+        if (writable.isEmpty()) {
+            return;
+        }
+        try {
+            Path file = Files.createTempFile("vtl-sort-", ".run");
+            runs.add(Run.inFile(file, writable.size()));
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file)))) {
+                for (Entry entry : writable) {
+                    if (encoder == null) {
+                        output.writeInt(-1);
+                    } else {
+                        output.writeInt(entry.key.length);
+                        output.write(entry.key);
+                    }
+                    output.writeLong(entry.sequence);
+                    DataPointCodec.write(output, entry.dataPoint);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("could not write sorted run", ioe);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Run run : runs) {
+            run.close();
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] key;
+        private final DataPoint dataPoint;
+        // Position in the input, used to keep the sort stable.
+        private final long sequence;
+
+        private Entry(byte[] key, DataPoint dataPoint, long sequence) {
+            this.key = key;
+            this.dataPoint = dataPoint;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A sorted file, or the sorted entries that could not be written to a file.
+     */
+    private static final class Run {
+
+        private final Path file;
+        private final Iterator<Entry> entries;
+        private int remaining;
+        private DataInputStream input;
+        private Entry current;
+
+        private Run(Path file, Iterator<Entry> entries, int size) {
+            this.file = file;
+            this.entries = entries;
+            this.remaining = size;
+        }
+
+        private static Run inFile(Path file, int size) {
+            return new Run(file, null, size);
+        }
+
+        private static Run inMemory(List<Entry> entries) {
+            return new Run(null, entries.iterator(), entries.size());
+        }
+
+        /**
+         * Reads the next entry, returns false and deletes the file if the run is exhausted.
+         */
+        private boolean advance() {
+            try {
+                if (remaining == 0) {
+                    close();
+                    return false;
+                }
+                if (file == null) {
+                    current = entries.next();
+                    remaining--;
+                    return true;
+                }
+                if (input == null) {
+                    input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+                }
+                int length = input.readInt();
+                byte[] key = null;
+                if (length >= 0) {
+                    key = new byte[length];
+                    input.readFully(key);
+                }
+                long sequence = input.readLong();
+                current = new Entry(key, DataPointCodec.read(input), sequence);
+                remaining--;
+                return true;
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("could not read sorted run", ioe);
+            }
+        }
+
+        private void close() {
+            current = null;
+            remaining = 0;
+            try {
+                if (input != null) {
+                    input.close();
+                }
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("could not delete sorted run", ioe);
+            }
+        }
+    }
+
+    /**
+     * K-way merge of the runs.
+     */
+    private final class MergeIterator extends AbstractIterator<DataPoint> {
+
+        private final PriorityQueue<Run> queue;
+
+        private MergeIterator() {
+            this.queue = new PriorityQueue<>(Math.max(1, runs.size()), (left, right) -> {
+                int result = DataPointSorter.this.compare(left.current, right.current);
+                return result != 0 ? result : Long.compare(left.current.sequence, right.current.sequence);
+            });
+            for (Run run : runs) {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        @Override
+        protected DataPoint computeNext() {
+            Run run = queue.poll();
+            if (run == null) {
+                return endOfData();
+            }
+            DataPoint dataPoint = run.current.dataPoint;
+            if (run.advance()) {
+                queue.add(run);
+            }
+            return dataPoint;
+        }
+    }
+}
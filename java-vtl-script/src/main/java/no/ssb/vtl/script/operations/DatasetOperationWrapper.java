@@ -24,12 +24,14 @@ import com.google.common.base.MoreObjects;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -64,7 +66,8 @@ public class DatasetOperationWrapper extends AbstractDatasetOperation {
      * Sorts and filters the stream if the underlying dataset does not support it.
      */
     private Stream<DataPoint> ensureSortedFilteredStream(Ordering orders, Filtering filtering, Set<String> components) {
-        Optional<Stream<DataPoint>> sorted = dataset.getData(orders, filtering, components);
+        Optional<Stream<DataPoint>> sorted = dataset.getData(
+                orders, filtering, withOrderingAndFiltering(components, orders, filtering));
         if (sorted.isPresent()) {
             return new VtlStream(
                     this, sorted.get(), Collections.emptyList(), orders, filtering, orders, Filtering.ALL);
@@ -108,4 +111,23 @@ public class DatasetOperationWrapper extends AbstractDatasetOperation {
     public Optional<Long> getSize() {
         return dataset.getSize();
     }
+
+    @Override
+    public DatasetStatistics getStatistics() {
+        // External implementations might not return anything.
+        DatasetStatistics statistics = dataset.getStatistics();
+        return statistics != null ? statistics : DatasetStatistics.unknown();
+    }
+
+    /**
+     * Reading the dataset costs one unit per row.
+     */
+    @Override
+    protected Cost computeCost(List<Cost> childCosts) {
+        if (dataset instanceof AbstractDatasetOperation) {
+            return ((AbstractDatasetOperation) dataset).plan();
+        }
+        Optional<Long> rows = getStatistics().getRowCount();
+        return Cost.of(rows, rows.orElse(Cost.DEFAULT_ROW_COUNT));
+    }
 }
@@ -24,11 +24,13 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.netflix.spectator.api.Clock;
 import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Gauge;
 import com.netflix.spectator.api.Registry;
 import com.netflix.spectator.api.Spectator;
 import com.netflix.spectator.api.Tag;
 import com.netflix.spectator.api.Timer;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointPredicates;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
@@ -190,6 +192,25 @@ public class VtlStream extends ForwardingStream<DataPoint> {
         }, 0, false).onClose(stream::close);
     }
 
+    /**
+     * Returns true if a stream with the actual ordering and filtering needs to be post
+     * filtered or sorted to satisfy the requested ordering and filtering.
+     */
+    public static boolean requiresPostProcessing(Ordering requestedOrdering, Filtering requestedFiltering,
+                                                 Ordering actualOrdering, Filtering actualFiltering) {
+        return requiresPostFilter(requestedFiltering, actualFiltering)
+                || requiresPostSort(requestedOrdering, actualOrdering);
+    }
+
+    private static boolean requiresPostFilter(Filtering requestedFiltering, Filtering actualFiltering) {
+        return requestedFiltering.getOperator() != FilteringSpecification.Operator.TRUE
+                && !requestedFiltering.equals(actualFiltering);
+    }
+
+    private static boolean requiresPostSort(Ordering requestedOrdering, Ordering actualOrdering) {
+        return VtlConfiguration.getConfig().isForceSortEnabled() || !requestedOrdering.equals(actualOrdering);
+    }
+
     Stream<DataPoint> decorateStream(Stream<DataPoint> stream) {
 
         VtlConfiguration configuration = VtlConfiguration.getConfig();
@@ -201,9 +222,8 @@ public class VtlStream extends ForwardingStream<DataPoint> {
 
 
         // Post filter
-        if (requestedFiltering.getOperator() != FilteringSpecification.Operator.TRUE
-                && !requestedFiltering.equals(actualFiltering)) {
-            stream = stream.filter(requestedFiltering);
+        if (requiresPostFilter(requestedFiltering, actualFiltering)) {
+            stream = stream.filter(DataPointPredicates.compile(requestedFiltering, operation.getDataStructure()));
             if (configuration.isProfilingEnabled()) {
                 stream = measureStream(
                         stream,
@@ -214,8 +234,8 @@ public class VtlStream extends ForwardingStream<DataPoint> {
         }
 
         // Post ordering
-        if (configuration.isForceSortEnabled() || !requestedOrdering.equals(actualOrdering)) {
-            stream = stream.sorted(requestedOrdering);
+        if (requiresPostSort(requestedOrdering, actualOrdering)) {
+            stream = DataPointSorter.sort(stream, requestedOrdering, operation.getDataStructure());
             if (configuration.isProfilingEnabled()) {
                 stream = measureStartStream(
                         stream,
@@ -296,6 +316,9 @@ public class VtlStream extends ForwardingStream<DataPoint> {
 
         String result = start + opType;
         result = result + prefix + V_BAR + opString;
+        if (operation.getCost().isPresent()) {
+            result = result + prefix + V_BAR + String.format("  plan    : %s\n", operation.getCost().get());
+        }
         result = result + prefix + V_BAR + filter;
         result = result + prefix + V_BAR + aFilter;
         result = result + prefix + V_BAR + order;
@@ -324,6 +347,7 @@ public class VtlStream extends ForwardingStream<DataPoint> {
      * Time spent post ordering.
      * Cell count.
      * Row count.
+     * Largest number of rows with the same key buffered by a join, and number of those rows written to disk.
      */
     public class Statistics {
 
@@ -333,6 +357,8 @@ public class VtlStream extends ForwardingStream<DataPoint> {
         private final Timer time;
         private final Timer sortTime;
         private final Timer filterTime;
+        private final Gauge joinBuffer;
+        private final Counter joinBufferSpill;
 
         private Statistics(VtlStream stream, Registry registry) {
             List<Tag> tags = Arrays.asList(
@@ -345,9 +371,29 @@ public class VtlStream extends ForwardingStream<DataPoint> {
             time = registry.timer("time", tags);
             filterTime = registry.timer("filter", tags);
             sortTime = registry.timer("sort", tags);
+            joinBuffer = registry.maxGauge("joinBuffer", tags);
+            joinBufferSpill = registry.counter("joinBufferSpill", tags);
             this.registry = registry;
         }
 
+        /**
+         * Records the size of a group of rows with the same key buffered by a join.
+         *
+         * @see no.ssb.vtl.script.operations.join.JoinBuffer.Listener
+         */
+        public void recordJoinBuffer(int rows, int spilledRows) {
+            joinBuffer.set(rows);
+            joinBufferSpill.increment(spilledRows);
+        }
+
+        public Gauge getJoinBuffer() {
+            return joinBuffer;
+        }
+
+        public Counter getJoinBufferSpill() {
+            return joinBufferSpill;
+        }
+
         public Timer getSortTime() {
             return sortTime;
         }
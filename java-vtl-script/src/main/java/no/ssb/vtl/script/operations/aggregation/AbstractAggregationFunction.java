@@ -20,6 +20,7 @@ package no.ssb.vtl.script.operations.aggregation;
  * =========================LICENSE_END==================================
  */
 
+import no.ssb.vtl.model.ColumnVector;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLTyped;
 
@@ -41,6 +42,11 @@ public abstract class AbstractAggregationFunction<T extends VTLNumber> implement
         return clazz;
     }
 
+    /**
+     * Compute the aggregation on the first size rows of a column.
+     */
+    public abstract VTLNumber apply(ColumnVector column, int size);
+
     /**
      * Compute the type of the resulting component
      */
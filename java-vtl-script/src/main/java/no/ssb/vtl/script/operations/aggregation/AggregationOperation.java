@@ -22,12 +22,15 @@ package no.ssb.vtl.script.operations.aggregation;
 
 import com.codepoetics.protonpack.StreamUtils;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import no.ssb.vtl.model.ColumnStatistics;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
@@ -38,12 +41,16 @@ import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.error.TypeException;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.script.operations.Cost;
 import no.ssb.vtl.script.operations.VtlStream;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +69,12 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
     private final ImmutableList<String> childColumns;
     private final ImmutableList<String> groupByColumns;
 
+    // Rough number of bytes a row uses in the hash table, per column.
+    private static final int HASH_CELL_SIZE = 48;
+
+    // Set by the planner when grouping with a hash table is cheaper than sorting.
+    private boolean hashAggregation;
+
     public AggregationOperation(Dataset child, List<Component> groupBy, List<Component> aggregationComponents, AbstractAggregationFunction<? extends VTLNumber> aggregationFunction) {
         super(child);
         this.groupBy = groupBy;
@@ -211,15 +224,87 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
                 childOperation.getDataStructure()
         );
 
-        Stream<DataPoint> original = childOperation.computeData(groupByOrdering, aggregationFilter, components);
+        Set<String> childComponents = computeChildComponents(
+                childOperation, components, orders, filtering, groupByOrdering, aggregationFilter);
+
+        if (hashAggregation) {
+            return computeHashAggregation(orders, filtering, groupByPredicate, aggregationFilter, childComponents);
+        }
+
+        Stream<DataPoint> original = childOperation.computeData(groupByOrdering, aggregationFilter, childComponents);
 
         // TODO: Move close logic to VtlStream.
-        Stream<DataPoint> stream = StreamUtils.aggregate(original, (previous, current) -> groupByPredicate.compare(previous, current) == 0)
+        Stream<DataPoint> stream = StreamUtils.aggregate(original, groupByPredicate.equivalence())
                 .onClose(original::close).map(this::aggregate);
 
         return new VtlStream(this, stream, original, orders, filtering, groupByOrdering, aggregationFilter);
     }
 
+    /**
+     * Groups the unsorted data of the child in a hash table and sorts the groups.
+     */
+    private Stream<DataPoint> computeHashAggregation(Ordering orders, Filtering filtering,
+                                                     VtlOrdering groupByPredicate, VtlFiltering aggregationFilter,
+                                                     Set<String> childComponents) {
+        int[] groupByIndices = new int[groupByColumns.size()];
+        for (int i = 0; i < groupByIndices.length; i++) {
+            groupByIndices[i] = childColumns.indexOf(groupByColumns.get(i));
+        }
+        VtlOrdering resultOrdering = new VtlOrdering(groupByPredicate.toMap(), getDataStructure());
+
+        Stream<DataPoint> original = getChild().computeData(Ordering.ANY, aggregationFilter, childComponents);
+        Stream<DataPoint> stream = Stream.of(original).flatMap(data -> {
+            Map<List<VTLObject>, List<DataPoint>> groups = new HashMap<>();
+            data.forEach(dataPoint -> {
+                List<VTLObject> key = new ArrayList<>(groupByIndices.length);
+                for (int index : groupByIndices) {
+                    key.add(dataPoint.get(index));
+                }
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(dataPoint);
+            });
+            List<DataPoint> result = new ArrayList<>(groups.size());
+            for (List<DataPoint> group : groups.values()) {
+                result.add(aggregate(group));
+            }
+            result.sort(resultOrdering);
+            return result.stream();
+        }).onClose(original::close);
+
+        return new VtlStream(this, stream, original, orders, filtering, resultOrdering, aggregationFilter);
+    }
+
+    /**
+     * Chooses between sorting the data of the child and grouping it in a hash table.
+     * <p>
+     * Hash aggregation reads the data of the child in any order and only sorts the groups, but it
+     * keeps all the rows in memory. It is chosen when the rows are expected to fit in the
+     * {@link VtlConfiguration#getSortMemoryBudget() memory budget}.
+     */
+    @Override
+    protected Cost computeCost(List<Cost> childCosts) {
+        Cost childCost = childCosts.get(0);
+        long rows = childCost.getRowsOrDefault();
+        long groups = getStatistics().getRowCount().orElse(rows);
+
+        double sortCost = childCost.getValue() + Cost.sort(rows) + rows;
+        double hashCost = childCost.getValue() + rows + Cost.sort(groups);
+        long memory = rows * HASH_CELL_SIZE * Math.max(childColumns.size(), 1);
+        hashAggregation = childCost.getRows().isPresent() && hashCost < sortCost
+                && memory <= VtlConfiguration.getConfig().getSortMemoryBudget();
+
+        return hashAggregation
+                ? Cost.of(getStatistics().getRowCount(), hashCost, "hash aggregation")
+                : Cost.of(getStatistics().getRowCount(), sortCost, "sort aggregation");
+    }
+
+    /**
+     * Only the group by columns and the aggregated columns are read.
+     */
+    @Override
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        return ImmutableSet.<String>builder().addAll(groupByColumns).addAll(aggregateColumns).build();
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         return getChild().getDistinctValuesCount().map(distinct ->
@@ -232,4 +317,32 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
         //
         return Optional.empty();
     }
+
+    /**
+     * Estimates the number of groups with the product of the distinct counts of the group by columns,
+     * bounded by the number of rows of the child.
+     */
+    @Override
+    public DatasetStatistics getStatistics() {
+        DatasetStatistics childStatistics = getChild().getStatistics();
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        Optional<Long> groups = Optional.of(1L);
+        for (String column : groupByColumns) {
+            ColumnStatistics statistics = childStatistics.getColumn(column);
+            columns.put(column, statistics);
+            Optional<Long> distinct = statistics.getDistinctCount()
+                    .map(count -> statistics.getNullCount().orElse(0L) > 0 ? count + 1 : count);
+            groups = groups.flatMap(product -> distinct.map(count -> multiply(product, count)));
+        }
+        Optional<Long> childRows = childStatistics.getRowCount();
+        Optional<Long> rows = childRows.isPresent() && groups.isPresent()
+                ? Optional.of(Math.min(childRows.get(), groups.get()))
+                : (groupByColumns.isEmpty() ? groups : childRows);
+        return DatasetStatistics.of(rows, columns);
+    }
+
+    private static long multiply(long a, long b) {
+        long result = a * b;
+        return a != 0 && result / a != b ? Long.MAX_VALUE : result;
+    }
 }
@@ -24,17 +24,21 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.script.operations.VtlStream;
 
@@ -89,6 +93,14 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
         return new VtlOrdering(ordering, getChild().getDataStructure());
     }
 
+    /**
+     * The names of the kept components are the same in the child.
+     */
+    @Override
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        return Sets.intersection(components, child.getDataStructure().keySet());
+    }
+
     @Override
     public String toString() {
         MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
@@ -103,10 +115,17 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
 
         VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
         VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
 
-        final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
+        final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, childComponents);
         Stream<DataPoint> stream = original;
-        if (!componentsToRemove.isEmpty()) {
+        if (VtlConfiguration.getConfig().isBatchExecutionEnabled()) {
+            int batchSize = VtlConfiguration.getConfig().getBatchSize();
+            stream = DataPointBatch.unbatch(projectBatches(
+                    DataPointBatch.batch(original, getChild().getDataStructure(), batchSize)
+            ));
+        } else if (!componentsToRemove.isEmpty()) {
             final ImmutableSet<Integer> indexes = computeIndexes(componentsToRemove);
 
             stream = stream.peek(
@@ -127,6 +146,29 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
 
     }
 
+    @Override
+    public Stream<DataPointBatch> computeBatches(Ordering ordering, Filtering filtering, Set<String> components) {
+        VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
+        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
+        if (VtlStream.requiresPostProcessing(ordering, filtering, childOrdering, childFiltering)) {
+            return super.computeBatches(ordering, filtering, components);
+        }
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
+        return projectBatches(getChild().computeBatches(childOrdering, childFiltering, childComponents));
+    }
+
+    /**
+     * Keeps the column vectors of the retained components. The vectors are not copied.
+     */
+    private Stream<DataPointBatch> projectBatches(Stream<DataPointBatch> batches) {
+        List<Component> childComponents = Lists.newArrayList(getChild().getDataStructure().values());
+        int[] indices = getDataStructure().values().stream()
+                .mapToInt(childComponents::indexOf)
+                .toArray();
+        return batches.map(batch -> batch.project(indices));
+    }
+
     /**
      * Find the index of the component in the child data structure.
      */
@@ -165,4 +207,14 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return getChild().getSize();
     }
+
+    @Override
+    public DatasetStatistics getStatistics() {
+        DatasetStatistics childStatistics = getChild().getStatistics();
+        Set<String> columns = getDataStructure().keySet();
+        return DatasetStatistics.of(
+                childStatistics.getRowCount(),
+                Maps.filterKeys(childStatistics.getColumns(), columns::contains)
+        );
+    }
 }
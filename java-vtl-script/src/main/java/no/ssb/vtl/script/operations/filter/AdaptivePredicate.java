@@ -0,0 +1,204 @@
+package no.ssb.vtl.script.operations.filter;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.script.expressions.CompiledExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.operations.join.ComponentBindings;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Filter predicate that evaluates the terms of a conjunction (or a disjunction) in the order that
+ * rejects (or accepts) the rows the fastest.
+ * <p>
+ * The terms are the operands of the top level and (or or) operators of the predicate. Each term is
+ * compiled separately and the predicate counts, for each term, how often it is evaluated, how often it
+ * decides the result (a term that is not true rejects the row of a conjunction, a true term accepts the
+ * row of a disjunction) and samples the time it takes. Every {@link #REORDER_INTERVAL} rows the terms are
+ * sorted by their average cost divided by their decision rate and the counters are halved so that the
+ * order follows the changes of the data.
+ * <p>
+ * Since filters only keep the rows for which the predicate is true, stopping at the first deciding term
+ * gives the same rows as the three-valued evaluation of the whole predicate.
+ * <p>
+ * Instances are not thread safe; create one for each stream.
+ */
+public final class AdaptivePredicate implements Predicate<DataPoint> {
+
+    static final int REORDER_INTERVAL = 1024;
+    private static final int SAMPLE_MASK = 7;
+
+    private final boolean conjunction;
+    private final CompiledExpression[] terms;
+    private final Consumer<int[]> orderListener;
+
+    private final int[] order;
+    private final long[] evaluations;
+    private final long[] decisions;
+    private final long[] samples;
+    private final long[] sampledNanos;
+    private int rows = 0;
+
+    private AdaptivePredicate(boolean conjunction, CompiledExpression[] terms, int[] order,
+                              Consumer<int[]> orderListener) {
+        this.conjunction = conjunction;
+        this.terms = terms;
+        this.order = order;
+        this.orderListener = orderListener;
+        this.evaluations = new long[terms.length];
+        this.decisions = new long[terms.length];
+        this.samples = new long[terms.length];
+        this.sampledNanos = new long[terms.length];
+    }
+
+    /**
+     * Returns the terms of the predicate; the operands of its top level and operators, or of its top
+     * level or operators. A predicate that is neither an and nor an or has one term.
+     */
+    public static List<VTLExpression> terms(VTLExpression predicate) {
+        ImmutableList.Builder<VTLExpression> terms = ImmutableList.builder();
+        if (predicate instanceof AndExpression) {
+            flatten(predicate, AndExpression.class, terms);
+        } else if (predicate instanceof OrExpression) {
+            flatten(predicate, OrExpression.class, terms);
+        } else {
+            terms.add(predicate);
+        }
+        return terms.build();
+    }
+
+    private static void flatten(VTLExpression expression, Class<? extends VTLExpression> operator,
+                                ImmutableList.Builder<VTLExpression> terms) {
+        if (operator.isInstance(expression)) {
+            if (expression instanceof AndExpression) {
+                flatten(((AndExpression) expression).getLeftOperand(), operator, terms);
+                flatten(((AndExpression) expression).getRightOperand(), operator, terms);
+            } else {
+                flatten(((OrExpression) expression).getLeftOperand(), operator, terms);
+                flatten(((OrExpression) expression).getRightOperand(), operator, terms);
+            }
+        } else {
+            terms.add(expression);
+        }
+    }
+
+    /**
+     * Compiles the terms of the predicate.
+     *
+     * @param predicate     the predicate, an and or an or expression
+     * @param bindings      the bindings the predicate is resolved with
+     * @param structure     the structure of the data points
+     * @param initialOrder  the order to start with, or null to start with the order of the expression
+     * @param orderListener called with the new order each time the terms are reordered
+     */
+    public static AdaptivePredicate compile(VTLExpression predicate, ComponentBindings bindings,
+                                            DataStructure structure, int[] initialOrder,
+                                            Consumer<int[]> orderListener) {
+        checkArgument(predicate instanceof AndExpression || predicate instanceof OrExpression,
+                "the predicate %s was neither an and nor an or expression", predicate);
+        List<VTLExpression> terms = terms(predicate);
+        CompiledExpression[] compiled = new CompiledExpression[terms.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = CompiledExpression.compile(terms.get(i), bindings, structure);
+        }
+        int[] order;
+        if (initialOrder != null && initialOrder.length == compiled.length) {
+            order = initialOrder.clone();
+        } else {
+            order = IntStream.range(0, compiled.length).toArray();
+        }
+        return new AdaptivePredicate(predicate instanceof AndExpression, compiled, order,
+                checkNotNull(orderListener));
+    }
+
+    @Override
+    public boolean test(DataPoint dataPoint) {
+        boolean sample = (rows & SAMPLE_MASK) == 0;
+        boolean result = conjunction;
+        for (int term : order) {
+            evaluations[term]++;
+            boolean value;
+            if (sample) {
+                long start = System.nanoTime();
+                value = terms[term].test(dataPoint);
+                sampledNanos[term] += System.nanoTime() - start;
+                samples[term]++;
+            } else {
+                value = terms[term].test(dataPoint);
+            }
+            if (value != conjunction) {
+                decisions[term]++;
+                result = value;
+                break;
+            }
+        }
+        if (++rows % REORDER_INTERVAL == 0) {
+            reorder();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the current evaluation order of the terms.
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    private void reorder() {
+        double[] ranks = new double[terms.length];
+        for (int term = 0; term < terms.length; term++) {
+            // Smoothed so that terms that were never evaluated or never decided keep a finite rank.
+            double cost = (sampledNanos[term] + 1.0) / (samples[term] + 1.0);
+            double decisionRate = (decisions[term] + 1.0) / (evaluations[term] + 2.0);
+            ranks[term] = cost / decisionRate;
+
+            evaluations[term] /= 2;
+            decisions[term] /= 2;
+            samples[term] /= 2;
+            sampledNanos[term] /= 2;
+        }
+        Integer[] sorted = Arrays.stream(order).boxed().toArray(Integer[]::new);
+        Arrays.sort(sorted, Comparator.comparingDouble(term -> ranks[term]));
+        boolean changed = false;
+        for (int i = 0; i < order.length; i++) {
+            changed |= order[i] != sorted[i];
+            order[i] = sorted[i];
+        }
+        if (changed) {
+            orderListener.accept(order.clone());
+        }
+    }
+}
@@ -20,28 +20,33 @@ package no.ssb.vtl.script.operations.filter;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.Sets;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
-import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLExpression;
-import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.expressions.BatchExpression;
+import no.ssb.vtl.script.expressions.CompiledExpression;
+import no.ssb.vtl.script.expressions.ReferencedComponents;
 import no.ssb.vtl.script.expressions.VtlFilteringConverter;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.script.operations.VtlStream;
 import no.ssb.vtl.script.operations.join.ComponentBindings;
-import no.ssb.vtl.script.operations.join.DataPointBindings;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -50,6 +55,7 @@ public class FilterOperation extends AbstractUnaryDatasetOperation {
 
     private final VTLExpression predicate;
     private final ComponentBindings componentBindings;
+    private volatile int[] learnedOrder;
 
     public FilterOperation(Dataset dataset, VTLExpression predicate, ComponentBindings componentBindings) {
         super(checkNotNull(dataset, "the dataset was null"));
@@ -63,19 +69,22 @@ public class FilterOperation extends AbstractUnaryDatasetOperation {
 
     @Override
     public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
-        DataPointBindings dataPointBindings = new DataPointBindings(componentBindings, getDataStructure());
-
         VtlOrdering childrenOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
         VtlFiltering childrenFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
-
-        Stream<DataPoint> original = getChild().computeData(childrenOrdering, childrenFiltering, components);
-
-        Stream<DataPoint> data = original.map(dataPointBindings::setDataPoint)
-                .filter(bindings -> {
-                    VTLObject resolved = predicate.resolve(dataPointBindings);
-                    return resolved.get() == null ? false : VTLBoolean.of((Boolean) resolved.get()).get();
-                })
-                .map(DataPointBindings::getDataPoint);
+        Set<String> childrenComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childrenOrdering, childrenFiltering);
+
+        Stream<DataPoint> original = getChild().computeData(childrenOrdering, childrenFiltering, childrenComponents);
+
+        Stream<DataPoint> data;
+        if (VtlConfiguration.getConfig().isBatchExecutionEnabled()) {
+            int batchSize = VtlConfiguration.getConfig().getBatchSize();
+            data = DataPointBatch.unbatch(filterBatches(
+                    DataPointBatch.batch(original, getDataStructure(), batchSize)
+            ));
+        } else {
+            data = original.filter(compilePredicate());
+        }
 
         return new VtlStream(this, data,
                 original,
@@ -86,6 +95,39 @@ public class FilterOperation extends AbstractUnaryDatasetOperation {
         );
     }
 
+    @Override
+    public Stream<DataPointBatch> computeBatches(Ordering ordering, Filtering filtering, Set<String> components) {
+        VtlOrdering childrenOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
+        VtlFiltering childrenFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
+        Set<String> childrenComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childrenOrdering, childrenFiltering);
+        return filterBatches(getChild().computeBatches(childrenOrdering, childrenFiltering, childrenComponents));
+    }
+
+    /**
+     * Evaluates the predicate on the columns of the child batches and keeps the selected rows.
+     */
+    private Stream<DataPointBatch> filterBatches(Stream<DataPointBatch> batches) {
+        BatchExpression compiledPredicate = BatchExpression.compile(predicate, componentBindings, getDataStructure());
+        return batches.map(batch -> batch.select(compiledPredicate.test(batch)));
+    }
+
+    /**
+     * Compiles the predicate for a new stream. With adaptive filters enabled, predicates with several
+     * terms start with the order the previous streams of this operation learned.
+     *
+     * @see VtlConfiguration#setAdaptiveFilters(boolean)
+     */
+    private Predicate<DataPoint> compilePredicate() {
+        DataStructure structure = getDataStructure();
+        if (VtlConfiguration.getConfig().isAdaptiveFiltersEnabled()
+                && AdaptivePredicate.terms(predicate).size() > 1) {
+            return AdaptivePredicate.compile(predicate, componentBindings, structure, learnedOrder,
+                    order -> learnedOrder = order);
+        }
+        return CompiledExpression.compile(predicate, componentBindings, structure)::test;
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         return Optional.empty();
@@ -96,6 +138,32 @@ public class FilterOperation extends AbstractUnaryDatasetOperation {
         return Optional.empty();
     }
 
+    /**
+     * Scales the statistics of the child with the estimated selectivity of the predicate.
+     */
+    @Override
+    public DatasetStatistics getStatistics() {
+        DatasetStatistics childStatistics = getChild().getStatistics();
+        double selectivity;
+        try {
+            selectivity = childStatistics.estimateSelectivity(VtlFilteringConverter.convert(predicate));
+        } catch (Exception e) {
+            selectivity = DatasetStatistics.DEFAULT_SELECTIVITY;
+        }
+        return childStatistics.scale(selectivity);
+    }
+
+    /**
+     * The filter reads the requested components and the components referenced by the predicate.
+     */
+    @Override
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        DataStructure structure = child.getDataStructure();
+        return ReferencedComponents.findNames(predicate, componentBindings, structure)
+                .<Set<String>>map(referenced -> Sets.union(components, referenced))
+                .orElseGet(structure::keySet);
+    }
+
     /**
      * In the case of the filter operation, any filter than was received is combined with the
      * actual expression filter.
@@ -27,9 +27,13 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import no.ssb.vtl.model.ColumnStatistics;
+import no.ssb.vtl.model.ColumnVector;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
@@ -37,10 +41,12 @@ import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.script.operations.VtlStream;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -220,6 +226,31 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
 
     }
 
+    /**
+     * Fold a batch, column by column.
+     */
+    private DataPointBatch fold(DataPointBatch batch) {
+        DataPointBatch folded = DataPointBatch.create(getDataStructure(), batch.size() * elementIndices.length);
+        ColumnVector dimensionColumn = folded.getColumn(dimensionIndex);
+        ColumnVector measureColumn = folded.getColumn(measureIndex);
+        for (int row = 0; row < batch.size(); row++) {
+            for (int i = 0; i < elementIndices.length; i++) {
+                ColumnVector elementColumn = batch.getColumn(elementIndices[i]);
+                if (elementColumn.isNull(row)) {
+                    continue;
+                }
+
+                int foldedRow = folded.appendRow();
+                for (int j = 0; j < copyIndices.length; j++) {
+                    folded.getColumn(j).copy(foldedRow, batch.getColumn(copyIndices[j]), row);
+                }
+                dimensionColumn.set(foldedRow, VTLObject.of(elementNames[i]));
+                measureColumn.copy(foldedRow, elementColumn, row);
+            }
+        }
+        return folded;
+    }
+
     @Override
     public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
         // To initialize the indices.
@@ -227,13 +258,47 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
 
         VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
         VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
-
-        final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
-        Stream<DataPoint> stream = original.flatMap(this::fold);
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
+
+        final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, childComponents);
+
+        Stream<DataPoint> stream;
+        if (VtlConfiguration.getConfig().isBatchExecutionEnabled()) {
+            int batchSize = VtlConfiguration.getConfig().getBatchSize();
+            stream = DataPointBatch.unbatch(
+                    DataPointBatch.batch(original, getChild().getDataStructure(), batchSize).map(this::fold)
+            );
+        } else {
+            stream = original.flatMap(this::fold);
+        }
 
         return new VtlStream(this, stream, original, ordering, filtering, childOrdering, childFiltering);
     }
 
+    @Override
+    public Stream<DataPointBatch> computeBatches(Ordering ordering, Filtering filtering, Set<String> components) {
+        // To initialize the indices.
+        getDataStructure();
+
+        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
+        VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
+        if (VtlStream.requiresPostProcessing(ordering, filtering, childOrdering, childFiltering)) {
+            return super.computeBatches(ordering, filtering, components);
+        }
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
+        return getChild().computeBatches(childOrdering, childFiltering, childComponents).map(this::fold);
+    }
+
+    /**
+     * The folded elements are always read, the other components keep their name.
+     */
+    @Override
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        return Sets.union(Sets.intersection(components, child.getDataStructure().keySet()), elements);
+    }
+
     @Override
     public FilteringSpecification computeRequiredFiltering(FilteringSpecification filtering) {
         // Transform any filtering referring to the folded columns.
@@ -277,6 +342,33 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
         return getChild().getSize().map(size -> size * elements.size());
     }
 
+    /**
+     * Each row of the child gives one row per element; the measure takes the values of all the elements.
+     */
+    @Override
+    public DatasetStatistics getStatistics() {
+        DatasetStatistics childStatistics = getChild().getStatistics();
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        ColumnStatistics measureStatistics = null;
+        for (Map.Entry<String, ColumnStatistics> entry : childStatistics.getColumns().entrySet()) {
+            if (elements.contains(entry.getKey())) {
+                measureStatistics = measureStatistics == null
+                        ? entry.getValue()
+                        : measureStatistics.union(entry.getValue());
+            } else {
+                columns.put(entry.getKey(), entry.getValue());
+            }
+        }
+        columns.put(dimension, ColumnStatistics.builder()
+                .nullCount(0L)
+                .distinctCount((long) elements.size())
+                .build());
+        if (measureStatistics != null) {
+            columns.put(measure, measureStatistics.toBuilder().histogram(null).build());
+        }
+        return DatasetStatistics.of(childStatistics.getRowCount().map(size -> size * elements.size()), columns);
+    }
+
     @Override
     public String toString() {
         MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
@@ -38,6 +38,7 @@ import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.VTLDataset;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointSorter;
 
 import javax.script.Bindings;
 import javax.script.SimpleBindings;
@@ -51,6 +52,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
 
 import static no.ssb.vtl.model.Ordering.Direction.ANY;
@@ -78,6 +81,8 @@ import static no.ssb.vtl.model.Ordering.Direction.ASC;
  */
 public final class ForeachOperation extends AbstractDatasetOperation {
 
+    private static final Logger logger = Logger.getLogger(ForeachOperation.class.getName());
+
     private final ImmutableMap<String, Dataset> sources;
     private final ImmutableSet<String> identifiers;
     private DataStructure structure;
@@ -90,10 +95,22 @@ public final class ForeachOperation extends AbstractDatasetOperation {
     }
 
     public static Stream<DataPoint> sort(Stream<DataPoint> stream, Comparator<DataPoint> order) {
-        System.out.println("WARN: needed to sort");
+        logger.warning("needed to sort");
         Stopwatch started = Stopwatch.createStarted();
         Stream<DataPoint> sorted = stream.sorted(order);
-        System.out.println("WARN: done sorting: " + started.stop().elapsed(TimeUnit.SECONDS));
+        logger.log(Level.WARNING, "done sorting: {0}", started.stop().elapsed(TimeUnit.SECONDS));
+        return sorted;
+    }
+
+    /**
+     * Sorts the data with a {@link DataPointSorter}, which spills to disk when the data does not fit in
+     * the sort memory budget.
+     */
+    private static Stream<DataPoint> sort(Stream<DataPoint> stream, Ordering order, DataStructure structure) {
+        logger.warning("needed to sort");
+        Stopwatch started = Stopwatch.createStarted();
+        Stream<DataPoint> sorted = DataPointSorter.sort(stream, order, structure);
+        logger.log(Level.WARNING, "done sorting: {0}", started.stop().elapsed(TimeUnit.SECONDS));
         return sorted;
     }
 
@@ -103,7 +120,7 @@ public final class ForeachOperation extends AbstractDatasetOperation {
 
     private Stream<DataPoint> sortIfNeeded(Dataset dataset, Ordering order) {
         Ordering actualOrder = rearrangeOrder(order, dataset.getDataStructure());
-        return dataset.getData(actualOrder).orElseGet(() -> sort(dataset.getData(), actualOrder));
+        return dataset.getData(actualOrder).orElseGet(() -> sort(dataset.getData(), actualOrder, dataset.getDataStructure()));
     }
 
 
@@ -151,7 +168,7 @@ public final class ForeachOperation extends AbstractDatasetOperation {
             }
         });
 
-        return needSort ? stream.sorted(orders) : stream;
+        return needSort ? DataPointSorter.sort(stream, orders, getDataStructure()) : stream;
     }
 
     /**
@@ -253,7 +270,7 @@ public final class ForeachOperation extends AbstractDatasetOperation {
             scope.put(name, VTLDataset.of(dataset));
         }
         Dataset dataset = block.apply(scope).get();
-        return dataset.getData(orders).orElseGet(() -> sort(dataset.getData(), orders)).iterator();
+        return dataset.getData(orders).orElseGet(() -> sort(dataset.getData(), orders, dataset.getDataStructure())).iterator();
     }
 
     private Comparator<DataPointMap.View> createComparator(Ordering orders) {
@@ -41,6 +41,7 @@ import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
+import no.ssb.vtl.model.NumberAccumulator;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VTLObject;
@@ -54,7 +55,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -66,7 +66,6 @@ import java.util.stream.Stream;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.stream.Collectors.toList;
-import static no.ssb.vtl.script.operations.hierarchy.HierarchyAccumulator.sumAccumulatorFor;
 
 public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
@@ -311,12 +310,17 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
         final List<VTLObject> sorted = getGraphValues();
 
-        final Map<Component, HierarchyAccumulator> accumulators = createAccumulatorMap();
+        final Map<Component, SumHierarchyAccumulator> accumulators = createAccumulatorMap();
+        final SumHierarchyAccumulator[] measureAccumulators = accumulators.values()
+                .toArray(new SumHierarchyAccumulator[0]);
+        final int[] measureIndices = computeIndices(structure, accumulators.keySet());
 
-        Stream<DataPoint> sortedData = getChild().computeData(childOrdering, childFiltering, components);
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
+        Stream<DataPoint> sortedData = getChild().computeData(childOrdering, childFiltering, childComponents);
         Stream<ComposedDataPoint> streamToAggregate = StreamUtils.aggregate(
                 sortedData,
-                (prev, current) -> childPredicate.compare(prev, current) == 0
+                childPredicate.equivalence()
         ).onClose(sortedData::close).map(dataPoints -> {
 
             // Organize the data points in "buckets" for each component. Here we add "sign" information
@@ -364,7 +368,7 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
         Stream<DataPoint> data = StreamUtils.aggregate(
                 streamToAggregate,
-                (dataPoint, dataPoint2) -> childOrdering.compare(dataPoint, dataPoint2) == 0
+                childOrdering.equivalence()
         ).onClose(streamToAggregate::close).map(dataPoints -> {
 
             DataPoint aggregate;
@@ -374,24 +378,21 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
                 // Won't fail since we check size.
                 aggregate = DataPoint.create(dataPoints.get(0));
-                Map<Component, VTLObject> result = structure.asMap(aggregate);
 
-                for (Map.Entry<Component, HierarchyAccumulator> entry : accumulators.entrySet()) {
-                    result.put(entry.getKey(), entry.getValue().identity());
+                NumberAccumulator[] sums = new NumberAccumulator[measureAccumulators.length];
+                for (int i = 0; i < measureAccumulators.length; i++) {
+                    sums[i] = measureAccumulators[i].newAccumulator();
                 }
 
-                Iterator<ComposedDataPoint> iterator = dataPoints.iterator();
-                while (iterator.hasNext()) {
-                    ComposedDataPoint composedDataPoint = iterator.next();
-                    Map<Component, VTLObject> next = structure.asMap(composedDataPoint);
-
-                    for (Map.Entry<Component, HierarchyAccumulator> accumulator : accumulators.entrySet()) {
-                        Component component = accumulator.getKey();
-                        VTLObject objectValue = next.get(component);
-                        HierarchyAccumulator value = accumulator.getValue();
-                        result.merge(component, objectValue, value.accumulator(composedDataPoint.getSign()));
+                for (ComposedDataPoint composedDataPoint : dataPoints) {
+                    for (int i = 0; i < measureAccumulators.length; i++) {
+                        VTLObject objectValue = composedDataPoint.get(measureIndices[i]);
+                        measureAccumulators[i].accumulate(sums[i], objectValue, composedDataPoint.getSign());
                     }
+                }
 
+                for (int i = 0; i < measureAccumulators.length; i++) {
+                    aggregate.set(measureIndices[i], sums[i].sum());
                 }
             } else {
                 aggregate = dataPoints.get(0);
@@ -403,17 +404,22 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         return new VtlStream(this, data, sortedData, ordering, filtering, childOrdering, childFiltering);
     }
 
-    private Map<Component, HierarchyAccumulator> createAccumulatorMap() {
+    private Map<Component, SumHierarchyAccumulator> createAccumulatorMap() {
         DataStructure structure = getDataStructure();
-        ImmutableMap.Builder<Component, HierarchyAccumulator> builder = ImmutableMap.builder();
+        ImmutableMap.Builder<Component, SumHierarchyAccumulator> builder = ImmutableMap.builder();
         for (Component component : structure.values()) {
             if (component.isMeasure()) {
-                builder.put(component, sumAccumulatorFor(component.getType()));
+                builder.put(component, new SumHierarchyAccumulator(component.getType()));
             }
         }
         return builder.build();
     }
 
+    private static int[] computeIndices(DataStructure structure, Collection<Component> components) {
+        List<Component> structureComponents = Lists.newArrayList(structure.values());
+        return components.stream().mapToInt(structureComponents::indexOf).toArray();
+    }
+
 
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
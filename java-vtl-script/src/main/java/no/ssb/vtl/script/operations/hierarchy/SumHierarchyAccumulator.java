@@ -21,6 +21,7 @@ package no.ssb.vtl.script.operations.hierarchy;
  */
 
 import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.NumberAccumulator;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 
@@ -52,6 +53,30 @@ public class SumHierarchyAccumulator implements HierarchyAccumulator {
         return VTLNumber.of(identity);
     }
 
+    /**
+     * Creates a mutable accumulator initialized with the identity. Null values are
+     * ignored, as if they were zero.
+     */
+    public NumberAccumulator newAccumulator() {
+        return new NumberAccumulator(identity instanceof Double);
+    }
+
+    /**
+     * Adds or subtracts the value depending on the sign.
+     */
+    public void accumulate(NumberAccumulator accumulator, VTLObject value, Composition sign) {
+        switch (sign) {
+            case UNION:
+                accumulator.add(value);
+                break;
+            case COMPLEMENT:
+                accumulator.subtract(value);
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("unknown sign %s", sign));
+        }
+    }
+
     @Override
     public BiFunction<? super VTLObject, ? super VTLObject, ? extends VTLObject> accumulator(Composition sign) {
         switch (sign) {
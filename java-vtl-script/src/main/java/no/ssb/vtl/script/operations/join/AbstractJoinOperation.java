@@ -25,6 +25,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -32,16 +33,21 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
+import no.ssb.vtl.model.ColumnStatistics;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointPredicates;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.Ordering.Direction;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointSorter;
 
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -49,8 +55,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -355,21 +363,132 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
         return builder.build();
     }
 
+    /**
+     * Returns the data of the dataset in the given order.
+     *
+     * @param components the components requested from the join, including the columns of the ordering
+     *                   and filtering of the join
+     */
     protected Stream<DataPoint> getOrSortData(Dataset dataset, Ordering order, Filtering filtering, Set<String> components) {
         VtlFiltering vtlFiltering = VtlFiltering.using(dataset).transpose(filtering);
+        Set<String> datasetComponents = computeChildComponents(
+                dataset, components, Ordering.ANY, Filtering.ALL, order, vtlFiltering);
         // TODO: Refactor to use AbstractOperation directly.
         if (dataset instanceof AbstractDatasetOperation) {
-            return ((AbstractDatasetOperation) dataset).computeData(new VtlOrdering(order, dataset.getDataStructure()), vtlFiltering, components);
+            return ((AbstractDatasetOperation) dataset).computeData(new VtlOrdering(order, dataset.getDataStructure()), vtlFiltering, datasetComponents);
+        } else if (order.columns().isEmpty()) {
+            DataStructure structure = dataset.getDataStructure();
+            return dataset.getData(order, vtlFiltering, datasetComponents).orElseGet(
+                    () -> dataset.getData().filter(DataPointPredicates.compile(vtlFiltering, structure))
+            );
         } else {
-            //throw new UnsupportedOperationException("Parent should sort.");
-            Optional<Stream<DataPoint>> sortedData = dataset.getData(order, vtlFiltering, components);
+            Optional<Stream<DataPoint>> sortedData = dataset.getData(order, vtlFiltering, datasetComponents);
             if (sortedData.isPresent()) {
                 return sortedData.get();
             } else {
-                throw new UnsupportedOperationException("Parent should sort.");
-                //return dataset.getData().sorted(order).filter(filtering);
+                DataStructure structure = dataset.getDataStructure();
+                return DataPointSorter.sort(
+                        dataset.getData().filter(DataPointPredicates.compile(vtlFiltering, structure)),
+                        new VtlOrdering(order, structure),
+                        structure
+                );
+            }
+        }
+    }
+
+    /**
+     * Prepares the data of a dataset of a merge join for splitting.
+     * <p>
+     * When {@link VtlConfiguration#isParallelJoinsEnabled() parallel joins} are enabled, the spliterator of
+     * the data is wrapped in a {@link BatchSpliterator} so that the join can split it even though the
+     * stream of a dataset is usually a sequential pipeline. The operations of the original stream are still
+     * evaluated sequentially.
+     */
+    protected static Stream<DataPoint> splittable(Stream<DataPoint> data) {
+        if (!VtlConfiguration.getConfig().isParallelJoinsEnabled()) {
+            return data;
+        }
+        return StreamSupport.stream(new BatchSpliterator<>(data.spliterator()), true).onClose(data::close);
+    }
+
+    /**
+     * Makes the splits of a merge join use the configuration of the current thread.
+     * <p>
+     * When {@link VtlConfiguration#isParallelJoinsEnabled() parallel joins} are enabled, the splits are
+     * traversed by the worker threads of the parallel stream.
+     */
+    protected static <T> Spliterator<T> configured(Spliterator<T> joined) {
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        if (!configuration.isParallelJoinsEnabled()) {
+            return joined;
+        }
+        return new ConfiguredSpliterator<>(joined, configuration);
+    }
+
+    /**
+     * Chooses the dataset to stream in a hash join.
+     * <p>
+     * A hash join is used when all the datasets but one have at most
+     * {@link VtlConfiguration#getHashJoinThreshold()} rows and the remaining one is larger or of unknown
+     * size; the small datasets are loaded in hash tables and the large one is read without sorting it.
+     *
+     * @param candidates the names of the datasets that can be streamed
+     * @return the name of the dataset to stream, or empty if the datasets should be merged
+     */
+    protected Optional<String> chooseProbe(Set<String> candidates) {
+        long threshold = VtlConfiguration.getConfig().getHashJoinThreshold();
+        if (threshold == 0 || datasets.size() < 2 || commonIdentifiers.isEmpty()) {
+            return Optional.empty();
+        }
+        String probe = null;
+        for (Map.Entry<String, Dataset> entry : datasets.entrySet()) {
+            Optional<Long> rows = entry.getValue().getStatistics().getRowCount();
+            if (!rows.isPresent() || rows.get() > threshold) {
+                if (probe != null) {
+                    return Optional.empty();
+                }
+                probe = entry.getKey();
+            }
+        }
+        return probe != null && candidates.contains(probe) ? Optional.of(probe) : Optional.empty();
+    }
+
+    /**
+     * Returns the order in which the dataset streamed by a hash join should be read so that the result
+     * is in the requested order, or {@link Ordering#ANY} if the requested order uses columns of the other
+     * datasets.
+     */
+    protected Ordering computeProbeOrder(String name, Ordering requested) {
+        if (requested.columns().isEmpty()) {
+            return Ordering.ANY;
+        }
+        Map<String, String> mapping = columnMapping.column(name);
+        for (String column : requested.columns()) {
+            if (!column.equals(mapping.get(column))) {
+                return Ordering.ANY;
+            }
+        }
+        return adjustOrderForStructure(requested, datasets.get(name).getDataStructure());
+    }
+
+    /**
+     * Maps the requested components to the names they have in the dataset.
+     */
+    @Override
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        for (Map.Entry<String, Dataset> entry : datasets.entrySet()) {
+            if (entry.getValue() == child) {
+                Map<String, String> mapping = columnMapping.column(entry.getKey());
+                ImmutableSet.Builder<String> required = ImmutableSet.builder();
+                for (String component : components) {
+                    if (mapping.containsKey(component)) {
+                        required.add(mapping.get(component));
+                    }
+                }
+                return required.build();
             }
         }
+        return child.getDataStructure().keySet();
     }
 
     /**
@@ -405,4 +524,89 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
             return Optional.empty();
         }
     }
+
+    /**
+     * Joins the statistics of the datasets one after the other, estimating the size of each step
+     * with {@link #estimateJoinSize(long, long, Optional)}.
+     */
+    @Override
+    public DatasetStatistics getStatistics() {
+        if (getChildren().size() == 1) {
+            return getChildren().get(0).getStatistics();
+        }
+
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        Optional<Long> rows = Optional.empty();
+        boolean first = true;
+        for (Map.Entry<String, Dataset> entry : datasets.entrySet()) {
+            DatasetStatistics statistics = entry.getValue().getStatistics();
+            Map<String, String> mapping = ImmutableBiMap.copyOf(columnMapping.column(entry.getKey())).inverse();
+
+            if (first) {
+                rows = statistics.getRowCount();
+                first = false;
+            } else {
+                // The number of distinct keys is bounded by the largest distinct count of each identifier.
+                Optional<Long> keys = commonIdentifiers.isEmpty() ? Optional.empty() : Optional.of(1L);
+                for (String identifier : commonIdentifiers.keySet()) {
+                    Optional<Long> left = columns.getOrDefault(identifier, ColumnStatistics.unknown())
+                            .getDistinctCount();
+                    Optional<Long> right = statistics.getColumn(identifier).getDistinctCount();
+                    Optional<Long> distinct = left.isPresent() && right.isPresent()
+                            ? Optional.of(Math.max(left.get(), right.get()))
+                            : (left.isPresent() ? left : right);
+                    keys = keys.flatMap(product -> distinct.map(count -> product * Math.max(count, 1)));
+                }
+                Optional<Long> currentRows = rows;
+                Optional<Long> finalKeys = keys;
+                rows = currentRows.flatMap(left -> statistics.getRowCount().map(
+                        right -> estimateJoinSize(left, right, finalKeys)
+                ));
+            }
+
+            for (Map.Entry<String, ColumnStatistics> column : statistics.getColumns().entrySet()) {
+                columns.putIfAbsent(mapping.getOrDefault(column.getKey(), column.getKey()), column.getValue());
+            }
+        }
+        Optional<Long> resultRows = rows;
+        columns.replaceAll((name, statistics) -> statistics.scale(1.0, resultRows));
+        return DatasetStatistics.of(rows, columns);
+    }
+
+    /**
+     * Estimates the number of distinct values of the common identifiers in a dataset.
+     */
+    protected Optional<Long> estimateKeyCount(DatasetStatistics statistics) {
+        if (commonIdentifiers.isEmpty()) {
+            return Optional.empty();
+        }
+        long keys = 1;
+        for (String identifier : commonIdentifiers.keySet()) {
+            Optional<Long> distinct = statistics.getColumn(identifier).getDistinctCount();
+            if (!distinct.isPresent()) {
+                return Optional.empty();
+            }
+            keys *= Math.max(distinct.get(), 1);
+        }
+        // A key cannot have more distinct values than the dataset has rows.
+        long distinctKeys = keys;
+        return Optional.of(statistics.getRowCount().map(rows -> Math.min(distinctKeys, rows)).orElse(keys));
+    }
+
+    /**
+     * Estimates the number of rows resulting from the join of two datasets.
+     * <p>
+     * The default implementation assumes the values of the keys are uniformly distributed. Without
+     * distinct count it assumes that each row of the largest dataset matches one row of the other one.
+     *
+     * @param left  the number of rows of the left dataset
+     * @param right the number of rows of the right dataset
+     * @param keys  the number of distinct values of the common identifiers
+     */
+    protected long estimateJoinSize(long left, long right, Optional<Long> keys) {
+        if (keys.isPresent()) {
+            return (long) Math.ceil((double) left * right / Math.max(keys.get(), 1));
+        }
+        return Math.max(left, right);
+    }
 }
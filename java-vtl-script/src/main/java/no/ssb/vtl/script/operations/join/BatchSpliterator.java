@@ -0,0 +1,91 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that can be split even when its source cannot.
+ * <p>
+ * The source is split when it supports it. Otherwise, like the spliterators of
+ * {@link Spliterators#spliteratorUnknownSize(java.util.Iterator, int) iterators}, the elements of the next
+ * batch are read in an array that is returned as prefix. The batches grow with each split so that large
+ * sources are split in few steps, up to {@link #MAX_BATCH} elements.
+ * <p>
+ * The streams of the datasets are sequential pipelines (sorts, filters, operations) whose spliterators
+ * cannot be split; this lets the merge joins split them in {@link KeyRangeSplit key ranges}.
+ */
+final class BatchSpliterator<T> implements Spliterator<T> {
+
+    static final int BATCH_UNIT = 1 << 10;
+    static final int MAX_BATCH = 1 << 16;
+
+    private final Spliterator<T> source;
+    private int batch = 0;
+
+    BatchSpliterator(Spliterator<T> source) {
+        this.source = checkNotNull(source);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        return source.tryAdvance(action);
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        source.forEachRemaining(action);
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        Spliterator<T> prefix = source.trySplit();
+        if (prefix != null) {
+            return prefix;
+        }
+        int size = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+        Object[] elements = new Object[size];
+        int[] count = {0};
+        Consumer<T> add = element -> elements[count[0]++] = element;
+        while (count[0] < size && source.tryAdvance(add)) {
+            // Read the batch.
+        }
+        if (count[0] == 0) {
+            return null;
+        }
+        batch = size;
+        return Spliterators.spliterator(elements, 0, count[0], characteristics());
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & (Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+}
@@ -0,0 +1,74 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.script.VtlConfiguration;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Spliterator that traverses and splits its source with a given {@link VtlConfiguration}.
+ * <p>
+ * The configuration is local to the thread; the worker threads of a parallel stream would otherwise use
+ * their own configuration when they read the splits of a join.
+ */
+final class ConfiguredSpliterator<T> implements Spliterator<T> {
+
+    private final Spliterator<T> source;
+    private final VtlConfiguration configuration;
+
+    ConfiguredSpliterator(Spliterator<T> source, VtlConfiguration configuration) {
+        this.source = checkNotNull(source);
+        this.configuration = checkNotNull(configuration);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        return configuration.apply(() -> source.tryAdvance(action));
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        configuration.apply(() -> {
+            source.forEachRemaining(action);
+            return null;
+        });
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        Spliterator<T> prefix = configuration.apply(source::trySplit);
+        return prefix == null ? null : new ConfiguredSpliterator<>(prefix, configuration);
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics();
+    }
+}
@@ -20,6 +20,8 @@ package no.ssb.vtl.script.operations.join;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
@@ -30,39 +32,72 @@ import javax.script.Bindings;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static no.ssb.vtl.script.operations.join.ComponentBindings.*;
 
 /**
  * A Bindings view that wraps a DataPoint object.
+ * <p>
+ * The names are resolved to the position of their component in the structure when the bindings are
+ * created; reading or writing a variable accesses the data point directly. The bindings of the datasets
+ * are created once as well and follow the data point of their parent.
  *
  * TODO: The join operations should only operate on this.
  */
 public class DataPointBindings implements Bindings {
 
     private final ComponentBindings references;
-    private final DataStructure structure;
-    private Map<Component, VTLObject> mapView;
+    private final int structureSize;
+    private final ImmutableMap<String, Integer> slots;
+    private final ImmutableMap<String, DataPointBindings> datasets;
     private DataPoint dataPoint;
 
     public DataPointBindings(ComponentBindings references, DataStructure structure) {
         this.references = checkNotNull(references);
-        this.structure = checkNotNull(structure);
+        checkNotNull(structure);
+        this.structureSize = structure.size();
+
+        List<Component> components = ImmutableList.copyOf(structure.values());
+        ImmutableMap.Builder<String, Integer> slots = ImmutableMap.builder();
+        ImmutableMap.Builder<String, DataPointBindings> datasets = ImmutableMap.builder();
+        for (Entry<String, Object> entry : references.entrySet()) {
+            Object reference = entry.getValue();
+            if (reference instanceof ComponentReference) {
+                Component component = ((ComponentReference) reference).getComponent();
+                for (int i = 0; i < components.size(); i++) {
+                    if (components.get(i) == component) {
+                        slots.put(entry.getKey(), i);
+                        break;
+                    }
+                }
+            } else if (reference instanceof ComponentBindings) {
+                datasets.put(entry.getKey(), new DataPointBindings((ComponentBindings) reference, structure));
+            }
+        }
+        this.slots = slots.build();
+        this.datasets = datasets.build();
     }
 
-    private Object extractComponent(Object object) {
-        if (object instanceof ComponentReference) {
-            return ((ComponentReference) object).getComponent();
-        }
-        if (object instanceof ComponentBindings) {
-            DataPointBindings subBindings = new DataPointBindings((ComponentBindings) object, structure);
-            return subBindings.setDataPoint(dataPoint);
-        }
-        return object;
+    /**
+     * Returns the position of the component the name references in the data points, or -1.
+     */
+    public int getSlot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the bindings of the dataset the name references, or null.
+     */
+    public DataPointBindings getDatasetBindings(String name) {
+        return datasets.get(name);
     }
 
     public DataPoint getDataPoint() {
@@ -70,15 +105,22 @@ public class DataPointBindings implements Bindings {
     }
 
     public DataPointBindings setDataPoint(DataPoint dataPoint) {
-        // TODO: Avoid instantiating an object.
-        this.mapView = structure.asMap(dataPoint);
+        checkArgument(
+                dataPoint.size() >= structureSize,
+                "inconsistent data point size %s, expected %s",
+                dataPoint.size(), structureSize
+        );
         this.dataPoint = dataPoint;
+        for (DataPointBindings dataset : datasets.values()) {
+            dataset.setDataPoint(dataPoint);
+        }
         return this;
     }
 
     @Override
     public Object put(String name, Object value) {
-        return mapView.put((Component) extractComponent(references.get(name)), (VTLObject) value);
+        Integer slot = slots.get(name);
+        return slot == null ? null : dataPoint.set(slot, (VTLObject) value);
     }
 
     @Override
@@ -89,7 +131,7 @@ public class DataPointBindings implements Bindings {
 
     @Override
     public void clear() {
-        mapView.clear();
+        throw new UnsupportedOperationException();
     }
 
     @Override
@@ -99,7 +141,7 @@ public class DataPointBindings implements Bindings {
 
     @Override
     public Collection<Object> values() {
-        return (Collection) mapView.values();
+        return (Collection) Collections.unmodifiableList(dataPoint.subList(0, structureSize));
     }
 
     @Override
@@ -109,9 +151,9 @@ public class DataPointBindings implements Bindings {
             public Iterator<Entry<String, Object>> iterator() {
                 Iterator<Entry<String, Object>> iterator = references.entrySet().iterator();
                 return Iterators.transform(iterator, input -> {
-                    Object value = extractComponent(input.getValue());
-                    if (value instanceof Component)
-                        value = mapView.get(value);
+                    Object value = input.getValue();
+                    if (value instanceof ComponentReference || value instanceof ComponentBindings)
+                        value = get(input.getKey());
                     return new AbstractMap.SimpleImmutableEntry<>(
                             input.getKey(), value
                     );
@@ -120,7 +162,7 @@ public class DataPointBindings implements Bindings {
 
             @Override
             public int size() {
-                return mapView.size();
+                return references.size();
             }
         };
     }
@@ -147,14 +189,14 @@ public class DataPointBindings implements Bindings {
 
     @Override
     public Object get(Object key) {
-        Object reference = extractComponent(references.get(key));
-        if (reference instanceof DataPointBindings)
-            return reference;
-        return mapView.get(reference);
+        Integer slot = slots.get(key);
+        if (slot != null)
+            return dataPoint.get(slot);
+        return datasets.get(key);
     }
 
     @Override
     public Object remove(Object key) {
-        return mapView.remove(extractComponent(references.get(key)));
+        throw new UnsupportedOperationException();
     }
 }
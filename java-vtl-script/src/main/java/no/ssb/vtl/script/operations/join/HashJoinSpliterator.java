@@ -0,0 +1,152 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Build and probe join.
+ * <p>
+ * The right rows are loaded in a hash table on their keys the first time the spliterator is advanced,
+ * then the left rows are read in their order and merged with the right rows that have the same key, in
+ * the order of the right input. When the left input is sorted on the keys, the output is the same as the
+ * output of the {@link InnerJoinSpliterator}.
+ * <p>
+ * In outer mode, the left rows without match are merged with null and the right rows that did not match
+ * any left row are merged with null after the last left row.
+ * <p>
+ * The keys must implement {@link Object#equals(Object)} and {@link Object#hashCode()} consistently
+ * with the comparison of the merge joins.
+ */
+public class HashJoinSpliterator<L, R, K, O> implements Spliterator<O> {
+
+    private final Function<L, K> leftKeyExtractor;
+    private final Function<R, K> rightKeyExtractor;
+    private final BiFunction<L, R, O> merger;
+    private final Spliterator<L> leftSpliterator;
+    private final Spliterator<R> rightSpliterator;
+    private final boolean outer;
+
+    private final Deque<O> output = Queues.newArrayDeque();
+    private final Consumer<L> probe = this::probe;
+    private Map<K, List<R>> table;
+    private Set<K> matched;
+    private boolean drained = false;
+
+    public HashJoinSpliterator(
+            Function<L, K> leftKeyExtractor,
+            Function<R, K> rightKeyExtractor,
+            BiFunction<L, R, O> merger,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator,
+            boolean outer
+    ) {
+        this.leftKeyExtractor = checkNotNull(leftKeyExtractor);
+        this.rightKeyExtractor = checkNotNull(rightKeyExtractor);
+        this.merger = checkNotNull(merger);
+        this.leftSpliterator = checkNotNull(leftSpliterator);
+        this.rightSpliterator = checkNotNull(rightSpliterator);
+        this.outer = outer;
+    }
+
+    private void build() {
+        Map<K, List<R>> table = new LinkedHashMap<>();
+        rightSpliterator.forEachRemaining(
+                row -> table.computeIfAbsent(rightKeyExtractor.apply(row), key -> new ArrayList<>(1)).add(row)
+        );
+        this.table = table;
+        this.matched = outer ? Sets.newHashSet() : null;
+    }
+
+    private void probe(L left) {
+        K key = leftKeyExtractor.apply(left);
+        List<R> matches = table.get(key);
+        if (matches == null) {
+            if (outer) {
+                output.addLast(merger.apply(left, null));
+            }
+            return;
+        }
+        if (outer) {
+            matched.add(key);
+        }
+        for (R right : matches) {
+            output.addLast(merger.apply(left, right));
+        }
+    }
+
+    private void drain() {
+        for (Map.Entry<K, List<R>> entry : table.entrySet()) {
+            if (!matched.contains(entry.getKey())) {
+                for (R right : entry.getValue()) {
+                    output.addLast(merger.apply(null, right));
+                }
+            }
+        }
+        drained = true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super O> action) {
+        if (table == null) {
+            build();
+        }
+        while (output.isEmpty()) {
+            if (!leftSpliterator.tryAdvance(probe)) {
+                if (!outer || drained) {
+                    return false;
+                }
+                drain();
+            }
+        }
+        action.accept(output.removeFirst());
+        return true;
+    }
+
+    @Override
+    public Spliterator<O> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return leftSpliterator.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+    }
+}
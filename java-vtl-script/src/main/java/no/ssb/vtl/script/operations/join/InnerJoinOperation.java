@@ -21,28 +21,40 @@ package no.ssb.vtl.script.operations.join;
  */
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.operations.Cost;
 import no.ssb.vtl.script.operations.VtlStream;
 import no.ssb.vtl.script.support.Closer;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class InnerJoinOperation extends AbstractJoinOperation {
 
+    // Order in which the datasets are joined, chosen by the planner.
+    private ImmutableList<String> joinOrder;
 
     public InnerJoinOperation(Map<String, Dataset> namedDatasets) {
         this(namedDatasets, Collections.emptyMap());
@@ -57,28 +69,51 @@ public class InnerJoinOperation extends AbstractJoinOperation {
 
         // Try to create a compatible order.
         Ordering requiredOrder = createCompatibleOrder(getDataStructure(), getCommonIdentifiers(), requestedOrder);
+        Set<String> requestedComponents = withOrderingAndFiltering(components, requestedOrder, filtering);
 
         // Compute the predicate
         Ordering predicate = computePredicate(requiredOrder);
 
+        // With a hash join, the large dataset is streamed and the others are loaded in hash tables.
+        Optional<String> probe = chooseProbe(datasets.keySet());
+        List<String> order = probe.map(this::getHashJoinOrder).orElseGet(this::getJoinOrder);
+        Ordering probeOrder = probe.map(name -> computeProbeOrder(name, requestedOrder)).orElse(Ordering.ANY);
+
+        // The multi-way merge cannot be split; parallel joins use binary joins.
+        if (!probe.isPresent() && datasets.size() > 2 && !VtlConfiguration.getConfig().isParallelJoinsEnabled()) {
+            return computeMultiwayData(order, requiredOrder, predicate, requestedOrder, filtering,
+                    requestedComponents);
+        }
+
         // TODO: Use abstract operation here.
-        Iterator<Dataset> iterator = datasets.values().iterator();
+        Iterator<Dataset> iterator = order.stream().map(datasets::get).iterator();
         Dataset left = iterator.next();
         Dataset right = left;
 
+        // The data points of the first dataset are used as the result. When the planner changed the
+        // order, they are first moved to the positions of the resulting structure.
+        boolean declaredFirst = left == datasets.values().iterator().next();
+
         ImmutableList.Builder<Stream<DataPoint>> originals = ImmutableList.builder();
 
         Closer closer = Closer.create();
         try {
 
+            JoinBufferFactory buffers = closer.register(
+                    new JoinBufferFactory(VtlConfiguration.getConfig().getJoinBufferSize())
+            );
+
             Stream<DataPoint> original = getOrSortData(
                     left,
-                    adjustOrderForStructure(requiredOrder, left.getDataStructure()),
+                    probe.isPresent() ? probeOrder : adjustOrderForStructure(requiredOrder, left.getDataStructure()),
                     filtering, // TODO: Rename columns in the filter.
-                    components
+                    requestedComponents
             );
             originals.add(original);
-            Stream<DataPoint> result = original.peek(new DataPointCapacityExpander(getDataStructure().size()));
+            Stream<DataPoint> source = probe.isPresent() ? original : splittable(original);
+            Stream<DataPoint> result = declaredFirst
+                    ? source.peek(new DataPointCapacityExpander(getDataStructure().size()))
+                    : source.map(createResultMapper(left.getDataStructure()));
             closer.register(result);
 
 
@@ -89,9 +124,9 @@ public class InnerJoinOperation extends AbstractJoinOperation {
 
                 Stream<DataPoint> rightStream = getOrSortData(
                         right,
-                        adjustOrderForStructure(requiredOrder, right.getDataStructure()),
+                        probe.isPresent() ? Ordering.ANY : adjustOrderForStructure(requiredOrder, right.getDataStructure()),
                         filtering,
-                        components
+                        requestedComponents
                 );
                 originals.add(rightStream);
                 closer.register(rightStream);
@@ -100,16 +135,20 @@ public class InnerJoinOperation extends AbstractJoinOperation {
                 // will always be the resulting structure. We use a flag (first) to handle the first case
                 // since the hotfix needs to be quickly released but this code should be refactored.
 
-                result = StreamSupport.stream(
-                        new InnerJoinSpliterator<>(
-                                new JoinKeyExtractor(first ? left.getDataStructure() : getDataStructure(), predicate),
-                                new JoinKeyExtractor(right.getDataStructure(), predicate),
-                                predicate,
-                                new InnerJoinMerger(getDataStructure(), right.getDataStructure()),
-                                result.spliterator(),
-                                rightStream.spliterator()
-                        ), false
+                JoinKeyExtractor leftKeyExtractor = new JoinKeyExtractor(
+                        first && declaredFirst ? left.getDataStructure() : getDataStructure(), predicate
                 );
+                JoinKeyExtractor rightKeyExtractor = new JoinKeyExtractor(right.getDataStructure(), predicate);
+
+                InnerJoinMerger merger = new InnerJoinMerger(getDataStructure(), right.getDataStructure());
+                Spliterator<DataPoint> joined = probe.isPresent()
+                        ? new HashJoinSpliterator<>(leftKeyExtractor, rightKeyExtractor, merger,
+                                result.spliterator(), rightStream.spliterator(), false)
+                        : configured(new InnerJoinSpliterator<>(leftKeyExtractor.getRowComparator(),
+                                rightKeyExtractor.getRowComparator(),
+                                leftKeyExtractor.getRowComparator(rightKeyExtractor)::compare, merger,
+                                buffers, buffers, result.spliterator(), splittable(rightStream).spliterator()));
+                result = StreamSupport.stream(joined, false);
 
                 first = false;
             }
@@ -124,16 +163,94 @@ public class InnerJoinOperation extends AbstractJoinOperation {
             });
 
             // TODO: Closer could be moved to VtlStream.
-            return new VtlStream(
+            VtlStream stream = new VtlStream(
                     this,
                     delegate,
                     originals.build(),
                     requestedOrder,
                     filtering,
-                    new VtlOrdering(predicate, this.getDataStructure()),
+                    // The hash join keeps the order of the streamed dataset.
+                    probe.isPresent()
+                            ? (probeOrder == Ordering.ANY ? Ordering.ANY : requestedOrder)
+                            : new VtlOrdering(predicate, this.getDataStructure()),
                     filtering
             );
+            if (VtlConfiguration.getConfig().isProfilingEnabled()) {
+                buffers.setStatistics(stream.getStatistics());
+            }
+            return stream;
+
+        } catch (Exception ex) {
+            try {
+                closer.close();
+            } catch (IOException ioe) {
+                ex.addSuppressed(ioe);
+            }
+            throw ex;
+        }
+    }
 
+    /**
+     * Merges all the datasets in one pass with a {@link MultiwayJoinSpliterator}.
+     */
+    private Stream<DataPoint> computeMultiwayData(List<String> order, Ordering requiredOrder, Ordering predicate,
+                                                  Ordering requestedOrder, Filtering filtering,
+                                                  Set<String> requestedComponents) {
+        ImmutableList.Builder<Stream<DataPoint>> originals = ImmutableList.builder();
+        List<Spliterator<DataPoint>> spliterators = new ArrayList<>();
+        List<JoinKeyExtractor> keyExtractors = new ArrayList<>();
+        int[][] sourceIndices = new int[order.size()][];
+        int[][] targetIndices = new int[order.size()][];
+
+        Closer closer = Closer.create();
+        try {
+            JoinBufferFactory buffers = closer.register(
+                    new JoinBufferFactory(VtlConfiguration.getConfig().getJoinBufferSize())
+            );
+
+            for (int i = 0; i < order.size(); i++) {
+                Dataset dataset = datasets.get(order.get(i));
+                Stream<DataPoint> stream = getOrSortData(
+                        dataset,
+                        adjustOrderForStructure(requiredOrder, dataset.getDataStructure()),
+                        filtering,
+                        requestedComponents
+                );
+                originals.add(stream);
+                closer.register(stream);
+                spliterators.add(stream.spliterator());
+                keyExtractors.add(new JoinKeyExtractor(dataset.getDataStructure(), predicate));
+                computeResultIndices(dataset.getDataStructure(), i, sourceIndices, targetIndices);
+            }
+
+            Stream<DataPoint> result = StreamSupport.stream(new MultiwayJoinSpliterator(
+                    spliterators,
+                    keyExtractors,
+                    sourceIndices,
+                    targetIndices,
+                    getDataStructure().size(),
+                    buffers
+            ), false).onClose(() -> {
+                try {
+                    closer.close();
+                } catch (IOException e) {
+                    // ignore (cannot happen).
+                }
+            });
+
+            VtlStream stream = new VtlStream(
+                    this,
+                    result,
+                    originals.build(),
+                    requestedOrder,
+                    filtering,
+                    new VtlOrdering(predicate, this.getDataStructure()),
+                    filtering
+            );
+            if (VtlConfiguration.getConfig().isProfilingEnabled()) {
+                buffers.setStatistics(stream.getStatistics());
+            }
+            return stream;
         } catch (Exception ex) {
             try {
                 closer.close();
@@ -144,6 +261,173 @@ public class InnerJoinOperation extends AbstractJoinOperation {
         }
     }
 
+    /**
+     * Computes the positions of the values of a dataset and the positions they have in the resulting
+     * structure. The components are matched like in {@link InnerJoinMerger}.
+     */
+    private void computeResultIndices(DataStructure structure, int input, int[][] sourceIndices,
+                                      int[][] targetIndices) {
+        DataStructure resultStructure = getDataStructure();
+        List<Component> components = ImmutableList.copyOf(structure.values());
+        List<Integer> sources = new ArrayList<>();
+        List<Integer> targets = new ArrayList<>();
+        int target = 0;
+        for (Map.Entry<String, Component> entry : resultStructure.entrySet()) {
+            for (int source = 0; source < components.size(); source++) {
+                if (components.get(source).equals(entry.getValue())) {
+                    sources.add(source);
+                    targets.add(target);
+                }
+            }
+            target++;
+        }
+        sourceIndices[input] = Ints.toArray(sources);
+        targetIndices[input] = Ints.toArray(targets);
+    }
+
+    private List<String> getJoinOrder() {
+        return joinOrder != null ? joinOrder : ImmutableList.copyOf(datasets.keySet());
+    }
+
+    /**
+     * Returns the streamed dataset followed by the other datasets in the declared order.
+     */
+    private List<String> getHashJoinOrder(String probe) {
+        ImmutableList.Builder<String> order = ImmutableList.<String>builder().add(probe);
+        for (String name : datasets.keySet()) {
+            if (!name.equals(probe)) {
+                order.add(name);
+            }
+        }
+        return order.build();
+    }
+
+    /**
+     * Returns a function that copies the data points of a dataset to the positions of the resulting
+     * structure.
+     */
+    private Function<DataPoint, DataPoint> createResultMapper(DataStructure structure) {
+        DataStructure resultStructure = getDataStructure();
+        List<Component> components = ImmutableList.copyOf(structure.values());
+        List<String> names = ImmutableList.copyOf(structure.keySet());
+        int[] sourceIndices = new int[resultStructure.size()];
+        int index = 0;
+        for (Map.Entry<String, Component> entry : resultStructure.entrySet()) {
+            int sourceIndex = components.indexOf(entry.getValue());
+            if (sourceIndex < 0 && getCommonIdentifiers().containsKey(entry.getKey())) {
+                sourceIndex = names.indexOf(entry.getKey());
+            }
+            sourceIndices[index++] = sourceIndex;
+        }
+        return dataPoint -> {
+            DataPoint result = DataPoint.create(sourceIndices.length);
+            for (int i = 0; i < sourceIndices.length; i++) {
+                if (sourceIndices[i] >= 0) {
+                    result.set(i, dataPoint.get(sourceIndices[i]));
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Chooses the join order.
+     * <p>
+     * All the datasets are sorted on the common identifiers and merged in the chosen order; two datasets
+     * with an {@link InnerJoinSpliterator}, more datasets in one pass with a {@link MultiwayJoinSpliterator}.
+     * The datasets are added greedily, starting with the smallest one and then the one that gives the
+     * smallest intermediate result. The declared order is kept when the sizes are unknown.
+     * <p>
+     * When a hash join is possible (see {@link #chooseProbe(Set)}), the large dataset is streamed first and
+     * the others are loaded in hash tables, without sorting any of them.
+     */
+    @Override
+    protected Cost computeCost(List<Cost> childCosts) {
+        List<String> names = ImmutableList.copyOf(datasets.keySet());
+        Optional<String> probe = chooseProbe(datasets.keySet());
+        if (probe.isPresent()) {
+            List<String> order = getHashJoinOrder(probe.get());
+            double value = 0;
+            for (int i = 0; i < names.size(); i++) {
+                value += childCosts.get(i).getValue();
+                if (!names.get(i).equals(probe.get())) {
+                    value += childCosts.get(i).getRowsOrDefault();
+                }
+            }
+            return Cost.of(getStatistics().getRowCount(), value, "hash join " + order);
+        }
+
+        Map<String, Long> rows = new HashMap<>();
+        Map<String, Optional<Long>> keys = new HashMap<>();
+        double value = 0;
+        boolean known = true;
+        for (int i = 0; i < names.size(); i++) {
+            Cost childCost = childCosts.get(i);
+            DatasetStatistics statistics = datasets.get(names.get(i)).getStatistics();
+            value += childCost.getValue() + Cost.sort(childCost.getRowsOrDefault());
+            known &= childCost.getRows().isPresent();
+            rows.put(names.get(i), childCost.getRowsOrDefault());
+            keys.put(names.get(i), estimateKeyCount(statistics));
+        }
+
+        List<String> order = new ArrayList<>();
+        List<String> remaining = new ArrayList<>(names);
+        if (known && names.size() > 2) {
+            String smallest = remaining.get(0);
+            for (String name : remaining) {
+                if (rows.get(name) < rows.get(smallest)) {
+                    smallest = name;
+                }
+            }
+            order.add(smallest);
+            remaining.remove(smallest);
+        } else {
+            order.addAll(remaining);
+            remaining.clear();
+        }
+
+        long current = rows.get(order.get(0));
+        Optional<Long> currentKeys = keys.get(order.get(0));
+        for (String name : order.subList(1, order.size())) {
+            current = estimateJoinSize(current, rows.get(name), maxKeys(currentKeys, keys.get(name)));
+            currentKeys = minKeys(currentKeys, keys.get(name));
+            value += current;
+        }
+        while (!remaining.isEmpty()) {
+            String next = null;
+            long nextRows = Long.MAX_VALUE;
+            for (String name : remaining) {
+                long joined = estimateJoinSize(current, rows.get(name), maxKeys(currentKeys, keys.get(name)));
+                if (joined < nextRows) {
+                    next = name;
+                    nextRows = joined;
+                }
+            }
+            order.add(next);
+            remaining.remove(next);
+            currentKeys = minKeys(currentKeys, keys.get(next));
+            current = nextRows;
+            value += current;
+        }
+
+        joinOrder = ImmutableList.copyOf(order);
+        return Cost.of(getStatistics().getRowCount(), value, "merge join " + order);
+    }
+
+    private static Optional<Long> maxKeys(Optional<Long> left, Optional<Long> right) {
+        if (left.isPresent() && right.isPresent()) {
+            return Optional.of(Math.max(left.get(), right.get()));
+        }
+        return left.isPresent() ? left : right;
+    }
+
+    private static Optional<Long> minKeys(Optional<Long> left, Optional<Long> right) {
+        if (left.isPresent() && right.isPresent()) {
+            return Optional.of(Math.min(left.get(), right.get()));
+        }
+        return left.isPresent() ? left : right;
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         if (getChildren().size() == 1) {
@@ -22,34 +22,46 @@ package no.ssb.vtl.script.operations.join;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
-import com.google.common.collect.Queues;
 import com.google.common.math.LongMath;
 
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.Iterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntBiFunction;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Merge join of two inputs sorted on their keys.
+ * <p>
+ * The rows are compared directly: a comparator for each input compares the keys of two of its rows, and
+ * the key comparator compares the key of a left row with the key of a right row. The constructor with key
+ * extractors is kept for keys that are not readily comparable in the rows.
+ * <p>
+ * The rows of each input that have the same key are kept in a {@link JoinBuffer}; by default the buffers
+ * keep all their rows in memory.
+ */
 public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
 
-    private final Comparator<K> predicate;
+    private final Comparator<L> leftComparator;
+    private final Comparator<R> rightComparator;
+    private final ToIntBiFunction<L, R> keyComparator;
     private final BiFunction<L, R, O> merger;
+    private final Supplier<JoinBuffer<L>> leftBuffers;
+    private final Supplier<JoinBuffer<R>> rightBuffers;
 
-    private final Function<L, K> leftKeyExtractor;
-    private final Function<R, K> rightKeyExtractor;
-    private final Spliterator<L> leftSpliterator;
-    private final Spliterator<R> rightSpliterator;
-    private final PeekingIterator<L> leftIterator;
-    private final PeekingIterator<R> rightIterator;
-    private Deque<L> leftBuffer = Queues.newArrayDeque();
-    private Deque<R> rightBuffer = Queues.newArrayDeque();
+    private Spliterator<L> leftSpliterator;
+    private Spliterator<R> rightSpliterator;
+    private PeekingIterator<L> leftIterator;
+    private PeekingIterator<R> rightIterator;
+    private JoinBuffer<L> leftBuffer;
+    private JoinBuffer<R> rightBuffer;
     private Iterator<O> output = Collections.emptyIterator();
 
     public InnerJoinSpliterator(
@@ -60,45 +72,116 @@ public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
             Spliterator<L> leftSpliterator,
             Spliterator<R> rightSpliterator
     ) {
-        this.leftKeyExtractor = leftKeyExtractor;
-        this.rightKeyExtractor = rightKeyExtractor;
-        this.predicate = checkNotNull(predicate);
+        this(
+                Comparator.comparing(leftKeyExtractor, predicate),
+                Comparator.comparing(rightKeyExtractor, predicate),
+                (left, right) -> predicate.compare(leftKeyExtractor.apply(left), rightKeyExtractor.apply(right)),
+                merger,
+                leftSpliterator,
+                rightSpliterator
+        );
+    }
+
+    /**
+     * @param leftComparator  compares the keys of two left rows
+     * @param rightComparator compares the keys of two right rows
+     * @param keyComparator   compares the key of a left row with the key of a right row
+     */
+    public InnerJoinSpliterator(
+            Comparator<L> leftComparator,
+            Comparator<R> rightComparator,
+            ToIntBiFunction<L, R> keyComparator,
+            BiFunction<L, R, O> merger,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator
+    ) {
+        this(leftComparator, rightComparator, keyComparator, merger, JoinBuffer::inMemory, JoinBuffer::inMemory,
+                leftSpliterator, rightSpliterator);
+    }
+
+    /**
+     * @param leftComparator  compares the keys of two left rows
+     * @param rightComparator compares the keys of two right rows
+     * @param keyComparator   compares the key of a left row with the key of a right row
+     * @param leftBuffers     creates the buffer of the left rows with the same key
+     * @param rightBuffers    creates the buffer of the right rows with the same key
+     */
+    public InnerJoinSpliterator(
+            Comparator<L> leftComparator,
+            Comparator<R> rightComparator,
+            ToIntBiFunction<L, R> keyComparator,
+            BiFunction<L, R, O> merger,
+            Supplier<JoinBuffer<L>> leftBuffers,
+            Supplier<JoinBuffer<R>> rightBuffers,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator
+    ) {
+        this.leftComparator = checkNotNull(leftComparator);
+        this.rightComparator = checkNotNull(rightComparator);
+        this.keyComparator = checkNotNull(keyComparator);
         this.merger = checkNotNull(merger);
+        this.leftBuffers = checkNotNull(leftBuffers);
+        this.rightBuffers = checkNotNull(rightBuffers);
 
         this.leftSpliterator = leftSpliterator;
         this.rightSpliterator = rightSpliterator;
-        this.leftIterator = Iterators.peekingIterator(Spliterators.iterator(this.leftSpliterator));
-        this.rightIterator = Iterators.peekingIterator(Spliterators.iterator(this.rightSpliterator));
     }
 
-    private <I> K advance(PeekingIterator<I> source, Deque<I> buffer, Function<I, K> keyExtractor, Comparator<K> predicate) {
+    private void start() {
+        if (leftIterator == null) {
+            leftIterator = Iterators.peekingIterator(Spliterators.iterator(leftSpliterator));
+            rightIterator = Iterators.peekingIterator(Spliterators.iterator(rightSpliterator));
+            leftBuffer = leftBuffers.get();
+            rightBuffer = rightBuffers.get();
+        }
+    }
+
+    /**
+     * Clears the buffers once the join is done, deleting their temporary files.
+     */
+    private void finish() {
+        leftBuffer.clear();
+        rightBuffer.clear();
+    }
+
+    /**
+     * Reads the rows with the same key as the next row.
+     *
+     * @return the first row read, or null if the source is exhausted
+     */
+    private <I> I advance(PeekingIterator<I> source, JoinBuffer<I> buffer, Comparator<I> comparator) {
         buffer.clear();
 
         if (!source.hasNext())
             return null;
 
-        buffer.addLast(source.next());
-        K key = keyExtractor.apply(buffer.getFirst());
-        while (source.hasNext() && predicate.compare(key, keyExtractor.apply(source.peek())) == 0) {
-            buffer.addLast(source.next());
+        I first = source.next();
+        buffer.add(first);
+        while (source.hasNext() && comparator.compare(first, source.peek()) == 0) {
+            buffer.add(source.next());
         }
-        return key;
+        return first;
     }
 
-    private K advanceRight() {
-        return advance(rightIterator, rightBuffer, rightKeyExtractor, predicate);
+    private R advanceRight() {
+        start();
+        return advance(rightIterator, rightBuffer, rightComparator);
     }
 
-    private K advanceLeft() {
-        return advance(leftIterator, leftBuffer, leftKeyExtractor, predicate);
+    private L advanceLeft() {
+        start();
+        return advance(leftIterator, leftBuffer, leftComparator);
     }
 
     @Override
     public void forEachRemaining(Consumer<? super O> action) {
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
+        // Rest of the current hit if the traversal started with tryAdvance.
+        output.forEachRemaining(action);
+
+        L leftKey = advanceLeft();
+        R rightKey = advanceRight();
         while (!leftBuffer.isEmpty() && !rightBuffer.isEmpty()) {
-            int compare = predicate.compare(leftKey, rightKey);
+            int compare = keyComparator.applyAsInt(leftKey, rightKey);
             if (0 < compare) {
                 // left > right (right is behind)
                 rightKey = advanceRight();
@@ -113,6 +196,7 @@ public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
                 rightKey = advanceRight();
             }
         }
+        finish();
     }
 
     @Override
@@ -122,11 +206,11 @@ public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
             return true;
         }
 
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
+        L leftKey = advanceLeft();
+        R rightKey = advanceRight();
 
         while (!leftBuffer.isEmpty() && !rightBuffer.isEmpty()) {
-            int compare = predicate.compare(leftKey, rightKey);
+            int compare = keyComparator.applyAsInt(leftKey, rightKey);
             if (0 < compare) {
                 // left > right (right is behind)
                 rightKey = advanceRight();
@@ -140,12 +224,48 @@ public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
             }
         }
 
-        return !(leftBuffer.isEmpty() && rightBuffer.isEmpty());
+        // One of the inputs is exhausted.
+        finish();
+        return false;
     }
 
+    /**
+     * Splits the join in two ranges of keys.
+     * <p>
+     * The left spliterator is split first and the key of its first element after the split point is used
+     * as boundary; the right spliterator is then split at the same key. The returned spliterator joins the
+     * elements with keys up to the boundary and this one the elements after it, so the encounter order
+     * is kept. Returns null if the left spliterator cannot be split or if the traversal has started.
+     */
     @Override
     public Spliterator<O> trySplit() {
-        return null;
+        if (leftIterator != null) {
+            return null;
+        }
+
+        Spliterator<L> leftPrefix = leftSpliterator.trySplit();
+        if (leftPrefix == null) {
+            return null;
+        }
+        L head = KeyRangeSplit.next(leftSpliterator);
+        if (head == null) {
+            leftSpliterator = leftPrefix;
+            return trySplit();
+        }
+
+        KeyRangeSplit<L> left = KeyRangeSplit.split(head, leftSpliterator,
+                element -> leftComparator.compare(element, head) <= 0);
+        if (left.isAfterEmpty()) {
+            // All the keys after the split point are equal to the boundary.
+            leftSpliterator = KeyRangeSplit.concat(leftPrefix, left.getBefore());
+            return null;
+        }
+        KeyRangeSplit<R> right = KeyRangeSplit.split(rightSpliterator,
+                element -> keyComparator.applyAsInt(head, element) >= 0);
+        leftSpliterator = left.getAfter();
+        rightSpliterator = right.getAfter();
+        return new InnerJoinSpliterator<L, R, K, O>(leftComparator, rightComparator, keyComparator, merger,
+                leftBuffers, rightBuffers, KeyRangeSplit.concat(leftPrefix, left.getBefore()), right.getBefore());
     }
 
     @Override
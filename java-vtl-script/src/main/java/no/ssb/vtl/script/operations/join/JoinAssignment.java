@@ -21,10 +21,17 @@ package no.ssb.vtl.script.operations.join;
  */
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import no.ssb.vtl.model.ColumnStatistics;
+import no.ssb.vtl.model.ColumnVector;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
@@ -39,10 +46,15 @@ import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VTLString;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.expressions.BatchExpression;
+import no.ssb.vtl.script.expressions.CompiledExpression;
+import no.ssb.vtl.script.expressions.ReferencedComponents;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.script.operations.VtlStream;
 
 import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -142,22 +154,29 @@ public class JoinAssignment extends AbstractUnaryDatasetOperation {
 
         DataStructure dataStructure = getDataStructure();
         Component component = dataStructure.get(identifier);
-        DataPointBindings dataPointBindings = new DataPointBindings(
-                componentBindings,
-                childDataStructure
-        );
 
         VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
         VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
 
-        final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
+        final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, childComponents);
+
+        if (VtlConfiguration.getConfig().isBatchExecutionEnabled()) {
+            int batchSize = VtlConfiguration.getConfig().getBatchSize();
+            Stream<DataPoint> stream = DataPointBatch.unbatch(assignBatches(
+                    DataPointBatch.batch(original, childDataStructure, batchSize)
+            ));
+            return new VtlStream(this, stream, original, ordering, filtering, childOrdering, childFiltering);
+        }
+
+        CompiledExpression compiledExpression = compile(childDataStructure);
         Stream<DataPoint> stream = original.peek(datapoint -> {
 
             if (childDataStructure.size() < dataStructure.size())
                 datapoint.add(VTLObject.NULL);
 
-            dataPointBindings.setDataPoint(datapoint);
-            VTLObject resolved = expression.resolve(dataPointBindings);
+            VTLObject resolved = compiledExpression.evaluate(datapoint);
 
             dataStructure.asMap(datapoint).put(component, resolved);
         });
@@ -165,6 +184,71 @@ public class JoinAssignment extends AbstractUnaryDatasetOperation {
         return new VtlStream(this, stream, original, ordering, filtering, childOrdering, childFiltering);
     }
 
+    @Override
+    public Stream<DataPointBatch> computeBatches(Ordering ordering, Filtering filtering, Set<String> components) {
+        VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
+        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
+        if (VtlStream.requiresPostProcessing(ordering, filtering, childOrdering, childFiltering)) {
+            return super.computeBatches(ordering, filtering, components);
+        }
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
+        return assignBatches(getChild().computeBatches(childOrdering, childFiltering, childComponents));
+    }
+
+    /**
+     * The assigned component is computed from the components referenced by the expression.
+     */
+    @Override
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        DataStructure structure = child.getDataStructure();
+        if (componentBindings == null) {
+            return structure.keySet();
+        }
+        Set<String> copied = Sets.difference(Sets.intersection(components, structure.keySet()),
+                ImmutableSet.of(identifier));
+        return ReferencedComponents.findNames(expression, componentBindings, structure)
+                .<Set<String>>map(referenced -> Sets.union(copied, referenced))
+                .orElseGet(structure::keySet);
+    }
+
+    /**
+     * Evaluates the expression on the columns of the child batches and sets the resulting column.
+     */
+    private Stream<DataPointBatch> assignBatches(Stream<DataPointBatch> batches) {
+        DataStructure dataStructure = getDataStructure();
+        Class<?> type = dataStructure.get(identifier).getType();
+        int index = ImmutableList.copyOf(dataStructure.keySet()).indexOf(identifier);
+        BatchExpression batchExpression = BatchExpression.compile(expression, bindings(),
+                getChild().getDataStructure());
+
+        return batches.map(batch -> {
+            ColumnVector column = batchExpression.evaluate(batch);
+            ColumnVector typed = ColumnVector.create(type, batch.size());
+            if (typed.getClass() != column.getClass()) {
+                for (int row = 0; row < batch.size(); row++) {
+                    typed.set(row, column.get(row));
+                }
+                column = typed;
+            }
+            return batch.withColumn(index, column);
+        });
+    }
+
+    /**
+     * Compiles the expression for the data points of the child. Expressions without component bindings
+     * are evaluated on any data point.
+     */
+    private CompiledExpression compile(DataStructure childDataStructure) {
+        return CompiledExpression.compile(expression, bindings(), childDataStructure);
+    }
+
+    private ComponentBindings bindings() {
+        return componentBindings != null
+                ? componentBindings
+                : new ComponentBindings(getChild());
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         return getChild().getDistinctValuesCount();
@@ -175,6 +259,17 @@ public class JoinAssignment extends AbstractUnaryDatasetOperation {
         return getChild().getSize();
     }
 
+    /**
+     * The rows of the child are kept; nothing is known about the values of the assigned component.
+     */
+    @Override
+    public DatasetStatistics getStatistics() {
+        DatasetStatistics childStatistics = getChild().getStatistics();
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>(childStatistics.getColumns());
+        columns.remove(identifier);
+        return DatasetStatistics.of(childStatistics.getRowCount(), columns);
+    }
+
     @Override
     public FilteringSpecification computeRequiredFiltering(FilteringSpecification filtering) {
         // TODO: transform the filter on identity assignments.
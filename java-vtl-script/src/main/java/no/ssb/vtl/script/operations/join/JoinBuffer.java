@@ -0,0 +1,269 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.script.operations.DataPointCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Buffer of the rows of a join input that have the same key.
+ * <p>
+ * The buffer keeps at most a given number of rows in memory, the next ones are written to a temporary
+ * file using the {@link DataPointCodec} format. From the first row that the codec cannot write, the
+ * rest of the group is kept in memory after the file. The buffer can be iterated several times, for
+ * instance by the {@link CartesianIterator}: each iterator returns the rows in memory, reads the file
+ * again and returns the rows kept after it. The file is deleted when the buffer is cleared or closed.
+ */
+public final class JoinBuffer<T> implements Iterable<T>, AutoCloseable {
+
+    private static final Listener NO_LISTENER = (rows, spilledRows) -> {
+    };
+
+    private final int memoryRows;
+    private final Codec<T> codec;
+    private final Listener listener;
+
+    private final List<T> rows = new ArrayList<>();
+    // The rows after the spilled rows, once a row could not be written.
+    private final List<T> unwritableRows = new ArrayList<>();
+    private final List<FileIterator> readers = new ArrayList<>();
+    private Path file;
+    private DataOutputStream output;
+    private int spilledRows;
+    private int highWaterMark;
+
+    private JoinBuffer(int memoryRows, Codec<T> codec, Listener listener) {
+        checkArgument(memoryRows > 0, "the buffer must keep at least one row in memory");
+        this.memoryRows = memoryRows;
+        this.codec = codec;
+        this.listener = checkNotNull(listener);
+    }
+
+    /**
+     * Creates a buffer that keeps all its rows in memory.
+     */
+    public static <T> JoinBuffer<T> inMemory() {
+        return new JoinBuffer<>(Integer.MAX_VALUE, null, NO_LISTENER);
+    }
+
+    /**
+     * Creates a buffer that keeps at most memoryRows rows in memory and writes the rest to a temporary file.
+     *
+     * @param listener notified of the size of each group of rows when the buffer is cleared
+     */
+    public static JoinBuffer<DataPoint> spilling(int memoryRows, Listener listener) {
+        return new JoinBuffer<>(memoryRows, DataPointFileCodec.INSTANCE, listener);
+    }
+
+    public void add(T row) {
+        if (rows.size() < memoryRows) {
+            rows.add(row);
+        } else if (unwritableRows.isEmpty() && codec.isWritable(row)) {
+            spill(row);
+        } else {
+            unwritableRows.add(row);
+        }
+        highWaterMark = Math.max(highWaterMark, size());
+    }
+
+    private void spill(T row) {
+        try {
+            if (output == null) {
+                file = Files.createTempFile("vtl-join-", ".buffer");
+                output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            }
+            codec.write(output, row);
+            spilledRows++;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("could not write join buffer", ioe);
+        }
+    }
+
+    public boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    public int size() {
+        return rows.size() + spilledRows + unwritableRows.size();
+    }
+
+    /**
+     * Returns the number of rows written to the temporary file.
+     */
+    public int getSpilledRows() {
+        return spilledRows;
+    }
+
+    /**
+     * Returns the largest number of rows the buffer held since it was created.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (spilledRows == 0) {
+            return Iterators.unmodifiableIterator(Iterators.concat(rows.iterator(), unwritableRows.iterator()));
+        }
+        try {
+            output.flush();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("could not write join buffer", ioe);
+        }
+        return Iterators.concat(
+                Iterators.unmodifiableIterator(rows.iterator()),
+                new FileIterator(spilledRows),
+                Iterators.unmodifiableIterator(unwritableRows.iterator())
+        );
+    }
+
+    /**
+     * Removes all the rows and deletes the temporary file.
+     */
+    public void clear() {
+        if (!isEmpty()) {
+            listener.onClear(size(), spilledRows);
+        }
+        rows.clear();
+        unwritableRows.clear();
+        spilledRows = 0;
+        deleteFile();
+    }
+
+    private void deleteFile() {
+        try {
+            for (FileIterator reader : readers) {
+                reader.input.close();
+            }
+            readers.clear();
+            if (output != null) {
+                output.close();
+                output = null;
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+                file = null;
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("could not delete join buffer", ioe);
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Notified of the size of the groups of rows of a buffer.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * @param rows        the number of rows of the group
+         * @param spilledRows the number of rows of the group that were written to the temporary file
+         */
+        void onClear(int rows, int spilledRows);
+    }
+
+    private interface Codec<T> {
+
+        boolean isWritable(T row);
+
+        void write(DataOutput output, T row) throws IOException;
+
+        T read(DataInput input) throws IOException;
+    }
+
+    private enum DataPointFileCodec implements Codec<DataPoint> {
+        INSTANCE;
+
+        @Override
+        public boolean isWritable(DataPoint row) {
+            return DataPointCodec.isWritable(row);
+        }
+
+        @Override
+        public void write(DataOutput output, DataPoint row) throws IOException {
+            DataPointCodec.write(output, row);
+        }
+
+        @Override
+        public DataPoint read(DataInput input) throws IOException {
+            return DataPointCodec.read(input);
+        }
+    }
+
+    /**
+     * Reads the rows of the temporary file. The file is closed when the last row is read.
+     */
+    private final class FileIterator extends AbstractIterator<T> {
+
+        private final DataInputStream input;
+        private int remaining;
+
+        private FileIterator(int rows) {
+            try {
+                this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("could not read join buffer", ioe);
+            }
+            this.remaining = rows;
+            readers.add(this);
+        }
+
+        @Override
+        protected T computeNext() {
+            try {
+                if (remaining == 0) {
+                    input.close();
+                    readers.remove(this);
+                    return endOfData();
+                }
+                remaining--;
+                return codec.read(input);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("could not read join buffer", ioe);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.script.operations.VtlStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Creates the {@link JoinBuffer}s of the merge joins of an operation and deletes their temporary files
+ * when the stream is closed.
+ * <p>
+ * The join spliterators are created before the {@link VtlStream} of the operation, so the statistics of
+ * the stream are set afterwards; the sizes of the groups of rows are only recorded once they are set.
+ */
+final class JoinBufferFactory implements Supplier<JoinBuffer<DataPoint>>, JoinBuffer.Listener, AutoCloseable {
+
+    private final int memoryRows;
+    private final List<JoinBuffer<DataPoint>> buffers = new ArrayList<>();
+    private volatile VtlStream.Statistics statistics;
+
+    JoinBufferFactory(int memoryRows) {
+        this.memoryRows = memoryRows;
+    }
+
+    void setStatistics(VtlStream.Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public JoinBuffer<DataPoint> get() {
+        JoinBuffer<DataPoint> buffer = JoinBuffer.spilling(memoryRows, this);
+        // The spliterators of parallel joins create their buffers in different threads.
+        synchronized (buffers) {
+            buffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void onClear(int rows, int spilledRows) {
+        VtlStream.Statistics current = statistics;
+        if (current != null) {
+            current.recordJoinBuffer(rows, spilledRows);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (buffers) {
+            for (JoinBuffer<DataPoint> buffer : buffers) {
+                buffer.close();
+            }
+            buffers.clear();
+        }
+    }
+}
@@ -24,19 +24,31 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointComparators;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Ordering;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.function.UnaryOperator;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * A key extractor used in join operations.
+ * <p>
+ * The merge joins do not extract the keys: they compare the rows directly with the comparators returned by
+ * {@link #getRowComparator()} and {@link #getRowComparator(JoinKeyExtractor)}, which read the key columns
+ * through the positions computed by the extractor. The extracted keys are used by the hash join.
  */
 public class JoinKeyExtractor implements UnaryOperator<DataPoint> {
 
-    private final DataPoint buffer;
+    private final int size;
     private final int[] indices;
+    private final Ordering.Direction[] directions;
+    private final Class<?>[] types;
+    private final Comparator<DataPoint> keyComparator;
 
     public JoinKeyExtractor(
             DataStructure childStructure,
@@ -57,14 +69,49 @@ public class JoinKeyExtractor implements UnaryOperator<DataPoint> {
         }
 
         this.indices = Ints.toArray(indices);
-        this.buffer = DataPoint.create(toList.size());
+        this.size = toList.size();
+
+        int[] keyIndices = new int[toList.size()];
+        this.directions = new Ordering.Direction[toList.size()];
+        this.types = new Class<?>[toList.size()];
+        for (int i = 0; i < toList.size(); i++) {
+            String column = toList.get(i);
+            keyIndices[i] = i;
+            directions[i] = order.getDirection(column);
+            types[i] = childStructure.get(column).getType();
+        }
+        this.keyComparator = DataPointComparators.compile(keyIndices, directions, types);
+    }
+
+    /**
+     * Returns a comparator for the keys returned by this extractor.
+     */
+    public Comparator<DataPoint> getKeyComparator() {
+        return keyComparator;
+    }
+
+    /**
+     * Returns a comparator that compares the keys of two rows of the structure of this extractor.
+     */
+    public Comparator<DataPoint> getRowComparator() {
+        return DataPointComparators.compile(indices, directions, types);
+    }
+
+    /**
+     * Returns a comparator that compares the key of a row of the structure of this extractor with the key of
+     * a row of the structure of the other extractor. The extractors must use the same order.
+     */
+    public Comparator<DataPoint> getRowComparator(JoinKeyExtractor other) {
+        checkArgument(Arrays.equals(directions, other.directions), "the extractors use different orders");
+        return DataPointComparators.compile(indices, other.indices, directions, types);
     }
 
     @Override
     public DataPoint apply(DataPoint dataPoint) {
+        DataPoint key = DataPoint.create(size);
         for (int i = 0; i < indices.length; i++) {
-            buffer.set(i, dataPoint.get(indices[i]));
+            key.set(i, dataPoint.get(indices[i]));
         }
-        return (DataPoint) buffer.clone();
+        return key;
     }
 }
@@ -0,0 +1,159 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits a sorted {@link Spliterator} in the elements with a key up to a boundary and the elements after it.
+ * <p>
+ * The source is split with {@link Spliterator#trySplit()} and the first element after each split point is
+ * tested against the boundary; the parts entirely before or after the boundary are kept as they are. Only
+ * the part that cannot be split anymore is read to separate its elements, so both sides of the split can
+ * be split again.
+ */
+final class KeyRangeSplit<T> {
+
+    private final Spliterator<T> before;
+    private final Spliterator<T> after;
+    private final boolean empty;
+
+    private KeyRangeSplit(Spliterator<T> before, Spliterator<T> after, boolean empty) {
+        this.before = before;
+        this.after = after;
+        this.empty = empty;
+    }
+
+    private KeyRangeSplit(List<Spliterator<T>> before, Deque<Spliterator<T>> after) {
+        this(concat(before), concat(after), after.isEmpty());
+    }
+
+    /**
+     * Splits the source at the boundary.
+     *
+     * @param upToBoundary tests if the key of an element is up to the boundary
+     */
+    static <T> KeyRangeSplit<T> split(Spliterator<T> source, Predicate<T> upToBoundary) {
+        T head = next(source);
+        if (head == null) {
+            return new KeyRangeSplit<>(Spliterators.emptySpliterator(), Spliterators.emptySpliterator(), true);
+        }
+        return split(head, source, upToBoundary);
+    }
+
+    /**
+     * Splits the elements made of the head followed by the rest at the boundary.
+     */
+    static <T> KeyRangeSplit<T> split(T head, Spliterator<T> rest, Predicate<T> upToBoundary) {
+        List<Spliterator<T>> before = new ArrayList<>();
+        Deque<Spliterator<T>> after = new ArrayDeque<>();
+        while (upToBoundary.test(head)) {
+            Spliterator<T> prefix = rest.trySplit();
+            if (prefix == null) {
+                // Read the last part.
+                List<T> lower = new ArrayList<>();
+                List<T> upper = new ArrayList<>();
+                lower.add(head);
+                rest.forEachRemaining(element -> {
+                    if (upper.isEmpty() && upToBoundary.test(element)) {
+                        lower.add(element);
+                    } else {
+                        upper.add(element);
+                    }
+                });
+                before.add(lower.spliterator());
+                if (!upper.isEmpty()) {
+                    after.addFirst(upper.spliterator());
+                }
+                return new KeyRangeSplit<>(before, after);
+            }
+
+            T next = next(rest);
+            if (next == null) {
+                rest = prefix;
+            } else if (upToBoundary.test(next)) {
+                before.add(concat(head, prefix));
+                head = next;
+            } else {
+                after.addFirst(concat(next, rest));
+                rest = prefix;
+            }
+        }
+        after.addFirst(concat(head, rest));
+        return new KeyRangeSplit<>(before, after);
+    }
+
+    /**
+     * Returns a spliterator with the elements of the first one followed by the elements of the second one.
+     */
+    static <T> Spliterator<T> concat(Spliterator<T> first, Spliterator<T> second) {
+        return Stream.concat(StreamSupport.stream(first, false), StreamSupport.stream(second, false)).spliterator();
+    }
+
+    private static <T> Spliterator<T> concat(T head, Spliterator<T> rest) {
+        return concat(Stream.of(head).spliterator(), rest);
+    }
+
+    private static <T> Spliterator<T> concat(Iterable<Spliterator<T>> parts) {
+        Spliterator<T> result = null;
+        for (Spliterator<T> part : parts) {
+            result = result == null ? part : concat(result, part);
+        }
+        return result == null ? Spliterators.emptySpliterator() : result;
+    }
+
+    /**
+     * Returns the next element of the spliterator, or null if it has no more elements.
+     */
+    static <T> T next(Spliterator<T> spliterator) {
+        List<T> element = new ArrayList<>(1);
+        return spliterator.tryAdvance(element::add) ? element.get(0) : null;
+    }
+
+    /**
+     * Returns the elements with a key up to the boundary.
+     */
+    Spliterator<T> getBefore() {
+        return before;
+    }
+
+    /**
+     * Returns true if no element has a key after the boundary.
+     */
+    boolean isAfterEmpty() {
+        return empty;
+    }
+
+    /**
+     * Returns the elements with a key after the boundary.
+     */
+    Spliterator<T> getAfter() {
+        return after;
+    }
+}
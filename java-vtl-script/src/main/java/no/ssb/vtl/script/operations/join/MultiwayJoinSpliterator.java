@@ -0,0 +1,288 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.math.LongMath;
+import no.ssb.vtl.model.DataPoint;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Merge join of any number of inputs sorted on the same keys.
+ * <p>
+ * All the inputs are advanced together: the inputs that are behind the largest current key skip their
+ * rows until all the inputs are on the same key, then the cartesian product of the rows of that key is
+ * emitted. The output rows are assembled once, directly in the resulting structure: the values of each
+ * input are copied to the positions given by its source and target indices, the later inputs overwriting
+ * the earlier ones. The rows of a key are emitted in the same order as with nested
+ * {@link InnerJoinSpliterator}s joining the inputs one after the other.
+ * <p>
+ * The rows of each input that have the same key are kept in a {@link JoinBuffer}; the cartesian product
+ * iterates the buffers again for each combination of the previous inputs, so spilling buffers keep the
+ * memory bounded when a key has many rows. By default the buffers keep all their rows in memory.
+ */
+public class MultiwayJoinSpliterator implements Spliterator<DataPoint> {
+
+    private final int inputCount;
+    private final List<PeekingIterator<DataPoint>> iterators;
+    private final List<Spliterator<DataPoint>> spliterators;
+    private final Comparator<DataPoint>[][] keyComparators;
+    private final int[][] sourceIndices;
+    private final int[][] targetIndices;
+    private final int resultSize;
+
+    private final List<JoinBuffer<DataPoint>> groups;
+    private final DataPoint[] keys;
+    private final List<Iterator<DataPoint>> cursors;
+    private final DataPoint[] rows;
+    private boolean hasGroup = false;
+
+    /**
+     * @param spliterators  the inputs, sorted on their keys
+     * @param keyExtractors the key extractors of the inputs, used to compare the keys of their rows
+     * @param sourceIndices for each input, the positions of the values to copy in its rows
+     * @param targetIndices for each input, the positions in the output rows the values are copied to
+     * @param resultSize    the size of the output rows
+     */
+    public MultiwayJoinSpliterator(
+            List<Spliterator<DataPoint>> spliterators,
+            List<JoinKeyExtractor> keyExtractors,
+            int[][] sourceIndices,
+            int[][] targetIndices,
+            int resultSize
+    ) {
+        this(spliterators, keyExtractors, sourceIndices, targetIndices, resultSize, JoinBuffer::inMemory);
+    }
+
+    /**
+     * @param spliterators  the inputs, sorted on their keys
+     * @param keyExtractors the key extractors of the inputs, used to compare the keys of their rows
+     * @param sourceIndices for each input, the positions of the values to copy in its rows
+     * @param targetIndices for each input, the positions in the output rows the values are copied to
+     * @param resultSize    the size of the output rows
+     * @param buffers       creates the buffer of the rows with the same key of each input
+     */
+    public MultiwayJoinSpliterator(
+            List<Spliterator<DataPoint>> spliterators,
+            List<JoinKeyExtractor> keyExtractors,
+            int[][] sourceIndices,
+            int[][] targetIndices,
+            int resultSize,
+            Supplier<JoinBuffer<DataPoint>> buffers
+    ) {
+        checkNotNull(buffers);
+        this.inputCount = spliterators.size();
+        checkArgument(inputCount > 0, "no inputs");
+        checkArgument(keyExtractors.size() == inputCount && sourceIndices.length == inputCount
+                && targetIndices.length == inputCount, "one key extractor and mapping per input is required");
+        this.spliterators = spliterators;
+        this.keyComparators = createKeyComparators(keyExtractors);
+        this.sourceIndices = sourceIndices;
+        this.targetIndices = targetIndices;
+        this.resultSize = resultSize;
+
+        this.iterators = new ArrayList<>(inputCount);
+        this.groups = new ArrayList<>(inputCount);
+        for (Spliterator<DataPoint> spliterator : spliterators) {
+            iterators.add(Iterators.peekingIterator(Spliterators.iterator(spliterator)));
+            groups.add(buffers.get());
+        }
+        this.keys = new DataPoint[inputCount];
+        this.cursors = new ArrayList<>(inputCount);
+        for (int input = 0; input < inputCount; input++) {
+            cursors.add(null);
+        }
+        this.rows = new DataPoint[inputCount];
+    }
+
+    /**
+     * Creates the comparators of the keys of the rows of each pair of inputs.
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparator<DataPoint>[][] createKeyComparators(List<JoinKeyExtractor> keyExtractors) {
+        Comparator<DataPoint>[][] comparators = new Comparator[keyExtractors.size()][keyExtractors.size()];
+        for (int left = 0; left < keyExtractors.size(); left++) {
+            JoinKeyExtractor extractor = checkNotNull(keyExtractors.get(left));
+            for (int right = 0; right < keyExtractors.size(); right++) {
+                comparators[left][right] = left == right
+                        ? extractor.getRowComparator()
+                        : extractor.getRowComparator(keyExtractors.get(right));
+            }
+        }
+        return comparators;
+    }
+
+    /**
+     * Reads the next group of rows with the same key of an input.
+     *
+     * @return false if the input is exhausted
+     */
+    private boolean advance(int input) {
+        PeekingIterator<DataPoint> iterator = iterators.get(input);
+        JoinBuffer<DataPoint> group = groups.get(input);
+        group.clear();
+        if (!iterator.hasNext()) {
+            keys[input] = null;
+            return false;
+        }
+        Comparator<DataPoint> comparator = keyComparators[input][input];
+        DataPoint first = iterator.next();
+        group.add(first);
+        while (iterator.hasNext() && comparator.compare(first, iterator.peek()) == 0) {
+            group.add(iterator.next());
+        }
+        keys[input] = first;
+        return true;
+    }
+
+    /**
+     * Advances the inputs until they all are on the same key.
+     *
+     * @return false if one of the inputs is exhausted
+     */
+    private boolean nextGroup() {
+        for (int input = 0; input < inputCount; input++) {
+            if (!advance(input)) {
+                return false;
+            }
+        }
+        while (true) {
+            int maxInput = 0;
+            for (int input = 1; input < inputCount; input++) {
+                if (keyComparators[input][maxInput].compare(keys[input], keys[maxInput]) > 0) {
+                    maxInput = input;
+                }
+            }
+            DataPoint max = keys[maxInput];
+            boolean aligned = true;
+            for (int input = 0; input < inputCount; input++) {
+                int compare;
+                while ((compare = keyComparators[input][maxInput].compare(keys[input], max)) < 0) {
+                    if (!advance(input)) {
+                        return false;
+                    }
+                }
+                aligned &= compare == 0;
+            }
+            if (aligned) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Clears the buffers once the join is done, deleting their temporary files.
+     */
+    private void finish() {
+        for (JoinBuffer<DataPoint> group : groups) {
+            group.clear();
+        }
+    }
+
+    /**
+     * Positions the cursor of an input on the first row of its group.
+     */
+    private void rewind(int input) {
+        Iterator<DataPoint> iterator = groups.get(input).iterator();
+        cursors.set(input, iterator);
+        rows[input] = iterator.next();
+    }
+
+    private DataPoint assemble() {
+        DataPoint result = DataPoint.create(resultSize);
+        for (int input = 0; input < inputCount; input++) {
+            DataPoint row = rows[input];
+            int[] sources = sourceIndices[input];
+            int[] targets = targetIndices[input];
+            for (int i = 0; i < sources.length; i++) {
+                result.set(targets[i], row.get(sources[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves the cursors to the next combination of the cartesian product, the last input first.
+     *
+     * @return false if all the combinations were emitted
+     */
+    private boolean increment() {
+        for (int input = inputCount - 1; input >= 0; input--) {
+            Iterator<DataPoint> cursor = cursors.get(input);
+            if (cursor.hasNext()) {
+                rows[input] = cursor.next();
+                for (int next = input + 1; next < inputCount; next++) {
+                    rewind(next);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        if (!hasGroup) {
+            if (!nextGroup()) {
+                finish();
+                return false;
+            }
+            for (int input = 0; input < inputCount; input++) {
+                rewind(input);
+            }
+            hasGroup = true;
+        }
+        action.accept(assemble());
+        hasGroup = increment();
+        return true;
+    }
+
+    @Override
+    public Spliterator<DataPoint> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (Spliterator<DataPoint> spliterator : spliterators) {
+            size = LongMath.saturatedAdd(size, spliterator.estimateSize());
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+    }
+}
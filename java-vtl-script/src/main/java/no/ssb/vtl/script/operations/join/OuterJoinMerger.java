@@ -25,22 +25,16 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Table;
 import no.ssb.vtl.model.DataPoint;
-import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
-import no.ssb.vtl.model.VTLObject;
 
-import java.util.Collection;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.BiFunction;
-import java.util.function.ToIntFunction;
 
 public class OuterJoinMerger implements BiFunction<DataPoint, DataPoint, DataPoint> {
 
-    private final Map<String, String> rightMapping;
-
-    private final DataPointView rightView;
-    private final DataPointView resultView;
+    // Positions of the columns of the right data points and of their target in the result.
+    private final int[] rightIndices;
+    private final int[] resultIndices;
     private final int size;
 
     public OuterJoinMerger(AbstractJoinOperation joinOperation, Dataset right) {
@@ -51,117 +45,27 @@ public class OuterJoinMerger implements BiFunction<DataPoint, DataPoint, DataPoi
 
         size = mapping.rowKeySet().size();
 
-        rightMapping = mapping.column(datasetNames.get(right));
-        rightView = new DataPointView(right.getDataStructure());
-        resultView = new DataPointView(joinOperation.getDataStructure());
+        Map<String, String> rightMapping = mapping.column(datasetNames.get(right));
+        ImmutableList<String> rightColumns = ImmutableSet.copyOf(right.getDataStructure().keySet()).asList();
+        ImmutableList<String> resultColumns = ImmutableSet.copyOf(joinOperation.getDataStructure().keySet()).asList();
+        rightIndices = new int[rightMapping.size()];
+        resultIndices = new int[rightMapping.size()];
+        int index = 0;
+        for (Map.Entry<String, String> entry : rightMapping.entrySet()) {
+            resultIndices[index] = resultColumns.indexOf(entry.getKey());
+            rightIndices[index] = rightColumns.indexOf(entry.getValue());
+            index++;
+        }
     }
 
     @Override
     public DataPoint apply(DataPoint left, DataPoint right) {
-
-        resultView.setDataPoint(DataPoint.create(size));
-        rightView.setDataPoint(right);
-
-        if (left != null) {
-            resultView.setDataPoint(DataPoint.create(left));
-        } else {
-            resultView.setDataPoint(DataPoint.create(size));
-        }
+        DataPoint result = left != null ? DataPoint.create(left) : DataPoint.create(size);
         if (right != null) {
-            for (Map.Entry<String, String> mapping : rightMapping.entrySet()) {
-                resultView.put(mapping.getKey(), rightView.get(mapping.getValue()));
-            }
-        }
-        return resultView.getDataPoint();
-    }
-
-    private final class DataPointView implements Map<String, VTLObject> {
-
-        private final ToIntFunction<String> hash;
-        private DataPoint dp = DataPoint.create(0);
-
-
-        public DataPointView(DataStructure structure) {
-            ImmutableList<String> list = ImmutableSet.copyOf(structure.keySet()).asList();
-            this.hash = list::indexOf;
-        }
-
-        public VTLObject get(String key) {
-            return dp.get(hash.applyAsInt(key));
-        }
-
-        public VTLObject remove(String key) {
-            return dp.set(hash.applyAsInt(key), VTLObject.NULL);
-        }
-
-        public DataPoint getDataPoint() {
-            return dp;
-        }
-
-        public void setDataPoint(DataPoint dp) {
-            this.dp = dp;
-        }
-
-        @Override
-        public int size() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public boolean isEmpty() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public boolean containsKey(Object key) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public boolean containsValue(Object value) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public VTLObject get(Object key) {
-            return this.get((String) key);
-        }
-
-        @Override
-        public VTLObject put(String key, VTLObject value) {
-            return dp.set(hash.applyAsInt(key), value);
-        }
-
-        @Override
-        public VTLObject remove(Object key) {
-            return this.remove((String) key);
-        }
-
-        @Override
-        public void putAll(Map<? extends String, ? extends VTLObject> m) {
-            for (Entry<? extends String, ? extends VTLObject> entry : m.entrySet()) {
-                this.put(entry.getKey(), entry.getValue());
+            for (int i = 0; i < rightIndices.length; i++) {
+                result.set(resultIndices[i], right.get(rightIndices[i]));
             }
         }
-
-        @Override
-        public void clear() {
-            dp.clear();
-        }
-
-        @Override
-        public Set<String> keySet() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public Collection<VTLObject> values() {
-            return dp;
-        }
-
-        @Override
-        public Set<Entry<String, VTLObject>> entrySet() {
-            throw new UnsupportedOperationException();
-        }
+        return result;
     }
 }
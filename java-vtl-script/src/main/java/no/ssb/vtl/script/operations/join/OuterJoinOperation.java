@@ -28,6 +28,7 @@ import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.operations.VtlStream;
 import no.ssb.vtl.script.support.Closer;
 
@@ -35,7 +36,9 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -82,10 +85,14 @@ public class OuterJoinOperation extends AbstractJoinOperation {
     public Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components) {
         // Try to create a compatible order.
         Ordering requiredOrder = createCompatibleOrder(getDataStructure(), getCommonIdentifiers(), orders);
+        Set<String> requestedComponents = withOrderingAndFiltering(components, orders, filtering);
 
         // Compute the predicate
         Ordering predicate = computePredicate(requiredOrder);
 
+        // With a hash join, the first dataset is streamed and the others are loaded in hash tables.
+        boolean hashJoin = chooseProbe(Collections.singleton(datasets.keySet().iterator().next())).isPresent();
+
         // TODO: Use abstract operation here.
         Iterator<Dataset> iterator = datasets.values().iterator();
         Dataset left = iterator.next();
@@ -97,14 +104,19 @@ public class OuterJoinOperation extends AbstractJoinOperation {
         Closer closer = Closer.create();
         try {
 
+            JoinBufferFactory buffers = closer.register(
+                    new JoinBufferFactory(VtlConfiguration.getConfig().getJoinBufferSize())
+            );
+
             Stream<DataPoint> original = getOrSortData(
                     left,
-                    adjustOrderForStructure(requiredOrder, left.getDataStructure()),
+                    hashJoin ? Ordering.ANY : adjustOrderForStructure(requiredOrder, left.getDataStructure()),
                     filtering,
-                    components
+                    requestedComponents
             );
             originals.add(original);
-            Stream<DataPoint> result = original.peek(new DataPointCapacityExpander(getDataStructure().size()));
+            Stream<DataPoint> result = (hashJoin ? original : splittable(original))
+                    .peek(new DataPointCapacityExpander(getDataStructure().size()));
             closer.register(result);
 
 
@@ -115,9 +127,9 @@ public class OuterJoinOperation extends AbstractJoinOperation {
 
                 Stream<DataPoint> rightStream = getOrSortData(
                         right,
-                        adjustOrderForStructure(requiredOrder, right.getDataStructure()),
+                        hashJoin ? Ordering.ANY : adjustOrderForStructure(requiredOrder, right.getDataStructure()),
                         filtering,
-                        components
+                        requestedComponents
                 );
                 originals.add(rightStream);
                 closer.register(rightStream);
@@ -126,15 +138,20 @@ public class OuterJoinOperation extends AbstractJoinOperation {
                 // will always be the resulting structure. We use a flag (first) to handle the first case
                 // since the hotfix needs to quickly released but this code should be refactored.
 
-                result = StreamSupport.stream(
-                        new OuterJoinSpliterator<>(
-                                new JoinKeyExtractor(first ? left.getDataStructure() : getDataStructure(), predicate),
-                                new JoinKeyExtractor(right.getDataStructure(), predicate), predicate,
-                                new OuterJoinMerger(this, right),
-                                result.spliterator(),
-                                rightStream.spliterator()
-                        ), false
+                JoinKeyExtractor leftKeyExtractor = new JoinKeyExtractor(
+                        first ? left.getDataStructure() : getDataStructure(), predicate
                 );
+                JoinKeyExtractor rightKeyExtractor = new JoinKeyExtractor(right.getDataStructure(), predicate);
+
+                OuterJoinMerger merger = new OuterJoinMerger(this, right);
+                Spliterator<DataPoint> joined = hashJoin
+                        ? new HashJoinSpliterator<>(leftKeyExtractor, rightKeyExtractor, merger,
+                                result.spliterator(), rightStream.spliterator(), true)
+                        : configured(new OuterJoinSpliterator<>(leftKeyExtractor.getRowComparator(),
+                                rightKeyExtractor.getRowComparator(),
+                                leftKeyExtractor.getRowComparator(rightKeyExtractor)::compare, merger,
+                                buffers, buffers, result.spliterator(), splittable(rightStream).spliterator()));
+                result = StreamSupport.stream(joined, false);
 
                 first = false;
             }
@@ -148,15 +165,20 @@ public class OuterJoinOperation extends AbstractJoinOperation {
                 }
             });
 
-            return new VtlStream(
+            VtlStream stream = new VtlStream(
                     this,
                     delegate,
                     originals.build(),
                     orders,
                     filtering,
-                    requiredOrder,
+                    // The rows of the hash join that did not match come last.
+                    hashJoin ? Ordering.ANY : requiredOrder,
                     filtering
             );
+            if (VtlConfiguration.getConfig().isProfilingEnabled()) {
+                buffers.setStatistics(stream.getStatistics());
+            }
+            return stream;
 
         } catch (Exception ex) {
             try {
@@ -177,4 +199,12 @@ public class OuterJoinOperation extends AbstractJoinOperation {
     public OrderingSpecification computeRequiredOrdering(OrderingSpecification filtering) {
         throw new UnsupportedOperationException("TODO");
     }
+
+    /**
+     * The rows that do not match are kept.
+     */
+    @Override
+    protected long estimateJoinSize(long left, long right, Optional<Long> keys) {
+        return Math.max(super.estimateJoinSize(left, right, keys), Math.max(left, right));
+    }
 }
@@ -22,33 +22,50 @@ package no.ssb.vtl.script.operations.join;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
-import com.google.common.collect.Queues;
 import com.google.common.math.LongMath;
 
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
+import java.util.Iterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntBiFunction;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Outer merge join of two inputs sorted on their keys.
+ * <p>
+ * The rows are compared directly, like in the {@link InnerJoinSpliterator}. The rows of each input that
+ * have the same key are kept in a {@link JoinBuffer} and the output is produced one group of keys at a
+ * time: either the rows of one input that did not match or the cartesian product of both groups.
+ */
 public class OuterJoinSpliterator<L, R, K, O> implements Spliterator<O> {
 
-    private final Comparator<K> predicate;
+    private final Comparator<L> leftComparator;
+    private final Comparator<R> rightComparator;
+    private final ToIntBiFunction<L, R> keyComparator;
     private final BiFunction<L, R, O> merger;
+    private final Supplier<JoinBuffer<L>> leftBuffers;
+    private final Supplier<JoinBuffer<R>> rightBuffers;
 
-    private final Function<L, K> leftKeyExtractor;
-    private final Function<R, K> rightKeyExtractor;
-    private final PeekingIterator<L> leftIterator;
-    private final PeekingIterator<R> rightIterator;
-    private final Spliterator<L> leftSpliterator;
-    private final Spliterator<R> rightSpliterator;
+    private Spliterator<L> leftSpliterator;
+    private Spliterator<R> rightSpliterator;
+    private PeekingIterator<L> leftIterator;
+    private PeekingIterator<R> rightIterator;
 
-    private Deque<L> leftBuffer = Queues.newArrayDeque();
-    private Deque<R> rightBuffer = Queues.newArrayDeque();
+    private JoinBuffer<L> leftBuffer;
+    private JoinBuffer<R> rightBuffer;
+    private L leftKey;
+    private R rightKey;
+    private boolean leftConsumed;
+    private boolean rightConsumed;
 
-    private Deque<O> outputBuffer = Queues.newArrayDeque();
+    private Iterator<O> output = Collections.emptyIterator();
 
     public OuterJoinSpliterator(
             Function<L, K> leftKeyExtractor,
@@ -58,132 +75,200 @@ public class OuterJoinSpliterator<L, R, K, O> implements Spliterator<O> {
             Spliterator<L> leftSpliterator,
             Spliterator<R> rightSpliterator
     ) {
-        this.predicate = Comparator.nullsFirst(predicate);
-        this.merger = merger;
-        this.leftKeyExtractor = leftKeyExtractor;
-        this.rightKeyExtractor = rightKeyExtractor;
+        this(
+                Comparator.comparing(leftKeyExtractor, Comparator.nullsFirst(predicate)),
+                Comparator.comparing(rightKeyExtractor, Comparator.nullsFirst(predicate)),
+                compareKeys(leftKeyExtractor, rightKeyExtractor, Comparator.nullsFirst(predicate)),
+                merger,
+                leftSpliterator,
+                rightSpliterator
+        );
+    }
+
+    /**
+     * @param leftComparator  compares the keys of two left rows
+     * @param rightComparator compares the keys of two right rows
+     * @param keyComparator   compares the key of a left row with the key of a right row
+     */
+    public OuterJoinSpliterator(
+            Comparator<L> leftComparator,
+            Comparator<R> rightComparator,
+            ToIntBiFunction<L, R> keyComparator,
+            BiFunction<L, R, O> merger,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator
+    ) {
+        this(leftComparator, rightComparator, keyComparator, merger, JoinBuffer::inMemory, JoinBuffer::inMemory,
+                leftSpliterator, rightSpliterator);
+    }
+
+    /**
+     * @param leftComparator  compares the keys of two left rows
+     * @param rightComparator compares the keys of two right rows
+     * @param keyComparator   compares the key of a left row with the key of a right row
+     * @param leftBuffers     creates the buffer of the left rows with the same key
+     * @param rightBuffers    creates the buffer of the right rows with the same key
+     */
+    public OuterJoinSpliterator(
+            Comparator<L> leftComparator,
+            Comparator<R> rightComparator,
+            ToIntBiFunction<L, R> keyComparator,
+            BiFunction<L, R, O> merger,
+            Supplier<JoinBuffer<L>> leftBuffers,
+            Supplier<JoinBuffer<R>> rightBuffers,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator
+    ) {
+        this.leftComparator = checkNotNull(leftComparator);
+        this.rightComparator = checkNotNull(rightComparator);
+        this.keyComparator = checkNotNull(keyComparator);
+        this.merger = checkNotNull(merger);
+        this.leftBuffers = checkNotNull(leftBuffers);
+        this.rightBuffers = checkNotNull(rightBuffers);
 
         this.leftSpliterator = leftSpliterator;
         this.rightSpliterator = rightSpliterator;
-        this.leftIterator = Iterators.peekingIterator(Spliterators.iterator(this.leftSpliterator));
-        this.rightIterator = Iterators.peekingIterator(Spliterators.iterator(this.rightSpliterator));
     }
 
-    private <I> K advance(PeekingIterator<I> source, Deque<I> buffer, Function<I, K> keyExtractor, Comparator<K> predicate) {
+    private static <L, R, K> ToIntBiFunction<L, R> compareKeys(Function<L, K> leftKeyExtractor,
+                                                              Function<R, K> rightKeyExtractor,
+                                                              Comparator<K> predicate) {
+        return (left, right) -> predicate.compare(leftKeyExtractor.apply(left), rightKeyExtractor.apply(right));
+    }
+
+    private void start() {
+        if (leftIterator == null) {
+            leftIterator = Iterators.peekingIterator(Spliterators.iterator(leftSpliterator));
+            rightIterator = Iterators.peekingIterator(Spliterators.iterator(rightSpliterator));
+            leftBuffer = leftBuffers.get();
+            rightBuffer = rightBuffers.get();
+            leftConsumed = true;
+            rightConsumed = true;
+        }
+    }
+
+    /**
+     * Reads the rows with the same key as the next row.
+     *
+     * @return the first row read, or null if the source is exhausted
+     */
+    private <I> I advance(PeekingIterator<I> source, JoinBuffer<I> buffer, Comparator<I> comparator) {
         buffer.clear();
 
         if (!source.hasNext())
             return null;
 
-        buffer.addLast(source.next());
-        K key = keyExtractor.apply(buffer.getFirst());
-        while (source.hasNext() && predicate.compare(key, keyExtractor.apply(source.peek())) == 0) {
-            buffer.addLast(source.next());
+        I first = source.next();
+        buffer.add(first);
+        while (source.hasNext() && comparator.compare(first, source.peek()) == 0) {
+            buffer.add(source.next());
         }
-        return key;
+        return first;
     }
 
-    private K advanceRight() {
-        while (!rightBuffer.isEmpty()) {
-            outputBuffer.addLast(merger.apply(null, rightBuffer.removeFirst()));
+    /**
+     * Compares the keys of the rows; an exhausted input (null row) comes last.
+     */
+    private int compare(L left, R right) {
+        if (left == null) {
+            return right == null ? 0 : 1;
         }
-        return advance(rightIterator, rightBuffer, rightKeyExtractor, predicate);
+        if (right == null) {
+            return -1;
+        }
+        return keyComparator.applyAsInt(left, right);
     }
 
-    private K advanceLeft() {
-        while (!leftBuffer.isEmpty()) {
-            outputBuffer.addLast(merger.apply(leftBuffer.removeFirst(), null));
+    /**
+     * Reads the next group of the inputs that were consumed and sets the output to the rows of the
+     * smallest key.
+     *
+     * @return false if both inputs are exhausted
+     */
+    private boolean nextGroup() {
+        start();
+        // The current output reads the buffers that are about to be cleared.
+        output = Collections.emptyIterator();
+        if (leftConsumed) {
+            leftKey = advance(leftIterator, leftBuffer, leftComparator);
+        }
+        if (rightConsumed) {
+            rightKey = advance(rightIterator, rightBuffer, rightComparator);
+        }
+        if (leftKey == null && rightKey == null) {
+            return false;
+        }
+
+        int compare = compare(leftKey, rightKey);
+        leftConsumed = compare <= 0;
+        rightConsumed = compare >= 0;
+        if (compare < 0) {
+            // left < right (right is ahead)
+            output = Iterators.transform(leftBuffer.iterator(), left -> merger.apply(left, null));
+        } else if (compare > 0) {
+            // left > right (left is ahead)
+            output = Iterators.transform(rightBuffer.iterator(), right -> merger.apply(null, right));
+        } else {
+            output = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
         }
-        return advance(leftIterator, leftBuffer, leftKeyExtractor, predicate);
+        return true;
     }
 
     @Override
     public void forEachRemaining(Consumer<? super O> action) {
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
-
-        while (!leftBuffer.isEmpty() || !rightBuffer.isEmpty()) {
-
-            // TODO: Use always bigger placeholders?
-            // empty source should always be bigger.
-            if (leftBuffer.isEmpty()) {
-                rightKey = advanceRight();
-            } else if (rightBuffer.isEmpty()) {
-                leftKey = advanceLeft();
-            }
+        do {
+            output.forEachRemaining(action);
+        } while (nextGroup());
+    }
 
-            int compare = predicate.compare(leftKey, rightKey);
-            if (0 < compare || leftBuffer.isEmpty()) {
-                // left > right (right is behind)
-                rightKey = advanceRight();
-            } else if (compare < 0 || rightBuffer.isEmpty()) {
-                // left < right (left is behind)
-                leftKey = advanceLeft();
-            } else {
-                // Add cartesian product to output.
-                CartesianIterator<L, R, O> hit = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
-                hit.forEachRemaining(outputBuffer::addLast);
-                leftBuffer.clear();
-                rightBuffer.clear();
-
-                outputBuffer.forEach(action);
-                outputBuffer.clear();
-
-                leftKey = advanceLeft();
-                rightKey = advanceRight();
+    @Override
+    public boolean tryAdvance(Consumer<? super O> action) {
+        while (!output.hasNext()) {
+            if (!nextGroup()) {
+                return false;
             }
         }
-        outputBuffer.forEach(action);
+        action.accept(output.next());
+        return true;
     }
 
+    /**
+     * Splits the join in two ranges of keys.
+     * <p>
+     * The left spliterator is split first and the key of its first element after the split point is used
+     * as boundary; the right spliterator is then split at the same key. The returned spliterator joins the
+     * elements with keys up to the boundary and this one the elements after it, so the encounter order
+     * is kept. Returns null if the left spliterator cannot be split or if the traversal has started.
+     */
     @Override
-    public boolean tryAdvance(Consumer<? super O> action) {
-        if (!outputBuffer.isEmpty()) {
-            action.accept(outputBuffer.removeFirst());
-            return true;
+    public Spliterator<O> trySplit() {
+        if (leftIterator != null) {
+            return null;
         }
 
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
-
-        while (!leftBuffer.isEmpty() || !rightBuffer.isEmpty()) {
-
-            // TODO: Use always bigger placeholders?
-            // empty source should always be bigger.
-            if (leftBuffer.isEmpty()) {
-                rightKey = advanceRight();
-            } else if (rightBuffer.isEmpty()) {
-                leftKey = advanceLeft();
-            }
-
-            int compare = predicate.compare(leftKey, rightKey);
-            if (0 < compare || leftBuffer.isEmpty()) {
-                // left > right (right is behind)
-                rightKey = advanceRight();
-            } else if (compare < 0 || rightBuffer.isEmpty()) {
-                // left < right (left is behind)
-                leftKey = advanceLeft();
-            } else {
-                // output hit
-                CartesianIterator<L, R, O> hit = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
-                hit.forEachRemaining(outputBuffer::addLast);
-                leftBuffer.clear();
-                rightBuffer.clear();
-
-                return tryAdvance(action);
-            }
+        Spliterator<L> leftPrefix = leftSpliterator.trySplit();
+        if (leftPrefix == null) {
+            return null;
         }
-
-        if (!outputBuffer.isEmpty()) {
-            return tryAdvance(action);
+        L head = KeyRangeSplit.next(leftSpliterator);
+        if (head == null) {
+            leftSpliterator = leftPrefix;
+            return trySplit();
         }
 
-        return false;
-    }
-
-    @Override
-    public Spliterator<O> trySplit() {
-        return null;
+        KeyRangeSplit<L> left = KeyRangeSplit.split(head, leftSpliterator,
+                element -> leftComparator.compare(element, head) <= 0);
+        if (left.isAfterEmpty()) {
+            // All the keys after the split point are equal to the boundary.
+            leftSpliterator = KeyRangeSplit.concat(leftPrefix, left.getBefore());
+            return null;
+        }
+        KeyRangeSplit<R> right = KeyRangeSplit.split(rightSpliterator,
+                element -> keyComparator.applyAsInt(head, element) >= 0);
+        leftSpliterator = left.getAfter();
+        rightSpliterator = right.getAfter();
+        return new OuterJoinSpliterator<L, R, K, O>(leftComparator, rightComparator, keyComparator, merger,
+                leftBuffers, rightBuffers, KeyRangeSplit.concat(leftPrefix, left.getBefore()), right.getBefore());
     }
 
     @Override
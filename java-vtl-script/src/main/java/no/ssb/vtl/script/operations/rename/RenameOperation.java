@@ -44,10 +44,13 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.model.ColumnStatistics;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
@@ -59,6 +62,7 @@ import no.ssb.vtl.script.operations.VtlStream;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -158,7 +162,8 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
         VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(oldFiltering);
         VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(oldOrdering);
 
-        Set<String> components = renameComponent(oldComponents);
+        Set<String> components = computeChildComponents(
+                getChild(), oldComponents, oldOrdering, oldFiltering, childOrdering, childFiltering);
 
         // No post filter/order since rename does not change the structure.
         Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
@@ -171,13 +176,31 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
         );
     }
 
-    private Set<String> renameComponent(Set<String> oldComponents) {
-        ImmutableSet.Builder<String> components = ImmutableSet.builder();
-        for (String column : oldComponents) {
-            String childColumn = nameMapping.getOrDefault(column, column);
-            components.add(childColumn);
+    /**
+     * The columns keep their position so the batches of the child are returned as is.
+     */
+    @Override
+    public Stream<DataPointBatch> computeBatches(Ordering oldOrdering, Filtering oldFiltering, Set<String> oldComponents) {
+        VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(oldFiltering);
+        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(oldOrdering);
+        if (VtlStream.requiresPostProcessing(oldOrdering, oldFiltering, childOrdering, childFiltering)) {
+            return super.computeBatches(oldOrdering, oldFiltering, oldComponents);
         }
-        return components.build();
+        Set<String> components = computeChildComponents(
+                getChild(), oldComponents, oldOrdering, oldFiltering, childOrdering, childFiltering);
+        return getChild().computeBatches(childOrdering, childFiltering, components);
+    }
+
+    /**
+     * Returns the names the requested components have in the child.
+     */
+    @Override
+    protected Set<String> computeRequiredComponents(Dataset child, Set<String> components) {
+        ImmutableSet.Builder<String> childComponents = ImmutableSet.builder();
+        for (String column : components) {
+            childComponents.add(nameMapping.inverse().getOrDefault(column, column));
+        }
+        return childComponents.build();
     }
 
     @Override
@@ -198,4 +221,14 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return getChild().getSize();
     }
+
+    @Override
+    public DatasetStatistics getStatistics() {
+        DatasetStatistics childStatistics = getChild().getStatistics();
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        for (Map.Entry<String, ColumnStatistics> entry : childStatistics.getColumns().entrySet()) {
+            columns.put(nameMapping.getOrDefault(entry.getKey(), entry.getKey()), entry.getValue());
+        }
+        return DatasetStatistics.of(childStatistics.getRowCount(), columns);
+    }
 }
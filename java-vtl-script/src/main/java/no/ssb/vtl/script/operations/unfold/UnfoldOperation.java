@@ -78,7 +78,7 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
         // Filter out the dimensionName and measureName to get the predicate.
         String dimensionName = childStructure.getName(dimension);
         String measureName = childStructure.getName(measure);
-        Ordering predicate = new VtlOrdering(
+        VtlOrdering predicate = new VtlOrdering(
                 Maps.filterKeys(
                         childOrdering.toMap(),
                         column -> !measureName.equals(column) && !dimensionName.equals(column)
@@ -87,14 +87,14 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
         );
 
         // Try to get data sorted as required. If impossible, sort it.
+        Set<String> childComponents = computeChildComponents(
+                getChild(), components, ordering, filtering, childOrdering, childFiltering);
         Stream<DataPoint> sortedStream = getChild()
-                .computeData(childOrdering, childFiltering, components);
+                .computeData(childOrdering, childFiltering, childComponents);
 
 
-        Stream<DataPoint> unfoldedStream = StreamUtils.aggregate(sortedStream, (left, right) -> {
-            // Checks if the previous ids (except the one with unfold on) where different.
-            return predicate.compare(left, right) == 0;
-        }).map(dataPoints -> {
+        // Checks if the previous ids (except the one with unfold on) where different.
+        Stream<DataPoint> unfoldedStream = StreamUtils.aggregate(sortedStream, predicate.equivalence()).map(dataPoints -> {
 
             // TODO: remove asMap() (instantiate too many objects).
             DataPoint result = DataPoint.create(dataStructure.size());
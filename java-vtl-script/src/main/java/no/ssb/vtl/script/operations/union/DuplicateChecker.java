@@ -22,11 +22,13 @@ package no.ssb.vtl.script.operations.union;
 
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointComparators;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.error.VTLRuntimeException;
 
+import java.util.Comparator;
 import java.util.Map;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
@@ -35,18 +37,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 public class DuplicateChecker implements UnaryOperator<DataPoint> {
 
-    private  final Ordering order;
+    private final Comparator<DataPoint> comparator;
     private final DataStructure structure;
     private DataPoint last;
 
     public DuplicateChecker(Ordering order, DataStructure structure) {
-        this.order = checkNotNull(order);
         this.structure = checkNotNull(structure);
+        this.comparator = DataPointComparators.compile(checkNotNull(order), structure);
     }
 
     @Override
     public DataPoint apply(DataPoint dataPoint) {
-        if (last != null && order.compare(last, dataPoint) == 0)
+        if (last != null && comparator.compare(last, dataPoint) == 0)
                 throwDuplicateError(dataPoint);
         return last = dataPoint;
     }
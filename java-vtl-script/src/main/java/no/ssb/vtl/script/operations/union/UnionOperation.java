@@ -26,11 +26,13 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import no.ssb.vtl.model.ColumnStatistics;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.DatapointNormalizer;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.DatasetStatistics;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
@@ -40,8 +42,10 @@ import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
 import no.ssb.vtl.script.operations.VtlStream;
 
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -154,7 +158,9 @@ public class UnionOperation extends AbstractDatasetOperation {
             VtlOrdering unionOrdering = new VtlOrdering(unionOrder, child.getDataStructure());
             VtlFiltering unionFilter = VtlFiltering.using(child).with(childFiltering);
 
-            Stream<DataPoint> stream = child.computeData(unionOrdering, unionFilter, components);
+            Set<String> childComponents = computeChildComponents(
+                    child, components, ordering, filtering, unionOrdering, unionFilter);
+            Stream<DataPoint> stream = child.computeData(unionOrdering, unionFilter, childComponents);
             originals.add(stream);
             streams.add(stream.map(new DatapointNormalizer(child.getDataStructure(), structure)));
         }
@@ -189,4 +195,24 @@ public class UnionOperation extends AbstractDatasetOperation {
         return Optional.of(size);
     }
 
+    /**
+     * The union contains the rows of all the children.
+     */
+    @Override
+    public DatasetStatistics getStatistics() {
+        Map<String, ColumnStatistics> columns = null;
+        Optional<Long> rows = Optional.of(0L);
+        for (Dataset child : getChildren()) {
+            DatasetStatistics childStatistics = child.getStatistics();
+            rows = rows.flatMap(sum -> childStatistics.getRowCount().map(count -> sum + count));
+            if (columns == null) {
+                columns = new LinkedHashMap<>(childStatistics.getColumns());
+            } else {
+                columns.keySet().retainAll(childStatistics.getColumns().keySet());
+                columns.replaceAll((name, statistics) -> statistics.union(childStatistics.getColumn(name)));
+            }
+        }
+        return DatasetStatistics.of(rows, columns == null ? Collections.emptyMap() : columns);
+    }
+
 }
@@ -27,6 +27,7 @@ import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
+import no.ssb.vtl.script.operations.AbstractDatasetOperation;
 import no.ssb.vtl.script.visitors.foreach.ForeachVisitor;
 
 import javax.script.Bindings;
@@ -86,6 +87,10 @@ public class AssignmentVisitor extends VTLBaseVisitor<Object> {
         Object value;
         if (ctx.datasetExpression() != null) {
             value = visit(ctx.datasetExpression());
+            // Choose the execution strategies now that the operation tree is complete.
+            if (value instanceof AbstractDatasetOperation) {
+                ((AbstractDatasetOperation) value).plan();
+            }
         } else {
             VTLExpression expression = expressionVisitor.visit(ctx.expression());
             try {
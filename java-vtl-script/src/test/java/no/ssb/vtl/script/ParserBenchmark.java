@@ -0,0 +1,97 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.parser.VTLLexer;
+import no.ssb.vtl.parser.VTLParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Parse throughput of large generated scripts, with the two stage parsing of the engine and with
+ * the full LL prediction mode only.
+ */
+public class ParserBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ScriptState {
+
+        @Param({"100", "1000", "5000"})
+        private int statements;
+
+        private String script;
+        private VTLScriptEngine engine;
+
+        @Setup
+        public void setup() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < statements; i++) {
+                builder.append(String.format("ds%d := [ds%d, other] {%n", i + 1, i));
+                builder.append(String.format("  filter ds%d.m1 > %d and (other.m2 < %d or other.m3 = \"value%d\"),%n",
+                        i, i, i * 2, i));
+                builder.append(String.format("  total := ds%d.m1 * %d + other.m2 - (other.m3 / 2),%n", i, i));
+                builder.append("  rename total to m4,\n");
+                builder.append("  keep ds1.m1, m4\n");
+                builder.append("}\n");
+                builder.append(String.format("check%d := if ds%d.m1 > 0 then \"ok\" elseif ds%d.m1 = 0 then \"zero\" "
+                        + "else \"ko\"%n", i, i + 1, i + 1));
+            }
+            script = builder.toString();
+            engine = new VTLScriptEngine();
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 2, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public VTLParser.StartContext twoStageParse(ScriptState state) throws IOException {
+        return state.engine.parse(new StringReader(state.script), error -> {
+        });
+    }
+
+    @Benchmark
+    @Fork(value = 2, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public VTLParser.StartContext llParse(ScriptState state) {
+        VTLParser parser = new VTLParser(new CommonTokenStream(new VTLLexer(CharStreams.fromString(state.script))));
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        return parser.start();
+    }
+}
@@ -21,6 +21,7 @@ package no.ssb.vtl.script;
  */
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.connectors.Connector;
 import no.ssb.vtl.model.Component;
@@ -31,12 +32,14 @@ import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.parser.VTLLexer;
+import no.ssb.vtl.script.error.VTLCompileException;
 import no.ssb.vtl.script.support.VTLPrintStream;
 import org.antlr.v4.runtime.Vocabulary;
 import org.apache.maven.artifact.versioning.ComparableVersion;
 import org.junit.Test;
 
 import javax.script.Bindings;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
@@ -48,16 +51,22 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static no.ssb.vtl.model.Component.Role;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class VTLScriptEngineTest {
@@ -129,6 +138,118 @@ public class VTLScriptEngineTest {
         assertThat(new ComparableVersion("0.1.9")).isLessThan(new ComparableVersion("0.1.9-1"));
     }
 
+    @Test
+    public void testCompile() throws Exception {
+        VTLScriptEngine vtlEngine = (VTLScriptEngine) engine;
+        String script = "res := [ds] { assigned := me + 1 }";
+        CompiledScript compiled = vtlEngine.compile(script);
+        assertThat(vtlEngine.compile(script)).isSameAs(compiled);
+
+        List<ScriptContext> contexts = Lists.newArrayList();
+        for (long value : new long[]{0L, 41L}) {
+            ScriptContext context = new VTLScriptContext();
+            context.setAttribute("ds", StaticDataset.create()
+                    .addComponent("id", Role.IDENTIFIER, String.class)
+                    .addComponent("me", Role.MEASURE, Long.class)
+                    .addPoints("id", value)
+                    .build(), ScriptContext.ENGINE_SCOPE);
+            compiled.eval(context);
+            contexts.add(context);
+        }
+
+        assertThat(((Dataset) contexts.get(0).getAttribute("res")).getData()).containsExactly(
+                DataPoint.create("id", 0L, 1L)
+        );
+        assertThat(((Dataset) contexts.get(1).getAttribute("res")).getData()).containsExactly(
+                DataPoint.create("id", 41L, 42L)
+        );
+
+        assertThatThrownBy(() -> vtlEngine.compile("res := [ds] {"))
+                .isInstanceOf(VTLCompileException.class);
+    }
+
+    @Test
+    public void testStatementExecutor() throws Exception {
+        VTLScriptEngine vtlEngine = (VTLScriptEngine) engine;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            vtlEngine.setStatementExecutor(executor);
+            bindings.put("ds", StaticDataset.create()
+                    .addComponent("id", Role.IDENTIFIER, String.class)
+                    .addComponent("me", Role.MEASURE, Long.class)
+                    .addPoints("a", 1L)
+                    .addPoints("b", 2L)
+                    .build());
+            Object last = engine.eval("" +
+                    "s1 := 1 + 1\n" +
+                    "ds2 := [ds] { plus := me + 1 }\n" +
+                    "s2 := \"two\"\n" +
+                    "ds3 := [ds2] { filter plus > 2 }\n" +
+                    "ds2 := [ds] { filter me > 100 }\n"
+            );
+
+            assertThat(bindings).contains(entry("s1", 2L), entry("s2", "two"));
+            assertThat(((Dataset) bindings.get("ds3")).getData()).containsExactly(
+                    DataPoint.create("b", 2L, 3L)
+            );
+            assertThat(last).isSameAs(bindings.get("ds2"));
+            assertThat(((Dataset) last).getData()).isEmpty();
+
+            assertThatThrownBy(() -> engine.eval("" +
+                    "ds4 := [unknown] { filter true }\n" +
+                    "s3 := 3\n"
+            )).isInstanceOf(VTLCompileException.class);
+            assertThat(bindings).contains(entry("s3", 3L));
+        } finally {
+            vtlEngine.setStatementExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIncrementalEvaluation() throws Exception {
+        Connector versioned = mock(Connector.class);
+        Map<String, String> versions = Maps.newHashMap();
+        when(versioned.canHandle(anyString())).thenReturn(true);
+        when(versioned.getDataset(anyString())).thenAnswer(invocation -> StaticDataset.create()
+                .addComponent("id", Role.IDENTIFIER, String.class)
+                .addComponent("me", Role.MEASURE, Long.class)
+                .addPoints("a", 1L)
+                .build());
+        when(versioned.getVersion(anyString())).thenAnswer(
+                invocation -> Optional.ofNullable(versions.get(invocation.getArgumentAt(0, String.class)))
+        );
+
+        VTLScriptEngine vtlEngine = new VTLScriptEngine(versioned);
+        vtlEngine.setIncrementalEvaluation(true);
+        Bindings bindings = vtlEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+        String script = "" +
+                "ds1 := get(\"t1\")\n" +
+                "ds2 := get(\"t2\")\n" +
+                "res1 := [ds1] { filter true }\n" +
+                "res2 := [ds2] { filter true }\n";
+
+        versions.put("t1", "1");
+        versions.put("t2", "1");
+        vtlEngine.eval(script);
+        Object res1 = bindings.get("res1");
+        Object res2 = bindings.get("res2");
+
+        versions.put("t2", "2");
+        vtlEngine.eval(script);
+        assertThat(bindings.get("res1")).isSameAs(res1);
+        assertThat(bindings.get("res2")).isNotSameAs(res2);
+        verify(versioned, times(1)).getDataset("t1");
+        verify(versioned, times(2)).getDataset("t2");
+
+        // Without version, the datasets are fetched again.
+        versions.remove("t1");
+        vtlEngine.eval(script);
+        assertThat(bindings.get("res1")).isNotSameAs(res1);
+        verify(versioned, times(2)).getDataset("t1");
+        verify(versioned, times(2)).getDataset("t2");
+    }
+
     @Test
     public void testAssignment() throws Exception {
 
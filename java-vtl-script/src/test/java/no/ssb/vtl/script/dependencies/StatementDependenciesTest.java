@@ -0,0 +1,79 @@
+package no.ssb.vtl.script.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.VTLScriptEngine;
+import no.ssb.vtl.script.error.VTLScriptException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatementDependenciesTest {
+
+    private static StatementDependencies analyze(String script) throws IOException {
+        List<VTLScriptException> errors = Lists.newArrayList();
+        VTLParser.StartContext start = new VTLScriptEngine().parse(new StringReader(script), errors::add);
+        assertThat(errors).isEmpty();
+        return StatementDependencies.of(start);
+    }
+
+    @Test
+    public void testReadsAndWrites() throws Exception {
+        StatementDependencies dependencies = analyze("" +
+                "a := get(\"ds1\")\n" +
+                "b := [a, other] { filter a.m1 > 0 }\n" +
+                "c := a.m1\n"
+        );
+
+        assertThat(dependencies.getAssignment(0).getTarget()).isEqualTo("a");
+        assertThat(dependencies.getAssignment(0).getGetIdentifiers()).containsExactly("ds1");
+        assertThat(dependencies.getAssignment(1).getReads()).contains("a", "other");
+        assertThat(dependencies.getAssignment(2).getReads()).containsExactly("a");
+    }
+
+    @Test
+    public void testGraph() throws Exception {
+        StatementDependencies dependencies = analyze("" +
+                "a := 1\n" +
+                "b := 2\n" +
+                "c := a + b\n" +
+                "d := b * 2\n" +
+                "b := 3\n" +
+                "e := c + d\n"
+        );
+
+        assertThat(dependencies.size()).isEqualTo(6);
+        assertThat(dependencies.getPredecessors(0)).isEmpty();
+        assertThat(dependencies.getPredecessors(1)).isEmpty();
+        assertThat(dependencies.getPredecessors(2)).containsOnly(0, 1);
+        assertThat(dependencies.getPredecessors(3)).containsOnly(1);
+        // Writes after reads and writes.
+        assertThat(dependencies.getPredecessors(4)).containsOnly(1, 2, 3);
+        assertThat(dependencies.getPredecessors(5)).containsOnly(2, 3);
+        assertThat(dependencies.getSuccessors(1)).containsOnly(2, 3, 4);
+    }
+}
@@ -0,0 +1,118 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLBoolean;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLFloat;
+import no.ssb.vtl.model.VTLInteger;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VTLString;
+import no.ssb.vtl.script.expressions.arithmetic.AdditionExpression;
+import no.ssb.vtl.script.expressions.arithmetic.DivisionExpression;
+import no.ssb.vtl.script.expressions.arithmetic.MultiplicationExpression;
+import no.ssb.vtl.script.expressions.equality.EqualExpression;
+import no.ssb.vtl.script.expressions.equality.GraterThanExpression;
+import no.ssb.vtl.script.expressions.equality.IsNullExpression;
+import no.ssb.vtl.script.expressions.equality.LesserThanExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.operations.join.ComponentBindings;
+import no.ssb.vtl.script.operations.join.DataPointBindings;
+import org.assertj.core.api.JUnitSoftAssertions;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static no.ssb.vtl.model.Component.Role;
+
+public class CompiledExpressionTest {
+
+    @Rule
+    public JUnitSoftAssertions softly = new JUnitSoftAssertions();
+
+    private final StaticDataset dataset = StaticDataset.create()
+            .addComponent("id", Role.IDENTIFIER, String.class)
+            .addComponent("int", Role.MEASURE, Long.class)
+            .addComponent("float", Role.MEASURE, Double.class)
+            .addComponent("string", Role.MEASURE, String.class)
+            .addPoints("1", 10L, 1.5, "a")
+            .addPoints("2", null, 2.5, "b")
+            .addPoints("3", -3L, null, null)
+            .addPoints("4", 0L, 0.0, "a")
+            .build();
+
+    private final ComponentBindings bindings = new ComponentBindings(dataset);
+
+    private static VariableExpression variable(Class<?> type, String name) {
+        return new VariableExpression(type, name);
+    }
+
+    private static LiteralExpression literal(Object value) {
+        return new LiteralExpression(VTLObject.of(value));
+    }
+
+    @Test
+    public void testSameResultsAsResolve() throws Exception {
+        VariableExpression integer = variable(VTLInteger.class, "int");
+        VariableExpression floating = variable(VTLFloat.class, "float");
+        VariableExpression string = variable(VTLString.class, "string");
+
+        List<VTLExpression> expressions = ImmutableList.of(
+                new AdditionExpression(new MultiplicationExpression(integer, literal(2L)), literal(1L)),
+                new AdditionExpression(integer, floating),
+                new DivisionExpression(integer, literal(4L)),
+                new GraterThanExpression(integer, literal(0L)),
+                new LesserThanExpression(floating, literal(2.0)),
+                new EqualExpression(string, literal("a")),
+                new AndExpression(new GraterThanExpression(integer, literal(-5L)), new EqualExpression(string, literal("a"))),
+                new OrExpression(new IsNullExpression(floating), new NotExpression(new EqualExpression(string, literal("a")))),
+                new GraterThanExpression(new AdditionExpression(integer, literal(1L)), literal(VTLObject.NULL)),
+                new IfThenElseExpression.Builder(literal("else"))
+                        .addCondition(new EqualExpression(string, literal("x")), literal("x"))
+                        .addCondition(new EqualExpression(string, literal("b")), literal("b"))
+                        .addCondition(new EqualExpression(string, literal("y")), literal("y"))
+                        .addCondition(new EqualExpression(string, literal("a")), literal("a"))
+                        .build()
+        );
+
+        DataStructure structure = dataset.getDataStructure();
+        DataPointBindings dataPointBindings = new DataPointBindings(bindings, structure);
+        List<DataPoint> dataPoints = dataset.getData().collect(ImmutableList.toImmutableList());
+        for (VTLExpression expression : expressions) {
+            CompiledExpression compiled = CompiledExpression.compile(expression, bindings, structure);
+            for (DataPoint dataPoint : dataPoints) {
+                VTLObject expected = expression.resolve(dataPointBindings.setDataPoint(dataPoint));
+                VTLObject actual = compiled.evaluate(dataPoint);
+                softly.assertThat(actual.get()).as("%s on %s", expression, dataPoint).isEqualTo(expected.get());
+                if (expected instanceof VTLBoolean) {
+                    softly.assertThat(compiled.test(dataPoint)).isEqualTo(Boolean.TRUE.equals(expected.get()));
+                }
+            }
+        }
+    }
+}
@@ -20,7 +20,10 @@ package no.ssb.vtl.script.expressions;
 
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLFunction;
+import no.ssb.vtl.model.VTLInteger;
+import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VTLString;
+import no.ssb.vtl.script.functions.VTLSubstr;
 import org.junit.Test;
 
 import java.util.List;
@@ -29,8 +32,11 @@ import static com.google.common.collect.ImmutableMap.of;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class FunctionExpressionTest {
 
@@ -162,4 +168,30 @@ public class FunctionExpressionTest {
                 .hasMessage("missing argument(s): one");
 
     }
+
+    @Test
+    public void testPositionalInvocation() throws Exception {
+        VTLExpression value = new LiteralExpression(VTLString.of("abcdef"));
+        VTLExpression start = new LiteralExpression(VTLInteger.of(1));
+        VTLExpression length = new LiteralExpression(VTLInteger.of(3));
+
+        FunctionExpression<VTLString> positional = new FunctionExpression<>(VTLSubstr.getInstance(),
+                value, start, length);
+        FunctionExpression<VTLString> named = new FunctionExpression<>(VTLSubstr.getInstance(),
+                asList(value), of("length", length, "startPosition", start));
+
+        VTLObject expected = VTLSubstr.getInstance().invoke(asList(VTLString.of("abcdef"), VTLInteger.of(1),
+                VTLInteger.of(3)));
+        assertThat(positional.resolve(null)).isEqualTo(expected);
+        assertThat(named.resolve(null)).isEqualTo(expected);
+
+        // Types that cannot be checked when the expression is created are checked for each invocation.
+        VTLExpression untyped = mock(VTLExpression.class);
+        when(untyped.getVTLType()).thenReturn(VTLObject.class);
+        when(untyped.resolve(any())).thenReturn(VTLInteger.of(42));
+        assertThatThrownBy(() -> new FunctionExpression<>(VTLSubstr.getInstance(), untyped, start, length)
+                .resolve(null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("ds");
+    }
 }
@@ -20,14 +20,17 @@ package no.ssb.vtl.script.expressions;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.ImmutableMap;
 import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VTLString;
+import no.ssb.vtl.script.expressions.equality.EqualExpression;
 import org.junit.Test;
 
 import javax.script.Bindings;
 import javax.script.SimpleBindings;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -182,6 +185,40 @@ public class IfThenElseExpressionTest {
         assertThat(resolve.get()).isEqualTo(null);
     }
 
+    @Test
+    public void testLookup() {
+        VTLExpression x = new VariableExpression(VTLString.class, "x");
+        IfThenElseExpression function = new IfThenElseExpression.Builder(VALUE_ELSE)
+                .addCondition(new EqualExpression(x, new LiteralExpression(VTLObject.of("A"))), VALUE_OK)
+                .addCondition(new EqualExpression(new LiteralExpression(VTLObject.of("B")), x), VALUE_NULL)
+                .addCondition(new EqualExpression(x, new LiteralExpression(VTLObject.of("A"))), VALUE_WITH_EXCEPTION)
+                .addCondition(new EqualExpression(x, new LiteralExpression(VTLObject.NULL)), VALUE_WITH_EXCEPTION)
+                .addCondition(new EqualExpression(x, new LiteralExpression(VTLObject.of("C"))),
+                        new LiteralExpression(VTLObject.of("C")))
+                .addCondition(new EqualExpression(x, new VariableExpression(VTLString.class, "y")),
+                        new LiteralExpression(VTLObject.of("y")))
+                .build();
+
+        assertThat(function.getSteps()).hasSize(2);
+        assertThat(function.getSteps().get(0)).isInstanceOf(IfThenElseExpression.Lookup.class);
+
+        SimpleBindings bindings = new SimpleBindings();
+        bindings.put("y", VTLObject.of("D"));
+        ImmutableMap<VTLObject, Object> expected = ImmutableMap.of(
+                VTLObject.of("A"), "OK",
+                VTLObject.of("C"), "C",
+                VTLObject.of("D"), "y",
+                VTLObject.of("E"), "else",
+                VTLObject.NULL, "else"
+        );
+        for (Map.Entry<VTLObject, Object> entry : expected.entrySet()) {
+            bindings.put("x", entry.getKey());
+            assertThat(function.resolve(bindings).get()).as("value for %s", entry.getKey()).isEqualTo(entry.getValue());
+        }
+        bindings.put("x", VTLObject.of("B"));
+        assertThat(function.resolve(bindings).get()).isNull();
+    }
+
     @Test
     public void testFailIfAllNulls() {
         assertThatThrownBy(() -> {
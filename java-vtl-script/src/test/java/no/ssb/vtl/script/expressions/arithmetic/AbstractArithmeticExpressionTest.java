@@ -19,6 +19,7 @@ package no.ssb.vtl.script.expressions.arithmetic;
  */
 
 import com.codepoetics.protonpack.StreamUtils;
+import no.ssb.vtl.model.ColumnVector;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLFloat;
 import no.ssb.vtl.model.VTLInteger;
@@ -139,7 +140,55 @@ public class AbstractArithmeticExpressionTest {
         ).hasMessage("should not have been called");
     }
 
-    private class TestableExpression extends AbstractArithmeticExpression {
+    @Test
+    public void testOtherNumberTypes() {
+        VTLNumber six = mock(VTLNumber.class);
+        when(six.get()).thenReturn(6);
+
+        VTLObject quotient = new DivisionExpression(
+                createExpression(VTLInteger.class, six),
+                createExpression(VTLInteger.class, VTLInteger.of(4L))
+        ).resolve(new SimpleBindings());
+        softly.assertThat(quotient).isEqualTo(VTLFloat.of(1.5));
+
+        VTLObject sum = new AdditionExpression(
+                createExpression(VTLFloat.class, VTLFloat.of(0.5)),
+                createExpression(VTLInteger.class, six)
+        ).resolve(new SimpleBindings());
+        softly.assertThat(sum).isEqualTo(VTLFloat.of(6.5));
+    }
+
+    @Test
+    public void testComputeColumns() {
+        ColumnVector.LongVector longs = new ColumnVector.LongVector(3);
+        longs.setLong(0, 1L);
+        longs.setLong(2, 3L);
+        ColumnVector.DoubleVector doubles = new ColumnVector.DoubleVector(3);
+        doubles.setDouble(0, 0.5);
+        doubles.setDouble(1, 1.5);
+        doubles.setDouble(2, 2.5);
+
+        AdditionExpression addition = new AdditionExpression(floatExpr, floatExpr);
+
+        ColumnVector sumOfLongs = addition.compute(longs, longs, 3);
+        softly.assertThat(sumOfLongs).isInstanceOf(ColumnVector.LongVector.class);
+        softly.assertThat(sumOfLongs.get(0)).isEqualTo(VTLInteger.of(2L));
+        softly.assertThat(sumOfLongs.isNull(1)).isTrue();
+        softly.assertThat(sumOfLongs.get(2)).isEqualTo(VTLInteger.of(6L));
+
+        ColumnVector mixed = addition.compute(longs, doubles, 3);
+        softly.assertThat(mixed).isInstanceOf(ColumnVector.DoubleVector.class);
+        softly.assertThat(mixed.get(0)).isEqualTo(VTLFloat.of(1.5));
+        softly.assertThat(mixed.isNull(1)).isTrue();
+        softly.assertThat(mixed.get(2)).isEqualTo(VTLFloat.of(5.5));
+
+        DivisionExpression division = new DivisionExpression(integerExpr, integerExpr);
+        ColumnVector quotient = division.compute(longs, longs, 3);
+        softly.assertThat(quotient).isInstanceOf(ColumnVector.DoubleVector.class);
+        softly.assertThat(quotient.get(2)).isEqualTo(VTLFloat.of(1.0));
+    }
+
+    private class TestableExpression extends AbstractIntegerArithmeticExpression {
 
         TestableExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
             super(leftOperand, rightOperand);
@@ -150,5 +199,15 @@ public class AbstractArithmeticExpressionTest {
             throw new AssertionError("should not have been called");
         }
 
+        @Override
+        protected long compute(long leftOperand, long rightOperand) {
+            throw new AssertionError("should not have been called");
+        }
+
+        @Override
+        protected double compute(double leftOperand, double rightOperand) {
+            throw new AssertionError("should not have been called");
+        }
+
     }
 }
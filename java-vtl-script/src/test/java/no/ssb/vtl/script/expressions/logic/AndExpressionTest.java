@@ -20,6 +20,7 @@ package no.ssb.vtl.script.expressions.logic;
 
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Table;
+import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.expressions.LiteralExpression;
@@ -27,6 +28,8 @@ import org.assertj.core.api.JUnitSoftAssertions;
 import org.junit.Rule;
 import org.junit.Test;
 
+import javax.script.Bindings;
+
 public class AndExpressionTest {
 
     private VTLExpression truthy= new LiteralExpression(VTLObject.of(true));
@@ -61,4 +64,21 @@ public class AndExpressionTest {
 
         }
     }
+
+    @Test
+    public void testShortCircuit() throws Exception {
+        VTLExpression failing = new VTLExpression() {
+            @Override
+            public VTLObject resolve(Bindings bindings) {
+                throw new AssertionError("the right operand was resolved");
+            }
+
+            @Override
+            public Class getVTLType() {
+                return VTLBoolean.class;
+            }
+        };
+
+        softly.assertThat(new AndExpression(falsy, failing).resolve(null).get()).isEqualTo(false);
+    }
 }
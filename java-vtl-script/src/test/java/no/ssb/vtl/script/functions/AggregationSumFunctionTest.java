@@ -24,9 +24,11 @@ package no.ssb.vtl.script.functions;
  *
  */
 
+import no.ssb.vtl.model.ColumnVector;
 import no.ssb.vtl.model.VTLFloat;
 import no.ssb.vtl.model.VTLInteger;
 import no.ssb.vtl.model.VTLNumber;
+import no.ssb.vtl.model.VTLObject;
 import org.assertj.core.util.Lists;
 import org.junit.Test;
 
@@ -118,4 +120,25 @@ public class AggregationSumFunctionTest {
         assertThat(function.getVTLReturnTypeFor(Double.class)).isEqualTo(Double.class);
         assertThat(function.getVTLReturnTypeFor(Float.class)).isEqualTo(Float.class);
     }
+
+    @Test
+    public void testSumLongColumn() {
+        ColumnVector.LongVector column = new ColumnVector.LongVector(4);
+        column.setLong(0, 10L);
+        column.setLong(1, 20L);
+        column.setLong(3, 12L);
+
+        VTLNumber<?> result = new AggregationSumFunction().apply(column, 4);
+        assertThat(result).isEqualTo(VTLNumber.of(42L));
+        assertThat(result.getClass().getSuperclass()).isEqualTo(VTLInteger.class);
+    }
+
+    @Test
+    public void testSumEmptyColumn() {
+        ColumnVector.DoubleVector column = new ColumnVector.DoubleVector(2);
+        column.set(0, VTLObject.NULL);
+
+        VTLNumber<?> result = new AggregationSumFunction().apply(column, 2);
+        assertThat(result.get()).isNull();
+    }
 }
@@ -0,0 +1,180 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VTLString;
+import no.ssb.vtl.model.VtlOrdering;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static no.ssb.vtl.model.Ordering.Direction.ASC;
+import static no.ssb.vtl.model.Ordering.Direction.DESC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointSorterTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id", IDENTIFIER, String.class,
+            "measure", MEASURE, Long.class
+    );
+
+    private final List<DataPoint> data = Stream.of(
+            DataPoint.create("b", 1L),
+            DataPoint.create("a", 2L),
+            DataPoint.create(null, 3L),
+            DataPoint.create("a", null),
+            DataPoint.create("c", 1L)
+    ).collect(Collectors.toList());
+
+    @Test
+    public void testSort() {
+        VtlOrdering ordering = VtlOrdering.using(structure).then(DESC, "measure").then(ASC, "id").build();
+
+        List<DataPoint> sorted = DataPointSorter.sort(data.stream(), ordering, structure)
+                .collect(Collectors.toList());
+
+        assertThat(sorted).containsExactly(
+                data.get(3), data.get(2), data.get(1), data.get(0), data.get(4)
+        );
+        assertThat(sorted).containsExactlyElementsOf(
+                data.stream().sorted(ordering).collect(Collectors.toList())
+        );
+    }
+
+    @Test
+    public void testFallbackOnWrongType() {
+        VtlOrdering ordering = VtlOrdering.using(structure).then(ASC, "measure").build();
+        Stream<DataPoint> stream = Stream.of(
+                DataPoint.create("a", "not a long"),
+                DataPoint.create("b", "a string")
+        );
+
+        assertThat(DataPointSorter.sort(stream, ordering, structure))
+                .containsExactly(DataPoint.create("b", "a string"), DataPoint.create("a", "not a long"));
+    }
+
+    @Test
+    public void testClose() {
+        AtomicBoolean closed = new AtomicBoolean();
+        VtlOrdering ordering = VtlOrdering.using(structure).then(ASC, "id").build();
+        try (Stream<DataPoint> stream = DataPointSorter.sort(
+                data.stream().onClose(() -> closed.set(true)), ordering, structure)) {
+            assertThat(stream).hasSize(data.size());
+        }
+        assertThat(closed.get()).isTrue();
+    }
+
+    @Test
+    public void testExternalSort() {
+        Random random = new Random(42);
+        List<DataPoint> randomData = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            randomData.add(DataPoint.create(
+                    random.nextInt(10) == 0 ? null : "id" + random.nextInt(100),
+                    random.nextInt(10) == 0 ? null : (long) random.nextInt(50)
+            ));
+        }
+        VtlOrdering ordering = VtlOrdering.using(structure).then(ASC, "id").then(DESC, "measure").build();
+
+        List<DataPoint> expected = randomData.stream().sorted(ordering).collect(Collectors.toList());
+        try (Stream<DataPoint> sorted = DataPointSorter.sort(randomData.stream(), ordering, structure, 10_000)) {
+            assertThat(sorted).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testExternalSortWithOrdering() {
+        DataStructure objects = DataStructure.of(
+                "id", IDENTIFIER, Object.class,
+                "measure", MEASURE, Long.class
+        );
+        Random random = new Random(42);
+        List<DataPoint> randomData = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            randomData.add(DataPoint.create("id" + random.nextInt(100), (long) i));
+        }
+        VtlOrdering ordering = VtlOrdering.using(objects).then(DESC, "id").build();
+
+        List<DataPoint> expected = randomData.stream().sorted(ordering).collect(Collectors.toList());
+        try (Stream<DataPoint> sorted = DataPointSorter.sort(randomData.stream(), ordering, objects, 10_000)) {
+            assertThat(sorted).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testFallbackOnWrongTypeAfterSpill() {
+        Random random = new Random(42);
+        List<DataPoint> randomData = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            randomData.add(DataPoint.create("id" + random.nextInt(100), (long) random.nextInt(50)));
+            if (i % 100 == 99) {
+                // Unique identifiers, the wrong measures are never compared.
+                randomData.add(DataPoint.create("wrong" + i, "not a long"));
+            }
+        }
+        VtlOrdering ordering = VtlOrdering.using(structure).then(ASC, "id").then(DESC, "measure").build();
+
+        List<DataPoint> expected = randomData.stream().sorted(ordering).collect(Collectors.toList());
+        try (Stream<DataPoint> sorted = DataPointSorter.sort(randomData.stream(), ordering, structure, 10_000)) {
+            assertThat(sorted).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testExternalSortKeepsUnwritableRows() {
+        DataStructure objects = DataStructure.of(
+                "id", IDENTIFIER, String.class,
+                "object", MEASURE, Object.class
+        );
+        Random random = new Random(42);
+        List<DataPoint> randomData = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Object value = i % 7 == 0 ? new Object() : (Object) (long) i;
+            randomData.add(DataPoint.create(VTLString.of("id" + random.nextInt(100)), wrap(value)));
+        }
+        VtlOrdering ordering = VtlOrdering.using(objects).then(ASC, "id").build();
+
+        List<DataPoint> expected = randomData.stream().sorted(ordering).collect(Collectors.toList());
+        try (Stream<DataPoint> sorted = DataPointSorter.sort(randomData.stream(), ordering, objects, 1_000)) {
+            assertThat(sorted).containsExactlyElementsOf(expected);
+        }
+    }
+
+    private static VTLObject wrap(Object value) {
+        return new VTLObject() {
+            @Override
+            public Object get() {
+                return value;
+            }
+        };
+    }
+}
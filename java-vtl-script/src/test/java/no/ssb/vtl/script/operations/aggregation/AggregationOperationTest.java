@@ -112,6 +112,31 @@ public class AggregationOperationTest {
 
     }
 
+    @Test
+    public void testHashAggregation() {
+
+        DataStructure structure = this.dataset.getDataStructure();
+        AggregationOperation aggregationOperation = new AggregationOperation(
+                this.dataset,
+                ImmutableList.of(structure.get("id1")),
+                ImmutableList.of(structure.get("m1")),
+                new AggregationSumFunction()
+        );
+
+        assertThat(aggregationOperation.plan().getStrategy()).contains("hash aggregation");
+
+        VtlOrdering descending = VtlOrdering.using(aggregationOperation).desc("id1").build();
+        try (Stream<DataPoint> data = aggregationOperation.getData(descending).get()) {
+            assertThat(data).containsExactly(
+                    DataPoint.create("c", 15),
+                    DataPoint.create("b", 15),
+                    DataPoint.create("a", 15)
+            );
+        } finally {
+            assertThat(dataset.allStreamWereClosed()).isTrue();
+        }
+    }
+
     @Test
     public void testFilters() {
 
@@ -25,13 +25,23 @@ import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLInteger;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.expressions.LiteralExpression;
+import no.ssb.vtl.script.expressions.VariableExpression;
+import no.ssb.vtl.script.expressions.equality.GraterThanExpression;
+import no.ssb.vtl.script.expressions.equality.LesserThanExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.operations.VtlStream;
 import no.ssb.vtl.script.operations.join.ComponentBindings;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import javax.script.Bindings;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -84,6 +94,71 @@ public class FilterOperationTest {
         componentBindings = new ComponentBindings(dataset);
     }
 
+    @After
+    public void tearDown() {
+        VtlConfiguration.getConfig().disableBatchExecution();
+        VtlConfiguration.getConfig().disableAdaptiveFilters();
+    }
+
+    private static VTLExpression measureGreaterThan(long threshold, AtomicInteger evaluations) {
+        return new VTLExpression() {
+            @Override
+            public VTLObject resolve(Bindings bindings) {
+                evaluations.incrementAndGet();
+                Long value = (Long) ((VTLObject) bindings.get("m")).get();
+                return VTLBoolean.of(value == null ? null : value > threshold);
+            }
+
+            @Override
+            public Class getVTLType() {
+                return VTLBoolean.class;
+            }
+        };
+    }
+
+    @Test
+    public void testAdaptiveFilters() {
+        VtlConfiguration.getConfig().enableAdaptiveFilters();
+
+        StaticDataset.ValueBuilder builder = StaticDataset.create()
+                .addComponent("id", Component.Role.IDENTIFIER, Long.class)
+                .addComponent("m", Component.Role.MEASURE, Long.class)
+                .addPoints(0L, null);
+        int size = AdaptivePredicate.REORDER_INTERVAL * 4;
+        for (long i = 1; i < size; i++) {
+            builder.addPoints(i, i % 100 == 0 ? null : i);
+        }
+        StaticDataset dataset = builder.build();
+
+        // The first term almost never rejects a row, the second one rejects most of them.
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        VTLExpression predicate = new AndExpression(
+                measureGreaterThan(0, first),
+                measureGreaterThan(size - 10, second)
+        );
+
+        FilterOperation result = new FilterOperation(dataset, predicate, new ComponentBindings(dataset));
+        try (Stream<DataPoint> data = result.getData()) {
+            assertThat(data).extracting(dataPoint -> dataPoint.get(0).get())
+                    .containsExactly((long) size - 9, (long) size - 8, (long) size - 7, (long) size - 6,
+                            (long) size - 5, (long) size - 4, (long) size - 3, (long) size - 2, (long) size - 1);
+        }
+
+        // Once reordered, the first term is only evaluated on the rows the second one accepts.
+        assertThat(second.get()).isGreaterThan(size - AdaptivePredicate.REORDER_INTERVAL);
+        assertThat(first.get()).isLessThan(AdaptivePredicate.REORDER_INTERVAL + 10);
+
+        AdaptivePredicate adaptivePredicate = AdaptivePredicate.compile(predicate, new ComponentBindings(dataset),
+                dataset.getDataStructure(), null, order -> {
+                });
+        assertThat(adaptivePredicate.getOrder()).containsExactly(0, 1);
+        try (Stream<DataPoint> data = dataset.getData()) {
+            data.forEach(adaptivePredicate::test);
+        }
+        assertThat(adaptivePredicate.getOrder()).containsExactly(1, 0);
+    }
+
     @Test
     public void testPredicateReturnsNull() {
         FilterOperation resultBooleanNull = new FilterOperation(dataset, NULL, componentBindings);
@@ -116,5 +191,74 @@ public class FilterOperationTest {
             assertThat(dataset.allStreamWereClosed()).isTrue();
         }
     }
-}
 
+    @Test
+    public void testBatchExecution() {
+        VtlConfiguration.getConfig().enableBatchExecution();
+        VtlConfiguration.getConfig().setBatchSize(2);
+        try {
+            DatasetCloseWatcher dataset = DatasetCloseWatcher.wrap(StaticDataset.create()
+                    .addComponent("id", Component.Role.IDENTIFIER, String.class)
+                    .addComponent("m", Component.Role.MEASURE, Long.class)
+                    .addPoints("a", 1L)
+                    .addPoints("b", 2L)
+                    .addPoints("c", null)
+                    .addPoints("d", 4L)
+                    .addPoints("e", 5L)
+                    .build());
+
+            VTLExpression even = new VTLExpression() {
+                @Override
+                public VTLObject resolve(Bindings bindings) {
+                    Long value = (Long) ((VTLObject) bindings.get("m")).get();
+                    return VTLBoolean.of(value == null ? null : value % 2 == 0);
+                }
+
+                @Override
+                public Class getVTLType() {
+                    return VTLBoolean.class;
+                }
+            };
+
+            FilterOperation result = new FilterOperation(dataset, even, new ComponentBindings(dataset));
+            try (Stream<DataPoint> data = result.getData()) {
+                assertThat(data).containsExactly(
+                        DataPoint.create("b", 2L),
+                        DataPoint.create("d", 4L)
+                );
+            } finally {
+                assertThat(dataset.allStreamWereClosed()).isTrue();
+            }
+        } finally {
+            VtlConfiguration.getConfig().setBatchSize(1024);
+        }
+    }
+
+    @Test
+    public void testBatchExecutionKeepsThePlan() {
+        VtlConfiguration.getConfig().enableBatchExecution();
+        DatasetCloseWatcher numbers = DatasetCloseWatcher.wrap(StaticDataset.create()
+                .addComponent("id", Component.Role.IDENTIFIER, String.class)
+                .addComponent("m", Component.Role.MEASURE, Long.class)
+                .addPoints("a", 1L)
+                .addPoints("b", 2L)
+                .addPoints("c", 3L)
+                .build());
+        ComponentBindings bindings = new ComponentBindings(numbers);
+        VariableExpression measure = new VariableExpression(VTLInteger.class, "m");
+
+        FilterOperation child = new FilterOperation(numbers,
+                new GraterThanExpression(measure, new LiteralExpression(VTLInteger.of(1L))), bindings);
+        FilterOperation result = new FilterOperation(child,
+                new LesserThanExpression(measure, new LiteralExpression(VTLInteger.of(3L))), bindings);
+
+        try (Stream<DataPoint> data = result.getData()) {
+            assertThat(((VtlStream) data).getParents()).hasOnlyOneElementSatisfying(parent ->
+                    assertThat(((VtlStream) parent).getOperation()).isSameAs(child)
+            );
+            assertThat(data).containsExactly(DataPoint.create("b", 2L));
+        } finally {
+            assertThat(numbers.allStreamWereClosed()).isTrue();
+        }
+    }
+}
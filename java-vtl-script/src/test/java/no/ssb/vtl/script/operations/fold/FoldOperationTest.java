@@ -23,6 +23,7 @@ package no.ssb.vtl.script.operations.fold;
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -35,7 +36,10 @@ import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
+import no.ssb.vtl.script.operations.VtlStream;
+import no.ssb.vtl.script.operations.rename.RenameOperation;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
 import org.assertj.core.api.AutoCloseableSoftAssertions;
 import org.junit.Test;
@@ -323,6 +327,51 @@ public class FoldOperationTest extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testFoldBatch() {
+
+        DatasetCloseWatcher dataset = DatasetCloseWatcher.wrap(StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("measure1", MEASURE, Long.class)
+                .addComponent("measure2", MEASURE, Long.class)
+                .addComponent("attribute", ATTRIBUTE, String.class)
+
+                .addPoints("id1-1", 1L, 2L, "attribute1-1")
+                .addPoints("id1-2", null, 4L, "attribute1-2")
+                .addPoints("id1-3", 5L, null, null)
+
+                .build());
+
+        VtlConfiguration.getConfig().enableBatchExecution();
+        try (AutoCloseableSoftAssertions softly = new AutoCloseableSoftAssertions()) {
+
+            // Identity rename, to have an operation as child.
+            RenameOperation child = new RenameOperation(dataset, ImmutableMap.of("attribute", "attribute"));
+            FoldOperation clause = new FoldOperation(
+                    child,
+                    "newId",
+                    "newMeasure",
+                    ImmutableSet.of("measure1", "measure2")
+            );
+
+            Stream<DataPoint> stream = clause.computeData(Ordering.ANY, Filtering.ALL, Collections.emptySet());
+            softly.assertThat(stream)
+                    .containsExactly(
+                            DataPoint.create("id1-1", "attribute1-1", "measure1", 1L),
+                            DataPoint.create("id1-1", "attribute1-1", "measure2", 2L),
+                            DataPoint.create("id1-2", "attribute1-2", "measure2", 4L),
+                            DataPoint.create("id1-3", null, "measure1", 5L)
+                    );
+            softly.assertThat(((VtlStream) stream).getParents()).hasSize(1);
+            softly.assertThat(((VtlStream) stream).printPlan()).contains("RenameOperation");
+            stream.close();
+
+            softly.assertThat(dataset.allStreamWereClosed()).isTrue();
+        } finally {
+            VtlConfiguration.getConfig().disableBatchExecution();
+        }
+    }
+
     public class OperationDataset implements Dataset {
         AbstractDatasetOperation operation;
 
@@ -0,0 +1,68 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLObject;
+import org.junit.Test;
+
+import javax.script.Bindings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointBindingsTest {
+
+    @Test
+    public void testSlots() {
+        StaticDataset t1 = StaticDataset.create()
+                .addComponent("id1", Component.Role.IDENTIFIER, String.class)
+                .addComponent("m1", Component.Role.MEASURE, Long.class)
+                .build();
+
+        DataPointBindings bindings = new DataPointBindings(
+                new ComponentBindings(ImmutableMap.of("t1", t1)),
+                t1.getDataStructure()
+        );
+        assertThat(bindings.getSlot("id1")).isEqualTo(0);
+        assertThat(bindings.getSlot("m1")).isEqualTo(1);
+        assertThat(bindings.getSlot("t1")).isEqualTo(-1);
+        assertThat(bindings.getDatasetBindings("t1").getSlot("m1")).isEqualTo(1);
+
+        DataPoint first = DataPoint.create("a", 1L);
+        DataPoint second = DataPoint.create("b", 2L);
+
+        bindings.setDataPoint(first);
+        Bindings dataset = (Bindings) bindings.get("t1");
+        assertThat(bindings.get("m1")).isEqualTo(VTLObject.of(1L));
+        assertThat(dataset.get("m1")).isEqualTo(VTLObject.of(1L));
+
+        bindings.setDataPoint(second);
+        assertThat(bindings.get("id1")).isEqualTo(VTLObject.of("b"));
+        assertThat(dataset.get("m1")).isEqualTo(VTLObject.of(2L));
+
+        bindings.put("m1", VTLObject.of(3L));
+        assertThat(second.get(1)).isEqualTo(VTLObject.of(3L));
+        assertThat(first.get(1)).isEqualTo(VTLObject.of(1L));
+    }
+}
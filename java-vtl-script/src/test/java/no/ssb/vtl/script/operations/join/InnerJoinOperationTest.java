@@ -23,15 +23,19 @@ package no.ssb.vtl.script.operations.join;
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import com.carrotsearch.randomizedtesting.annotations.Seed;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.operations.rename.RenameOperation;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
 import no.ssb.vtl.script.support.VTLPrintStream;
 import org.junit.Test;
@@ -43,6 +47,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -95,6 +101,267 @@ public class InnerJoinOperationTest extends RandomizedTest {
 
     }
 
+    @Test
+    public void testPlannedJoinOrder() {
+        StaticDataset.ValueBuilder large = StaticDataset.create(DataStructure.of(
+                "ms1", MEASURE, Long.class,
+                "id1", IDENTIFIER, String.class
+        ));
+        StaticDataset.ValueBuilder medium = StaticDataset.create(DataStructure.of(
+                "id1", IDENTIFIER, String.class,
+                "ms2", MEASURE, Long.class
+        ));
+        for (long i = 0; i < 20; i++) {
+            large.addPoints(i, "id" + i);
+            if (i % 2 == 0) {
+                medium.addPoints("id" + i, i * 10);
+            }
+        }
+        StaticDataset small = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms3", MEASURE, Long.class)
+                .addPoints("id4", 400L)
+                .addPoints("id6", 600L)
+                .addPoints("id7", 700L)
+                .build();
+
+        Map<String, Dataset> datasets = ImmutableMap.of(
+                "t1", large.build(),
+                "t2", medium.build(),
+                "t3", small
+        );
+        InnerJoinOperation planned = new InnerJoinOperation(datasets);
+        assertThat(planned.plan().getStrategy()).contains("merge join [t3, t1, t2]");
+
+        assertThat(planned.getData())
+                .containsExactlyElementsOf(new InnerJoinOperation(datasets).getData().collect(Collectors.toList()))
+                .containsExactly(
+                        DataPoint.create(4L, "id4", 40L, 400L),
+                        DataPoint.create(6L, "id6", 60L, 600L)
+                );
+    }
+
+    @Test
+    public void testMultiwayJoin() {
+        StaticDataset a = StaticDataset.create()
+                .addComponent("id", IDENTIFIER, String.class)
+                .addComponent("ma", MEASURE, Long.class)
+                .addPoints("2", 3L)
+                .addPoints("1", 1L)
+                .addPoints("1", 2L)
+                .addPoints("4", 4L)
+                .build();
+        StaticDataset b = StaticDataset.create()
+                .addComponent("mb", MEASURE, Long.class)
+                .addComponent("id", IDENTIFIER, String.class)
+                .addPoints(10L, "1")
+                .addPoints(20L, "1")
+                .addPoints(30L, "3")
+                .addPoints(40L, "4")
+                .build();
+        StaticDataset c = StaticDataset.create()
+                .addComponent("id", IDENTIFIER, String.class)
+                .addComponent("mc", MEASURE, Long.class)
+                .addPoints("1", 100L)
+                .addPoints("2", 200L)
+                .addPoints("4", 400L)
+                .addPoints("4", 401L)
+                .build();
+
+        InnerJoinOperation result = new InnerJoinOperation(ImmutableMap.of("a", a, "b", b, "c", c));
+        assertThat(result.getData()).containsExactly(
+                DataPoint.create("1", 1L, 10L, 100L),
+                DataPoint.create("1", 1L, 20L, 100L),
+                DataPoint.create("1", 2L, 10L, 100L),
+                DataPoint.create("1", 2L, 20L, 100L),
+                DataPoint.create("4", 4L, 40L, 400L),
+                DataPoint.create("4", 4L, 40L, 401L)
+        );
+    }
+
+    @Test
+    public void testSpilledJoinBuffers() {
+        StaticDataset.ValueBuilder a = StaticDataset.create(DataStructure.of(
+                "id", IDENTIFIER, String.class,
+                "ma", MEASURE, Long.class
+        ));
+        StaticDataset.ValueBuilder b = StaticDataset.create(DataStructure.of(
+                "id", IDENTIFIER, String.class,
+                "mb", MEASURE, Long.class
+        ));
+        for (long i = 0; i < 40; i++) {
+            a.addPoints("total", i);
+        }
+        for (long i = 0; i < 25; i++) {
+            b.addPoints("total", i);
+        }
+        for (long i = 0; i < 10; i++) {
+            a.addPoints("a" + i, i);
+            b.addPoints("a" + i, i);
+        }
+        Map<String, Dataset> datasets = ImmutableMap.of("a", a.build(), "b", b.build());
+
+        List<DataPoint> inMemory = new InnerJoinOperation(datasets).getData().collect(Collectors.toList());
+        VtlConfiguration.getConfig().setJoinBufferSize(3);
+        try (Stream<DataPoint> data = new InnerJoinOperation(datasets).getData()) {
+            assertThat(data.collect(Collectors.toList()))
+                    .hasSize(40 * 25 + 10)
+                    .containsExactlyElementsOf(inMemory);
+        } finally {
+            VtlConfiguration.getConfig().setJoinBufferSize(100_000);
+        }
+    }
+
+    @Test
+    public void testSpilledMultiwayJoinBuffers() {
+        Map<String, Dataset> datasets = Maps.newLinkedHashMap();
+        for (String name : new String[]{"a", "b", "c"}) {
+            StaticDataset.ValueBuilder dataset = StaticDataset.create(DataStructure.of(
+                    "id", IDENTIFIER, String.class,
+                    "m" + name, MEASURE, Long.class
+            ));
+            for (long i = 0; i < 12; i++) {
+                dataset.addPoints("total", i);
+            }
+            for (long i = 0; i < 10; i++) {
+                dataset.addPoints("a" + i, i);
+            }
+            datasets.put(name, dataset.build());
+        }
+
+        List<DataPoint> inMemory = new InnerJoinOperation(datasets).getData().collect(Collectors.toList());
+        VtlConfiguration.getConfig().setJoinBufferSize(3);
+        try (Stream<DataPoint> data = new InnerJoinOperation(datasets).getData()) {
+            assertThat(data.collect(Collectors.toList()))
+                    .hasSize(12 * 12 * 12 + 10)
+                    .containsExactlyElementsOf(inMemory);
+        } finally {
+            VtlConfiguration.getConfig().setJoinBufferSize(100_000);
+        }
+    }
+
+    @Test
+    // The workers of the pool can still be terminating after awaitTermination returns.
+    @ThreadLeakLingering(linger = 1000)
+    public void testParallelJoin() throws Exception {
+        assertParallelJoin(createParallelDatasets());
+    }
+
+    @Test
+    @ThreadLeakLingering(linger = 1000)
+    public void testParallelJoinOfOperations() throws Exception {
+        Map<String, Dataset> datasets = Maps.newLinkedHashMap();
+        createParallelDatasets().forEach((name, dataset) -> datasets.put(
+                name, new RenameOperation(dataset, ImmutableMap.of("m" + name, "r" + name))
+        ));
+        assertParallelJoin(datasets);
+    }
+
+    @Test
+    public void testParallelJoinsDisableMultiwayJoin() {
+        Map<String, Dataset> datasets = createParallelDatasets();
+
+        // The multiway merge join of the three datasets cannot be split.
+        try (Stream<DataPoint> data = new InnerJoinOperation(datasets).getData()) {
+            assertThat(data.parallel().spliterator().trySplit()).isNull();
+        }
+
+        // The parallel joins use the binary merge joins, one after the other.
+        VtlConfiguration.getConfig().enableParallelJoins();
+        try (Stream<DataPoint> data = new InnerJoinOperation(datasets).getData()) {
+            assertThat(data.parallel().spliterator().trySplit()).isNotNull();
+        } finally {
+            VtlConfiguration.getConfig().disableParallelJoins();
+        }
+    }
+
+    private Map<String, Dataset> createParallelDatasets() {
+        Map<String, Dataset> datasets = Maps.newLinkedHashMap();
+        for (String name : new String[]{"a", "b", "c"}) {
+            StaticDataset.ValueBuilder dataset = StaticDataset.create(DataStructure.of(
+                    "id", IDENTIFIER, Long.class,
+                    "m" + name, MEASURE, Long.class
+            ));
+            for (long i = 0; i < 5000; i++) {
+                dataset.addPoints((i * 7919) % 2000, i);
+            }
+            datasets.put(name, dataset.build());
+        }
+        return datasets;
+    }
+
+    private void assertParallelJoin(Map<String, Dataset> datasets) throws Exception {
+        List<DataPoint> sequential = new InnerJoinOperation(datasets).getData().collect(Collectors.toList());
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        configuration.enableParallelJoins();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            try (Stream<DataPoint> data = new InnerJoinOperation(datasets).getData()) {
+                assertThat(data.parallel().spliterator().trySplit()).isNotNull();
+            }
+
+            // The splits are evaluated by the workers with the configuration of this thread.
+            Set<VtlConfiguration> configurations = Sets.newConcurrentHashSet();
+            Stream<DataPoint> data = new InnerJoinOperation(datasets).getData();
+            assertThat(pool.submit(() -> data.parallel()
+                    .peek(dataPoint -> configurations.add(VtlConfiguration.getConfig()))
+                    .collect(Collectors.toList())).get())
+                    .hasSize(1000 * 3 * 3 * 3 + 1000 * 2 * 2 * 2)
+                    .containsExactlyElementsOf(sequential);
+            assertThat(configurations).containsExactly(configuration);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+            configuration.disableParallelJoins();
+        }
+    }
+
+    @Test
+    public void testHashJoin() {
+        StaticDataset.ValueBuilder large = StaticDataset.create(DataStructure.of(
+                "ms1", MEASURE, Long.class,
+                "id1", IDENTIFIER, String.class
+        ));
+        for (long i = 19; i >= 0; i--) {
+            large.addPoints(i, "id" + i % 10);
+        }
+        StaticDataset small = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms2", MEASURE, Long.class)
+                .addPoints("id4", 400L)
+                .addPoints("id4", 401L)
+                .addPoints("id7", 700L)
+                .addPoints("id42", 4200L)
+                .build();
+        Map<String, Dataset> datasets = ImmutableMap.of("t1", small, "t2", large.build());
+
+        List<DataPoint> merged = new InnerJoinOperation(datasets).getData().collect(Collectors.toList());
+        VtlConfiguration.getConfig().setHashJoinThreshold(5);
+        try {
+            InnerJoinOperation hashJoin = new InnerJoinOperation(datasets);
+            assertThat(hashJoin.plan().getStrategy()).contains("hash join [t2, t1]");
+
+            // The large dataset is not sorted; its order is kept.
+            assertThat(hashJoin.getData())
+                    .containsExactlyInAnyOrder(merged.toArray(new DataPoint[0]))
+                    .containsExactly(
+                            DataPoint.create("id7", 700L, 17L),
+                            DataPoint.create("id4", 400L, 14L),
+                            DataPoint.create("id4", 401L, 14L),
+                            DataPoint.create("id7", 700L, 7L),
+                            DataPoint.create("id4", 400L, 4L),
+                            DataPoint.create("id4", 401L, 4L)
+                    );
+
+            VtlOrdering byMeasure = VtlOrdering.using(hashJoin).asc("ms1").build();
+            assertThat(hashJoin.getData(byMeasure).get())
+                    .extracting(dataPoint -> dataPoint.get(2).get())
+                    .containsExactly(4L, 4L, 7L, 14L, 14L, 17L);
+        } finally {
+            VtlConfiguration.getConfig().setHashJoinThreshold(100_000);
+        }
+    }
+
     @Test
     @Seed("9DC9B02FF9A216E4")
     public void testRegression() throws Exception {
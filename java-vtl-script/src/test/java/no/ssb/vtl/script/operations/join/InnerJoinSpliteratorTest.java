@@ -33,6 +33,7 @@ import java.util.Spliterators;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.collect.ImmutableMap.of;
 import static java.util.Arrays.asList;
@@ -143,15 +144,60 @@ public class InnerJoinSpliteratorTest {
     }
 
     @Test
-    public void testTrySplitNotSupported() {
+    public void testTrySplitUnsplittableSource() {
         Comparator<List<String>> predicate = Comparator.comparing(
                 list -> list.get(1),
                 Comparator.nullsFirst(Comparator.naturalOrder())
         );
 
-        InnerJoinSpliterator<List<String>, List<String>, List<String>, Map<String, List<String>>> innerJoinSpliterator = join(predicate);
+        // The spliterator of a sequential stream pipeline does not split.
+        assertThat(left.stream().sorted(predicate).spliterator().trySplit()).isNull();
 
+        InnerJoinSpliterator<List<String>, List<String>, List<String>, Map<String, List<String>>> innerJoinSpliterator =
+                join(predicate, left.stream().sorted(predicate).spliterator(), right.stream().sorted(predicate).spliterator());
         assertThat(innerJoinSpliterator.trySplit()).isNull();
+
+        // The join is still complete.
+        List<Map<String, List<String>>> result = newArrayList();
+        innerJoinSpliterator.forEachRemaining(result::add);
+        checkResult(result, predicate);
+    }
+
+    @Test
+    public void testTrySplit() {
+        Comparator<String> order = Comparator.nullsFirst(Comparator.naturalOrder());
+        Comparator<List<String>> predicate = Comparator.comparing(list -> list.get(1), order);
+        List<List<String>> sortedLeft = left.stream().sorted(predicate).collect(Collectors.toList());
+        List<List<String>> sortedRight = right.stream().sorted(predicate).collect(Collectors.toList());
+
+        List<Map<String, List<String>>> sequential = newArrayList();
+        join(predicate, sortedLeft.spliterator(), sortedRight.spliterator()).forEachRemaining(sequential::add);
+
+        InnerJoinSpliterator<List<String>, List<String>, List<String>, Map<String, List<String>>> innerJoinSpliterator =
+                join(predicate, sortedLeft.spliterator(), sortedRight.spliterator());
+        Spliterator<Map<String, List<String>>> prefix = innerJoinSpliterator.trySplit();
+        assertThat(prefix).isNotNull();
+
+        List<Map<String, List<String>>> result = newArrayList();
+        result.addAll(splitAndCollect(prefix));
+        result.addAll(splitAndCollect(innerJoinSpliterator));
+        assertThat(result).containsExactlyElementsOf(sequential);
+
+        assertThat(StreamSupport.stream(join(predicate, sortedLeft.spliterator(), sortedRight.spliterator()), true)
+                .collect(Collectors.toList())
+        ).containsExactlyElementsOf(sequential);
+    }
+
+    private static <T> List<T> splitAndCollect(Spliterator<T> spliterator) {
+        List<T> result = newArrayList();
+        Spliterator<T> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            result.addAll(splitAndCollect(prefix));
+            result.addAll(splitAndCollect(spliterator));
+        } else {
+            spliterator.forEachRemaining(result::add);
+        }
+        return result;
     }
 
     @Test
@@ -244,11 +290,19 @@ public class InnerJoinSpliteratorTest {
     }
 
     private InnerJoinSpliterator<List<String>, List<String>, List<String>, Map<String, List<String>>> join(Comparator<List<String>> predicate) {
+        return join(predicate, left.stream().sorted(predicate).spliterator(), right.stream().sorted(predicate).spliterator());
+    }
+
+    private InnerJoinSpliterator<List<String>, List<String>, List<String>, Map<String, List<String>>> join(
+            Comparator<List<String>> predicate,
+            Spliterator<List<String>> leftSpliterator,
+            Spliterator<List<String>> rightSpliterator
+    ) {
         return new InnerJoinSpliterator<>(
                 Function.identity(), Function.identity(), predicate,
                     (lefts, rights) -> of("left", lefts, "right", rights),
-                    left.stream().sorted(predicate).spliterator(),
-                    right.stream().sorted(predicate).spliterator()
+                    leftSpliterator,
+                    rightSpliterator
             );
     }
 
@@ -33,6 +33,11 @@ import no.ssb.vtl.model.VTLInteger;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VTLString;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.expressions.LiteralExpression;
+import no.ssb.vtl.script.expressions.VariableExpression;
+import no.ssb.vtl.script.expressions.arithmetic.AdditionExpression;
+import no.ssb.vtl.script.expressions.arithmetic.MultiplicationExpression;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
 import org.assertj.core.api.JUnitSoftAssertions;
 import org.assertj.core.util.Lists;
@@ -193,6 +198,39 @@ public class JoinAssignmentTest {
 
     }
 
+    @Test
+    public void testArithmeticOnBatches() {
+        DatasetCloseWatcher numbers = DatasetCloseWatcher.wrap(StaticDataset.create()
+                .addComponent("id", Component.Role.IDENTIFIER, String.class)
+                .addComponent("m1", Component.Role.MEASURE, Long.class)
+                .addComponent("m2", Component.Role.MEASURE, Double.class)
+                .addPoints("a", 1L, 0.5)
+                .addPoints("b", null, 1.5)
+                .addPoints("c", 3L, 2.5)
+                .build());
+
+        // m1 * 2 + m2
+        VTLExpression expression = new AdditionExpression(
+                new MultiplicationExpression(
+                        new VariableExpression(VTLInteger.class, "m1"),
+                        new LiteralExpression(VTLInteger.of(2L))
+                ),
+                new VariableExpression(VTLFloat.class, "m2")
+        );
+
+        VtlConfiguration.getConfig().enableBatchExecution();
+        try (Stream<DataPoint> data = new JoinAssignment(
+                numbers, expression, "result", Component.Role.MEASURE, false, new ComponentBindings(numbers)
+        ).getData()) {
+            assertThat(data.map(dp -> dp.get(3))).containsExactly(
+                    VTLFloat.of(2.5), VTLObject.NULL, VTLFloat.of(8.5)
+            );
+        } finally {
+            VtlConfiguration.getConfig().disableBatchExecution();
+            assertThat(numbers.allStreamWereClosed()).isTrue();
+        }
+    }
+
     // Measure and attribute roles can be changed.
     @Test
     public void testChangeRoles() {
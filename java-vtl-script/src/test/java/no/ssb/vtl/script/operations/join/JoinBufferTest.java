@@ -0,0 +1,188 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JoinBufferTest {
+
+    private static int countTemporaryFiles() throws IOException {
+        int count = 0;
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "vtl-join-*.buffer")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testInMemory() {
+        JoinBuffer<String> buffer = JoinBuffer.inMemory();
+        buffer.add("a");
+        buffer.add("b");
+
+        assertThat(buffer).containsExactly("a", "b");
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(buffer.getSpilledRows()).isZero();
+
+        buffer.clear();
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer).isEmpty();
+        assertThat(buffer.getHighWaterMark()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        List<String> groups = new ArrayList<>();
+        int filesBefore = countTemporaryFiles();
+        List<DataPoint> rows = ImmutableList.of(
+                DataPoint.create("total", 1L),
+                DataPoint.create("total", 2L),
+                DataPoint.create("total", null),
+                DataPoint.create("total", 4L),
+                DataPoint.create("total", 5L)
+        );
+
+        try (JoinBuffer<DataPoint> buffer = JoinBuffer.spilling(2, (size, spilled) -> groups.add(size + "/" + spilled))) {
+            rows.forEach(buffer::add);
+            assertThat(buffer.size()).isEqualTo(5);
+            assertThat(buffer.getSpilledRows()).isEqualTo(3);
+            assertThat(countTemporaryFiles()).isEqualTo(filesBefore + 1);
+
+            // The spilled rows are read again by each iteration.
+            assertThat(Lists.newArrayList(buffer)).containsExactlyElementsOf(rows);
+            assertThat(Lists.newArrayList(buffer)).containsExactlyElementsOf(rows);
+
+            buffer.clear();
+            assertThat(countTemporaryFiles()).isEqualTo(filesBefore);
+            assertThat(buffer).isEmpty();
+
+            buffer.add(rows.get(0));
+            assertThat(buffer).containsExactly(rows.get(0));
+            assertThat(buffer.getHighWaterMark()).isEqualTo(5);
+        }
+
+        assertThat(groups).containsExactly("5/3", "1/0");
+        assertThat(countTemporaryFiles()).isEqualTo(filesBefore);
+    }
+
+    @Test
+    public void testClearWhileReading() throws IOException {
+        int filesBefore = countTemporaryFiles();
+        JoinBuffer<DataPoint> buffer = JoinBuffer.spilling(1, (size, spilled) -> {
+        });
+        buffer.add(DataPoint.create("a"));
+        buffer.add(DataPoint.create("b"));
+        buffer.add(DataPoint.create("c"));
+
+        // An iterator that is not read to the end keeps the file open.
+        Iterator<DataPoint> iterator = buffer.iterator();
+        assertThat(iterator.next()).isEqualTo(DataPoint.create("a"));
+        assertThat(iterator.next()).isEqualTo(DataPoint.create("b"));
+
+        buffer.close();
+        assertThat(countTemporaryFiles()).isEqualTo(filesBefore);
+    }
+
+    @Test
+    public void testSpillAllTypes() throws IOException {
+        int filesBefore = countTemporaryFiles();
+        Instant instant = Instant.ofEpochSecond(1_500_000_000L, 123);
+        List<DataPoint> rows = ImmutableList.of(
+                DataPoint.create(1L, 1.5, "a", instant, true, null, wrap(new BigDecimal("1.10"))),
+                DataPoint.create(2L, -0.5, "b", instant, false, null, wrap(new BigDecimal("2.20"))),
+                DataPoint.create(3L, 2.5, "\u00e6", instant, true, null, wrap(LocalDate.of(2018, 1, 1))),
+                DataPoint.create(4L, 3.5, "d", instant, false, null, wrap(3))
+        );
+
+        try (JoinBuffer<DataPoint> buffer = JoinBuffer.spilling(1, (size, spilled) -> {
+        })) {
+            rows.forEach(buffer::add);
+            assertThat(buffer.getSpilledRows()).isEqualTo(3);
+
+            List<DataPoint> read = Lists.newArrayList(buffer);
+            assertThat(read).containsExactlyElementsOf(rows);
+            // The values keep their types.
+            for (int row = 0; row < rows.size(); row++) {
+                for (int column = 0; column < rows.get(row).size(); column++) {
+                    Object expected = rows.get(row).get(column).get();
+                    Object actual = read.get(row).get(column).get();
+                    assertThat(actual).isEqualTo(expected);
+                    if (expected != null) {
+                        assertThat(actual).isInstanceOf(expected.getClass());
+                    }
+                }
+            }
+        }
+        assertThat(countTemporaryFiles()).isEqualTo(filesBefore);
+    }
+
+    @Test
+    public void testKeepUnwritableRowsInMemory() {
+        Object notSerializable = new Object();
+        List<DataPoint> rows = ImmutableList.of(
+                DataPoint.create("a", 1L),
+                DataPoint.create("b", 2L),
+                DataPoint.create(VTLObject.of("c"), wrap(notSerializable)),
+                DataPoint.create("d", 4L)
+        );
+
+        try (JoinBuffer<DataPoint> buffer = JoinBuffer.spilling(1, (size, spilled) -> {
+        })) {
+            rows.forEach(buffer::add);
+            assertThat(buffer.size()).isEqualTo(4);
+            assertThat(buffer.getSpilledRows()).isEqualTo(1);
+
+            // The rows keep their order.
+            assertThat(Lists.newArrayList(buffer)).containsExactlyElementsOf(rows);
+            assertThat(Lists.newArrayList(buffer)).containsExactlyElementsOf(rows);
+        }
+    }
+
+    private static VTLObject wrap(Object value) {
+        return new VTLObject() {
+            @Override
+            public Object get() {
+                return value;
+            }
+        };
+    }
+}
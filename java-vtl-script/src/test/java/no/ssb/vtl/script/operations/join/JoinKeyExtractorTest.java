@@ -22,10 +22,16 @@ package no.ssb.vtl.script.operations.join;
 
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.VtlOrdering;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import static org.junit.Assert.*;
 
 public class JoinKeyExtractorTest {
@@ -44,6 +50,33 @@ public class JoinKeyExtractorTest {
                 .build();
     }
 
+    @Test
+    public void testRowComparator() {
+        DataStructure other = DataStructure.builder()
+                .put("M", Component.Role.MEASURE, Long.class)
+                .put("C", Component.Role.IDENTIFIER, String.class)
+                .put("A", Component.Role.IDENTIFIER, String.class)
+                .build();
+        Ordering order = VtlOrdering.using(dataStructure).asc("A").desc("C").build();
+        JoinKeyExtractor left = new JoinKeyExtractor(dataStructure, order);
+        JoinKeyExtractor right = new JoinKeyExtractor(other, order);
+
+        DataPoint leftRow = DataPoint.create("a", "b", "c", "d", "e", "f");
+        Comparator<DataPoint> comparator = left.getRowComparator(right);
+        for (DataPoint rightRow : Arrays.asList(
+                DataPoint.create(1L, "c", "a"),
+                DataPoint.create(1L, "d", "a"),
+                DataPoint.create(1L, "b", "a"),
+                DataPoint.create(1L, "c", "b"),
+                DataPoint.create(1L, null, "a")
+        )) {
+            int expected = left.getKeyComparator().compare(left.apply(leftRow), right.apply(rightRow));
+            assertEquals(rightRow.toString(), Integer.signum(expected),
+                    Integer.signum(comparator.compare(leftRow, rightRow)));
+        }
+        assertEquals(0, left.getRowComparator().compare(leftRow, DataPoint.create("a", "x", "c", "y", "z", "w")));
+    }
+
     @Test
     @Repeat(iterations = 100)
     public void testRandom() {
@@ -23,21 +23,28 @@ package no.ssb.vtl.script.operations.join;
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import com.carrotsearch.randomizedtesting.annotations.Seed;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.operations.rename.RenameOperation;
 import no.ssb.vtl.script.support.VTLPrintStream;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -248,6 +255,135 @@ public class OuterJoinOperationTest extends RandomizedTest {
 
     }
 
+    @Test
+    public void testHashJoin() throws Exception {
+        StaticDataset.ValueBuilder large = StaticDataset.create(DataStructure.of(
+                "id1", IDENTIFIER, Long.class,
+                "value", MEASURE, String.class
+        ));
+        for (long id : new long[]{9, 1, 3, 3, 7, 1}) {
+            large.addPoints(id, "large " + id);
+        }
+        Dataset small = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, Long.class)
+                .addComponent("value", MEASURE, String.class)
+                .addPoints(1L, "small 1")
+                .addPoints(2L, "small 2")
+                .addPoints(3L, "small 3")
+                .build();
+        Map<String, Dataset> datasets = ImmutableMap.of("large", large.build(), "small", small);
+
+        List<DataPoint> merged = new OuterJoinOperation(datasets).getData().collect(Collectors.toList());
+        VtlConfiguration.getConfig().setHashJoinThreshold(3);
+        try {
+            OuterJoinOperation hashJoin = new OuterJoinOperation(datasets);
+            assertThat(hashJoin.getData())
+                    .containsExactlyInAnyOrder(merged.toArray(new DataPoint[0]))
+                    .containsExactly(
+                            DataPoint.create(9L, "large 9", null),
+                            DataPoint.create(1L, "large 1", "small 1"),
+                            DataPoint.create(3L, "large 3", "small 3"),
+                            DataPoint.create(3L, "large 3", "small 3"),
+                            DataPoint.create(7L, "large 7", null),
+                            DataPoint.create(1L, "large 1", "small 1"),
+                            DataPoint.create(2L, null, "small 2")
+                    );
+        } finally {
+            VtlConfiguration.getConfig().setHashJoinThreshold(100_000);
+        }
+    }
+
+    @Test
+    public void testSpilledJoinBuffers() {
+        StaticDataset.ValueBuilder a = StaticDataset.create(DataStructure.of(
+                "id", IDENTIFIER, String.class,
+                "ma", MEASURE, Long.class
+        ));
+        StaticDataset.ValueBuilder b = StaticDataset.create(DataStructure.of(
+                "id", IDENTIFIER, String.class,
+                "mb", MEASURE, Long.class
+        ));
+        for (long i = 0; i < 40; i++) {
+            a.addPoints("total", i);
+        }
+        for (long i = 0; i < 25; i++) {
+            b.addPoints("total", i);
+        }
+        for (long i = 0; i < 10; i++) {
+            a.addPoints("a" + i, i);
+            b.addPoints("a" + i, i);
+            b.addPoints("b" + i, i);
+        }
+        Map<String, Dataset> datasets = ImmutableMap.of("a", a.build(), "b", b.build());
+
+        List<DataPoint> inMemory = new OuterJoinOperation(datasets).getData().collect(Collectors.toList());
+        VtlConfiguration.getConfig().setJoinBufferSize(3);
+        try (Stream<DataPoint> data = new OuterJoinOperation(datasets).getData()) {
+            assertThat(data.collect(Collectors.toList()))
+                    .hasSize(40 * 25 + 10 + 10)
+                    .containsExactlyElementsOf(inMemory);
+        } finally {
+            VtlConfiguration.getConfig().setJoinBufferSize(100_000);
+        }
+    }
+
+    @Test
+    // The workers of the pool can still be terminating after awaitTermination returns.
+    @ThreadLeakLingering(linger = 1000)
+    public void testParallelJoin() throws Exception {
+        assertParallelJoin(createParallelDatasets());
+    }
+
+    @Test
+    @ThreadLeakLingering(linger = 1000)
+    public void testParallelJoinOfOperations() throws Exception {
+        Map<String, Dataset> datasets = Maps.newLinkedHashMap();
+        createParallelDatasets().forEach((name, dataset) -> datasets.put(
+                name, new RenameOperation(dataset, ImmutableMap.of("m" + name, "r" + name))
+        ));
+        assertParallelJoin(datasets);
+    }
+
+    private Map<String, Dataset> createParallelDatasets() {
+        Map<String, Dataset> datasets = Maps.newLinkedHashMap();
+        for (String name : new String[]{"a", "b", "c"}) {
+            StaticDataset.ValueBuilder dataset = StaticDataset.create(DataStructure.of(
+                    "id", IDENTIFIER, Long.class,
+                    "m" + name, MEASURE, Long.class
+            ));
+            for (long i = 0; i < 3000; i++) {
+                dataset.addPoints((i * 7919 + name.charAt(0)) % 4000, i);
+            }
+            datasets.put(name, dataset.build());
+        }
+        return datasets;
+    }
+
+    private void assertParallelJoin(Map<String, Dataset> datasets) throws Exception {
+        List<DataPoint> sequential = new OuterJoinOperation(datasets).getData().collect(Collectors.toList());
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        configuration.enableParallelJoins();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            try (Stream<DataPoint> data = new OuterJoinOperation(datasets).getData()) {
+                assertThat(data.parallel().spliterator().trySplit()).isNotNull();
+            }
+
+            // The splits are evaluated by the workers with the configuration of this thread.
+            Set<VtlConfiguration> configurations = Sets.newConcurrentHashSet();
+            Stream<DataPoint> data = new OuterJoinOperation(datasets).getData();
+            assertThat(pool.submit(() -> data.parallel()
+                    .peek(dataPoint -> configurations.add(VtlConfiguration.getConfig()))
+                    .collect(Collectors.toList())).get())
+                    .containsExactlyElementsOf(sequential);
+            assertThat(configurations).containsExactly(configuration);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+            configuration.disableParallelJoins();
+        }
+    }
+
     @Test
     public void testOuterJoinWithUnequalIds() throws Exception {
 
@@ -34,6 +34,8 @@ import java.util.Map;
 import java.util.Spliterator;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.collect.Lists.newArrayList;
@@ -120,9 +122,46 @@ public class OuterJoinSpliteratorTest {
     @Test
     public void testTrySplitNotSupported() {
         Spliterator<Map<String, List<String>>> spliterator = outerJoin(left.spliterator(), right.spliterator());
+        // Cannot split once the traversal has started.
+        assertThat(spliterator.tryAdvance(map -> {})).isTrue();
         assertThat(spliterator.trySplit()).isNull();
     }
 
+    @Test
+    public void testTrySplit() {
+        Comparator<List<String>> order = Comparator.comparing(list -> list.get(0),
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+        List<List<String>> sortedRight = right.stream().sorted(order).collect(Collectors.toList());
+
+        List<Map<String, List<String>>> sequential = new ArrayList<>();
+        outerJoin(left.spliterator(), sortedRight.spliterator()).forEachRemaining(sequential::add);
+
+        Spliterator<Map<String, List<String>>> spliterator = outerJoin(left.spliterator(), sortedRight.spliterator());
+        Spliterator<Map<String, List<String>>> prefix = spliterator.trySplit();
+        assertThat(prefix).isNotNull();
+
+        List<Map<String, List<String>>> result = new ArrayList<>();
+        result.addAll(splitAndCollect(prefix));
+        result.addAll(splitAndCollect(spliterator));
+        assertThat(result).containsExactlyElementsOf(sequential);
+
+        assertThat(StreamSupport.stream(outerJoin(left.spliterator(), sortedRight.spliterator()), true)
+                .collect(Collectors.toList())
+        ).containsExactlyElementsOf(sequential);
+    }
+
+    private static <T> List<T> splitAndCollect(Spliterator<T> spliterator) {
+        List<T> result = new ArrayList<>();
+        Spliterator<T> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            result.addAll(splitAndCollect(prefix));
+            result.addAll(splitAndCollect(spliterator));
+        } else {
+            spliterator.forEachRemaining(result::add);
+        }
+        return result;
+    }
+
     @Test
     public void testTryAdvance() {
 
@@ -41,6 +41,7 @@ package no.ssb.vtl.script.operations.rename;
  */
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
@@ -58,6 +59,7 @@ import org.mockito.Mockito;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 import static no.ssb.vtl.model.Component.Role;
@@ -127,6 +129,34 @@ public class RenameOperationTest {
 
     }
 
+    @Test
+    public void testRequestedComponents() {
+
+        Dataset dataset = Mockito.mock(Dataset.class);
+
+        DataStructure structure = DataStructure.of(
+                "Ia", Role.IDENTIFIER, String.class,
+                "Ma", Role.MEASURE, String.class,
+                "Aa", Role.ATTRIBUTE, String.class
+        );
+        Mockito.when(dataset.getDataStructure()).thenReturn(structure);
+        Mockito.when(dataset.getData(Mockito.any(Ordering.class), Mockito.any(Filtering.class), Mockito.anySet()))
+                .thenReturn(Optional.of(Stream.empty()));
+
+        RenameOperation rename = new RenameOperation(
+                new DatasetOperationWrapper(dataset),
+                ImmutableMap.of("Ma", "Mb", "Aa", "Ab")
+        );
+
+        try (Stream<DataPoint> data = rename.computeData(Ordering.ANY, Filtering.ALL, ImmutableSet.of("Mb"))) {
+            assertThat(data).isEmpty();
+        }
+
+        Mockito.verify(dataset).getData(
+                Mockito.any(Ordering.class), Mockito.any(Filtering.class), Mockito.eq(ImmutableSet.of("Ia", "Ma"))
+        );
+    }
+
     @Test
     public void testComplexFilters() {
         Dataset dataset = StaticDataset.create()
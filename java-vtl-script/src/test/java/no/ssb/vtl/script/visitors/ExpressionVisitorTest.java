@@ -33,6 +33,11 @@ import no.ssb.vtl.model.VTLString;
 import no.ssb.vtl.parser.VTLLexer;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
+import no.ssb.vtl.script.expressions.IfThenElseExpression;
+import no.ssb.vtl.script.expressions.LiteralExpression;
+import no.ssb.vtl.script.expressions.VariableExpression;
+import no.ssb.vtl.script.expressions.arithmetic.AdditionExpression;
+import no.ssb.vtl.script.expressions.equality.GraterThanExpression;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
@@ -330,6 +335,43 @@ public class ExpressionVisitorTest {
                 .isEqualTo(expected.getVTLType());
     }
 
+    @Test
+    public void testConstantFolding() throws Exception {
+        bindings.put("x", VTLInteger.of(1L));
+        bindings.put("b", VTLBoolean.of(true));
+
+        VTLExpression result = expressionVisitor.visit(parse("2 * 3 + x").expression());
+        softly.assertThat(result).isInstanceOf(AdditionExpression.class);
+        softly.assertThat(((AdditionExpression) result).getLeftOperand()).isInstanceOf(LiteralExpression.class);
+        softly.assertThat(result.resolve(bindings).get()).isEqualTo(7L);
+
+        result = expressionVisitor.visit(parse("upper(\"abc\") || \"def\"").expression());
+        softly.assertThat(result).isInstanceOf(LiteralExpression.class);
+        softly.assertThat(result.resolve(bindings).get()).isEqualTo("ABCdef");
+
+        result = expressionVisitor.visit(parse("nvl(null, 5) + x").expression());
+        softly.assertThat(result.resolve(bindings).get()).isEqualTo(6L);
+
+        result = expressionVisitor.visit(parse("if false then 1 elseif b then 2 else 3").expression());
+        softly.assertThat(result).isInstanceOf(IfThenElseExpression.class);
+        softly.assertThat(((IfThenElseExpression) result).getConditionToExpression()).hasSize(1);
+        softly.assertThat(result.resolve(bindings).get()).isEqualTo(2L);
+
+        result = expressionVisitor.visit(parse("if 1 = 1 then x else 3").expression());
+        softly.assertThat(result).isInstanceOf(VariableExpression.class);
+
+        result = expressionVisitor.visit(parse("true and (b or false)").expression());
+        softly.assertThat(result).isInstanceOf(VariableExpression.class);
+
+        result = expressionVisitor.visit(parse("x > 2 * 3 and true").expression());
+        softly.assertThat(result).isInstanceOf(GraterThanExpression.class);
+        softly.assertThat(((GraterThanExpression) result).getRightOperand()).isInstanceOf(LiteralExpression.class);
+
+        // Typed null results are kept.
+        result = expressionVisitor.visit(parse("null + 1").expression());
+        softly.assertThat(result.getVTLType()).isEqualTo(VTLInteger.class);
+    }
+
     @Test
     public void testIfThenElse() throws Exception {
         VTLParser parse = parse("if false then \"false\" elseif true then \"true\" else \"else\"");